@@ -5,6 +5,7 @@
 package core;
 
 import routing.MessageRouter;
+import util.ExpiringHandleSet;
 
 import java.util.*;
 
@@ -18,7 +19,8 @@ public class CBRConnection extends Connection {
 	private double queuedCapacity;
 	private List<DTNHost> msgFromNodes;
 	protected List<Message> msgsOnFly;
-	protected Set<String> sentMessages;
+	/** handles of the messages that don't need to be offered again */
+	protected ExpiringHandleSet sentMessages;
 
 
 	/**
@@ -33,6 +35,25 @@ public class CBRConnection extends Connection {
 	 */
 	public CBRConnection(DTNHost fromNode, NetworkInterface fromInterface,
 			DTNHost toNode,	NetworkInterface toInterface, int connectionSpeed) {
+		this(fromNode, fromInterface, toNode, toInterface, connectionSpeed, 0);
+	}
+
+	/**
+	 * Creates a new connection between nodes and sets the connection
+	 * state to "up".
+	 * @param fromNode The node that initiated the connection
+	 * @param fromInterface The interface that initiated the connection
+	 * @param toNode The node in the other side of the connection
+	 * @param toInterface The interface in the other side of the connection
+	 * @param connectionSpeed Transfer speed of the connection (Bps) when
+	 *  the connection is initiated
+	 * @param sentMessagesTtl How long (seconds) the connection remembers
+	 *  the messages it has sent (and doesn't offer them again); 0 = for the
+	 *  whole lifetime of the connection
+	 */
+	public CBRConnection(DTNHost fromNode, NetworkInterface fromInterface,
+			DTNHost toNode,	NetworkInterface toInterface, int connectionSpeed,
+			double sentMessagesTtl) {
 		super(fromNode, fromInterface, toNode, toInterface);
 		this.speed = connectionSpeed;
 		this.transferDoneTimes = new ArrayList<Double>();
@@ -40,7 +61,7 @@ public class CBRConnection extends Connection {
 		this.queuedCapacity = 0;
 		this.msgsOnFly = new ArrayList<Message>();
 		this.msgFromNodes = new ArrayList<>();
-		this.sentMessages = new HashSet<>();
+		this.sentMessages = new ExpiringHandleSet(sentMessagesTtl);
 
 	}
 
@@ -58,7 +79,7 @@ public class CBRConnection extends Connection {
 	public int startTransfer(DTNHost from, Message m) {
 		assert this.queuedCapacity < this.intervalCapacity: "Already transferring maximum capacity of data per " +
 				"simulation updateInterval. Can't start transfer of " + m + " from " + from;
-		if (this.sentMessages.contains(m.getId())) {
+		if (this.sentMessages.contains(m.getHandle(), SimClock.getTime())) {
 			return MessageRouter.DENIED_OLD;
 		}
 		if (this.queuedCapacity >= this.intervalCapacity ) {
@@ -80,7 +101,7 @@ public class CBRConnection extends Connection {
 			}
 			this.queuedCapacity += newMessage.getSize();
 		} else if (retVal == MessageRouter.DENIED_OLD) {
-			sentMessages.add(m.getId());
+			sentMessages.add(m.getHandle(), SimClock.getTime());
 		}
 
 		return retVal;
@@ -141,7 +162,7 @@ public class CBRConnection extends Connection {
 				queuedCapacity -= msgsOnFly.get(i).getSize();
 				getOtherNode(msgFromNodes.get(i)).messageTransferred(msgsOnFly.get(i).getId(),
 						msgFromNodes.get(i));
-				this.sentMessages.add(msgsOnFly.get(i).getId());
+				this.sentMessages.add(msgsOnFly.get(i).getHandle(), time);
 			}
 		}
 		Collections.reverse(removals);
@@ -10,6 +10,7 @@ import java.util.List;
 
 import movement.MovementModel;
 import movement.Path;
+import movement.TrajectoryRecorder;
 import routing.MessageRouter;
 import routing.util.RoutingInfo;
 import util.ActivenessHandler;
@@ -25,9 +26,12 @@ public class DTNHost implements Comparable<DTNHost> {
 
 	private Coord location; 	// where is the host
 	private Coord destination;	// where is it going
+	private Coord nextWaypoint;	// reused for the destinations
 
 	private MessageRouter router;
 	private MovementModel movement;
+	/** Recorder of the movement model's results or null if not recorded */
+	private TrajectoryRecorder recorder;
 	private Path path;
 	private double speed;
 	private double nextTimeToMove;
@@ -37,6 +41,10 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<NetworkInterface> net;
 	private ModuleCommunicationBus comBus;
     private ActivenessHandler ah;
+	/** The store that has this host's location or null if not stored */
+	private PositionStore positions;
+	/** Index of this host in the position store */
+	private int positionIndex;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -57,6 +65,28 @@ public class DTNHost implements Comparable<DTNHost> {
 			String groupId, List<NetworkInterface> interf,
 			ModuleCommunicationBus comBus,
 			MovementModel mmProto, MessageRouter mRouterProto, Settings settings) {
+		this(msgLs, movLs, groupId, interf, comBus, mmProto, mRouterProto,
+				null, settings);
+	}
+
+	/**
+	 * Creates a new DTNHost whose movement is recorded.
+	 * @param msgLs Message listeners
+	 * @param movLs Movement listeners
+	 * @param groupId GroupID of this host
+	 * @param interf List of NetworkInterfaces for the class
+	 * @param comBus Module communication bus object
+	 * @param mmProto Prototype of the movement model of this host
+	 * @param mRouterProto Prototype of the message router of this host
+	 * @param recorderProto Prototype of the recorder of the movement or
+	 * null if the movement is not recorded
+	 */
+	public DTNHost(List<MessageListener> msgLs,
+			List<MovementListener> movLs,
+			String groupId, List<NetworkInterface> interf,
+			ModuleCommunicationBus comBus,
+			MovementModel mmProto, MessageRouter mRouterProto,
+			TrajectoryRecorder recorderProto, Settings settings) {
 		this.comBus = comBus;
 		this.location = new Coord(0,0);
 		this.address = getNextAddress();
@@ -80,11 +110,17 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.movement = mmProto.replicate();
 		this.movement.setComBus(comBus);
 		this.movement.setHost(this);
+		if (recorderProto != null) {
+			this.recorder = recorderProto.replicate();
+		}
 		setRouter(mRouterProto.replicate());
 
 		this.location = movement.getInitialLocation();
+		if (this.recorder != null) {
+			this.recorder.initialLocation(this, this.location);
+		}
 
-		this.nextTimeToMove = movement.nextPathAvailable();
+		this.nextTimeToMove = nextPathAvailable();
 		this.path = null;
 
 		if (movLs != null) { // inform movement listeners about the location
@@ -115,7 +151,23 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @return true if this node is actively moving (false if not)
 	 */
 	public boolean isMovementActive() {
-		return this.movement.isActive();
+		boolean active = this.movement.isActive();
+		if (this.recorder != null) {
+			this.recorder.activeness(this, active);
+		}
+		return active;
+	}
+
+	/**
+	 * Asks the movement model when the next path is available
+	 * @return The time of the next path
+	 */
+	private double nextPathAvailable() {
+		double time = this.movement.nextPathAvailable();
+		if (this.recorder != null) {
+			this.recorder.nextPathAvailable(this, time);
+		}
+		return time;
 	}
 
 	/**
@@ -209,9 +261,37 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @return The location
 	 */
 	public Coord getLocation() {
+		if (this.positions != null) {
+			this.location.setLocation(this.positions.getX(positionIndex),
+					this.positions.getY(positionIndex));
+		}
 		return this.location;
 	}
 
+	/**
+	 * Returns the x coordinate of this host's current location. Unlike
+	 * {@link #getLocation()}, reads the position store directly.
+	 * @return The x coordinate
+	 */
+	public double getX() {
+		if (this.positions != null) {
+			return this.positions.getX(positionIndex);
+		}
+		return this.location.getX();
+	}
+
+	/**
+	 * Returns the y coordinate of this host's current location. Unlike
+	 * {@link #getLocation()}, reads the position store directly.
+	 * @return The y coordinate
+	 */
+	public double getY() {
+		if (this.positions != null) {
+			return this.positions.getY(positionIndex);
+		}
+		return this.location.getY();
+	}
+
 	/**
 	 * Returns the Path this node is currently traveling or null if no
 	 * path is in use at the moment.
@@ -235,6 +315,23 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	public void setLocation(Coord location) {
 		this.location = location.clone();
+		if (this.positions != null) {
+			this.positions.setLocation(positionIndex, this.location);
+		}
+	}
+
+	/**
+	 * Moves the location and movement state of this host to a position
+	 * store. After this, the store has the location of the host.
+	 * @param positions The store
+	 * @param index Index of this host in the store
+	 */
+	void setPositionStore(PositionStore positions, int index) {
+		this.positions = positions;
+		this.positionIndex = index;
+		positions.setLocation(index, this.location);
+		positions.setMovement(index, this.destination, this.speed,
+				this.nextTimeToMove);
 	}
 
 	/**
@@ -398,6 +495,28 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param timeIncrement How long time the node moves
 	 */
 	public void move(double timeIncrement) {
+		PositionStore store = this.positions;
+		if (store == null) {
+			moveLocation(timeIncrement);
+			return;
+		}
+
+		/* the location object is used while moving (also by the movement
+		 * model) and the new state is put back to the store after that */
+		getLocation();
+		this.positions = null;
+		moveLocation(timeIncrement);
+		this.positions = store;
+		store.setLocation(positionIndex, this.location);
+		store.setMovement(positionIndex, this.destination, this.speed,
+				this.nextTimeToMove);
+	}
+
+	/**
+	 * Moves the location object of this node
+	 * @param timeIncrement How long time the node moves
+	 */
+	private void moveLocation(double timeIncrement) {
 		double possibleMovement;
 		double distance;
 		double dx, dy;
@@ -442,20 +561,30 @@ public class DTNHost implements Comparable<DTNHost> {
 	private boolean setNextWaypoint() {
 		if (path == null) {
 			path = movement.getPath();
+			if (this.recorder != null) {
+				this.recorder.path(this, path);
+			}
 		}
 
 		if (path == null || !path.hasNext()) {
-			this.nextTimeToMove = movement.nextPathAvailable();
+			this.nextTimeToMove = nextPathAvailable();
+			if (this.path != null) {
+				movement.recyclePath(this.path);
+			}
 			this.path = null;
 			return false;
 		}
 
-		this.destination = path.getNextWaypoint();
+		if (this.nextWaypoint == null) {
+			this.nextWaypoint = new Coord(0, 0);
+		}
+		path.getNextWaypoint(this.nextWaypoint);
+		this.destination = this.nextWaypoint;
 		this.speed = path.getSpeed();
 
 		if (this.movListeners != null) {
 			for (MovementListener l : this.movListeners) {
-				l.newDestination(this, this.destination, this.speed);
+				l.newDestination(this, this.destination.clone(), this.speed);
 			}
 		}
 
@@ -28,6 +28,12 @@ public class Message implements Comparable<Message> {
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Handle of the message ID (same for all replicates of the message) */
+	private int handle;
+	/** Handles of all message IDs, mapped using the IDs */
+	private static Map<String, Integer> handles;
+	/** Message IDs of all handles */
+	private static List<String> handleIds;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
@@ -69,6 +75,7 @@ public class Message implements Comparable<Message> {
 		this.size = size;
 		this.path = new ArrayList<DTNHost>();
 		this.uniqueId = nextUniqueId;
+		this.handle = createHandle(id);
 
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
@@ -115,6 +122,52 @@ public class Message implements Comparable<Message> {
 		return this.uniqueId;
 	}
 
+	/**
+	 * Returns the handle of the message ID. Handles are dense non-negative
+	 * integers (the first ID gets handle 0, next 1, etc.) that are the same
+	 * for all replicates of the message, so they are suitable for compact
+	 * set representations like {@link util.HandleSet}.
+	 * @return The handle
+	 */
+	public int getHandle() {
+		return this.handle;
+	}
+
+	/**
+	 * Returns the handle of the given message ID
+	 * @param id The message ID
+	 * @return The handle or -1 if no message with the ID has been created
+	 */
+	public static int getHandle(String id) {
+		Integer h = handles.get(id);
+		return h == null ? -1 : h;
+	}
+
+	/**
+	 * Returns the message ID of the given handle
+	 * @param handle The handle
+	 * @return The message ID
+	 */
+	public static String getIdForHandle(int handle) {
+		return handleIds.get(handle);
+	}
+
+	/**
+	 * Returns the handle of the given message ID, creating a new handle
+	 * if the ID didn't have one yet
+	 * @param id The message ID
+	 * @return The handle
+	 */
+	private static int createHandle(String id) {
+		Integer h = handles.get(id);
+		if (h == null) {
+			h = handleIds.size();
+			handles.put(id, h);
+			handleIds.add(id);
+		}
+		return h;
+	}
+
 	/**
 	 * Returns the size of the message (in bytes)
 	 * @return the size of the message
@@ -164,6 +217,18 @@ public class Message implements Comparable<Message> {
 	}
 
 
+	/**
+	 * Returns the simulation time when the TTL of this message expires or
+	 * Double.MAX_VALUE if the TTL is infinite.
+	 * @return The expiry time (seconds)
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.timeCreated + this.initTtl * 60.0;
+	}
+
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -344,6 +409,8 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		handles = new HashMap<String, Integer>();
+		handleIds = new ArrayList<String>();
 	}
 
 	/**
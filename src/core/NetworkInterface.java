@@ -25,6 +25,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public static final String TRANSMIT_SPEED_S = "transmitSpeed";
 	/** scanning interval -setting id ({@value})*/
 	public static final String SCAN_INTERVAL_S = "scanInterval";
+	/** sent messages memory -setting id ({@value}). How long (seconds) a
+	 * connection remembers the messages it has transferred (or that the other
+	 * end already had) and doesn't offer them again. Default = 0 (for the
+	 * whole lifetime of the connection). */
+	public static final String SENT_MSGS_TTL_S = "sentMessagesTtl";
 
 	/**
 	 * Sub-namespace for the network related settings in the Group namespace
@@ -59,6 +64,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected double transmitRange;
 	protected double oldTransmitRange;
 	protected int transmitSpeed;
+	/** how long connections remember sent messages, 0 = for ever */
+	protected double sentMessagesTtl;
 	protected ConnectivityOptimizer optimizer = null;
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
@@ -92,6 +99,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.transmitSpeed = s.getInt(TRANSMIT_SPEED_S);
 		ensurePositiveValue(transmitRange, TRANSMIT_RANGE_S);
 		ensurePositiveValue(transmitSpeed, TRANSMIT_SPEED_S);
+
+		if (s.contains(SENT_MSGS_TTL_S)) {
+			this.sentMessagesTtl = s.getDouble(SENT_MSGS_TTL_S);
+			ensurePositiveValue(sentMessagesTtl, SENT_MSGS_TTL_S);
+		}
 	}
 
 	/**
@@ -112,6 +124,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.interfacetype = ni.interfacetype;
 		this.transmitRange = ni.transmitRange;
 		this.transmitSpeed = ni.transmitSpeed;
+		this.sentMessagesTtl = ni.sentMessagesTtl;
 		this.scanInterval = ni.scanInterval;
 
 		if (ni.activenessJitterMax > 0) {
@@ -212,6 +225,16 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.transmitSpeed;
 	}
 
+	/**
+	 * Returns how long (seconds) connections of this interface remember the
+	 * messages they have sent
+	 * @return the time or 0 if sent messages are remembered for the whole
+	 * lifetime of a connection
+	 */
+	public double getSentMessagesTtl() {
+		return this.sentMessagesTtl;
+	}
+
 	/**
 	 * Returns a list of currently connected connections
 	 * @return a list of currently connected connections
@@ -352,8 +375,10 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			smallerRange = myRange;
 		}
 
-		return this.host.getLocation().distance(
-				anotherInterface.getHost().getLocation()) <= smallerRange;
+		DTNHost another = anotherInterface.getHost();
+		double dx = this.host.getX() - another.getX();
+		double dy = this.host.getY() - another.getY();
+		return Math.sqrt(dx*dx + dy*dy) <= smallerRange;
 	}
 
 	/**
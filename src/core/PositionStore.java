@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.List;
+
+/**
+ * Locations and movement state of all the hosts in parallel arrays indexed
+ * by the hosts' indexes in the world's host list. Hosts that are moving
+ * towards a waypoint they don't reach during an update are moved in one
+ * loop over the arrays. The rest of the hosts that may move (they reach
+ * their waypoint or need a new path) are moved with
+ * {@link DTNHost#move(double)}, in the host order, after that loop.
+ * While a host is attached to a store, the store has its location and
+ * {@link DTNHost#getLocation()} returns a copy of it from the store.
+ */
+public class PositionStore {
+	private final double[] xs;
+	private final double[] ys;
+	/** Coordinates of the hosts' destinations */
+	private final double[] destXs;
+	private final double[] destYs;
+	/** Does the host have a destination */
+	private final boolean[] hasDest;
+	private final double[] speeds;
+	/** Times when the hosts can move the next time */
+	private final double[] nextTimes;
+	/** Hosts that may move during the current update */
+	private final boolean[] movable;
+	private final List<DTNHost> hosts;
+
+	/**
+	 * Creates a store for the hosts and attaches the hosts to it
+	 * @param hosts The hosts (indexed by their network address)
+	 */
+	public PositionStore(List<DTNHost> hosts) {
+		int n = hosts.size();
+		this.hosts = hosts;
+		this.xs = new double[n];
+		this.ys = new double[n];
+		this.destXs = new double[n];
+		this.destYs = new double[n];
+		this.hasDest = new boolean[n];
+		this.speeds = new double[n];
+		this.nextTimes = new double[n];
+		this.movable = new boolean[n];
+
+		for (int i = 0; i < n; i++) {
+			hosts.get(i).setPositionStore(this, i);
+		}
+	}
+
+	/**
+	 * Returns the x coordinate of a host
+	 * @param index Index of the host
+	 * @return The x coordinate
+	 */
+	public double getX(int index) {
+		return this.xs[index];
+	}
+
+	/**
+	 * Returns the y coordinate of a host
+	 * @param index Index of the host
+	 * @return The y coordinate
+	 */
+	public double getY(int index) {
+		return this.ys[index];
+	}
+
+	/**
+	 * Sets the location of a host
+	 * @param index Index of the host
+	 * @param c The location
+	 */
+	void setLocation(int index, Coord c) {
+		this.xs[index] = c.getX();
+		this.ys[index] = c.getY();
+	}
+
+	/**
+	 * Sets the movement state of a host
+	 * @param index Index of the host
+	 * @param destination The destination of the host or null if it has none
+	 * @param speed The speed towards the destination
+	 * @param nextTimeToMove Time when the host can move the next time
+	 */
+	void setMovement(int index, Coord destination, double speed,
+			double nextTimeToMove) {
+		this.hasDest[index] = destination != null;
+		if (destination != null) {
+			this.destXs[index] = destination.getX();
+			this.destYs[index] = destination.getY();
+		}
+		this.speeds[index] = speed;
+		this.nextTimes[index] = nextTimeToMove;
+	}
+
+	/**
+	 * Moves all the hosts for the given time
+	 * @param timeIncrement The time how long the hosts should move
+	 */
+	public void move(double timeIncrement) {
+		int n = this.xs.length;
+		double time = SimClock.getTime();
+
+		for (int i = 0; i < n; i++) {
+			/* always asked as the activeness can depend on the time */
+			this.movable[i] = this.hosts.get(i).isMovementActive() &&
+				time >= this.nextTimes[i];
+		}
+
+		/* the same arithmetic as DTNHost.move for hosts that don't reach
+		 * their destination */
+		for (int i = 0; i < n; i++) {
+			double dx = this.destXs[i] - this.xs[i];
+			double dy = this.destYs[i] - this.ys[i];
+			double distance = Math.sqrt(dx*dx + dy*dy);
+			double possibleMovement = timeIncrement * this.speeds[i];
+			if (this.movable[i] && this.hasDest[i] &&
+					possibleMovement < distance) {
+				this.xs[i] += (possibleMovement/distance) * dx;
+				this.ys[i] += (possibleMovement/distance) * dy;
+				this.movable[i] = false;
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			if (this.movable[i]) {
+				this.hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+}
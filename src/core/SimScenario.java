@@ -6,13 +6,17 @@ package core;
 
 import input.EventQueue;
 import input.EventQueueHandler;
+import input.TrajectoryFile;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 import movement.MapBasedMovement;
 import movement.MovementModel;
+import movement.TrajectoryRecorder;
 import movement.map.SimMap;
 import routing.MessageRouter;
 
@@ -39,6 +43,18 @@ public class SimScenario implements Serializable {
 	public static final String UP_INT_S = "updateInterval";
 	/** simulate connections -setting id ({@value})*/
 	public static final String SIM_CON_S = "simulateConnections";
+	/**
+	 * Should only the hosts' movement be simulated (no connectivity nor
+	 * routing) -setting id ({@value}). Boolean, default is false.
+	 */
+	public static final String MOVEMENT_ONLY_S = "movementOnly";
+	/**
+	 * File where the hosts' movement is recorded -setting id ({@value}).
+	 * If set, the movement is written to the file while the simulation
+	 * runs and it can be replayed with
+	 * {@link movement.TrajectoryReplayMovement}.
+	 */
+	public static final String TRAJECTORY_FILE_S = "trajectoryFile";
 
 	/** namespace for interface type settings ({@value}) */
 	public static final String INTTYPE_NS = "Interface";
@@ -106,6 +122,10 @@ public class SimScenario implements Serializable {
 	private boolean simulateConnections;
 	/** Map used for host movement (if any) */
 	private SimMap simMap;
+	/** File where the hosts' movement is recorded (or null) */
+	private File trajectoryFile;
+	/** Writer of the hosts' recorded movement (or null) */
+	private TrajectoryFile.Writer trajectoryWriter;
 
 	/** Global connection event listeners */
 	private List<ConnectionListener> connectionListeners;
@@ -137,7 +157,18 @@ public class SimScenario implements Serializable {
 		this.name = s.valueFillString(s.getSetting(NAME_S));
 		this.endTime = s.getDouble(END_TIME_S);
 		this.updateInterval = s.getDouble(UP_INT_S);
-		this.simulateConnections = s.getBoolean(SIM_CON_S);
+		this.simulateConnections = s.getBoolean(SIM_CON_S) &&
+			!s.getBoolean(MOVEMENT_ONLY_S, false);
+		if (s.contains(TRAJECTORY_FILE_S)) {
+			this.trajectoryFile = new File(s.getSetting(TRAJECTORY_FILE_S));
+			try {
+				this.trajectoryWriter = new TrajectoryFile.Writer(
+						this.trajectoryFile);
+			} catch (IOException e) {
+				throw new SettingsError("Couldn't create trajectory file " +
+						this.trajectoryFile + ": " + e.getMessage());
+			}
+		}
 
 		s.ensurePositiveValue(nrofGroups, NROF_GROUPS_S);
 		s.ensurePositiveValue(endTime, END_TIME_S);
@@ -390,6 +421,10 @@ public class SimScenario implements Serializable {
 			if (mmProto instanceof MapBasedMovement) {
 				this.simMap = ((MapBasedMovement)mmProto).getMap();
 			}
+			TrajectoryRecorder recorderProto = null;
+			if (this.trajectoryWriter != null) {
+				recorderProto = new TrajectoryRecorder(this.trajectoryWriter);
+			}
 
 			// creates hosts of ith group
 			for (int j=0; j<nrofHosts; j++) {
@@ -399,12 +434,28 @@ public class SimScenario implements Serializable {
 				// new instances of movement model and message router
 				DTNHost host = new DTNHost(this.messageListeners,
 						this.movementListeners,	gid, interfaces, comBus,
-						mmProto, mRouterProto, s);
+						mmProto, mRouterProto, recorderProto, s);
 				hosts.add(host);
 			}
 		}
 	}
 
+	/**
+	 * Finishes the scenario after the simulation is done. Closes the file
+	 * of the hosts' recorded movement, if it was recorded.
+	 */
+	public void done() {
+		if (this.trajectoryWriter == null) {
+			return;
+		}
+		try {
+			this.trajectoryWriter.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't write trajectory file " +
+					this.trajectoryFile + ": " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Returns the list of nodes for this scenario.
 	 * @return the list of nodes for this scenario.
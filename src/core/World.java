@@ -37,6 +37,13 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the hosts' locations be kept in a {@link PositionStore} and
+	 * moved in one loop -setting id ({@value}). Boolean (true/false)
+	 * variable. Default is false.
+	 */
+	public static final String POSITION_STORE_S = "positionStore";
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
@@ -56,6 +63,10 @@ public class World {
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
+	/** Should the hosts only be moved (not updated) */
+	private boolean movementOnly;
+	/** The store of the hosts' locations or null if not used */
+	private PositionStore positions;
 
 	/**
 	 * Constructor.
@@ -91,6 +102,12 @@ public class World {
 			randomizeUpdates = s.getBoolean(RANDOMIZE_UPDATES_S);
 		}
 		simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
+		movementOnly = new Settings(SimScenario.SCENARIO_NS).getBoolean(
+				SimScenario.MOVEMENT_ONLY_S, false);
+
+		if (s.getBoolean(POSITION_STORE_S, false)) {
+			this.positions = new PositionStore(this.hosts);
+		}
 
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
@@ -179,6 +196,9 @@ public class World {
 	 * are made in random order.
 	 */
 	private void updateHosts() {
+		if (this.movementOnly) {
+			return; // no connectivity nor routing
+		}
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
@@ -210,6 +230,10 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.positions != null) {
+			this.positions.move(timeIncrement);
+			return;
+		}
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
@@ -6,6 +6,7 @@ package gui.playfield;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.util.ArrayList;
 import java.util.List;
 
 import movement.Path;
@@ -24,7 +25,8 @@ public class PathGraphic extends PlayFieldGraphic {
 			this.coords = null;
 		}
 		else {
-			this.coords = path.getCoords();
+			/* copy: the path's view changes when the path is recycled */
+			this.coords = new ArrayList<Coord>(path.getCoords());
 			assert this.coords != null && this.coords.size() > 0 :
 			"No coordinates in the path (" + path + ")";
 		}
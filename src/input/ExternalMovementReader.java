@@ -4,16 +4,31 @@
  */
 package input;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+import movement.map.CompiledMap;
 import util.Tuple;
 
 import core.Coord;
 import core.SettingsError;
+import core.SimError;
 
 
 /**
@@ -35,11 +50,54 @@ import core.SettingsError;
  * All lines must be sorted by time. Sampling interval (time difference between
  * two time instances) must be same for the whole file.
  * </P>
+ * <P>
+ * The file can be converted to a binary file (see {@link #main(String[])})
+ * that is faster to read. The binary file can be given as the input file or
+ * it can be next to the text file with the name of the text file and a
+ * <CODE>.bin</CODE> suffix. The binary file has the length and CRC-32
+ * checksum of the text file it was converted from, and a binary sibling is
+ * used only if the text file hasn't changed after converting. The binary
+ * format (big endian) has a header (<CODE>int magic, int version, long
+ * length, long crc, double minTime, maxTime, minX, maxX, minY, maxY</CODE>)
+ * and the time instances as
+ * <CODE>int nrofLocations, double time</CODE> followed by
+ * <CODE>int idIndex, double x, double y</CODE> for every location. The
+ * index -1 means a new id whose name follows the index (as modified UTF-8)
+ * and gets the next free index. The file ends with the number of locations
+ * -1. The values in the binary file are not normalized.
+ * </P>
+ * <P>
+ * The time instances can be read ahead on a background thread (see
+ * {@link #startPrefetching(int)}) so that reading the next instance doesn't
+ * have to wait for parsing unless the parser is behind.
+ * </P>
  */
 public class ExternalMovementReader {
 	/* Prefix for comment lines (lines starting with this are ignored) */
 	public static final String COMMENT_PREFIX = "#";
-	private Scanner scanner;
+	/** Magic number in the beginning of binary files */
+	public static final int BINARY_MAGIC = 0x45584D42;
+	/** Version of the binary format */
+	public static final int BINARY_VERSION = 2;
+	/** Suffix of the binary sibling of a text file */
+	public static final String BINARY_SUFFIX = ".bin";
+	/** Index of a new id in a binary file */
+	private static final int NEW_ID = -1;
+
+	private BufferedReader textIn;
+	private DataInputStream binIn;
+	/** ids of a binary file by their index */
+	private List<String> binIds;
+	/** the text file that is read (null if reading a binary file) */
+	private File textFile;
+	/** length and checksum of the text file a binary file was converted
+	 * from */
+	private long sourceLength;
+	private long sourceChecksum;
+	/** time, x and y values of the line parsed last */
+	private final double[] lineValues = new double[3];
+	/** the next line of a text file or null at the end of the file */
+	private String nextLine;
 	private double lastTimeStamp = -1;
 	private String lastLine;
 	private double minTime;
@@ -50,6 +108,89 @@ public class ExternalMovementReader {
 	private double maxY;
 	private boolean normalize;
 
+	/** the slice returned by the previous call of readNextSlice */
+	private TimeSlice currentSlice;
+	/** parsed slices waiting to be read (null if not prefetching) */
+	private BlockingQueue<TimeSlice> prefetched;
+	/** slices that the parser can reuse */
+	private BlockingQueue<TimeSlice> freeSlices;
+	private Thread prefetcher;
+	private volatile boolean closed;
+
+	/**
+	 * Locations of the nodes in one time instance. The locations are in
+	 * primitive arrays indexed from 0 to {@link #size()}-1.
+	 */
+	public static class TimeSlice {
+		private double time;
+		private int size;
+		private String[] ids = new String[16];
+		private double[] xs = new double[16];
+		private double[] ys = new double[16];
+		/** parsing error that should be thrown to the reading thread */
+		private RuntimeException error;
+
+		private void clear() {
+			this.size = 0;
+			Arrays.fill(this.ids, null);
+		}
+
+		private void add(String id, double x, double y) {
+			if (this.size == this.ids.length) {
+				int capacity = this.size * 2;
+				this.ids = Arrays.copyOf(this.ids, capacity);
+				this.xs = Arrays.copyOf(this.xs, capacity);
+				this.ys = Arrays.copyOf(this.ys, capacity);
+			}
+			this.ids[this.size] = id;
+			this.xs[this.size] = x;
+			this.ys[this.size] = y;
+			this.size++;
+		}
+
+		/**
+		 * Returns the time stamp of the time instance
+		 * @return the time stamp
+		 */
+		public double getTime() {
+			return this.time;
+		}
+
+		/**
+		 * Returns the number of locations in the time instance
+		 * @return the number of locations (0 if there were no more moves)
+		 */
+		public int size() {
+			return this.size;
+		}
+
+		/**
+		 * Returns the id of a node
+		 * @param index Index of the location
+		 * @return the id
+		 */
+		public String getId(int index) {
+			return this.ids[index];
+		}
+
+		/**
+		 * Returns the x coordinate of a node
+		 * @param index Index of the location
+		 * @return the x coordinate
+		 */
+		public double getX(int index) {
+			return this.xs[index];
+		}
+
+		/**
+		 * Returns the y coordinate of a node
+		 * @param index Index of the location
+		 * @return the y coordinate
+		 */
+		public double getY(int index) {
+			return this.ys[index];
+		}
+	}
 
 	/**
 	 * Constructor. Creates a new reader that reads the data from a file.
@@ -59,75 +200,296 @@ public class ExternalMovementReader {
 	public ExternalMovementReader(String inFilePath) {
 		this.normalize = true;
 		File inFile = new File(inFilePath);
+		File binFile = new File(inFilePath + BINARY_SUFFIX);
+
 		try {
-			scanner = new Scanner(inFile);
+			if (isBinary(inFile)) {
+				openBinary(inFile);
+				return;
+			}
+			if (isBinarySibling(binFile, inFile)) {
+				openBinary(binFile);
+				return;
+			}
+			textIn = new BufferedReader(new FileReader(inFile));
+			textFile = inFile;
 		} catch (FileNotFoundException e) {
 			throw new SettingsError("Couldn't find external movement input " +
 					"file " + inFile);
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read external movement input " +
+					"file " + inFile + ": " + e.getMessage());
 		}
 
-		String offsets = scanner.nextLine();
-		Scanner lineScan = null;
-
+		String offsets = readLine();
 		try {
-			lineScan = new Scanner(offsets);
-			minTime = lineScan.nextDouble();
-			maxTime = lineScan.nextDouble();
-			minX = lineScan.nextDouble();
-			maxX = lineScan.nextDouble();
-			minY = lineScan.nextDouble();
-			maxY = lineScan.nextDouble();
+			String[] values = tokenize(offsets);
+			minTime = Double.parseDouble(values[0]);
+			maxTime = Double.parseDouble(values[1]);
+			minX = Double.parseDouble(values[2]);
+			maxX = Double.parseDouble(values[3]);
+			minY = Double.parseDouble(values[4]);
+			maxY = Double.parseDouble(values[5]);
 		} catch (Exception e) {
 			throw new SettingsError("Invalid offset line '" + offsets + "'");
 		}
-		finally {
-			if (lineScan != null) {
-				lineScan.close();
+
+		lastLine = readLine();
+		nextLine = readLine();
+	}
+
+	private void openBinary(File binFile) throws IOException {
+		binIn = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(binFile)));
+		binIds = new ArrayList<String>();
+		binIn.readInt(); // magic
+		int version = binIn.readInt();
+		if (version != BINARY_VERSION) {
+			throw new SettingsError("Unsupported version " + version +
+					" of binary external movement file " + binFile);
+		}
+		sourceLength = binIn.readLong();
+		sourceChecksum = binIn.readLong();
+		minTime = binIn.readDouble();
+		maxTime = binIn.readDouble();
+		minX = binIn.readDouble();
+		maxX = binIn.readDouble();
+		minY = binIn.readDouble();
+		maxY = binIn.readDouble();
+	}
+
+	/**
+	 * Returns true if the file is a binary file of this reader
+	 * @param file The file
+	 * @return true if the file starts with {@link #BINARY_MAGIC}
+	 */
+	private static boolean isBinary(File file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == BINARY_MAGIC;
+		} catch (IOException e) {
+			return false; // missing or too short to be a binary file
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// nothing to do
+				}
 			}
 		}
+	}
 
-		lastLine = scanner.nextLine();
+	/**
+	 * Returns true if a binary sibling can be read instead of a text file,
+	 * i.e., if the sibling is a binary file of this version that was
+	 * converted from the text file as it is now (or the text file doesn't
+	 * exist)
+	 * @param binFile The binary sibling
+	 * @param textFile The text file
+	 * @return true if the binary sibling can be used
+	 */
+	private static boolean isBinarySibling(File binFile, File textFile) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(binFile));
+			if (in.readInt() != BINARY_MAGIC ||
+					in.readInt() != BINARY_VERSION) {
+				return false;
+			}
+			long length = in.readLong();
+			long crc = in.readLong();
+			return !textFile.exists() || (textFile.length() == length &&
+					CompiledMap.checksum(textFile) == crc);
+		} catch (IOException e) {
+			return false; // missing or too short to be a binary file
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// nothing to do
+				}
+			}
+		}
 	}
 
 	/**
 	 * Sets normalizing of read values on/off. If on, values returned by
 	 * {@link #readNextMovements()} are decremented by minimum values of the
-	 * offsets. Default is on (normalize).
+	 * offsets. Default is on (normalize). Must be set before
+	 * {@link #startPrefetching(int)} is called.
 	 * @param normalize If true, normalizing is on (false -> off).
 	 */
 	public void setNormalize(boolean normalize) {
 		this.normalize = normalize;
 	}
 
+	/**
+	 * Starts parsing the following time instances on a background thread.
+	 * The parser stays at most the given number of time instances ahead of
+	 * the reading. Parsing errors are thrown when the reading reaches the
+	 * time instance that could not be parsed.
+	 * @param capacity Maximum number of time instances parsed ahead
+	 */
+	public void startPrefetching(int capacity) {
+		if (this.prefetcher != null) {
+			return;
+		}
+		/* a slice can be in the queue, being parsed and being read */
+		this.prefetched = new ArrayBlockingQueue<TimeSlice>(capacity);
+		this.freeSlices = new ArrayBlockingQueue<TimeSlice>(capacity + 2);
+		this.prefetcher = new Thread("ExternalMovementReader prefetch") {
+			@Override
+			public void run() {
+				prefetch();
+			}
+		};
+		this.prefetcher.setDaemon(true);
+		this.prefetcher.start();
+	}
+
+	private void prefetch() {
+		try {
+			TimeSlice slice;
+			do {
+				slice = this.freeSlices.poll();
+				if (slice == null) {
+					slice = new TimeSlice();
+				}
+				try {
+					parseNextSlice(slice);
+				} catch (RuntimeException e) {
+					if (this.closed) {
+						return;
+					}
+					slice.error = e;
+				}
+				this.prefetched.put(slice);
+			} while (slice.size > 0 && slice.error == null);
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	/**
+	 * Stops prefetching and closes the input file.
+	 */
+	public void close() {
+		this.closed = true;
+		if (this.prefetcher != null) {
+			this.prefetcher.interrupt();
+		}
+		try {
+			if (this.textIn != null) {
+				this.textIn.close();
+			}
+			if (this.binIn != null) {
+				this.binIn.close();
+			}
+		} catch (IOException e) {
+			// nothing to do
+		}
+	}
+
 	/**
 	 * Reads all new id-coordinate tuples that belong to the same time instance
 	 * @return A list of tuples or empty list if there were no more moves
 	 * @throws SettingError if an invalid line was read
 	 */
 	public List<Tuple<String, Coord>> readNextMovements() {
+		TimeSlice slice = readNextSlice();
 		ArrayList<Tuple<String, Coord>> moves =
-			new ArrayList<Tuple<String, Coord>>();
+			new ArrayList<Tuple<String, Coord>>(slice.size());
 
-		if (!scanner.hasNextLine()) {
-			return moves;
+		for (int i = 0; i < slice.size(); i++) {
+			moves.add(new Tuple<String, Coord>(slice.getId(i),
+					new Coord(slice.getX(i), slice.getY(i))));
 		}
 
-		Scanner lineScan = new Scanner(lastLine);
-		double time = lineScan.nextDouble();
-		String id = lineScan.next();
-		double x = lineScan.nextDouble();
-		double y = lineScan.nextDouble();
+		return moves;
+	}
+
+	/**
+	 * Reads the locations that belong to the next time instance. The
+	 * returned slice is valid until the next call of this method.
+	 * @return The locations of the next time instance; if the slice is
+	 * empty, there were no more moves
+	 * @throws SettingError if an invalid line was read
+	 */
+	public TimeSlice readNextSlice() {
+		TimeSlice slice;
+
+		if (this.prefetched == null) {
+			if (this.currentSlice == null) {
+				this.currentSlice = new TimeSlice();
+			}
+			slice = this.currentSlice;
+			parseNextSlice(slice);
+		} else {
+			if (this.currentSlice != null) {
+				this.freeSlices.offer(this.currentSlice);
+				this.currentSlice = null;
+			}
+			try {
+				slice = this.prefetched.take();
+			} catch (InterruptedException e) {
+				throw new SimError(e);
+			}
+			if (slice.error != null || slice.size == 0) {
+				/* the parser has stopped; keep returning the same slice */
+				this.prefetched.offer(slice);
+				if (slice.error != null) {
+					throw slice.error;
+				}
+			} else {
+				this.currentSlice = slice;
+			}
+		}
+
+		if (slice.size > 0) {
+			lastTimeStamp = slice.time;
+		}
+		return slice;
+	}
+
+	/**
+	 * Parses the next time instance to the given slice
+	 * @param slice The slice to fill
+	 */
+	private void parseNextSlice(TimeSlice slice) {
+		slice.clear();
+		if (binIn != null) {
+			readBinarySlice(slice);
+		} else {
+			parseTextSlice(slice);
+		}
 
 		if (normalize) {
-			time -= minTime;
-			x -= minX;
-			y -= minY;
+			slice.time -= minTime;
+			for (int i = 0; i < slice.size; i++) {
+				slice.xs[i] -= minX;
+				slice.ys[i] -= minY;
+			}
+		}
+	}
+
+	private void parseTextSlice(TimeSlice slice) {
+		if (nextLine == null) {
+			return;
 		}
 
-		lastTimeStamp = time;
+		String id = parseLine(lastLine, lineValues);
+		double time = lineValues[0];
+		double x = lineValues[1];
+		double y = lineValues[2];
 
-		while (scanner.hasNextLine() && lastTimeStamp == time) {
-			lastLine = scanner.nextLine();
+		slice.time = time;
+
+		while (nextLine != null && slice.time == time) {
+			lastLine = nextLine;
+			nextLine = readLine();
 
 			if (lastLine.trim().length() == 0 ||
 					lastLine.startsWith(COMMENT_PREFIX)) {
@@ -135,33 +497,146 @@ public class ExternalMovementReader {
 			}
 
 			// add previous line's tuple
-			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
+			slice.add(id, x, y);
 
-			lineScan = new Scanner(lastLine);
+			id = parseLine(lastLine, lineValues);
+			time = lineValues[0];
+			x = lineValues[1];
+			y = lineValues[2];
+		}
 
-			try {
-				time = lineScan.nextDouble();
-				id = lineScan.next();
-				x = lineScan.nextDouble();
-				y = lineScan.nextDouble();
-			} catch (Exception e) {
-				throw new SettingsError("Invalid line '" + lastLine + "'");
-			} finally {
-				lineScan.close();
-			}
+		if (nextLine == null) {	// add the last tuple of the file
+			slice.add(id, x, y);
+		}
+	}
 
-			if (normalize) {
-				time -= minTime;
-				x -= minX;
-				y -= minY;
+	private void readBinarySlice(TimeSlice slice) {
+		try {
+			int size = binIn.readInt();
+			if (size < 0) {
+				return; // end of the file
 			}
+			slice.time = binIn.readDouble();
+			for (int i = 0; i < size; i++) {
+				int index = binIn.readInt();
+				String id;
+				if (index == NEW_ID) {
+					id = binIn.readUTF();
+					binIds.add(id);
+				} else {
+					id = binIds.get(index);
+				}
+				slice.add(id, binIn.readDouble(), binIn.readDouble());
+			}
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read binary external movement " +
+					"file: " + e.getMessage());
 		}
+	}
 
-		if (!scanner.hasNextLine()) {	// add the last tuple of the file
-			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
+	/**
+	 * Parses the time, id, x and y values of a line
+	 * @param line The line
+	 * @param values Array where the time, x and y values are stored (in
+	 * that order)
+	 * @return The id
+	 * @throws SettingsError if the line is not valid
+	 */
+	private static String parseLine(String line, double[] values) {
+		String[] tokens = tokenize(line);
+		if (tokens.length < 4) {
+			throw new SettingsError("Invalid line '" + line + "'");
 		}
+		try {
+			values[0] = Double.parseDouble(tokens[0]);
+			values[1] = Double.parseDouble(tokens[2]);
+			values[2] = Double.parseDouble(tokens[3]);
+		} catch (NumberFormatException e) {
+			throw new SettingsError("Invalid line '" + line + "'");
+		}
+		return tokens[1];
+	}
 
-		return moves;
+	private static String[] tokenize(String line) {
+		return line.trim().split("\\s+");
+	}
+
+	private String readLine() {
+		try {
+			return textIn.readLine();
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read external movement input " +
+					"file: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the rest of the time instances to a binary file (see the
+	 * class description for the format). Normalizing must be off.
+	 * @param file The binary file to write
+	 * @throws IOException if writing failed
+	 */
+	public void writeBinary(File file) throws IOException {
+		assert !normalize : "Binary files have the original values";
+		if (textFile != null) {
+			sourceLength = textFile.length();
+			sourceChecksum = CompiledMap.checksum(textFile);
+		}
+		Map<String, Integer> idIndexes = new HashMap<String, Integer>();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeInt(BINARY_MAGIC);
+			out.writeInt(BINARY_VERSION);
+			out.writeLong(sourceLength);
+			out.writeLong(sourceChecksum);
+			out.writeDouble(minTime);
+			out.writeDouble(maxTime);
+			out.writeDouble(minX);
+			out.writeDouble(maxX);
+			out.writeDouble(minY);
+			out.writeDouble(maxY);
+
+			for (TimeSlice s = readNextSlice(); s.size() > 0;
+					s = readNextSlice()) {
+				out.writeInt(s.size());
+				out.writeDouble(s.getTime());
+				for (int i = 0; i < s.size(); i++) {
+					Integer index = idIndexes.get(s.getId(i));
+					if (index == null) {
+						idIndexes.put(s.getId(i), idIndexes.size());
+						out.writeInt(NEW_ID);
+						out.writeUTF(s.getId(i));
+					} else {
+						out.writeInt(index);
+					}
+					out.writeDouble(s.getX(i));
+					out.writeDouble(s.getY(i));
+				}
+			}
+			out.writeInt(-1);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Converts a text file to a binary file.
+	 * Usage: <code>ExternalMovementReader textFile [binaryFile]</code>.
+	 * The binary file is by default the binary sibling of the text file.
+	 * @param args The text and binary file paths
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: ExternalMovementReader textFile " +
+					"[binaryFile]");
+			System.exit(1);
+		}
+		String binFile = args.length == 2 ? args[1] : args[0] + BINARY_SUFFIX;
+		ExternalMovementReader r = new ExternalMovementReader(args[0]);
+		r.setNormalize(false);
+		r.writeBinary(new File(binFile));
+		r.close();
 	}
 
 	/**
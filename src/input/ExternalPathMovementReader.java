@@ -5,17 +5,26 @@
 
 package input;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Scanner;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -49,6 +58,20 @@ import core.SettingsError;
  * compressed and will be automatically uncompressed during reading. The whole
  * trace is loaded into memory at once.</p>
  *
+ * <p>The trace and activity files can also be converted to one binary file
+ * (see {@link #writeBinary(File)} and {@link #main(String[])}) that is given
+ * as the trace file. The binary file is memory mapped and the paths of a node
+ * are created from it only when they are used. The binary format has columns
+ * of 8 byte big endian values: a header (<code>int magic, int version,
+ * int maxID, double minTime, maxTime, minX, maxX, minY, maxY,
+ * long nrofPaths, nrofPoints, nrofActiveTimes</code>), the index of every
+ * node's first path (<code>long[maxID+2]</code>), the index of every path's
+ * first point (<code>long[nrofPaths+1]</code>), the points' normalized
+ * times, x and y coordinates (<code>double[nrofPoints]</code> each), the
+ * index of every node's first active time (<code>long[maxID+2]</code>) and
+ * the normalized starts and ends of the active times
+ * (<code>double[nrofActiveTimes]</code> each).</p>
+ *
  * @author teemuk
  *
  */
@@ -57,6 +80,15 @@ public class ExternalPathMovementReader {
 	private static Map<String, ExternalPathMovementReader> singletons =
 		new HashMap<String, ExternalPathMovementReader>();
 
+	/** Magic number in the beginning of binary traces */
+	public static final int BINARY_MAGIC = 0x45504D42;
+	/** Version of the binary trace format */
+	public static final int BINARY_VERSION = 1;
+	/** Size of the binary trace's header (bytes) */
+	private static final int BINARY_HEADER_SIZE = 3 * 4 + 6 * 8 + 3 * 8;
+	/** Binary columns are mapped in chunks of 2^CHUNK_BITS values */
+	private static final int CHUNK_BITS = 27;
+
 	/**
 	 * Represents a point on the path.
 	 */
@@ -79,6 +111,16 @@ public class ExternalPathMovementReader {
 	// Activity cache
 	private List<List<ActiveTime>> activeTimes = null;
 
+	// Columns of a binary trace (null if the trace was read from text)
+	private Column nodePaths;
+	private Column pathPoints;
+	private Column times;
+	private Column xs;
+	private Column ys;
+	private Column nodeActiveTimes;
+	private Column activeStarts;
+	private Column activeEnds;
+
 	// Settings
 	private boolean normalize = true;
 	private double minTime;
@@ -164,7 +206,7 @@ public class ExternalPathMovementReader {
 		// Initialize path cache
 		this.paths = new ArrayList<List<List<Entry>>>(this.maxID + 1);
 		for (int i=0; i<=this.maxID; i++) {
-			this.paths.add(i, new LinkedList<List<Entry>>());
+			this.paths.add(i, new ArrayList<List<Entry>>());
 		}
 
 		// Parse traces
@@ -187,7 +229,7 @@ public class ExternalPathMovementReader {
 			Scanner traceScan = new Scanner(line);
 			int id = traceScan.nextInt();
 			List<List<Entry>> paths = this.paths.get(id);
-			List<Entry> path = new LinkedList<Entry>();
+			List<Entry> path = new ArrayList<Entry>();
 			while (traceScan.hasNext()) {
 				String dataPoint = traceScan.next();
 				int d1 = dataPoint.indexOf(',');
@@ -240,7 +282,7 @@ public class ExternalPathMovementReader {
 		// Init activity cache
 		this.activeTimes = new ArrayList<List<ActiveTime>>(this.maxID + 1);
 		for (int i=0; i<=this.maxID; i++) {
-			this.activeTimes.add(new LinkedList<ActiveTime>());
+			this.activeTimes.add(new ArrayList<ActiveTime>());
 		}
 
 		// Parse the file
@@ -265,14 +307,98 @@ public class ExternalPathMovementReader {
 		}
 	}
 
+	/**
+	 * Creates a new reader for a binary trace file. The file's columns are
+	 * memory mapped.
+	 *
+	 * @param binaryFile The binary trace file
+	 */
+	private ExternalPathMovementReader(File binaryFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(binaryFile, "r");
+		try {
+			FileChannel fc = raf.getChannel();
+			if (fc.size() < BINARY_HEADER_SIZE) {
+				throw new SettingsError("Invalid binary trace file " +
+						binaryFile);
+			}
+			ByteBuffer header = fc.map(FileChannel.MapMode.READ_ONLY, 0,
+					BINARY_HEADER_SIZE);
+			if (header.getInt() != BINARY_MAGIC) {
+				throw new SettingsError(binaryFile + " is not a binary trace");
+			}
+			int version = header.getInt();
+			if (version != BINARY_VERSION) {
+				throw new SettingsError("Unsupported version " + version +
+						" of binary trace " + binaryFile);
+			}
+			this.maxID = header.getInt();
+			this.minTime = header.getDouble();
+			this.maxTime = header.getDouble();
+			this.minX = header.getDouble();
+			this.maxX = header.getDouble();
+			this.minY = header.getDouble();
+			this.maxY = header.getDouble();
+			long nrofPaths = header.getLong();
+			long nrofPoints = header.getLong();
+			long nrofActiveTimes = header.getLong();
+
+			long offset = BINARY_HEADER_SIZE;
+			this.nodePaths = new Column(fc, offset, this.maxID + 2);
+			offset += 8L * (this.maxID + 2);
+			this.pathPoints = new Column(fc, offset, nrofPaths + 1);
+			offset += 8L * (nrofPaths + 1);
+			this.times = new Column(fc, offset, nrofPoints);
+			offset += 8L * nrofPoints;
+			this.xs = new Column(fc, offset, nrofPoints);
+			offset += 8L * nrofPoints;
+			this.ys = new Column(fc, offset, nrofPoints);
+			offset += 8L * nrofPoints;
+			this.nodeActiveTimes = new Column(fc, offset, this.maxID + 2);
+			offset += 8L * (this.maxID + 2);
+			this.activeStarts = new Column(fc, offset, nrofActiveTimes);
+			offset += 8L * nrofActiveTimes;
+			this.activeEnds = new Column(fc, offset, nrofActiveTimes);
+		} finally {
+			raf.close(); // the mappings stay valid
+		}
+	}
+
+	/**
+	 * Returns true if the file is a binary trace
+	 * @param file The file
+	 * @return true if the file starts with {@link #BINARY_MAGIC}
+	 */
+	private static boolean isBinary(File file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == BINARY_MAGIC;
+		} catch (IOException e) {
+			return false; // missing or too short to be a binary trace
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// nothing to do
+				}
+			}
+		}
+	}
+
 	/**
 	 * Returns the path for the node with the given ID.
 	 *
 	 * @param ID	ID of the node
-	 * @return		full path for the node.
+	 * @return		full path for the node. The list has random access and
+	 * 				the paths of binary traces are created when they are
+	 * 				first asked from it.
 	 */
 	public List<List<ExternalPathMovementReader.Entry>> getPaths(int ID) {
-		return this.paths.get(ID);
+		if (this.paths != null) {
+			return this.paths.get(ID);
+		}
+		return new MappedPaths(ID);
 	}
 
 	/**
@@ -282,7 +408,121 @@ public class ExternalPathMovementReader {
 	 * @return		active times for the node.
 	 */
 	public List<ActiveTime> getActive(int ID) {
-		return this.activeTimes.get(ID);
+		if (this.activeTimes != null) {
+			return this.activeTimes.get(ID);
+		}
+		long first = this.nodeActiveTimes.getLong(ID);
+		long end = this.nodeActiveTimes.getLong(ID + 1);
+		List<ActiveTime> times = new ArrayList<ActiveTime>((int)(end - first));
+		for (long i = first; i < end; i++) {
+			ActiveTime a = new ActiveTime();
+			a.start = this.activeStarts.getDouble(i);
+			a.end = this.activeEnds.getDouble(i);
+			times.add(a);
+		}
+		return times;
+	}
+
+	/**
+	 * Writes the paths and active times of all the nodes to a binary trace
+	 * file.
+	 *
+	 * @param file The file to write
+	 * @throws IOException if the writing fails
+	 */
+	public void writeBinary(File file) throws IOException {
+		List<List<List<Entry>>> nodes = new ArrayList<List<List<Entry>>>();
+		List<List<ActiveTime>> actives = new ArrayList<List<ActiveTime>>();
+		long nrofPaths = 0;
+		long nrofPoints = 0;
+		long nrofActiveTimes = 0;
+		for (int i = 0; i <= this.maxID; i++) {
+			List<List<Entry>> nodePaths = getPaths(i);
+			nodes.add(nodePaths);
+			nrofPaths += nodePaths.size();
+			for (List<Entry> path : nodePaths) {
+				nrofPoints += path.size();
+			}
+			actives.add(getActive(i));
+			nrofActiveTimes += actives.get(i).size();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeInt(BINARY_MAGIC);
+			out.writeInt(BINARY_VERSION);
+			out.writeInt(this.maxID);
+			out.writeDouble(this.minTime);
+			out.writeDouble(this.maxTime);
+			out.writeDouble(this.minX);
+			out.writeDouble(this.maxX);
+			out.writeDouble(this.minY);
+			out.writeDouble(this.maxY);
+			out.writeLong(nrofPaths);
+			out.writeLong(nrofPoints);
+			out.writeLong(nrofActiveTimes);
+
+			long pathIndex = 0;
+			for (List<List<Entry>> nodePaths : nodes) {
+				out.writeLong(pathIndex);
+				pathIndex += nodePaths.size();
+			}
+			out.writeLong(pathIndex);
+			long pointIndex = 0;
+			for (List<List<Entry>> nodePaths : nodes) {
+				for (List<Entry> path : nodePaths) {
+					out.writeLong(pointIndex);
+					pointIndex += path.size();
+				}
+			}
+			out.writeLong(pointIndex);
+			for (int column = 0; column < 3; column++) {
+				for (List<List<Entry>> nodePaths : nodes) {
+					for (List<Entry> path : nodePaths) {
+						for (Entry e : path) {
+							out.writeDouble(column == 0 ? e.time :
+								column == 1 ? e.x : e.y);
+						}
+					}
+				}
+			}
+
+			long activeIndex = 0;
+			for (List<ActiveTime> times : actives) {
+				out.writeLong(activeIndex);
+				activeIndex += times.size();
+			}
+			out.writeLong(activeIndex);
+			for (List<ActiveTime> times : actives) {
+				for (ActiveTime a : times) {
+					out.writeDouble(a.start);
+				}
+			}
+			for (List<ActiveTime> times : actives) {
+				for (ActiveTime a : times) {
+					out.writeDouble(a.end);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Converts a trace and an activity file to a binary trace file.
+	 * Usage: <code>ExternalPathMovementReader traceFile activityFile
+	 * binaryFile</code>
+	 * @param args The trace, activity and binary file paths
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: ExternalPathMovementReader traceFile " +
+					"activityFile binaryFile");
+			System.exit(1);
+		}
+		new ExternalPathMovementReader(args[0], args[1]).writeBinary(
+				new File(args[2]));
 	}
 
 	/**
@@ -351,7 +591,8 @@ public class ExternalPathMovementReader {
 	 * previous instance of the reader will be returned.
 	 *
 	 * @param traceFilePath path where the trace file is read from
-	 * @param activeFilePath path where the activity file is read from
+	 * @param activeFilePath path where the activity file is read from (can
+	 * be null if the trace file is a binary trace)
 	 * @return instance of the reader that has loaded all the paths from the
 	 * 			given trace file.
 	 */
@@ -359,13 +600,99 @@ public class ExternalPathMovementReader {
 			String activeFilePath) {
 		if (!ExternalPathMovementReader.singletons.containsKey(traceFilePath)) {
 			try {
+				File traceFile = new File(traceFilePath);
+				ExternalPathMovementReader reader;
+				if (isBinary(traceFile)) {
+					reader = new ExternalPathMovementReader(traceFile);
+				} else if (activeFilePath == null) {
+					throw new SettingsError("No activity file for external " +
+							"movement trace " + traceFilePath);
+				} else {
+					reader = new ExternalPathMovementReader(traceFilePath,
+							activeFilePath);
+				}
 				ExternalPathMovementReader.singletons.put(traceFilePath,
-						new ExternalPathMovementReader(traceFilePath,
-								activeFilePath));
+						reader);
 			} catch (IOException e) {
 				System.exit(1);
 			}
 		}
 		return ExternalPathMovementReader.singletons.get(traceFilePath);
 	}
+
+	/**
+	 * Paths of a node in a binary trace. The paths are created when they
+	 * are first asked.
+	 */
+	private class MappedPaths extends AbstractList<List<Entry>>
+			implements RandomAccess {
+		private final long firstPath;
+		private final List<Entry>[] cache;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private MappedPaths(int ID) {
+			this.firstPath = nodePaths.getLong(ID);
+			this.cache = new List[(int)(nodePaths.getLong(ID + 1) - firstPath)];
+		}
+
+		@Override
+		public List<Entry> get(int index) {
+			if (this.cache[index] == null) {
+				long first = pathPoints.getLong(firstPath + index);
+				long end = pathPoints.getLong(firstPath + index + 1);
+				List<Entry> path = new ArrayList<Entry>((int)(end - first));
+				for (long i = first; i < end; i++) {
+					Entry e = new Entry();
+					e.time = times.getDouble(i);
+					e.x = xs.getDouble(i);
+					e.y = ys.getDouble(i);
+					path.add(e);
+				}
+				this.cache[index] = path;
+			}
+			return this.cache[index];
+		}
+
+		@Override
+		public int size() {
+			return this.cache.length;
+		}
+	}
+
+	/**
+	 * Memory mapped column of 8 byte values. Long columns are mapped in
+	 * chunks because one mapping can't be larger than 2GB.
+	 */
+	private static class Column {
+		private final ByteBuffer[] chunks;
+
+		private Column(FileChannel fc, long offset, long length)
+				throws IOException {
+			long chunkSize = 1L << CHUNK_BITS;
+			this.chunks = new ByteBuffer[
+				(int)((length + chunkSize - 1) >>> CHUNK_BITS)];
+			for (int i = 0; i < this.chunks.length; i++) {
+				long start = (long)i << CHUNK_BITS;
+				this.chunks[i] = fc.map(FileChannel.MapMode.READ_ONLY,
+						offset + 8 * start,
+						8 * Math.min(chunkSize, length - start));
+			}
+		}
+
+		private ByteBuffer chunk(long index) {
+			return this.chunks[(int)(index >>> CHUNK_BITS)];
+		}
+
+		private int position(long index) {
+			return (int)(index & ((1L << CHUNK_BITS) - 1)) << 3;
+		}
+
+		double getDouble(long index) {
+			return chunk(index).getDouble(position(index));
+		}
+
+		long getLong(long index) {
+			return chunk(index).getLong(position(index));
+		}
+	}
 }
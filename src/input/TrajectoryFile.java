@@ -0,0 +1,581 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import core.SettingsError;
+import core.SimError;
+
+/**
+ * Binary file of the hosts' recorded movement: what the hosts' movement
+ * models returned when the hosts asked for paths and for the times of the
+ * next paths, and when the models were active. The file is written with
+ * {@link Writer} while the simulation runs, so the movement recorded before
+ * an aborted run is not lost, and it is read with memory mapping. When
+ * the file is opened, it is scanned once for an index of every host's
+ * events, so the hosts can be read independently and the events of a
+ * time can be found.
+ * <P>
+ * Format (all values big endian): <CODE>int magic, int version</CODE> and
+ * the records in the order they were recorded. A record is
+ * <CODE>byte type, int host, double time</CODE> and one of
+ * <CODE>double x, double y</CODE> (initial location),
+ * <CODE>byte active</CODE> (activeness change),
+ * <CODE>double time</CODE> ({@link #NEXT_TIME}), nothing
+ * ({@link #NO_PATH}) or <CODE>int nrofWaypoints, int nrofSpeeds,
+ * (double x, double y)*, double[] speeds</CODE> ({@link #PATH}). A
+ * truncated last record is ignored.
+ * </P>
+ */
+public class TrajectoryFile {
+	/** Magic number in the beginning of the file */
+	public static final int MAGIC = 0x4F4E4554;
+	/** Version of the file format */
+	public static final int VERSION = 2;
+
+	/** Event type of the time returned for the next path */
+	public static final byte NEXT_TIME = 1;
+	/** Event type of a path */
+	public static final byte PATH = 2;
+	/** Event type of no path (null) */
+	public static final byte NO_PATH = 3;
+	/** Record type of a host's initial location */
+	private static final byte INITIAL_LOCATION = 4;
+	/** Record type of a change of a host's activeness */
+	private static final byte ACTIVENESS = 5;
+
+	/** Size of the file header */
+	private static final int HEADER_SIZE = 8;
+	/** Size of the type, host and time of a record */
+	private static final int RECORD_HEADER_SIZE = 13;
+	/** Maximum size of a mapped part of the file */
+	private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+	private final String fileName;
+	private final List<HostTrajectory> hosts;
+
+	/**
+	 * Opens a trajectory file for reading
+	 * @param file The file
+	 * @throws SettingsError if the file can't be read or it isn't a
+	 * trajectory file
+	 */
+	public TrajectoryFile(File file) {
+		this.fileName = file.getPath();
+		this.hosts = new ArrayList<HostTrajectory>();
+		List<Long> chunkStarts = new ArrayList<Long>();
+		long end;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 1 << 16))) {
+			try {
+				if (in.readInt() != MAGIC) {
+					throw new SettingsError(fileName +
+							" is not a trajectory file");
+				}
+			} catch (EOFException e) {
+				throw new SettingsError(fileName + " is not a trajectory file");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new SettingsError("Unsupported version " + version +
+						" of trajectory file " + fileName);
+			}
+			end = scan(in, file.length(), chunkStarts);
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read trajectory file " +
+					fileName + ": " + e.getMessage());
+		}
+
+		ByteBuffer[] chunks = new ByteBuffer[chunkStarts.size()];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel fc = raf.getChannel();
+			for (int i = 0; i < chunks.length; i++) {
+				long start = chunkStarts.get(i);
+				long chunkEnd = i + 1 < chunks.length ?
+						chunkStarts.get(i + 1) : end;
+				chunks[i] = fc.map(FileChannel.MapMode.READ_ONLY, start,
+						chunkEnd - start);
+			}
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read trajectory file " +
+					fileName + ": " + e.getMessage());
+		}
+		for (HostTrajectory h : this.hosts) {
+			h.setChunks(chunks);
+		}
+	}
+
+	/**
+	 * Reads the records and indexes the events of every host. The file is
+	 * divided to chunks that can be mapped and that have only whole records.
+	 * @param in The input after the header
+	 * @param length Length of the file
+	 * @param chunkStarts The list where the starts of the chunks are added
+	 * @return The end of the last whole record
+	 */
+	private long scan(DataInputStream in, long length,
+			List<Long> chunkStarts) throws IOException {
+		long pos = HEADER_SIZE;
+		long chunkStart = pos;
+		chunkStarts.add(chunkStart);
+
+		while (true) {
+			int type = in.read();
+			if (type < 0) {
+				return pos;
+			}
+			if (type < NEXT_TIME || type > ACTIVENESS) {
+				throw new IOException("Unknown record type " + type + " at " +
+						pos);
+			}
+			try {
+				HostTrajectory h = getOrCreateHost(in.readInt());
+				double time = in.readDouble();
+				long size = RECORD_HEADER_SIZE;
+
+				switch (type) {
+				case INITIAL_LOCATION:
+					double x = in.readDouble();
+					h.initialY = in.readDouble();
+					h.initialX = x;
+					size += 16;
+					break;
+				case ACTIVENESS:
+					h.addActiveness(time, in.readByte() != 0);
+					size += 1;
+					break;
+				case NEXT_TIME:
+					skip(in, 8);
+					size += 8;
+					break;
+				case NO_PATH:
+					break;
+				default: /* PATH */
+					long data = 16L * in.readInt() + 8L * in.readInt();
+					if (data < 0) {
+						throw new IOException("Invalid path at " + pos);
+					}
+					skip(in, data);
+					size += 8 + data;
+				}
+
+				if (pos + size > length) {
+					return pos; /* skipped past the end of a truncated file */
+				}
+				if (pos + size - chunkStart > MAX_CHUNK_SIZE) {
+					chunkStart = pos;
+					chunkStarts.add(chunkStart);
+				}
+				if (type == NEXT_TIME || type == NO_PATH || type == PATH) {
+					h.addEvent(time, chunkStarts.size() - 1,
+							(int)(pos - chunkStart));
+				}
+				pos += size;
+			} catch (EOFException e) {
+				return pos; /* a truncated record of an aborted run */
+			}
+		}
+	}
+
+	private static void skip(DataInputStream in, long n) throws IOException {
+		while (n > 0) {
+			int skipped = in.skipBytes((int)Math.min(n, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			n -= skipped;
+		}
+	}
+
+	private HostTrajectory getOrCreateHost(int index) throws IOException {
+		if (index < 0) {
+			throw new IOException("Invalid host index " + index);
+		}
+		while (this.hosts.size() <= index) {
+			this.hosts.add(new HostTrajectory());
+		}
+		return this.hosts.get(index);
+	}
+
+	/**
+	 * Returns the number of hosts in the file
+	 * @return the number of hosts
+	 */
+	public int getNrofHosts() {
+		return this.hosts.size();
+	}
+
+	/**
+	 * Returns the trajectory of a host
+	 * @param index Index (network address) of the host
+	 * @return The host's trajectory
+	 * @throws SimError if the file doesn't have the host
+	 */
+	public HostTrajectory getHost(int index) {
+		if (index < 0 || index >= this.hosts.size()) {
+			throw new SimError("No host " + index + " in trajectory file " +
+					fileName + " (it has " + this.hosts.size() + " hosts)");
+		}
+		return this.hosts.get(index);
+	}
+
+	/**
+	 * Recorded movement of one host. The events are read with a
+	 * {@link Cursor}.
+	 */
+	public static class HostTrajectory {
+		private ByteBuffer[] chunks;
+		private double initialX;
+		private double initialY;
+		private double[] activeTimes = new double[1];
+		private boolean[] activeValues = new boolean[1];
+		private int nrofActiveChanges;
+		private double[] eventTimes = new double[16];
+		/** Chunks and offsets (in the chunk) of the events' records */
+		private int[] eventChunks = new int[16];
+		private int[] eventOffsets = new int[16];
+		private int nrofEvents;
+
+		private HostTrajectory() { }
+
+		private void addActiveness(double time, boolean active) {
+			if (this.nrofActiveChanges == this.activeTimes.length) {
+				int size = this.nrofActiveChanges * 2;
+				this.activeTimes = Arrays.copyOf(this.activeTimes, size);
+				this.activeValues = Arrays.copyOf(this.activeValues, size);
+			}
+			this.activeTimes[this.nrofActiveChanges] = time;
+			this.activeValues[this.nrofActiveChanges] = active;
+			this.nrofActiveChanges++;
+		}
+
+		private void addEvent(double time, int chunk, int offset) {
+			if (this.nrofEvents == this.eventTimes.length) {
+				int size = this.nrofEvents * 2;
+				this.eventTimes = Arrays.copyOf(this.eventTimes, size);
+				this.eventChunks = Arrays.copyOf(this.eventChunks, size);
+				this.eventOffsets = Arrays.copyOf(this.eventOffsets, size);
+			}
+			this.eventTimes[this.nrofEvents] = time;
+			this.eventChunks[this.nrofEvents] = chunk;
+			this.eventOffsets[this.nrofEvents] = offset;
+			this.nrofEvents++;
+		}
+
+		private void setChunks(ByteBuffer[] chunks) {
+			this.chunks = chunks;
+		}
+
+		public double getInitialX() {
+			return this.initialX;
+		}
+
+		public double getInitialY() {
+			return this.initialY;
+		}
+
+		/**
+		 * Returns true if the host's movement model was active at the time.
+		 * @param time The time
+		 * @param defaultValue Value to return if the activeness wasn't
+		 * recorded before the time
+		 * @return The recorded activeness
+		 */
+		public boolean isActive(double time, boolean defaultValue) {
+			int i = upperBound(this.activeTimes, this.nrofActiveChanges,
+					time) - 1;
+			return i < 0 ? defaultValue : this.activeValues[i];
+		}
+
+		/**
+		 * Returns the number of recorded events
+		 * @return the number of events
+		 */
+		public int getNrofEvents() {
+			return this.nrofEvents;
+		}
+
+		/**
+		 * Returns the index of the first event that happened after the
+		 * given time
+		 * @param time The time
+		 * @return Index of the event (or {@link #getNrofEvents()} if there
+		 * are no events after the time)
+		 */
+		public int getEventIndex(double time) {
+			return upperBound(this.eventTimes, this.nrofEvents, time);
+		}
+
+		/**
+		 * Returns a new cursor at the first event
+		 * @return a new cursor
+		 */
+		public Cursor cursor() {
+			return new Cursor(this);
+		}
+	}
+
+	/**
+	 * Reads the events of a host in order
+	 */
+	public static class Cursor {
+		private final HostTrajectory host;
+		private int index;
+		private byte type;
+		private int nrofWaypoints;
+		private int nrofSpeeds;
+		private double time;
+		private double[] xs = new double[8];
+		private double[] ys = new double[8];
+		private double[] speeds = new double[8];
+
+		private Cursor(HostTrajectory host) {
+			this.host = host;
+		}
+
+		/**
+		 * Moves the cursor so that the next event is the one with the
+		 * given index
+		 * @param index Index of the event
+		 */
+		public void seek(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * Returns true if there are more events
+		 * @return true if there are more events
+		 */
+		public boolean hasNext() {
+			return this.index < this.host.nrofEvents;
+		}
+
+		/**
+		 * Reads the next event
+		 * @return Type of the event ({@link TrajectoryFile#NEXT_TIME},
+		 * {@link TrajectoryFile#PATH} or {@link TrajectoryFile#NO_PATH})
+		 */
+		public byte next() {
+			/* absolute reads, so the cursors can share the buffers */
+			ByteBuffer data = this.host.chunks[
+					this.host.eventChunks[this.index]];
+			int p = this.host.eventOffsets[this.index++];
+			this.type = data.get(p);
+			p += RECORD_HEADER_SIZE;
+			if (this.type == NEXT_TIME) {
+				this.time = data.getDouble(p);
+			} else if (this.type == PATH) {
+				this.nrofWaypoints = data.getInt(p);
+				this.nrofSpeeds = data.getInt(p + 4);
+				p += 8;
+				if (this.xs.length < this.nrofWaypoints) {
+					this.xs = new double[this.nrofWaypoints];
+					this.ys = new double[this.nrofWaypoints];
+				}
+				if (this.speeds.length < this.nrofSpeeds) {
+					this.speeds = new double[this.nrofSpeeds];
+				}
+				for (int i = 0; i < this.nrofWaypoints; i++, p += 16) {
+					this.xs[i] = data.getDouble(p);
+					this.ys[i] = data.getDouble(p + 8);
+				}
+				for (int i = 0; i < this.nrofSpeeds; i++, p += 8) {
+					this.speeds[i] = data.getDouble(p);
+				}
+			}
+			return this.type;
+		}
+
+		/**
+		 * Returns the time of a {@link TrajectoryFile#NEXT_TIME} event
+		 */
+		public double getTime() {
+			return this.time;
+		}
+
+		/**
+		 * Returns the number of waypoints of a {@link TrajectoryFile#PATH}
+		 * event
+		 */
+		public int getNrofWaypoints() {
+			return this.nrofWaypoints;
+		}
+
+		public double getX(int index) {
+			return this.xs[index];
+		}
+
+		public double getY(int index) {
+			return this.ys[index];
+		}
+
+		/**
+		 * Returns the number of speeds of a {@link TrajectoryFile#PATH}
+		 * event
+		 */
+		public int getNrofSpeeds() {
+			return this.nrofSpeeds;
+		}
+
+		/**
+		 * Returns the speeds of a {@link TrajectoryFile#PATH} event. The
+		 * array can be longer than the number of speeds and it is reused
+		 * by the next events.
+		 */
+		public double[] getSpeeds() {
+			return this.speeds;
+		}
+	}
+
+	private static int upperBound(double[] values, int size, double value) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Writes the movement of the hosts to a file as it is recorded. Nothing
+	 * but the output buffer is kept in memory.
+	 */
+	public static class Writer {
+		private final DataOutputStream out;
+
+		/**
+		 * Creates the file and writes its header
+		 * @param file The file
+		 * @throws IOException if the file couldn't be created
+		 */
+		public Writer(File file) throws IOException {
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file), 1 << 16));
+			this.out.writeInt(MAGIC);
+			this.out.writeInt(VERSION);
+		}
+
+		private void startRecord(byte type, int host, double time)
+				throws IOException {
+			this.out.writeByte(type);
+			this.out.writeInt(host);
+			this.out.writeDouble(time);
+		}
+
+		/**
+		 * Sets the initial location of a host
+		 * @param host Index (network address) of the host
+		 */
+		public void initialLocation(int host, double x, double y) {
+			try {
+				startRecord(INITIAL_LOCATION, host, 0);
+				this.out.writeDouble(x);
+				this.out.writeDouble(y);
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+
+		/**
+		 * Adds a change of a host's activeness
+		 * @param host Index of the host
+		 * @param time Time of the change
+		 * @param active The new activeness
+		 */
+		public void activeness(int host, double time, boolean active) {
+			try {
+				startRecord(ACTIVENESS, host, time);
+				this.out.writeByte(active ? 1 : 0);
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+
+		/**
+		 * Adds a time that a host got for its next path
+		 * @param host Index of the host
+		 * @param now Current time
+		 * @param time The time of the next path
+		 */
+		public void nextTime(int host, double now, double time) {
+			try {
+				startRecord(NEXT_TIME, host, now);
+				this.out.writeDouble(time);
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+
+		/**
+		 * Adds a path a host got
+		 * @param host Index of the host
+		 * @param now Current time
+		 * @param xs The x coordinates of the path's waypoints
+		 * @param ys The y coordinates of the path's waypoints
+		 * @param nrofWaypoints Number of waypoints
+		 * @param speeds The path's speeds
+		 * @param nrofSpeeds Number of speeds
+		 */
+		public void path(int host, double now, double[] xs, double[] ys,
+				int nrofWaypoints, double[] speeds, int nrofSpeeds) {
+			try {
+				startRecord(PATH, host, now);
+				this.out.writeInt(nrofWaypoints);
+				this.out.writeInt(nrofSpeeds);
+				for (int i = 0; i < nrofWaypoints; i++) {
+					this.out.writeDouble(xs[i]);
+					this.out.writeDouble(ys[i]);
+				}
+				for (int i = 0; i < nrofSpeeds; i++) {
+					this.out.writeDouble(speeds[i]);
+				}
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+
+		/**
+		 * Adds a request for a path that the host didn't get
+		 * @param host Index of the host
+		 * @param now Current time
+		 */
+		public void noPath(int host, double now) {
+			try {
+				startRecord(NO_PATH, host, now);
+			} catch (IOException e) {
+				throw new SimError(e);
+			}
+		}
+
+		/**
+		 * Writes the buffered records and closes the file
+		 * @throws IOException if the writing fails
+		 */
+		public void close() throws IOException {
+			this.out.close();
+		}
+	}
+}
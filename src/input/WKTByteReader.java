@@ -0,0 +1,379 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Byte level tokenizer of memory mapped WKT files. The file is scanned for
+ * the types and the contents (the text between the parentheses) of its
+ * geometries with {@link #next()} and the contents can be parsed to
+ * coordinates separately, also in parallel from many threads. The files
+ * are interpreted the same way as {@link WKTReader} interprets them
+ * (ASCII text is expected).
+ */
+class WKTByteReader {
+	/** type of geometries that are not parsed */
+	static final int OTHER = 0;
+	/** type of LINESTRING geometries */
+	static final int LINESTRING = 1;
+	/** type of MULTILINESTRING geometries */
+	static final int MULTILINESTRING = 2;
+	/** type of POINT geometries */
+	static final int POINT = 3;
+
+	private static final byte[][] TYPE_NAMES = {null,
+		WKTReader.LINESTRING.getBytes(), WKTReader.MULTILINESTRING.getBytes(),
+		WKTReader.POINT.getBytes()};
+	/** exactly representable powers of ten */
+	private static final double[] POW10 = new double[23];
+	/** largest mantissa that is exact as a double */
+	private static final long MAX_EXACT = 1L << 53;
+
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10;
+		}
+	}
+
+	private final ByteBuffer buf;
+	private final int limit;
+	private int pos;
+	private int type;
+	private int start;
+	private int end;
+
+	/**
+	 * Maps a file for reading
+	 * @param file The WKT file
+	 * @throws IOException if the file couldn't be mapped
+	 */
+	WKTByteReader(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel fc = raf.getChannel();
+			this.buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+		}
+		this.limit = this.buf.limit();
+	}
+
+	/**
+	 * Returns true if the file is small enough to be mapped
+	 * @param file The file
+	 * @return true if the file can be read with this reader
+	 */
+	static boolean canRead(File file) {
+		return file.length() <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the size of the file
+	 * @return the size of the file (bytes)
+	 */
+	int size() {
+		return this.limit;
+	}
+
+	/**
+	 * Moves to the next geometry of the file
+	 * @return false if there were no more geometries
+	 */
+	boolean next() {
+		int p = skipWhitespace(this.pos, this.limit);
+		if (p == this.limit) {
+			this.pos = p;
+			return false;
+		}
+
+		int wordStart = p;
+		while (p < this.limit && !isWhitespace(this.buf.get(p))) {
+			p++;
+		}
+		this.type = typeOf(wordStart, p);
+		p++; // the whitespace after the word
+
+		while (p < this.limit && this.buf.get(p) != '(') {
+			p++;
+		}
+		this.start = Math.min(p + 1, this.limit);
+
+		int open = 1;
+		for (p = this.start; p < this.limit; p++) {
+			byte b = this.buf.get(p);
+			if (b == '(') {
+				open++;
+			} else if (b == ')' && --open == 0) {
+				break;
+			}
+		}
+		this.end = p;
+		this.pos = Math.min(p + 1, this.limit);
+		return true;
+	}
+
+	/**
+	 * Returns the type of the current geometry
+	 * @return {@link #LINESTRING}, {@link #MULTILINESTRING}, {@link #POINT}
+	 * or {@link #OTHER}
+	 */
+	int getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the start of the current geometry's contents
+	 * @return index of the first byte after the opening parenthesis
+	 */
+	int getStart() {
+		return this.start;
+	}
+
+	/**
+	 * Returns the end of the current geometry's contents
+	 * @return index of the closing parenthesis (or the end of the file)
+	 */
+	int getEnd() {
+		return this.end;
+	}
+
+	private int typeOf(int wordStart, int wordEnd) {
+		for (int t = LINESTRING; t <= POINT; t++) {
+			byte[] name = TYPE_NAMES[t];
+			if (name.length != wordEnd - wordStart) {
+				continue;
+			}
+			int i = 0;
+			while (i < name.length && this.buf.get(wordStart + i) == name[i]) {
+				i++;
+			}
+			if (i == name.length) {
+				return t;
+			}
+		}
+		return OTHER;
+	}
+
+	/**
+	 * Parses the coordinates of a line string geometry's contents. The
+	 * method can be called from many threads at the same time.
+	 * @param type {@link #LINESTRING} or {@link #MULTILINESTRING}
+	 * @param start Start of the contents
+	 * @param end End of the contents
+	 * @param lines The list where the coordinates of the line strings are
+	 * added (x and y of every coordinate after each other)
+	 * @throws IOException if the contents couldn't be parsed
+	 */
+	void parseLines(int type, int start, int end, List<double[]> lines)
+			throws IOException {
+		if (type == LINESTRING) {
+			lines.add(parseLineString(start, end));
+			return;
+		}
+
+		/* the same as WKTReader.parseMultilinestring: line strings are read
+		 * until an empty one */
+		int p = start;
+		while (true) {
+			while (p < end && this.buf.get(p) != '(') {
+				p++;
+			}
+			int lineStart = Math.min(p + 1, end);
+			int open = 1;
+			for (p = lineStart; p < end; p++) {
+				byte b = this.buf.get(p);
+				if (b == '(') {
+					open++;
+				} else if (b == ')' && --open == 0) {
+					break;
+				}
+			}
+			if (p == lineStart) {
+				return;
+			}
+			lines.add(parseLineString(lineStart, p));
+			p++;
+		}
+	}
+
+	/**
+	 * Parses the coordinates of a line string: comma separated tuples of
+	 * whitespace separated values whose first two values are the x and y
+	 * coordinates (like {@link WKTReader#parseLineString(String)})
+	 * @return The coordinates (x and y of every coordinate after each other)
+	 */
+	private double[] parseLineString(int start, int end) throws IOException {
+		double[] coords = new double[16];
+		int n = 0;
+		int p = start;
+
+		while (p < end) {
+			int tupleEnd = p;
+			while (tupleEnd < end && this.buf.get(tupleEnd) != ',') {
+				tupleEnd++;
+			}
+			if (n + 2 > coords.length) {
+				coords = Arrays.copyOf(coords, coords.length * 2);
+			}
+			parseTuple(p, tupleEnd, coords, n);
+			n += 2;
+			p = tupleEnd + 1;
+		}
+
+		return Arrays.copyOf(coords, n);
+	}
+
+	/**
+	 * Parses a point's contents
+	 * @param start Start of the contents
+	 * @param end End of the contents
+	 * @return The x and y coordinates
+	 * @throws IOException if the contents couldn't be parsed
+	 */
+	double[] parsePoint(int start, int end) throws IOException {
+		double[] coords = new double[2];
+		parseTuple(start, end, coords, 0);
+		return coords;
+	}
+
+	/**
+	 * Parses the first two whitespace separated values of a tuple
+	 */
+	private void parseTuple(int start, int end, double[] coords, int index)
+			throws IOException {
+		int p = start;
+		for (int i = 0; i < 2; i++) {
+			p = skipWhitespace(p, end);
+			int valueStart = p;
+			while (p < end && !isWhitespace(this.buf.get(p))) {
+				p++;
+			}
+			if (p == valueStart) {
+				throw new IOException("Bad coordinate values: '" +
+						toString(start, end) + "'");
+			}
+			coords[index + i] = parseDouble(valueStart, p);
+		}
+	}
+
+	/**
+	 * Parses a decimal number. Numbers whose mantissa and power of ten are
+	 * exactly representable as doubles are parsed here (with correct
+	 * rounding, so the result is the same as with
+	 * {@link Double#parseDouble(String)}); the rest are given to
+	 * {@link Double#parseDouble(String)}.
+	 */
+	private double parseDouble(int start, int end) throws IOException {
+		int p = start;
+		boolean negative = false;
+		byte b = this.buf.get(p);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			p++;
+		}
+
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean exact = true;
+		boolean point = false;
+		for (; p < end; p++) {
+			b = this.buf.get(p);
+			if (b >= '0' && b <= '9') {
+				digits++;
+				if (mantissa < MAX_EXACT / 10) {
+					mantissa = mantissa * 10 + (b - '0');
+				} else {
+					exact = false;
+				}
+				if (point) {
+					exponent--;
+				}
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (p < end && digits > 0 && (b == 'e' || b == 'E')) {
+			p++;
+			boolean negativeExp = false;
+			if (p < end && (this.buf.get(p) == '-' ||
+					this.buf.get(p) == '+')) {
+				negativeExp = this.buf.get(p) == '-';
+				p++;
+			}
+			int exp = 0;
+			int expStart = p;
+			for (; p < end && (b = this.buf.get(p)) >= '0' && b <= '9'; p++) {
+				if (exp < 10000) {
+					exp = exp * 10 + (b - '0');
+				}
+			}
+			if (p == expStart) {
+				exact = false;
+			}
+			exponent += negativeExp ? -exp : exp;
+		}
+
+		if (!exact || p != end || digits == 0 || exponent < -22 ||
+				exponent > 22) {
+			try {
+				return Double.parseDouble(toString(start, end));
+			} catch (NumberFormatException e) {
+				throw new IOException("Bad coordinate value: '" +
+						toString(start, end) + "'");
+			}
+		}
+
+		double value = exponent < 0 ? mantissa / POW10[-exponent] :
+			mantissa * POW10[exponent];
+		return negative ? -value : value;
+	}
+
+	private int skipWhitespace(int p, int end) {
+		while (p < end && isWhitespace(this.buf.get(p))) {
+			p++;
+		}
+		return p;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return Character.isWhitespace(b);
+	}
+
+	private String toString(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = this.buf.get(start + i);
+		}
+		return new String(bytes);
+	}
+
+	/**
+	 * Parses the line strings of geometries
+	 * @param types Types of the geometries
+	 * @param starts Starts of the geometries' contents
+	 * @param ends Ends of the geometries' contents
+	 * @param from Index of the first geometry to parse
+	 * @param to Index after the last geometry to parse
+	 * @return The coordinates of the line strings in the file order
+	 * @throws IOException if some contents couldn't be parsed
+	 */
+	List<double[]> parseLines(int[] types, int[] starts, int[] ends,
+			int from, int to) throws IOException {
+		List<double[]> lines = new ArrayList<double[]>(to - from);
+		for (int i = from; i < to; i++) {
+			parseLines(types[i], starts[i], ends[i], lines);
+		}
+		return lines;
+	}
+}
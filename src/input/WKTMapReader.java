@@ -21,10 +21,13 @@ import core.Coord;
  * "Well-known text syntax" map data reader.<BR>
  * <STRONG>Note</STRONG>: Understands only <CODE>LINESTRING</CODE>s and
  * <CODE>MULTILINESTRING</CODE>s. Skips all <CODE>POINT</CODE> data.
- * Other data causes IOException.
+ * Other data causes IOException. Map nodes in the same location are found
+ * with a hash table of the nodes' coordinates.
  */
 public class WKTMapReader extends WKTReader {
 	private Hashtable<Coord, MapNode> nodes;
+	/** the nodes by their exact coordinates */
+	private NodeIndex index;
 	/** are all paths bidirectional */
 	private boolean bidirectionalPaths = true;
 	private int nodeType = -1;
@@ -37,6 +40,7 @@ public class WKTMapReader extends WKTReader {
 	public WKTMapReader(boolean bidi) {
 		this.bidirectionalPaths = bidi;
 		this.nodes = new Hashtable<Coord, MapNode>();
+		this.index = new NodeIndex();
 	}
 
 	/**
@@ -78,7 +82,13 @@ public class WKTMapReader extends WKTReader {
 	 * @throws IOException If something went wrong while reading the file
 	 */
 	public void addPaths(File file, int type) throws IOException {
-		addPaths(new FileReader(file), type);
+		if (!WKTByteReader.canRead(file)) {
+			addPaths(new FileReader(file), type);
+			return;
+		}
+
+		this.nodeType = type;
+		readLines(file, true, coords -> updateMap(coords));
 	}
 
 
@@ -121,25 +131,40 @@ public class WKTMapReader extends WKTReader {
 	private void updateMap(List<Coord> coords) {
 		MapNode previousNode = null;
 		for (Coord c : coords) {
-			previousNode = createOrUpdateNode(c, previousNode);
+			previousNode = createOrUpdateNode(c.getX(), c.getY(), previousNode);
 		}
 	}
 
 	/**
-	 * Creates or updates a node that is in location c and next to
+	 * Updates simulation map with coordinates in the array
+	 * @param coords x and y of every coordinate after each other
+	 */
+	private void updateMap(double[] coords) {
+		MapNode previousNode = null;
+		for (int i = 0; i < coords.length; i += 2) {
+			previousNode = createOrUpdateNode(coords[i], coords[i + 1],
+					previousNode);
+		}
+	}
+
+	/**
+	 * Creates or updates a node that is in location (x,y) and next to
 	 * node previous
-	 * @param c The location coordinates of the node
-	 * @param previous Previous node whose neighbor node at c is
+	 * @param x The x coordinate of the node
+	 * @param y The y coordinate of the node
+	 * @param previous Previous node whose neighbor node at (x,y) is
 	 * @return The created/updated node
 	 */
-	private MapNode createOrUpdateNode(Coord c, MapNode previous) {
+	private MapNode createOrUpdateNode(double x, double y, MapNode previous) {
 		MapNode n = null;
 
-		n = nodes.get(c);	// try to get the node at that location
+		n = index.get(x, y);	// try to get the node at that location
 
 		if (n == null) { 	// no node in that location -> create new
+			Coord c = new Coord(x, y);
 			n = new MapNode(c);
 			nodes.put(c, n);
+			index.put(x, y, n);
 		}
 
 		if (previous != null) {
@@ -156,4 +181,70 @@ public class WKTMapReader extends WKTReader {
 		return n;
 	}
 
+	/**
+	 * Open addressing hash table of map nodes keyed by the exact bits of
+	 * their coordinates. Finds the nodes without creating Coord objects or
+	 * string hash codes.
+	 */
+	private static class NodeIndex {
+		private double[] xs = new double[64];
+		private double[] ys = new double[64];
+		private MapNode[] nodes = new MapNode[64];
+		private int size;
+
+		private static int hash(long xBits, long yBits) {
+			/* the low bits of short decimal values are zeros, so the high
+			 * bits must be mixed down (MurmurHash3's finalizer) */
+			long h = xBits * 0x9E3779B97F4A7C15L + yBits;
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			h *= 0xC4CEB9FE1A85EC53L;
+			h ^= h >>> 33;
+			return (int)h;
+		}
+
+		private int slot(double x, double y) {
+			long xBits = Double.doubleToLongBits(x);
+			long yBits = Double.doubleToLongBits(y);
+			int mask = nodes.length - 1;
+			int i = hash(xBits, yBits) & mask;
+			while (nodes[i] != null &&
+					(Double.doubleToLongBits(xs[i]) != xBits ||
+					 Double.doubleToLongBits(ys[i]) != yBits)) {
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		MapNode get(double x, double y) {
+			return nodes[slot(x, y)];
+		}
+
+		void put(double x, double y, MapNode node) {
+			if (2 * (size + 1) > nodes.length) {
+				double[] oldXs = xs;
+				double[] oldYs = ys;
+				MapNode[] oldNodes = nodes;
+				xs = new double[oldXs.length * 2];
+				ys = new double[oldYs.length * 2];
+				nodes = new MapNode[oldNodes.length * 2];
+				for (int i = 0; i < oldNodes.length; i++) {
+					if (oldNodes[i] != null) {
+						int j = slot(oldXs[i], oldYs[i]);
+						xs[j] = oldXs[i];
+						ys[j] = oldYs[i];
+						nodes[j] = oldNodes[i];
+					}
+				}
+			}
+			int i = slot(x, y);
+			if (nodes[i] == null) {
+				size++;
+			}
+			xs[i] = x;
+			ys[i] = y;
+			nodes[i] = node;
+		}
+	}
 }
@@ -13,6 +13,11 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import core.Coord;
 
@@ -21,6 +26,9 @@ import core.Coord;
  * <A HREF="http://en.wikipedia.org/wiki/Well-known_text">Wikipedia</A> for
  * WKT syntax details. For example, <A HREF="http://openjump.org/">Open JUMP</A>
  * GIS program can save compatible data from many other formats.<BR>
+ * Files are read with a byte level tokenizer of memory mapped files (see
+ * {@link WKTByteReader}) and the line strings of big files are parsed in
+ * parallel.
  */
 public class WKTReader {
 	/** known WKT type LINESTRING */
@@ -30,6 +38,13 @@ public class WKTReader {
 	/** known WKT type POINT */
 	public static final String POINT = "POINT";
 
+	/** files at least this big are parsed in parallel (bytes) */
+	private static final int PARALLEL_MIN_SIZE = 1 << 20;
+	/** how much line string data one parallel task parses (bytes) */
+	private static final int TASK_SIZE = 1 << 18;
+	/** how many geometries are scanned before parsing them */
+	private static final int BATCH_SIZE = 1 << 14;
+
 	/** are all lines of the file read */
 	private boolean done;
 	/** reader for the data */
@@ -42,7 +57,19 @@ public class WKTReader {
 	 * @throws IOException if something went wrong while reading
 	 */
 	public List<Coord> readPoints(File file) throws IOException {
-		return readPoints(new FileReader(file));
+		if (!WKTByteReader.canRead(file)) {
+			return readPoints(new FileReader(file));
+		}
+
+		List<Coord> points = new ArrayList<Coord>();
+		WKTByteReader r = new WKTByteReader(file);
+		while (r.next()) {
+			if (r.getType() == WKTByteReader.POINT) {
+				double[] xy = r.parsePoint(r.getStart(), r.getEnd());
+				points.add(new Coord(xy[0], xy[1]));
+			}
+		}
+		return points;
 	}
 
 	/**
@@ -77,7 +104,12 @@ public class WKTReader {
 	 * @throws IOException if something went wrong while reading
 	 */
 	public List<List<Coord>> readLines(File file) throws IOException {
-		List<List<Coord>> lines = new ArrayList<List<Coord>>();
+		final List<List<Coord>> lines = new ArrayList<List<Coord>>();
+
+		if (WKTByteReader.canRead(file)) {
+			readLines(file, false, coords -> lines.add(toCoords(coords)));
+			return lines;
+		}
 
 		String type;
 		init(new FileReader(file));
@@ -96,6 +128,107 @@ public class WKTReader {
 	}
 
 
+	/**
+	 * Reads the line strings of a file and gives their coordinates to a
+	 * consumer in the order they are in the file. The geometries are scanned
+	 * in batches and the line strings of a batch are parsed in parallel if
+	 * the file is big.
+	 * @param file The file to read
+	 * @param multi If true, also the line strings of MULTILINESTRINGs are
+	 * read
+	 * @param consumer The consumer of the line strings' coordinates (x and y
+	 * of every coordinate after each other)
+	 * @throws IOException if something went wrong while reading
+	 */
+	protected void readLines(File file, boolean multi,
+			Consumer<double[]> consumer) throws IOException {
+		WKTByteReader r = new WKTByteReader(file);
+		ForkJoinPool pool = r.size() >= PARALLEL_MIN_SIZE ?
+				new ForkJoinPool() : null;
+		int[] types = new int[BATCH_SIZE];
+		int[] starts = new int[BATCH_SIZE];
+		int[] ends = new int[BATCH_SIZE];
+		int n = 0;
+
+		try {
+			boolean more;
+			do {
+				more = r.next();
+				int type = more ? r.getType() : WKTByteReader.OTHER;
+				if (type == WKTByteReader.LINESTRING ||
+						(multi && type == WKTByteReader.MULTILINESTRING)) {
+					types[n] = type;
+					starts[n] = r.getStart();
+					ends[n] = r.getEnd();
+					n++;
+				}
+				if (n == BATCH_SIZE || (!more && n > 0)) {
+					for (double[] coords : parseLines(r, pool, types, starts,
+							ends, n)) {
+						consumer.accept(coords);
+					}
+					n = 0;
+				}
+			} while (more);
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private List<double[]> parseLines(final WKTByteReader r,
+			ForkJoinPool pool, final int[] types, final int[] starts,
+			final int[] ends, int n) throws IOException {
+		if (pool == null) {
+			return r.parseLines(types, starts, ends, 0, n);
+		}
+
+		List<Callable<List<double[]>>> tasks =
+			new ArrayList<Callable<List<double[]>>>();
+		int from = 0;
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			size += ends[i] - starts[i];
+			if (size >= TASK_SIZE || i == n - 1) {
+				final int taskFrom = from;
+				final int taskTo = i + 1;
+				tasks.add(() -> r.parseLines(types, starts, ends, taskFrom,
+						taskTo));
+				from = i + 1;
+				size = 0;
+			}
+		}
+
+		List<double[]> lines = new ArrayList<double[]>(n);
+		try {
+			for (Future<List<double[]>> f : pool.invokeAll(tasks)) {
+				lines.addAll(f.get());
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Parsing interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		return lines;
+	}
+
+	/**
+	 * Converts coordinates from an array to a list
+	 * @param coords x and y of every coordinate after each other
+	 * @return The coordinates in a list
+	 */
+	protected static List<Coord> toCoords(double[] coords) {
+		List<Coord> list = new ArrayList<Coord>(coords.length / 2);
+		for (int i = 0; i < coords.length; i += 2) {
+			list.add(new Coord(coords[i], coords[i + 1]));
+		}
+		return list;
+	}
+
 	/**
 	 * Initialize the reader to use a certain input reader
 	 * @param input The input to use
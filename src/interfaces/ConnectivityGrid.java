@@ -10,7 +10,7 @@ import java.util.HashMap;
 
 import movement.MovementModel;
 
-import core.Coord;
+import core.DTNHost;
 import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
@@ -137,7 +137,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
+		GridCell c = cellOf(ni);
 		c.addInterface(ni);
 		ginterfaces.put(ni,c);
 	}
@@ -170,7 +170,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public void updateLocation(NetworkInterface ni) {
 		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		GridCell newCell = cellOf(ni);
 
 		if (newCell != oldCell) {
 			oldCell.moveInterface(ni, newCell);
@@ -179,14 +179,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
+	 * Finds all neighboring cells and the cell itself based on the location
+	 * of an interface's host
+	 * @param ni The interface
 	 * @return Array of neighboring cells
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
+	private GridCell[] getNeighborCellsOf(NetworkInterface ni) {
+		DTNHost host = ni.getHost();
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
+		int row = (int)(host.getY()/cellSize) + 1;
+		int col = (int)(host.getX()/cellSize) + 1;
 		return getNeighborCells(row,col);
 	}
 
@@ -206,17 +208,18 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * Get the cell having the specific coordinates
-	 * @param c Coordinates
+	 * Get the cell having the location of an interface's host
+	 * @param ni The interface
 	 * @return The cell
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private GridCell cellOf(NetworkInterface ni) {
+		DTNHost host = ni.getHost();
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
+		int row = (int)(host.getY()/cellSize) + 1;
+		int col = (int)(host.getX()/cellSize) + 1;
 
 		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " +
-		c + " is out of world's bounds";
+		host.getLocation() + " is out of world's bounds";
 
 		return this.cells[row][col];
 	}
@@ -241,7 +244,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 
 		if (loc != null) {
 			GridCell[] neighbors =
-				getNeighborCellsByCoord(ni.getLocation());
+				getNeighborCellsOf(ni);
 			for (int i=0; i < neighbors.length; i++) {
 				niList.addAll(neighbors[i].getInterfaces());
 			}
@@ -55,7 +55,8 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 
 			Connection con = new CBRConnection(this.host, this,
-					anotherInterface.getHost(), anotherInterface, conSpeed);
+					anotherInterface.getHost(), anotherInterface, conSpeed,
+					getSentMessagesTtl());
 			connect(con,anotherInterface);
 		}
 	}
@@ -108,7 +109,8 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 
 			Connection con = new CBRConnection(this.host, this,
-					anotherInterface.getHost(), anotherInterface, conSpeed);
+					anotherInterface.getHost(), anotherInterface, conSpeed,
+					getSentMessagesTtl());
 			connect(con,anotherInterface);
 		}
 	}
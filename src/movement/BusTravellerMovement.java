@@ -73,7 +73,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			probTakeOtherBus = settings.getDouble(PROBABILITY_TAKE_OTHER_BUS);
 		}
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = new DijkstraPathFinder(getMap(), null);
 		takeBus = true;
 	}
 
@@ -30,7 +30,7 @@ public class CarMovement extends MapBasedMovement implements
 	 */
 	public CarMovement(Settings settings) {
 		super(settings);
-		pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		pathFinder = new DijkstraPathFinder(getMap(), getOkMapNodeTypes());
 	}
 
 	/**
@@ -54,7 +54,7 @@ public class CarMovement extends MapBasedMovement implements
 
 	@Override
 	public Path getPath() {
-		Path path = new Path(generateSpeed());
+		Path path = newPath(generateSpeed());
 
 		MapNode fromNode = getMap().getNodeByCoord(from);
 		MapNode toNode = getMap().getNodeByCoord(to);
@@ -5,6 +5,7 @@
 package movement;
 
 import input.ExternalMovementReader;
+import input.ExternalMovementReader.TimeSlice;
 
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -58,7 +59,8 @@ public class ExternalMovement extends MovementModel {
 	/** when was the path currently under construction started */
 	private double latestPathStartTime;
 	/** the last location of path waypoint */
-	private Coord latestLocation;
+	private double latestX;
+	private double latestY;
 	/** the path currently under construction */
 	private Path latestPath;
 
@@ -96,6 +98,9 @@ public class ExternalMovement extends MovementModel {
 					nrofPreload = 1;
 				}
 			}
+
+			/* parse the next preload run while the current one is used */
+			reader.startPrefetching((int)(2 * nrofPreload));
 		}
 	}
 
@@ -113,7 +118,9 @@ public class ExternalMovement extends MovementModel {
 		if (initLocations.size() > 0) { // we have location data left
 			// gets a new location from the list
 			Tuple<String, Coord> initLoc = initLocations.remove(0);
-			this.intialLocation = this.latestLocation = initLoc.getValue();
+			this.intialLocation = initLoc.getValue();
+			this.latestX = this.intialLocation.getX();
+			this.latestY = this.intialLocation.getY();
 			this.latestPathStartTime = initTime;
 
 			// puts the new model to model map for later updates
@@ -159,13 +166,14 @@ public class ExternalMovement extends MovementModel {
 	 * Adds a new location with a time to this model's move pattern. If the
 	 * node stayed stationary during the update, the current path is put to the
 	 * queue and a new path is started once the node starts moving.
-	 * @param loc The location
+	 * @param x The x coordinate of the location
+	 * @param y The y coordinate of the location
 	 * @param time When should the node be there
 	 */
-	private void addLocation(Coord loc, double time) {
+	private void addLocation(double x, double y, double time) {
 		assert samplingInterval > 0 : "Non-positive sampling interval!";
 
-		if (loc.equals(latestLocation)) { // node didn't move
+		if (x == latestX && y == latestY) { // node didn't move
 			if (latestPath != null) {
 				// constructing path -> end constructing and put it in the queue
 				pathQueue.add(new Tuple<Double, Path>
@@ -181,10 +189,13 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();
 		}
 
-		double speed = loc.distance(this.latestLocation) / samplingInterval;
-		latestPath.addWaypoint(loc, speed);
+		double dx = x - this.latestX;
+		double dy = y - this.latestY;
+		double speed = Math.sqrt(dx*dx + dy*dy) / samplingInterval;
+		latestPath.addWaypoint(x, y, speed);
 
-		this.latestLocation = loc;
+		this.latestX = x;
+		this.latestY = y;
 	}
 
 	/**
@@ -244,22 +255,22 @@ public class ExternalMovement extends MovementModel {
 	 * were read.
 	 */
 	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
+		TimeSlice slice = reader.readNextSlice();
 		double time = reader.getLastTimeStamp();
 
 		if (samplingInterval == -1) {
 			samplingInterval = time - initTime;
 		}
 
-		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
+		for (int i = 0, n = slice.size(); i < n; i++) {
+			ExternalMovement em = idMapping.get(slice.getId(i));
 			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
 				// ...init phase or if there are more IDs than nodes
-				em.addLocation(t.getValue(), time);
+				em.addLocation(slice.getX(i), slice.getY(i), time);
 			}
 		}
 
-		if (list.size() > 0) {
+		if (slice.size() > 0) {
 			return time;
 		}
 		else {
@@ -271,6 +282,9 @@ public class ExternalMovement extends MovementModel {
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
+		if (idMapping != null) {
+			reader.close();
+		}
 		idMapping = null;
 	}
 
@@ -6,6 +6,10 @@ package movement;
 
 import input.ExternalPathMovementReader;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import core.Coord;
@@ -23,7 +27,8 @@ import core.SimClock;
 public class ExternalPathMovement extends MovementModel {
 	/** external locations file's path -setting id ({@value})*/
 	public static final String MOVEMENT_FILE_S = "traceFile";
-	/** activity file's path -setting id ({@value})*/
+	/** activity file's path -setting id ({@value}). Not needed if the trace
+	 * file is a binary trace (that has the activity times). */
 	public static final String ACTIVITY_FILE_S = "activeFile";
 
 	// Settings
@@ -33,11 +38,15 @@ public class ExternalPathMovement extends MovementModel {
 	// Node's paths
 	private List<List<ExternalPathMovementReader.Entry>> paths;
 	private int curPath=0;
-	private List<ExternalPathMovementReader.ActiveTime> active;
+	/** Starts and ends of the node's active periods in time order (the
+	 * overlapping periods are merged) */
+	private double[] activeStarts;
+	private double[] activeEnds;
 
 	public ExternalPathMovement(Settings settings) {
 		this.traceFile = settings.getSetting(MOVEMENT_FILE_S);
-		this.activeFile = settings.getSetting(ACTIVITY_FILE_S);
+		this.activeFile = settings.contains(ACTIVITY_FILE_S) ?
+				settings.getSetting(ACTIVITY_FILE_S) : null;
 	}
 
 	/**
@@ -60,7 +69,43 @@ public class ExternalPathMovement extends MovementModel {
 			ExternalPathMovementReader.getInstance(this.traceFile,
 					this.activeFile);
 		this.paths = reader.getPaths(getHost().getAddress());
-		this.active = reader.getActive(getHost().getAddress());
+		setActiveTimes(reader.getActive(getHost().getAddress()));
+	}
+
+	/**
+	 * Sorts and merges the active times for searching
+	 * @param active The active times
+	 */
+	private void setActiveTimes(
+			List<ExternalPathMovementReader.ActiveTime> active) {
+		List<ExternalPathMovementReader.ActiveTime> sorted =
+			new ArrayList<ExternalPathMovementReader.ActiveTime>(active);
+		Collections.sort(sorted,
+				new Comparator<ExternalPathMovementReader.ActiveTime>() {
+			public int compare(ExternalPathMovementReader.ActiveTime a1,
+					ExternalPathMovementReader.ActiveTime a2) {
+				return Double.compare(a1.start, a2.start);
+			}
+		});
+
+		this.activeStarts = new double[sorted.size()];
+		this.activeEnds = new double[sorted.size()];
+		int n = 0;
+		for (ExternalPathMovementReader.ActiveTime a : sorted) {
+			if (a.start > a.end) {
+				continue; // never active
+			}
+			if (n > 0 && a.start <= this.activeEnds[n - 1]) {
+				this.activeEnds[n - 1] = Math.max(this.activeEnds[n - 1],
+						a.end);
+			} else {
+				this.activeStarts[n] = a.start;
+				this.activeEnds[n] = a.end;
+				n++;
+			}
+		}
+		this.activeStarts = Arrays.copyOf(this.activeStarts, n);
+		this.activeEnds = Arrays.copyOf(this.activeEnds, n);
 	}
 
 	@Override
@@ -73,12 +118,13 @@ public class ExternalPathMovement extends MovementModel {
 	public boolean isActive() {
 		double t = SimClock.getTime();
 
-		// Check whether the current time falls in one of the active periods
-		for (ExternalPathMovementReader.ActiveTime a : this.active) {
-			if (t >= a.start && t <= a.end) return true;
+		// Check whether the current time falls in one of the active periods:
+		// the last period that starts at or before the time
+		int i = Arrays.binarySearch(this.activeStarts, t);
+		if (i < 0) {
+			i = -i - 2;
 		}
-
-		return false;
+		return i >= 0 && t <= this.activeEnds[i];
 	}
 
 	@Override
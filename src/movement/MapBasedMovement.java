@@ -9,14 +9,17 @@ import input.WKTMapReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
 
+import movement.map.CompiledMap;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
@@ -55,15 +58,32 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 */
 	public static final String MAP_SELECT_S = "okMaps";
 
+	/**
+	 * Contraction hierarchies -setting id ({@value}). Boolean. If true,
+	 * shortest paths on the map are searched using contraction hierarchies
+	 * that are built once per OK map node type selection and saved next to
+	 * the first map file. Useful for very large maps. Default = false.
+	 */
+	public static final String CONTRACTION_HIERARCHIES_S =
+		"contractionHierarchies";
+
+	/**
+	 * Compiled maps -setting id ({@value}). Boolean. If true, the maps read
+	 * from map files are saved in a compiled binary form (see
+	 * {@link CompiledMap}) next to the first map file and read from there
+	 * the next time if the map files haven't changed. Default = false.
+	 */
+	public static final String COMPILED_MAPS_S = "compiledMaps";
+
 	/** the indexes of the OK map files or null if all maps are OK */
 	private int [] okMapNodeTypes;
 
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
-	/** map cache -- in case last mm read the same map, use it without loading*/
-	private static SimMap cachedMap = null;
-	/** names of the previously cached map's files (for hit comparison) */
-	private static List<String> cachedMapFiles = null;
+	/** map cache -- maps by the names of their map files. The maps are
+	 * shared by all the models (and batch runs) that use the same files */
+	private static Map<List<String>, SimMap> cachedMaps =
+		new HashMap<List<String>, SimMap>();
 
 	/**
 	 * Creates a new MapBasedMovement based on a Settings object's settings.
@@ -179,7 +199,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 
 	@Override
 	public Path getPath() {
-		Path p = new Path(generateSpeed());
+		Path p = newPath(generateSpeed());
 		MapNode curNode = lastMapNode;
 		MapNode prevNode = lastMapNode;
 		MapNode nextNode = null;
@@ -265,39 +285,39 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	private SimMap readMap() {
 		SimMap simMap;
 		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
-		WKTMapReader r = new WKTMapReader(true);
+		int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		List<String> mapFileNames = new ArrayList<String>();
+		List<File> mapFiles = new ArrayList<File>();
 
-		if (cachedMap == null) {
-			cachedMapFiles = new ArrayList<String>(); // no cache present
-		}
-		else { // something in cache
-			// check out if previously asked map was asked again
-			SimMap cached = checkCache(settings);
-			if (cached != null) {
-				nrofMapFilesRead = cachedMapFiles.size();
-				return cached; // we had right map cached -> return it
-			}
-			else { // no hit -> reset cache
-				cachedMapFiles = new ArrayList<String>();
-				cachedMap = null;
-			}
+		for (int i = 1; i <= nrofMapFiles; i++ ) {
+			String pathFile = settings.getSetting(FILE_S + i);
+			mapFileNames.add(pathFile);
+			mapFiles.add(new File(pathFile));
 		}
+		nrofMapFilesRead = nrofMapFiles;
 
-		try {
-			int nrofMapFiles = settings.getInt(NROF_FILES_S);
+		simMap = cachedMaps.get(mapFileNames);
+		if (simMap != null) {
+			return simMap; // we had right map cached -> return it
+		}
 
-			for (int i = 1; i <= nrofMapFiles; i++ ) {
-				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+		boolean compiled = settings.getBoolean(COMPILED_MAPS_S, false);
+		if (compiled) {
+			simMap = readCompiledMap(mapFiles);
+		}
+		if (simMap == null) {
+			simMap = readMapFiles(mapFiles);
+			if (compiled) {
+				File compiledFile = CompiledMap.getFile(mapFiles);
+				try {
+					CompiledMap.write(simMap, mapFiles, compiledFile);
+				} catch (IOException e) {
+					System.err.println("Warning: couldn't write compiled map " +
+							compiledFile + " (" + e.getMessage() + ")");
+				}
 			}
-
-			nrofMapFilesRead = nrofMapFiles;
-		} catch (IOException e) {
-			throw new SimError(e.toString(),e);
 		}
 
-		simMap = r.getMap();
 		checkMapConnectedness(simMap.getNodes());
 		// mirrors the map (y' = -y) and moves its upper left corner to origo
 		simMap.mirror();
@@ -305,10 +325,51 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		simMap.translate(-offset.getX(), -offset.getY());
 		checkCoordValidity(simMap.getNodes());
 
-		cachedMap = simMap;
+		if (settings.getBoolean(CONTRACTION_HIERARCHIES_S, false)) {
+			simMap.enableContractionHierarchies(
+					mapFiles.get(0).getAbsoluteFile().getParentFile());
+		}
+
+		cachedMaps.put(mapFileNames, simMap);
 		return simMap;
 	}
 
+	/**
+	 * Reads a map from map files
+	 * @param mapFiles The map files
+	 * @return The map as it was read from the files
+	 */
+	private SimMap readMapFiles(List<File> mapFiles) {
+		WKTMapReader r = new WKTMapReader(true);
+		try {
+			for (int i = 1; i <= mapFiles.size(); i++ ) {
+				r.addPaths(mapFiles.get(i-1), i);
+			}
+		} catch (IOException e) {
+			throw new SimError(e.toString(),e);
+		}
+		return r.getMap();
+	}
+
+	/**
+	 * Reads the compiled map of map files
+	 * @param mapFiles The map files
+	 * @return The map or null if there's no valid compiled map for the files
+	 */
+	private SimMap readCompiledMap(List<File> mapFiles) {
+		File compiledFile = CompiledMap.getFile(mapFiles);
+		if (!compiledFile.isFile()) {
+			return null;
+		}
+		try {
+			return CompiledMap.read(compiledFile, mapFiles);
+		} catch (IOException e) {
+			System.err.println("Warning: ignoring compiled map " +
+					compiledFile + " (" + e.getMessage() + ")");
+			return null;
+		}
+	}
+
 	/**
 	 * Checks that all map nodes can be reached from all other map nodes
 	 * @param nodes The list of nodes to check
@@ -372,30 +433,6 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		}
 	}
 
-	/**
-	 * Checks map cache if the requested map file(s) match to the cached
-	 * sim map
-	 * @param settings The Settings where map file names are found
-	 * @return A cached map or null if the cached map didn't match
-	 */
-	private SimMap checkCache(Settings settings) {
-		int nrofMapFiles = settings.getInt(NROF_FILES_S);
-
-		if (nrofMapFiles != cachedMapFiles.size() || cachedMap == null) {
-			return null; // wrong number of files
-		}
-
-		for (int i = 1; i <= nrofMapFiles; i++ ) {
-			String pathFile = settings.getSetting(FILE_S + i);
-			if (!pathFile.equals(cachedMapFiles.get(i-1))) {
-				return null;	// found wrong file name
-			}
-		}
-
-		// all files matched -> return cached map
-		return cachedMap;
-	}
-
 	@Override
 	public MapBasedMovement replicate() {
 		return new MapBasedMovement(this);
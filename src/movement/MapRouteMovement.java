@@ -60,7 +60,7 @@ public class MapRouteMovement extends MapBasedMovement implements
 		int type = settings.getInt(ROUTE_TYPE_S);
 		allRoutes = MapRoute.readRoutes(fileName, type, getMap());
 		nextRouteIndex = 0;
-		pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		pathFinder = new DijkstraPathFinder(getMap(), getOkMapNodeTypes());
 		this.route = this.allRoutes.get(this.nextRouteIndex).replicate();
 		if (this.nextRouteIndex >= this.allRoutes.size()) {
 			this.nextRouteIndex = 0;
@@ -104,7 +104,7 @@ public class MapRouteMovement extends MapBasedMovement implements
 
 	@Override
 	public Path getPath() {
-		Path p = new Path(generateSpeed());
+		Path p = newPath(generateSpeed());
 		MapNode to = route.nextStop();
 
 		List<MapNode> nodePath = pathFinder.getShortestPath(lastMapNode, to);
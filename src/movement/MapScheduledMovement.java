@@ -11,6 +11,8 @@ import core.SimClock;
 import movement.map.*;
 import movement.map.delay.DelayModel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -18,6 +20,8 @@ import java.util.List;
  * Nodes using this model will follow the predetermined schedule and stop moving once the schedule ends.
  * See {@link input.ScheduleReader} for details.
  * The path between 2 stops in the schedule is calculated using {@link DijkstraPathFinder}.
+ * The paths of each route are compiled once into a {@link ScheduledTrajectory} that is shared by all the
+ * nodes driving the route; the nodes only have their own (delayed) stop times.
  */
 public class MapScheduledMovement extends MapBasedMovement implements
 	SwitchableMovement {
@@ -29,21 +33,28 @@ public class MapScheduledMovement extends MapBasedMovement implements
 	public static final String DELAY_MODEL_S = "delayModel";
 	public static final String DM_PACKAGE = "movement.map.delay.";
 
-	/** node where the last path ended or node next to initial placement */
-	protected MapScheduledNode lastMapNode;
-
 	/** the Dijkstra shortest path finder */
 	private DijkstraPathFinder pathFinder;
 
 	/** Prototype's reference to all routes read for the group */
 	private List<MapScheduledRoute> allRoutes = null;
+	/** Compiled trajectories of the routes (shared by the prototype and
+	 * the hosts, compiled when a route is used the first time) */
+	private ScheduledTrajectory[] trajectories;
 	/** next route's index to give by prototype. Index of used route by node if not prototype. */
 	private Integer nextRouteIndex = null;
 	/** The DelayModel used to calculate delays on the route */
 	private DelayModel delayModel;
 
-	/** Route of the movement model's instance */
-	private MapScheduledRoute route;
+	/** Trajectory of the movement model's instance */
+	private ScheduledTrajectory trajectory;
+	/** (Delayed) stop times of the instance */
+	private double[] stopTimes;
+	/** index of the next stop */
+	private int nextStop;
+	/** index of the stop where the last path ended or the initial stop
+	 * (-1 if not placed yet) */
+	private int lastStop;
 
 	/** activeTimes tha need to be updated in the ActivenessHandler of the host */
 	private double[] updatedActiveTimes = null;
@@ -56,14 +67,14 @@ public class MapScheduledMovement extends MapBasedMovement implements
 		super(settings);
 		String fileName = settings.getSetting(ROUTE_FILE_S);
 		allRoutes = MapScheduledRoute.readRoutes(fileName, getMap());
+		trajectories = new ScheduledTrajectory[allRoutes.size()];
 		nextRouteIndex = 0;
-		pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		pathFinder = new DijkstraPathFinder(getMap(), getOkMapNodeTypes());
 		delayModel = (DelayModel)settings.createIntializedObject(DM_PACKAGE +
 				settings.getSetting(DELAY_MODEL_S));
-		this.route = this.allRoutes.get(this.nextRouteIndex).replicate();
-		if (this.nextRouteIndex >= this.allRoutes.size()) {
-			this.nextRouteIndex = 0;
-		}
+		this.trajectory = getTrajectory(this.nextRouteIndex);
+		this.stopTimes = this.trajectory.getTimes();
+		this.lastStop = -1;
 	}
 
 	/**
@@ -73,20 +84,21 @@ public class MapScheduledMovement extends MapBasedMovement implements
 	 */
 	protected MapScheduledMovement(MapScheduledMovement proto) {
 		super(proto);
-		MapScheduledRoute route = proto.allRoutes.get(proto.nextRouteIndex).replicate();
-		this.route = proto.delayModel.calculateDelay(route);
 		this.nextRouteIndex = proto.nextRouteIndex;
 		this.allRoutes = proto.allRoutes;
+		this.trajectories = proto.trajectories;
+		this.pathFinder = proto.pathFinder;
+		this.trajectory = getTrajectory(this.nextRouteIndex);
+		this.stopTimes = getStopTimes(proto.delayModel.calculateDelay(
+				this.allRoutes.get(this.nextRouteIndex).replicate()));
 
-        List<MapScheduledNode> stops = this.route.getStops();
-        this.updatedActiveTimes = new double[2];
-        this.updatedActiveTimes[0] = stops.get(0).getTime();
-		this.updatedActiveTimes[1] = stops.get(stops.size() - 1).getTime();
+		this.updatedActiveTimes = new double[2];
+		this.updatedActiveTimes[0] = this.stopTimes[0];
+		this.updatedActiveTimes[1] = this.stopTimes[this.stopTimes.length - 1];
 
 		/* use the first stop as starting point */
-		this.route.setNextIndex(0);
-
-		this.pathFinder = proto.pathFinder;
+		this.nextStop = 0;
+		this.lastStop = -1;
 
 		proto.nextRouteIndex++; // give routes in order
 		if (proto.nextRouteIndex >= proto.allRoutes.size()) {
@@ -94,52 +106,78 @@ public class MapScheduledMovement extends MapBasedMovement implements
 		}
 	}
 
+	/**
+	 * Returns the compiled trajectory of a route
+	 * @param index Index of the route
+	 * @return The trajectory
+	 */
+	private ScheduledTrajectory getTrajectory(int index) {
+		if (trajectories[index] == null) {
+			trajectories[index] = new ScheduledTrajectory(allRoutes.get(index),
+					pathFinder);
+		}
+		return trajectories[index];
+	}
+
+	/**
+	 * Returns the stop times of a (delayed) route. If the times are the
+	 * scheduled times, the trajectory's times are shared.
+	 * @param route The route
+	 * @return The stop times
+	 */
+	private double[] getStopTimes(MapScheduledRoute route) {
+		double[] times = trajectory.getTimes();
+		List<MapScheduledNode> stops = route.getStops();
+		double[] delayed = null;
+		for (int i = 0; i < times.length; i++) {
+			double time = stops.get(i).getTime();
+			if (delayed == null && time != times[i]) {
+				delayed = Arrays.copyOf(times, times.length);
+			}
+			if (delayed != null) {
+				delayed[i] = time;
+			}
+		}
+		return delayed != null ? delayed : times;
+	}
+
 	@Override
 	public Path getPath() {
-		Path p = new Path(generateSpeed());
-		MapScheduledNode to = route.nextStop();
-		if (to == null) {
+		double speed = generateSpeed();
+		if (nextStop >= trajectory.getNrofStops()) {
 			return null;
 		}
-		if (to.getNode() == lastMapNode.getNode()) {
-			lastMapNode = to;
+		int to = nextStop++;
+		if (trajectory.getStop(to) == trajectory.getStop(lastStop)) {
+			lastStop = to;
 			return null;
 		}
-		if (to.getTime() <= lastMapNode.getTime()) {
+		if (stopTimes[to] <= stopTimes[lastStop]) {
 			return null;
 		}
 
-		List<MapNode> nodePath = pathFinder.getShortestPath(lastMapNode.getNode(), to.getNode());
-
-		// this assertion should never fire if the map is checked in read phase
-		assert nodePath.size() > 0 : "No path from " + lastMapNode.getNode() + " to " +
-			to.getNode() + ". The simulation map isn't fully connected";
+		ScheduledTrajectory.Leg leg = trajectory.getLeg(lastStop, to);
 
-		double distance = 0;
-		for (int i = 0; i < nodePath.size() - 1; i++) {
-			MapNode n1 = nodePath.get(i);
-			MapNode n2 = nodePath.get(i + 1);
-			distance += n1.getLocation().distance(n2.getLocation());
-		}
-		double duration = to.getTime() - SimClock.getTime();
+		double duration = stopTimes[to] - SimClock.getTime();
 		if (duration <= 0) {
 		    // duration can be negative due to delay models.
 		    duration = SimClock.getUpdateInterval();
         }
 
-		for (MapNode node : nodePath) { // create a Path from the shortest path
-			p.addWaypoint(node.getLocation());
+		Path p = newPath(speed);
+		for (int i = 0, n = leg.getNrofWaypoints(); i < n; i++) {
+			p.addWaypoint(leg.getWaypoint(i));
 		}
-		p.setSpeed(distance / duration);
+		p.setSpeed(leg.getLength() / duration);
 
-		lastMapNode = to;
+		lastStop = to;
 
 		return p;
 	}
 
 	@Override
 	public double nextPathAvailable() {
-		return lastMapNode.getTime();
+		return stopTimes[lastStop];
 	}
 
 	/**
@@ -152,22 +190,33 @@ public class MapScheduledMovement extends MapBasedMovement implements
             this.host.updateActiveness(updatedActiveTimes);
             updatedActiveTimes = null;
         }
-		if (lastMapNode == null) {
-			lastMapNode = route.nextStop();
+		if (lastStop < 0) {
+			lastStop = nextStop++;
 		}
 
-		return lastMapNode.getNode().getLocation().clone();
+		return trajectory.getStop(lastStop).getLocation().clone();
 	}
 
 	@Override
 	public Coord getLastLocation() {
-		if (lastMapNode != null) {
-			return lastMapNode.getNode().getLocation().clone();
+		if (lastStop >= 0) {
+			return trajectory.getStop(lastStop).getLocation().clone();
 		} else {
 			return null;
 		}
 	}
 
+	/**
+	 * Returns the location of the host at the given time according to the
+	 * host's (delayed) schedule. The host leaves a stop at the stop's time and
+	 * arrives at the next stop at that stop's time.
+	 * @param time The time
+	 * @return The location at the time
+	 */
+	public Coord getLocationAt(double time) {
+		return trajectory.getLocation(stopTimes, time);
+	}
+
 	public MapScheduledRoute getSchedule() {
 		return allRoutes.get(nextRouteIndex).replicate();
 	}
@@ -183,6 +232,11 @@ public class MapScheduledMovement extends MapBasedMovement implements
 	 * @return The list of stops
 	 */
 	public List<MapScheduledNode> getStops() {
-		return route.getStops();
+		List<MapScheduledNode> stops = new ArrayList<MapScheduledNode>();
+		for (int i = 0; i < stopTimes.length; i++) {
+			stops.add(new MapScheduledNode(stopTimes[i],
+					trajectory.getStop(i)));
+		}
+		return stops;
 	}
 }
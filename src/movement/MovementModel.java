@@ -61,6 +61,9 @@ public abstract class MovementModel {
 
 	protected ModuleCommunicationBus comBus;
 
+	/** A path the host has finished and that can be reused or null */
+	private Path recycledPath;
+
 	// static initialization of all movement models' random number generator
 	static {
 		DTNSim.registerForReset(MovementModel.class.getCanonicalName());
@@ -198,6 +201,33 @@ public abstract class MovementModel {
 	 */
 	public abstract Path getPath();
 
+	/**
+	 * Returns an empty path with the given speed. The path is one recycled
+	 * with {@link #recyclePath(Path)}, if such is available, or a new path.
+	 * Models should use this only for paths they don't keep references to
+	 * after returning them from {@link #getPath()}.
+	 * @param speed The speed on the path
+	 * @return An empty path
+	 */
+	protected Path newPath(double speed) {
+		Path p = this.recycledPath;
+		if (p == null) {
+			return new Path(speed);
+		}
+		this.recycledPath = null;
+		p.reset(speed);
+		return p;
+	}
+
+	/**
+	 * Gives a path returned by {@link #getPath()} back to this model after
+	 * the host has traveled it. The path must not be used after this.
+	 * @param path The path
+	 */
+	public void recyclePath(Path path) {
+		this.recycledPath = path;
+	}
+
 	/**
 	 * Returns a new initial placement for a node
 	 * @return The initial coordinates for a node
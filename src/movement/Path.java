@@ -4,19 +4,31 @@
  */
 package movement;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 import core.Coord;
 
 /**
- * A Path between multiple Coordinates.
+ * A Path between multiple Coordinates. The waypoints and speeds are stored
+ * in primitive arrays that grow as needed, so a path can be cleared and
+ * reused (see {@link MovementModel#recyclePath(Path)}) without creating new
+ * objects. {@link #getCoords()} and {@link #getSpeeds()} return list views
+ * of the arrays.
  */
 public class Path  {
-	/** coordinates of the path */
-	private List<Coord> coords;
+	/** Initial capacity of the waypoint arrays */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** x coordinates of the path's waypoints */
+	private double[] xs;
+	/** y coordinates of the path's waypoints */
+	private double[] ys;
+	private int nrofWaypoints;
 	/** speeds in the path legs */
-	private List<Double> speeds;
+	private double[] speeds;
+	private int nrofSpeeds;
 	private int nextWpIndex;
 
 	/**
@@ -24,19 +36,23 @@ public class Path  {
 	 */
 	public Path() {
 		this.nextWpIndex = 0;
-		this.coords = new ArrayList<Coord>();
-		this.speeds = new ArrayList<Double>(1);
+		this.xs = new double[INITIAL_CAPACITY];
+		this.ys = new double[INITIAL_CAPACITY];
+		this.speeds = new double[1];
 	}
 
 	/**
-	 * Copy constructor. Creates a copy of this path with a shallow copy of
-	 * the coordinates and speeds.
+	 * Copy constructor. Creates a copy of this path with a copy of the
+	 * coordinates and speeds.
 	 * @param path The path to create the copy from
 	 */
 	public Path(Path path) {
 		this.nextWpIndex = path.nextWpIndex;
-		this.coords = new ArrayList<Coord>((ArrayList<Coord>)path.coords);
-		this.speeds = new ArrayList<Double>((ArrayList<Double>)path.speeds);
+		this.nrofWaypoints = path.nrofWaypoints;
+		this.xs = Arrays.copyOf(path.xs, Math.max(path.nrofWaypoints, 1));
+		this.ys = Arrays.copyOf(path.ys, Math.max(path.nrofWaypoints, 1));
+		this.nrofSpeeds = path.nrofSpeeds;
+		this.speeds = Arrays.copyOf(path.speeds, Math.max(path.nrofSpeeds, 1));
 	}
 
 	/**
@@ -48,21 +64,57 @@ public class Path  {
 		setSpeed(speed);
 	}
 
+	/**
+	 * Clears the path for reuse and sets a constant speed for it
+	 * @param speed The speed on the path
+	 */
+	void reset(double speed) {
+		this.nextWpIndex = 0;
+		this.nrofWaypoints = 0;
+		setSpeed(speed);
+	}
+
 	/**
 	 * Sets a constant speed for the whole path. Any previously set speed(s)
 	 * is discarded.
 	 */
 	public void setSpeed(double speed) {
-		this.speeds = new ArrayList<Double>(1);
-		speeds.add(speed);
+		this.speeds[0] = speed;
+		this.nrofSpeeds = 1;
+	}
+
+	/**
+	 * Replaces the speeds of this path
+	 * @param speeds The new speeds
+	 * @param nrofSpeeds Number of speeds to take from the array
+	 */
+	void setSpeeds(double[] speeds, int nrofSpeeds) {
+		if (this.speeds.length < nrofSpeeds) {
+			this.speeds = new double[nrofSpeeds];
+		}
+		System.arraycopy(speeds, 0, this.speeds, 0, nrofSpeeds);
+		this.nrofSpeeds = nrofSpeeds;
 	}
 
 	/**
-	 * Returns a reference to the coordinates of this path
+	 * Returns a view of the coordinates of this path. The coordinates
+	 * returned by the view are copies of the waypoints and the view reflects
+	 * the changes to the path.
 	 * @return coordinates of the path
 	 */
 	public List<Coord> getCoords() {
-		return this.coords;
+		return new AbstractList<Coord>() {
+			@Override
+			public Coord get(int index) {
+				checkIndex(index, nrofWaypoints);
+				return new Coord(xs[index], ys[index]);
+			}
+
+			@Override
+			public int size() {
+				return nrofWaypoints;
+			}
+		};
 	}
 
 	/**
@@ -70,9 +122,18 @@ public class Path  {
 	 * @param wp The waypoint to add
 	 */
 	public void addWaypoint(Coord wp) {
-		assert this.speeds.size() <= 1 : "This method should be used only for" +
+		addWaypoint(wp.getX(), wp.getY());
+	}
+
+	/**
+	 * Adds a new waypoint to the end of the path.
+	 * @param x The x coordinate of the waypoint
+	 * @param y The y coordinate of the waypoint
+	 */
+	public void addWaypoint(double x, double y) {
+		assert this.nrofSpeeds <= 1 : "This method should be used only for" +
 			" paths with constant speed";
-		this.coords.add(wp);
+		appendWaypoint(x, y);
 	}
 
 	/**
@@ -81,17 +142,53 @@ public class Path  {
 	 * @param speed The speed towards that waypoint
 	 */
 	public void addWaypoint(Coord wp, double speed) {
-		this.coords.add(wp);
-		this.speeds.add(speed);
+		addWaypoint(wp.getX(), wp.getY(), speed);
+	}
+
+	/**
+	 * Adds a new waypoint with a speed towards that waypoint
+	 * @param x The x coordinate of the waypoint
+	 * @param y The y coordinate of the waypoint
+	 * @param speed The speed towards that waypoint
+	 */
+	public void addWaypoint(double x, double y, double speed) {
+		appendWaypoint(x, y);
+		if (this.nrofSpeeds == this.speeds.length) {
+			this.speeds = Arrays.copyOf(this.speeds, this.speeds.length * 2);
+		}
+		this.speeds[this.nrofSpeeds++] = speed;
+	}
+
+	private void appendWaypoint(double x, double y) {
+		if (this.nrofWaypoints == this.xs.length) {
+			int capacity = Math.max(this.xs.length * 2, INITIAL_CAPACITY);
+			this.xs = Arrays.copyOf(this.xs, capacity);
+			this.ys = Arrays.copyOf(this.ys, capacity);
+		}
+		this.xs[this.nrofWaypoints] = x;
+		this.ys[this.nrofWaypoints] = y;
+		this.nrofWaypoints++;
 	}
 
 	/**
 	 * Returns the next waypoint on this path
-	 * @return the next waypoint
+	 * @return the next waypoint (a new Coord object)
 	 */
 	public Coord getNextWaypoint() {
+		Coord c = new Coord(0, 0);
+		getNextWaypoint(c);
+		return c;
+	}
+
+	/**
+	 * Moves to the next waypoint on this path and stores its location
+	 * to the given coordinate
+	 * @param wp The coordinate to set to the next waypoint's location
+	 */
+	public void getNextWaypoint(Coord wp) {
 		assert hasNext() : "Path didn't have " + (nextWpIndex+1) + ". waypoint";
-		return coords.get(nextWpIndex++);
+		wp.setLocation(xs[nextWpIndex], ys[nextWpIndex]);
+		nextWpIndex++;
 	}
 
 	/**
@@ -99,7 +196,7 @@ public class Path  {
 	 * @return true if the path has more waypoints, false if not
 	 */
 	public boolean hasNext() {
-		return nextWpIndex < this.coords.size();
+		return nextWpIndex < this.nrofWaypoints;
 	}
 
 	/**
@@ -108,14 +205,14 @@ public class Path  {
 	 * @return the speed towards the next waypoint
 	 */
 	public double getSpeed() {
-		assert speeds.size() != 0 : "No speed set";
+		assert nrofSpeeds != 0 : "No speed set";
 		assert nextWpIndex != 0 : "No waypoint asked";
 
-		if (speeds.size() == 1) {
-			return speeds.get(0);
+		if (nrofSpeeds == 1) {
+			return speeds[0];
 		}
 		else {
-			return speeds.get(nextWpIndex-1);
+			return speeds[nextWpIndex-1];
 		}
 	}
 
@@ -124,18 +221,39 @@ public class Path  {
 	 * @return Path as a string
 	 */
 	public String toString() {
-		String s ="";
-		for (int i=0, n=coords.size(); i<n; i++) {
-			Coord c = coords.get(i);
-			s+= "->" + c;
-			if (speeds.size() > 1) {
-				s += String.format("@%.2f ",speeds.get(i));
+		StringBuilder s = new StringBuilder();
+		for (int i=0; i<nrofWaypoints; i++) {
+			s.append("->").append(new Coord(xs[i], ys[i]));
+			if (nrofSpeeds > 1) {
+				s.append(String.format("@%.2f ", speeds[i]));
 			}
 		}
-		return s;
+		return s.toString();
 	}
 
+	/**
+	 * Returns a view of the speeds of this path
+	 * @return speeds of the path
+	 */
 	public List<Double> getSpeeds() {
-		return this.speeds;
+		return new AbstractList<Double>() {
+			@Override
+			public Double get(int index) {
+				checkIndex(index, nrofSpeeds);
+				return speeds[index];
+			}
+
+			@Override
+			public int size() {
+				return nrofSpeeds;
+			}
+		};
+	}
+
+	private static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index +
+					", Size: " + size);
+		}
 	}
 }
@@ -37,8 +37,8 @@ extends MovementModel {
     @Override
     public Path getPath() {
         Path p;
-        p = new Path( super.generateSpeed() );
-        p.addWaypoint( this.lastWaypoint.clone() );
+        p = newPath( generateSpeed() );
+        p.addWaypoint( this.lastWaypoint );
         Coord next = this.getRandomWaypoint( this.lastWaypoint.getX(),
                                              this.lastWaypoint.getY() );
         p.addWaypoint( next );
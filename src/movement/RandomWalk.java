@@ -48,8 +48,8 @@ public class RandomWalk extends MovementModel implements SwitchableMovement {
 	@Override
 	public Path getPath() {
 		Path p;
-		p = new Path(generateSpeed());
-		p.addWaypoint(lastWaypoint.clone());
+		p = newPath(generateSpeed());
+		p.addWaypoint(lastWaypoint);
 		double maxX = getMaxX();
 		double maxY = getMaxY();
 
@@ -29,7 +29,7 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	 */
 	public ShortestPathMapBasedMovement(Settings settings) {
 		super(settings);
-		this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		this.pathFinder = new DijkstraPathFinder(getMap(), getOkMapNodeTypes());
 		this.pois = new PointsOfInterest(getMap(), getOkMapNodeTypes(),
 				settings, rng);
 	}
@@ -47,7 +47,7 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 
 	@Override
 	public Path getPath() {
-		Path p = new Path(generateSpeed());
+		Path p = newPath(generateSpeed());
 		MapNode to = pois.selectDestination();
 
 		List<MapNode> nodePath = pathFinder.getShortestPath(lastMapNode, to);
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement;
+
+import input.TrajectoryFile;
+
+import java.util.List;
+
+import core.Coord;
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Records what a host's movement model returns to the host to a
+ * {@link TrajectoryFile.Writer}. The host calls the recorder every time it
+ * has asked its movement model for something, so the host keeps its own
+ * movement model (and {@link DTNHost#getMovement()} returns it). The
+ * recorded movement can be replayed with {@link TrajectoryReplayMovement}.
+ */
+public class TrajectoryRecorder {
+	private final TrajectoryFile.Writer writer;
+	private boolean active;
+	private boolean activeRecorded;
+	private double[] xs = new double[8];
+	private double[] ys = new double[8];
+	private double[] speeds = new double[8];
+
+	/**
+	 * Creates a recorder prototype
+	 * @param writer The writer for the recorded movement
+	 */
+	public TrajectoryRecorder(TrajectoryFile.Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param tr The prototype
+	 */
+	protected TrajectoryRecorder(TrajectoryRecorder tr) {
+		this.writer = tr.writer;
+	}
+
+	/**
+	 * Records the initial location the host got
+	 * @param host The host
+	 * @param c The initial location
+	 */
+	public void initialLocation(DTNHost host, Coord c) {
+		this.writer.initialLocation(host.getAddress(), c.getX(), c.getY());
+	}
+
+	/**
+	 * Records a path the host got
+	 * @param host The host
+	 * @param p The path (or null if the host didn't get a path)
+	 */
+	public void path(DTNHost host, Path p) {
+		int address = host.getAddress();
+		double now = SimClock.getTime();
+		if (p == null) {
+			this.writer.noPath(address, now);
+			return;
+		}
+
+		List<Coord> coords = p.getCoords();
+		List<Double> pathSpeeds = p.getSpeeds();
+		int nrofWaypoints = coords.size();
+		int nrofSpeeds = pathSpeeds.size();
+		if (this.xs.length < nrofWaypoints) {
+			this.xs = new double[nrofWaypoints];
+			this.ys = new double[nrofWaypoints];
+		}
+		if (this.speeds.length < nrofSpeeds) {
+			this.speeds = new double[nrofSpeeds];
+		}
+		for (int i = 0; i < nrofWaypoints; i++) {
+			Coord c = coords.get(i);
+			this.xs[i] = c.getX();
+			this.ys[i] = c.getY();
+		}
+		for (int i = 0; i < nrofSpeeds; i++) {
+			this.speeds[i] = pathSpeeds.get(i);
+		}
+		this.writer.path(address, now, this.xs, this.ys, nrofWaypoints,
+				this.speeds, nrofSpeeds);
+	}
+
+	/**
+	 * Records the time the host got for its next path
+	 * @param host The host
+	 * @param time The time of the next path
+	 */
+	public void nextPathAvailable(DTNHost host, double time) {
+		this.writer.nextTime(host.getAddress(), SimClock.getTime(), time);
+	}
+
+	/**
+	 * Records the activeness of the host's movement model if it has changed
+	 * @param host The host
+	 * @param isActive The activeness the model returned
+	 */
+	public void activeness(DTNHost host, boolean isActive) {
+		if (!this.activeRecorded || isActive != this.active) {
+			this.writer.activeness(host.getAddress(), SimClock.getTime(),
+					isActive);
+			this.active = isActive;
+			this.activeRecorded = true;
+		}
+	}
+
+	/**
+	 * Creates a replicate of this recorder for a new host
+	 * @return The replicate
+	 */
+	public TrajectoryRecorder replicate() {
+		return new TrajectoryRecorder(this);
+	}
+}
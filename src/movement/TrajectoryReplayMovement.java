@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement;
+
+import input.TrajectoryFile;
+
+import java.io.File;
+
+import core.Coord;
+import core.DTNHost;
+import core.Settings;
+import core.SimClock;
+import core.SimError;
+
+/**
+ * Movement model that replays movement recorded to a trajectory file
+ * (see {@link TrajectoryFile} and {@link core.SimScenario#TRAJECTORY_FILE_S}).
+ * The host gets the same paths, waiting times and movement activeness at
+ * the same times as the recorded host with the same network address, so
+ * the movement is the same as in the recorded run if the scenario's update
+ * interval and warmup time are the same. The hosts' activeness times must
+ * be the same as in the recorded run too.
+ */
+public class TrajectoryReplayMovement extends MovementModel {
+	/** trajectory file's path -setting id ({@value})*/
+	public static final String TRAJECTORY_FILE_S = "trajectoryFile";
+
+	private TrajectoryFile file;
+	private TrajectoryFile.HostTrajectory trajectory;
+	private TrajectoryFile.Cursor cursor;
+
+	/**
+	 * Creates a new movement model based on a Settings object's settings.
+	 * @param settings The Settings object where the settings are read from
+	 */
+	public TrajectoryReplayMovement(Settings settings) {
+		super(settings);
+		this.file = new TrajectoryFile(new File(
+				settings.getSetting(TRAJECTORY_FILE_S)));
+	}
+
+	/**
+	 * Copy constructor.
+	 * @param trm The prototype
+	 */
+	protected TrajectoryReplayMovement(TrajectoryReplayMovement trm) {
+		super(trm);
+		this.file = trm.file;
+	}
+
+	@Override
+	public void setHost(DTNHost host) {
+		super.setHost(host);
+		this.trajectory = this.file.getHost(host.getAddress());
+		this.cursor = this.trajectory.cursor();
+	}
+
+	@Override
+	public Coord getInitialLocation() {
+		return new Coord(trajectory.getInitialX(), trajectory.getInitialY());
+	}
+
+	@Override
+	public Path getPath() {
+		if (!cursor.hasNext()) {
+			return null;
+		}
+		byte type = cursor.next();
+		if (type == TrajectoryFile.NO_PATH) {
+			return null;
+		}
+		checkType(type, TrajectoryFile.PATH);
+
+		Path p = newPath(0);
+		for (int i = 0, n = cursor.getNrofWaypoints(); i < n; i++) {
+			p.addWaypoint(cursor.getX(i), cursor.getY(i));
+		}
+		p.setSpeeds(cursor.getSpeeds(), cursor.getNrofSpeeds());
+		return p;
+	}
+
+	@Override
+	public double nextPathAvailable() {
+		if (!cursor.hasNext()) {
+			return Double.MAX_VALUE; // end of the recorded movement
+		}
+		checkType(cursor.next(), TrajectoryFile.NEXT_TIME);
+		return cursor.getTime();
+	}
+
+	@Override
+	public boolean isActive() {
+		boolean active = super.isActive();
+		return trajectory.isActive(SimClock.getTime(), active);
+	}
+
+	private void checkType(byte type, byte expected) {
+		if (type != expected) {
+			throw new SimError("Trajectory of host " + host + " doesn't " +
+					"match the movement at " + SimClock.getTime() + " (are " +
+					"the scenario settings the same as when recording?)");
+		}
+	}
+
+	@Override
+	public TrajectoryReplayMovement replicate() {
+		return new TrajectoryReplayMovement(this);
+	}
+}
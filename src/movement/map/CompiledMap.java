@@ -0,0 +1,248 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import core.Coord;
+
+/**
+ * Compiled binary form of a map read from map files. The compiled map has
+ * the nodes in the same order as the map that was compiled, their types,
+ * the neighbors of the nodes as a compressed sparse row (CSR) adjacency
+ * list and the bounds of the map. It also has the length and CRC-32
+ * checksum of every map file the map was read from, so a compiled map
+ * is used only if the map files haven't changed after compiling.
+ * <PRE>
+ * int magic, int version, int nrofFiles, nrofFiles * (long length,
+ * long crc), int nrofNodes, int nrofEdges, double minX, minY, maxX, maxY,
+ * nrofNodes * double x, nrofNodes * double y, nrofNodes * int type mask,
+ * (nrofNodes + 1) * int offset, nrofEdges * int neighbor
+ * </PRE>
+ */
+public class CompiledMap {
+	private static final int MAGIC = 0x534d4150;
+	private static final int VERSION = 1;
+	/** Suffix of the compiled map files */
+	public static final String SUFFIX = ".map";
+
+	private CompiledMap() {}
+
+	/**
+	 * Returns the compiled map file for a set of map files. The file is in
+	 * the directory of the first map file and its name depends on the paths
+	 * of all the map files.
+	 * @param mapFiles The map files
+	 * @return The compiled map file
+	 */
+	public static File getFile(List<File> mapFiles) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		for (File f : mapFiles) {
+			digest.update(f.getAbsolutePath().getBytes());
+			digest.update((byte)0);
+		}
+
+		StringBuilder sb = new StringBuilder("simmap-");
+		byte[] bytes = digest.digest();
+		for (int i = 0; i < 8; i++) {
+			sb.append(String.format("%02x", bytes[i]));
+		}
+		sb.append(SUFFIX);
+		File dir = mapFiles.get(0).getAbsoluteFile().getParentFile();
+		return new File(dir, sb.toString());
+	}
+
+	/**
+	 * Writes a compiled map
+	 * @param map The map to compile
+	 * @param mapFiles The files the map was read from
+	 * @param file The compiled map file
+	 * @throws IOException if writing failed
+	 */
+	public static void write(SimMap map, List<File> mapFiles, File file)
+			throws IOException {
+		List<MapNode> nodes = map.getNodes();
+		Map<MapNode, Integer> ids = new IdentityHashMap<MapNode, Integer>();
+		int nrofEdges = 0;
+		for (MapNode node : nodes) {
+			ids.put(node, ids.size());
+			nrofEdges += node.getNeighbors().size();
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(mapFiles.size());
+			for (File f : mapFiles) {
+				out.writeLong(f.length());
+				out.writeLong(checksum(f));
+			}
+			out.writeInt(nodes.size());
+			out.writeInt(nrofEdges);
+			out.writeDouble(map.getMinBound().getX());
+			out.writeDouble(map.getMinBound().getY());
+			out.writeDouble(map.getMaxBound().getX());
+			out.writeDouble(map.getMaxBound().getY());
+			for (MapNode node : nodes) {
+				out.writeDouble(node.getLocation().getX());
+			}
+			for (MapNode node : nodes) {
+				out.writeDouble(node.getLocation().getY());
+			}
+			for (MapNode node : nodes) {
+				out.writeInt(node.getTypeMask());
+			}
+			int offset = 0;
+			for (MapNode node : nodes) {
+				out.writeInt(offset);
+				offset += node.getNeighbors().size();
+			}
+			out.writeInt(offset);
+			for (MapNode node : nodes) {
+				for (MapNode neighbor : node.getNeighbors()) {
+					Integer id = ids.get(neighbor);
+					if (id == null) {
+						throw new IOException("Neighbor " + neighbor + " of " +
+								node + " is not in the map");
+					}
+					out.writeInt(id);
+				}
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a compiled map if the map files haven't changed after it was
+	 * compiled
+	 * @param file The compiled map file
+	 * @param mapFiles The files the map was read from
+	 * @return The map or null if the map files have changed
+	 * @throws IOException if reading failed or the file is not valid
+	 */
+	public static SimMap read(File file, List<File> mapFiles)
+			throws IOException {
+		ByteBuffer buf;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel fc = raf.getChannel();
+			buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+		}
+
+		if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+			throw new IOException("Not a compiled map file of this version");
+		}
+		if (buf.getInt() != mapFiles.size()) {
+			return null;
+		}
+		for (File f : mapFiles) {
+			long length = buf.getLong();
+			long crc = buf.getLong();
+			if (f.length() != length || checksum(f) != crc) {
+				return null;
+			}
+		}
+
+		try {
+			int n = buf.getInt();
+			int nrofEdges = buf.getInt();
+			/* 8+8+4+4 bytes per node, an offset more and 4 bytes per edge */
+			if (n < 0 || nrofEdges < 0 || buf.remaining() < 32 +
+					24L * n + 4 + 4L * nrofEdges) {
+				throw new IOException("Invalid compiled map file");
+			}
+			Coord minBound = new Coord(buf.getDouble(), buf.getDouble());
+			Coord maxBound = new Coord(buf.getDouble(), buf.getDouble());
+			double[] xs = new double[n];
+			double[] ys = new double[n];
+			int[] types = new int[n];
+			int[] offsets = new int[n + 1];
+			int[] targets = new int[nrofEdges];
+			buf.asDoubleBuffer().get(xs);
+			buf.position(buf.position() + 8 * n);
+			buf.asDoubleBuffer().get(ys);
+			buf.position(buf.position() + 8 * n);
+			buf.asIntBuffer().get(types);
+			buf.position(buf.position() + 4 * n);
+			buf.asIntBuffer().get(offsets);
+			buf.position(buf.position() + 4 * (n + 1));
+			buf.asIntBuffer().get(targets);
+
+			if (offsets[0] != 0 || offsets[n] != nrofEdges) {
+				throw new IOException("Invalid compiled map file");
+			}
+			for (int i = 0; i < n; i++) {
+				if (offsets[i + 1] < offsets[i]) {
+					throw new IOException("Invalid compiled map file");
+				}
+			}
+
+			List<MapNode> nodes = new ArrayList<MapNode>(n);
+			for (int i = 0; i < n; i++) {
+				MapNode node = new MapNode(new Coord(xs[i], ys[i]));
+				for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+					if ((types[i] & (1 << t)) != 0) {
+						node.addType(t);
+					}
+				}
+				nodes.add(node);
+			}
+			for (int i = 0; i < n; i++) {
+				MapNode node = nodes.get(i);
+				for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+					node.addNeighbor(nodes.get(targets[e]));
+				}
+			}
+
+			return new SimMap(nodes, minBound, maxBound);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IOException("Invalid compiled map file");
+		}
+	}
+
+	/**
+	 * Returns the CRC-32 checksum of a file's contents
+	 * @param file The file
+	 * @return The checksum
+	 * @throws IOException if reading the file failed
+	 */
+	public static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel fc = raf.getChannel();
+			long size = fc.size();
+			for (long pos = 0; pos < size; pos += Integer.MAX_VALUE) {
+				crc.update(fc.map(FileChannel.MapMode.READ_ONLY, pos,
+						Math.min(Integer.MAX_VALUE, size - pos)));
+			}
+		}
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,861 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Contraction hierarchy of a {@link MapGraph} for fast shortest path
+ * queries on large maps. The nodes are contracted one by one in the order
+ * of their importance and shortcut edges are added to keep the distances
+ * between the remaining nodes. A query is a bidirectional Dijkstra search
+ * that only follows edges to more important nodes and visits a small part
+ * of the graph. The shortcuts of the found path are unpacked to the
+ * original map nodes.
+ * <P>
+ * A hierarchy only contains the nodes of the OK map node types and can be
+ * saved to a file and loaded again for the same graph.
+ * </P>
+ */
+public class ContractionHierarchy {
+	/** Value for infinite distance  */
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Maximum number of nodes a witness search may visit */
+	private static final int WITNESS_SEARCH_LIMIT = 500;
+	private static final int MAGIC = 0x43484d47;
+	private static final int VERSION = 1;
+
+	/** The graph of the hierarchy */
+	private final MapGraph graph;
+	/** Contraction order of the nodes or -1 for nodes that are not OK */
+	private final int[] ranks;
+	/** Upward edges of the nodes: edges to more important nodes */
+	private final int[] upOffsets;
+	private final int[] upTargets;
+	private final double[] upWeights;
+	/** Downward edges of the nodes: edges from more important nodes
+	 * (the "targets" are the sources of the edges) */
+	private final int[] downOffsets;
+	private final int[] downTargets;
+	private final double[] downWeights;
+	/** Middle nodes of the shortcut edges or -1 for original edges */
+	private final int[] upMiddles;
+	private final int[] downMiddles;
+
+	/** Search state of the queries */
+	private double[] upDistances;
+	private double[] downDistances;
+	private int[] upPrev;
+	private int[] downPrev;
+	private int[] upStamps;
+	private int[] downStamps;
+	private int stamp;
+	private NodeHeap upHeap;
+	private NodeHeap downHeap;
+
+	private ContractionHierarchy(MapGraph graph, int[] ranks, int[][] up,
+			double[] upWeights, int[][] down, double[] downWeights) {
+		this.graph = graph;
+		this.ranks = ranks;
+		this.upOffsets = up[0];
+		this.upTargets = up[1];
+		this.upMiddles = up[2];
+		this.upWeights = upWeights;
+		this.downOffsets = down[0];
+		this.downTargets = down[1];
+		this.downMiddles = down[2];
+		this.downWeights = downWeights;
+
+		int n = graph.getNrofNodes();
+		this.upDistances = new double[n];
+		this.downDistances = new double[n];
+		this.upPrev = new int[n];
+		this.downPrev = new int[n];
+		this.upStamps = new int[n];
+		this.downStamps = new int[n];
+		this.upHeap = new NodeHeap(n);
+		this.downHeap = new NodeHeap(n);
+	}
+
+	/**
+	 * Returns the graph of the hierarchy
+	 * @return the graph of the hierarchy
+	 */
+	public MapGraph getGraph() {
+		return this.graph;
+	}
+
+	/**
+	 * Returns a hierarchy for the graph. The hierarchy is read from a file
+	 * in the given directory if there is one for the same graph and OK node
+	 * types. Otherwise the hierarchy is built and saved to the directory.
+	 * @param graph The graph
+	 * @param okTypeMask Bit mask of the OK node types or 0 if all nodes are
+	 * OK (see {@link MapNode#getTypeMask()})
+	 * @param dir The directory of the hierarchy files or null if the
+	 * hierarchy shouldn't be saved
+	 * @return The hierarchy
+	 */
+	public static ContractionHierarchy getHierarchy(MapGraph graph,
+			int okTypeMask, File dir) {
+		if (dir == null) {
+			return build(graph, okTypeMask);
+		}
+
+		File file = new File(dir, "simmap-" + hash(graph, okTypeMask) + ".ch");
+		if (file.isFile()) {
+			try {
+				return read(graph, file);
+			} catch (IOException e) {
+				System.err.println("Warning: ignoring contraction hierarchy " +
+						file + " (" + e.getMessage() + ")");
+			}
+		}
+
+		ContractionHierarchy ch = build(graph, okTypeMask);
+		try {
+			ch.write(file);
+		} catch (IOException e) {
+			System.err.println("Warning: couldn't write contraction " +
+					"hierarchy " + file + " (" + e.getMessage() + ")");
+		}
+		return ch;
+	}
+
+	/**
+	 * Builds a hierarchy for the graph
+	 * @param graph The graph
+	 * @param okTypeMask Bit mask of the OK node types or 0 if all nodes are
+	 * OK
+	 * @return The hierarchy
+	 */
+	public static ContractionHierarchy build(MapGraph graph, int okTypeMask) {
+		return new Builder(graph, okTypeMask).build();
+	}
+
+	/**
+	 * Finds a shortest path between two nodes
+	 * @param source Id of the path's source node
+	 * @param target Id of the path's destination node
+	 * @return Ids of the nodes on the path (starting from the source), an
+	 * empty array if there is no path or null if the source is not in the
+	 * hierarchy
+	 */
+	public int[] getShortestPath(int source, int target) {
+		if (ranks[source] < 0) {
+			return null;
+		}
+		if (ranks[target] < 0) {
+			return new int[0];
+		}
+		if (++stamp == 0) {
+			Arrays.fill(upStamps, 0);
+			Arrays.fill(downStamps, 0);
+			stamp = 1;
+		}
+		upHeap.clear();
+		downHeap.clear();
+
+		double best = INFINITY;
+		int meeting = -1;
+		setUp(source, 0, -1);
+		setDown(target, 0, -1);
+
+		while (true) {
+			boolean upOpen = !upHeap.isEmpty() && upHeap.getMinKey() < best;
+			boolean downOpen = !downHeap.isEmpty() &&
+					downHeap.getMinKey() < best;
+			if (!upOpen && !downOpen) {
+				break;
+			}
+
+			if (upOpen && (!downOpen ||
+					upHeap.getMinKey() <= downHeap.getMinKey())) {
+				int node = upHeap.pop();
+				if (downStamps[node] == stamp &&
+						upDistances[node] + downDistances[node] < best) {
+					best = upDistances[node] + downDistances[node];
+					meeting = node;
+				}
+				if (isStalled(node, upDistances, upStamps, downOffsets,
+						downTargets, downWeights)) {
+					continue;
+				}
+				for (int e = upOffsets[node]; e < upOffsets[node + 1]; e++) {
+					double dist = upDistances[node] + upWeights[e];
+					int n = upTargets[e];
+					if (upStamps[n] != stamp || dist < upDistances[n]) {
+						setUp(n, dist, e);
+					}
+				}
+			} else {
+				int node = downHeap.pop();
+				if (upStamps[node] == stamp &&
+						upDistances[node] + downDistances[node] < best) {
+					best = upDistances[node] + downDistances[node];
+					meeting = node;
+				}
+				if (isStalled(node, downDistances, downStamps, upOffsets,
+						upTargets, upWeights)) {
+					continue;
+				}
+				for (int e = downOffsets[node]; e < downOffsets[node+1]; e++) {
+					double dist = downDistances[node] + downWeights[e];
+					int n = downTargets[e];
+					if (downStamps[n] != stamp || dist < downDistances[n]) {
+						setDown(n, dist, e);
+					}
+				}
+			}
+		}
+
+		if (meeting < 0) {
+			return new int[0];
+		}
+		return unpackPath(source, meeting);
+	}
+
+	/**
+	 * Returns true if a node can be reached with a shorter distance through
+	 * a more important node that the search has already found (stall on
+	 * demand). The edges of such node don't need to be relaxed, because the
+	 * node can't be on a shortest path.
+	 * @param node The node
+	 * @param distances The distances of the search
+	 * @param stamps The stamps of the search's distances
+	 * @param offsets The offsets of the edges opposite to the search direction
+	 * @param targets The targets of the edges opposite to the search direction
+	 * @param weights The weights of the edges opposite to the search direction
+	 */
+	private boolean isStalled(int node, double[] distances, int[] stamps,
+			int[] offsets, int[] targets, double[] weights) {
+		for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+			int n = targets[e];
+			if (stamps[n] == stamp && distances[n] + weights[e] <
+					distances[node]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void setUp(int node, double distance, int edge) {
+		upStamps[node] = stamp;
+		upDistances[node] = distance;
+		upPrev[node] = edge;
+		upHeap.update(node, distance);
+	}
+
+	private void setDown(int node, double distance, int edge) {
+		downStamps[node] = stamp;
+		downDistances[node] = distance;
+		downPrev[node] = edge;
+		downHeap.update(node, distance);
+	}
+
+	/**
+	 * Unpacks the path found by the last search
+	 * @param source Id of the path's source
+	 * @param meeting The node where the upward and downward searches met
+	 * @return The nodes of the path
+	 */
+	private int[] unpackPath(int source, int meeting) {
+		IntList path = new IntList();
+		path.add(source);
+
+		/* the upward path from the source to the meeting node, backwards */
+		IntList upEdges = new IntList();
+		for (int n = meeting; n != source; ) {
+			int e = upPrev[n];
+			upEdges.add(e);
+			n = getUpSource(e);
+		}
+		int from = source;
+		for (int i = upEdges.size() - 1; i >= 0; i--) {
+			int e = upEdges.get(i);
+			unpack(from, upTargets[e], upMiddles[e], path);
+			from = upTargets[e];
+		}
+
+		/* the downward path from the meeting node to the target */
+		for (int n = meeting; downPrev[n] >= 0; ) {
+			int e = downPrev[n];
+			int to = getDownSource(e);
+			unpack(n, to, downMiddles[e], path);
+			n = to;
+		}
+
+		return path.toArray();
+	}
+
+	/**
+	 * Returns the node an upward edge starts from
+	 */
+	private int getUpSource(int edge) {
+		return findOffsetIndex(upOffsets, edge);
+	}
+
+	/**
+	 * Returns the node a downward edge leads to (the node whose downward
+	 * edges the edge is in)
+	 */
+	private int getDownSource(int edge) {
+		return findOffsetIndex(downOffsets, edge);
+	}
+
+	/**
+	 * Returns the node whose edges contain the given edge
+	 */
+	private static int findOffsetIndex(int[] offsets, int edge) {
+		int low = 0;
+		int high = offsets.length - 2;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (offsets[mid] <= edge) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Appends the original nodes of an edge, except the edge's first node,
+	 * to the path
+	 * @param from The node the edge starts from
+	 * @param to The node the edge leads to
+	 * @param middle The middle node of a shortcut or -1 for original edges
+	 * @param path The path to append to
+	 */
+	private void unpack(int from, int to, int middle, IntList path) {
+		IntList stack = new IntList();
+		stack.add(to);
+		stack.add(middle);
+		while (stack.size() > 0) {
+			middle = stack.pop();
+			to = stack.pop();
+			if (middle < 0) {
+				path.add(to);
+				from = to;
+				continue;
+			}
+			/* from -> middle is a downward edge of the middle node and
+			 * middle -> to an upward edge of it (the middle node was
+			 * contracted before both of the other nodes) */
+			stack.add(to);
+			stack.add(findMiddle(upOffsets, upTargets, upMiddles, middle,
+					to));
+			stack.add(middle);
+			stack.add(findMiddle(downOffsets, downTargets, downMiddles,
+					middle, from));
+		}
+	}
+
+	private static int findMiddle(int[] offsets, int[] targets,
+			int[] middles, int node, int target) {
+		for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+			if (targets[e] == target) {
+				return middles[e];
+			}
+		}
+		throw new IllegalStateException("Broken contraction hierarchy");
+	}
+
+	/**
+	 * Returns a hash of the graph and the OK node types for naming the
+	 * hierarchy files
+	 */
+	private static String hash(MapGraph graph, int okTypeMask) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer buf = ByteBuffer.allocate(32);
+		buf.putInt(VERSION).putInt(okTypeMask).putInt(graph.getNrofNodes());
+		digest.update(buf.array(), 0, buf.position());
+		for (int i = 0; i < graph.getNrofNodes(); i++) {
+			MapNode node = graph.getNode(i);
+			buf.clear();
+			buf.putDouble(node.getLocation().getX());
+			buf.putDouble(node.getLocation().getY());
+			buf.putInt(node.getTypeMask());
+			buf.putInt(graph.getEdgeStart(i + 1) - graph.getEdgeStart(i));
+			digest.update(buf.array(), 0, buf.position());
+			for (int e = graph.getEdgeStart(i); e < graph.getEdgeStart(i+1);
+					e++) {
+				buf.clear();
+				buf.putInt(graph.getEdgeTarget(e));
+				digest.update(buf.array(), 0, buf.position());
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		byte[] bytes = digest.digest();
+		for (int i = 0; i < 8; i++) {
+			sb.append(String.format("%02x", bytes[i]));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the hierarchy to a file
+	 * <PRE>
+	 * int magic, int version, int nrofNodes, nrofNodes * int rank,
+	 * up edges, down edges; edges: int nrofEdges, (nrofNodes + 1) * int offset,
+	 * nrofEdges * (int target, int middle, double weight)
+	 * </PRE>
+	 * @param file The file
+	 * @throws IOException if writing failed
+	 */
+	private void write(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(ranks.length);
+			for (int rank : ranks) {
+				out.writeInt(rank);
+			}
+			writeEdges(out, upOffsets, upTargets, upMiddles, upWeights);
+			writeEdges(out, downOffsets, downTargets, downMiddles, downWeights);
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeEdges(DataOutputStream out, int[] offsets,
+			int[] targets, int[] middles, double[] weights) throws IOException {
+		out.writeInt(targets.length);
+		for (int offset : offsets) {
+			out.writeInt(offset);
+		}
+		for (int e = 0; e < targets.length; e++) {
+			out.writeInt(targets[e]);
+			out.writeInt(middles[e]);
+			out.writeDouble(weights[e]);
+		}
+	}
+
+	/**
+	 * Reads a hierarchy from a file
+	 * @param graph The graph the hierarchy was built for
+	 * @param file The file
+	 * @return The hierarchy
+	 * @throws IOException if reading failed or the file is not valid
+	 */
+	private static ContractionHierarchy read(MapGraph graph, File file)
+			throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a contraction hierarchy file of " +
+						"this version");
+			}
+			int n = in.readInt();
+			if (n != graph.getNrofNodes()) {
+				throw new IOException("Wrong number of nodes");
+			}
+			int[] ranks = new int[n];
+			for (int i = 0; i < n; i++) {
+				ranks[i] = in.readInt();
+			}
+			int[][] up = new int[3][];
+			double[] upWeights = readEdges(in, n, up);
+			int[][] down = new int[3][];
+			double[] downWeights = readEdges(in, n, down);
+			return new ContractionHierarchy(graph, ranks, up, upWeights, down,
+					downWeights);
+		}
+	}
+
+	private static double[] readEdges(DataInputStream in, int nrofNodes,
+			int[][] edges) throws IOException {
+		int nrofEdges = in.readInt();
+		int[] offsets = new int[nrofNodes + 1];
+		int[] targets = new int[nrofEdges];
+		int[] middles = new int[nrofEdges];
+		double[] weights = new double[nrofEdges];
+		for (int i = 0; i <= nrofNodes; i++) {
+			offsets[i] = in.readInt();
+		}
+		for (int e = 0; e < nrofEdges; e++) {
+			targets[e] = in.readInt();
+			middles[e] = in.readInt();
+			weights[e] = in.readDouble();
+		}
+		edges[0] = offsets;
+		edges[1] = targets;
+		edges[2] = middles;
+		return weights;
+	}
+
+	/**
+	 * Growable list of ints
+	 */
+	private static class IntList {
+		private int[] values = new int[16];
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int get(int i) {
+			return values[i];
+		}
+
+		int pop() {
+			return values[--size];
+		}
+
+		int size() {
+			return size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Edges of a node during the contraction
+	 */
+	private static class EdgeList {
+		int[] nodes = new int[4];
+		double[] weights = new double[4];
+		int[] middles = new int[4];
+		int size;
+
+		/**
+		 * Adds an edge or, if there's a longer edge to the same node,
+		 * replaces it
+		 * @return True if the edge was added or replaced
+		 */
+		boolean add(int node, double weight, int middle) {
+			for (int i = 0; i < size; i++) {
+				if (nodes[i] == node) {
+					if (weights[i] <= weight) {
+						return false;
+					}
+					weights[i] = weight;
+					middles[i] = middle;
+					return true;
+				}
+			}
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+				middles = Arrays.copyOf(middles, size * 2);
+			}
+			nodes[size] = node;
+			weights[size] = weight;
+			middles[size] = middle;
+			size++;
+			return true;
+		}
+
+		/**
+		 * Removes the edge to a node (if there is one)
+		 */
+		void remove(int node) {
+			for (int i = 0; i < size; i++) {
+				if (nodes[i] == node) {
+					size--;
+					nodes[i] = nodes[size];
+					weights[i] = weights[size];
+					middles[i] = middles[size];
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds a hierarchy by contracting the nodes
+	 */
+	private static class Builder {
+		private final MapGraph graph;
+		private final int n;
+		/** Outgoing and incoming edges of the nodes (incl. shortcuts) */
+		private final EdgeList[] out;
+		private final EdgeList[] in;
+		private final boolean[] contracted;
+		/** Number of contracted neighbors of the nodes */
+		private final int[] contractedNeighbors;
+		/** Levels of the nodes (the longest chain of contracted nodes below
+		 * the node) */
+		private final int[] levels;
+		private final int[] ranks;
+
+		/** Witness search state */
+		private final double[] distances;
+		private final int[] stamps;
+		/** The search where a node was last a target of a witness search */
+		private final int[] targetStamps;
+		private int stamp;
+		private final NodeHeap heap;
+
+		Builder(MapGraph graph, int okTypeMask) {
+			this.graph = graph;
+			this.n = graph.getNrofNodes();
+			this.out = new EdgeList[n];
+			this.in = new EdgeList[n];
+			this.contracted = new boolean[n];
+			this.contractedNeighbors = new int[n];
+			this.levels = new int[n];
+			this.ranks = new int[n];
+			this.distances = new double[n];
+			this.stamps = new int[n];
+			this.targetStamps = new int[n];
+			this.heap = new NodeHeap(n);
+
+			for (int v = 0; v < n; v++) {
+				boolean ok = okTypeMask == 0 || graph.isType(v, okTypeMask);
+				ranks[v] = ok ? 0 : -1;
+				contracted[v] = !ok;
+				out[v] = new EdgeList();
+				in[v] = new EdgeList();
+			}
+			for (int v = 0; v < n; v++) {
+				if (contracted[v]) {
+					continue;
+				}
+				for (int e = graph.getEdgeStart(v); e < graph.getEdgeStart(v+1);
+						e++) {
+					int t = graph.getEdgeTarget(e);
+					if (!contracted[t] && t != v) {
+						out[v].add(t, graph.getEdgeWeight(e), -1);
+						in[t].add(v, graph.getEdgeWeight(e), -1);
+					}
+				}
+			}
+		}
+
+		ContractionHierarchy build() {
+			NodeHeap order = new NodeHeap(n);
+			for (int v = 0; v < n; v++) {
+				if (!contracted[v]) {
+					order.update(v, getPriority(v));
+				}
+			}
+
+			int rank = 0;
+			while (!order.isEmpty()) {
+				int v = order.pop();
+				double priority = getPriority(v);
+				if (!order.isEmpty() && priority > order.getMinKey()) {
+					order.update(v, priority); // lazy update
+					continue;
+				}
+				contract(v, true);
+				ranks[v] = rank++;
+				updateNeighbors(v, in[v], order);
+				updateNeighbors(v, out[v], order);
+			}
+
+			return toHierarchy();
+		}
+
+		/**
+		 * Updates the levels and priorities of the remaining neighbors of a
+		 * contracted node
+		 */
+		private void updateNeighbors(int v, EdgeList edges, NodeHeap order) {
+			for (int i = 0; i < edges.size; i++) {
+				int w = edges.nodes[i];
+				if (!contracted[w]) {
+					levels[w] = Math.max(levels[w], levels[v] + 1);
+					order.update(w, getPriority(w));
+				}
+			}
+		}
+
+		/**
+		 * Returns the contraction priority of a node (smaller is contracted
+		 * first): the edge difference (number of shortcuts minus the
+		 * removed edges), the number of contracted neighbors and the level
+		 */
+		private double getPriority(int v) {
+			int degree = 0;
+			for (int i = 0; i < in[v].size; i++) {
+				degree += contracted[in[v].nodes[i]] ? 0 : 1;
+			}
+			for (int i = 0; i < out[v].size; i++) {
+				degree += contracted[out[v].nodes[i]] ? 0 : 1;
+			}
+			return 2 * (contract(v, false) - degree) + contractedNeighbors[v] +
+				levels[v];
+		}
+
+		/**
+		 * Contracts a node or simulates its contraction
+		 * @param v The node
+		 * @param contract If true, the shortcuts are added and the node is
+		 * marked contracted
+		 * @return The number of shortcuts needed
+		 */
+		private int contract(int v, boolean contract) {
+			int shortcuts = 0;
+			EdgeList ins = in[v];
+			EdgeList outs = out[v];
+			for (int i = 0; i < ins.size; i++) {
+				int u = ins.nodes[i];
+				if (contracted[u]) {
+					continue;
+				}
+				double maxDistance = 0;
+				for (int j = 0; j < outs.size; j++) {
+					if (!contracted[outs.nodes[j]] && outs.nodes[j] != u) {
+						maxDistance = Math.max(maxDistance,
+								ins.weights[i] + outs.weights[j]);
+					}
+				}
+				witnessSearch(u, v, maxDistance, outs);
+
+				for (int j = 0; j < outs.size; j++) {
+					int x = outs.nodes[j];
+					if (contracted[x] || x == u) {
+						continue;
+					}
+					double distance = ins.weights[i] + outs.weights[j];
+					if (stamps[x] == stamp && distances[x] <= distance) {
+						continue; // there's a witness path
+					}
+					shortcuts++;
+					if (contract) {
+						out[u].add(x, distance, v);
+						in[x].add(u, distance, v);
+					}
+				}
+			}
+
+			if (contract) {
+				/* the edges of the node are left to it for the hierarchy and
+				 * removed from the remaining graph */
+				contracted[v] = true;
+				for (int i = 0; i < ins.size; i++) {
+					out[ins.nodes[i]].remove(v);
+					contractedNeighbors[ins.nodes[i]]++;
+				}
+				for (int i = 0; i < outs.size; i++) {
+					in[outs.nodes[i]].remove(v);
+					contractedNeighbors[outs.nodes[i]]++;
+				}
+			}
+			return shortcuts;
+		}
+
+		/**
+		 * Searches the distances from a node to the nearby nodes without
+		 * going through the node that is being contracted
+		 * @param source The source node
+		 * @param excluded The node that is being contracted
+		 * @param maxDistance The distance after which the search can stop
+		 * @param targets The edges to the nodes whose distances are needed
+		 * (the search stops when all of them are known)
+		 */
+		private void witnessSearch(int source, int excluded,
+				double maxDistance, EdgeList targets) {
+			stamp++;
+			heap.clear();
+			int nrofTargets = 0;
+			for (int i = 0; i < targets.size; i++) {
+				int x = targets.nodes[i];
+				if (targetStamps[x] != stamp && !contracted[x] && x != source) {
+					targetStamps[x] = stamp;
+					nrofTargets++;
+				}
+			}
+			stamps[source] = stamp;
+			distances[source] = 0;
+			heap.update(source, 0);
+
+			int settled = 0;
+			while (nrofTargets > 0 && !heap.isEmpty() &&
+					heap.getMinKey() <= maxDistance &&
+					settled++ < WITNESS_SEARCH_LIMIT) {
+				int node = heap.pop();
+				if (targetStamps[node] == stamp) {
+					nrofTargets--;
+				}
+				EdgeList edges = out[node];
+				for (int i = 0; i < edges.size; i++) {
+					int x = edges.nodes[i];
+					if (contracted[x] || x == excluded) {
+						continue;
+					}
+					double distance = distances[node] + edges.weights[i];
+					if (stamps[x] != stamp || distance < distances[x]) {
+						stamps[x] = stamp;
+						distances[x] = distance;
+						heap.update(x, distance);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Packs the edges into the hierarchy. When a node is contracted, its
+		 * remaining outgoing edges lead to more important nodes (upward
+		 * edges) and its remaining incoming edges come from more important
+		 * nodes (downward edges).
+		 */
+		private ContractionHierarchy toHierarchy() {
+			int[][] up = new int[3][];
+			double[] upWeights = pack(out, up);
+			int[][] down = new int[3][];
+			double[] downWeights = pack(in, down);
+			return new ContractionHierarchy(graph, ranks, up, upWeights, down,
+					downWeights);
+		}
+
+		/**
+		 * Packs edge lists into offset, node, middle and weight arrays
+		 */
+		private double[] pack(EdgeList[] lists, int[][] edges) {
+			int[] offsets = new int[n + 1];
+			for (int v = 0; v < n; v++) {
+				offsets[v + 1] = offsets[v] + (ranks[v] < 0 ? 0 : lists[v].size);
+			}
+			int[] nodes = new int[offsets[n]];
+			int[] middles = new int[offsets[n]];
+			double[] weights = new double[offsets[n]];
+			for (int v = 0; v < n; v++) {
+				if (ranks[v] < 0) {
+					continue;
+				}
+				EdgeList list = lists[v];
+				System.arraycopy(list.nodes, 0, nodes, offsets[v], list.size);
+				System.arraycopy(list.middles, 0, middles, offsets[v], list.size);
+				System.arraycopy(list.weights, 0, weights, offsets[v], list.size);
+			}
+			edges[0] = offsets;
+			edges[1] = nodes;
+			edges[2] = middles;
+			return weights;
+		}
+	}
+}
@@ -4,37 +4,55 @@
  */
 package movement.map;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * Shortest path finder for map nodes. The nodes are compiled into a
+ * {@link MapGraph} and the paths are searched with A* using the euclidean
+ * distance to the destination as the heuristic (which never overestimates,
+ * so the paths are the same as Dijkstra's algorithm finds). The search state
+ * is kept in arrays that are reused between searches and the found paths
+ * are kept in a bounded least recently used cache. If contraction
+ * hierarchies are enabled for the map, the paths are searched from the
+ * map's {@link ContractionHierarchy} instead.
  */
 public class DijkstraPathFinder {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Default maximum number of cached paths */
+	public static final int DEFAULT_PATH_CACHE_SIZE = 10000;
 
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
+	/** The map whose graph is used or null if the graph is compiled from
+	 * the nodes of the searches */
+	private SimMap map;
+	/** The graph the search state arrays are for */
+	private MapGraph graph;
+	/** Bit mask of the OK map node types or 0 if all nodes are OK */
+	private int okTypeMask;
 
-	private int [] okMapNodes;
+	/** Distances of the nodes from the source node */
+	private double[] distances;
+	/** Previous nodes on the shortest paths */
+	private int[] prevNodes;
+	/** Search where the distance of a node was last set (older values are
+	 * stale) */
+	private int[] stamps;
+	/** Search where a node was visited (the shortest path is known) */
+	private int[] visited;
+	/** Number of the current search */
+	private int stamp;
 
-	private Map<String, List<MapNode>> pathCache;
+	/** Unvisited nodes discovered so far by their distances plus the
+	 * estimated distances to the destination */
+	private NodeHeap heap;
+
+	/** Cached paths by the source and destination node ids */
+	private Map<Long, List<MapNode>> pathCache;
 
 	/**
 	 * Constructor.
@@ -42,28 +60,87 @@ public class DijkstraPathFinder {
 	 * all nodes are OK
 	 */
 	public DijkstraPathFinder(int [] okMapNodes) {
+		this(null, okMapNodes);
+	}
+
+	/**
+	 * Constructor.
+	 * @param map The map whose nodes the paths are searched between
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 */
+	public DijkstraPathFinder(SimMap map, int [] okMapNodes) {
+		this(map, okMapNodes, DEFAULT_PATH_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 * @param map The map whose nodes the paths are searched between or null
+	 * if the graph should be compiled from the searched nodes
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 * @param cacheSize Maximum number of paths to cache
+	 */
+	public DijkstraPathFinder(SimMap map, int [] okMapNodes,
+			final int cacheSize) {
 		super();
-		this.okMapNodes = okMapNodes;
-		this.pathCache = new HashMap<>();
+		this.map = map;
+		this.okTypeMask = okMapNodes != null ?
+				MapNode.typesToBitMask(okMapNodes) : 0;
+		this.pathCache = new LinkedHashMap<Long, List<MapNode>>(16, 0.75f,
+				true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Long, List<MapNode>> eldest) {
+				return size() > cacheSize;
+			}
+		};
 	}
 
 	/**
-	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * Returns a graph that contains the given nodes
+	 * @param from The source node
+	 * @param to The destination node
+	 * @return The graph
 	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
-
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
-
-		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
+	private MapGraph getGraph(MapNode from, MapNode to) {
+		MapGraph g = this.graph;
+		if (this.map != null) {
+			g = this.map.getGraph();
+		}
+		if (g == null || g.getId(from) < 0 || g.getId(to) < 0) {
+			/* nodes outside of the graph, compile a graph that has them */
+			List<MapNode> seeds = new ArrayList<MapNode>();
+			if (g != null) {
+				seeds.addAll(g.getNodes());
+			}
+			seeds.add(from);
+			seeds.add(to);
+			g = new MapGraph(seeds);
+		}
+
+		if (g != this.graph) {
+			setGraph(g);
+		}
+		return g;
+	}
+
+	/**
+	 * Resets the search state and the cache for a new graph
+	 * @param graph The new graph
+	 */
+	private void setGraph(MapGraph graph) {
+		int n = graph.getNrofNodes();
+		this.graph = graph;
+		this.distances = new double[n];
+		this.prevNodes = new int[n];
+		this.stamps = new int[n];
+		this.visited = new int[n];
+		this.stamp = 0;
+		this.heap = new NodeHeap(graph);
+		this.pathCache.clear();
 	}
 
 	/**
@@ -71,167 +148,144 @@ public class DijkstraPathFinder {
 	 * @param from The source of the path
 	 * @param to The destination of the path
 	 * @return a shortest path between the source and destination nodes in
-	 * a list of MapNodes or an empty list if such path is not available
+	 * a list of MapNodes or an empty list if such path is not available.
+	 * The list must not be modified.
 	 */
 	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
-		String key = from.getLocation().toString() + to.getLocation().toString();
-		List<MapNode> path = pathCache.getOrDefault(key, new LinkedList<>());
-		if (path.size() > 0) {
+		assert (okTypeMask != 0 ? (from.getTypeMask() & okTypeMask) != 0 :
+			true);
+		MapGraph g = getGraph(from, to);
+		int source = g.getId(from);
+		int target = g.getId(to);
+
+		Long key = ((long)source << 32) | (target & 0xFFFFFFFFL);
+		List<MapNode> path = pathCache.get(key);
+		if (path != null) {
 			return path;
 		}
 
 		if (from.compareTo(to) == 0) { // source and destination are the same
-			path.add(from); // return a list containing only source node
+			path = Collections.singletonList(from);
 			pathCache.put(key, path);
 			return path;
 		}
 
-		initWith(from);
-		MapNode node = null;
-
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (node == to) {
-				break; // we found the destination -> no need to search further
+		if (map != null) {
+			ContractionHierarchy ch = map.getContractionHierarchy(okTypeMask);
+			int[] ids = null;
+			if (ch != null && ch.getGraph() == g) {
+				ids = ch.getShortestPath(source, target);
+			}
+			if (ids != null) { // source node was in the hierarchy
+				return cachePath(key, ids);
 			}
-
-			visited.add(node); // mark the node as visited
-			relax(node); // add/update neighbor nodes' distances
 		}
 
-		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to);
-			MapNode prev = prevNodes.get(to);
-			while (prev != from) {
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
-			}
+		if (!search(source, target)) {
+			return Collections.emptyList();
+		}
 
-			path.add(0, from); // finally put the source node to first node
-			pathCache.put(key, path);
+		int nrofNodes = 1;
+		for (int n = target; n != source; n = prevNodes[n]) {
+			nrofNodes++;
+		}
+		int[] ids = new int[nrofNodes];
+		for (int n = target, i = nrofNodes - 1; i >= 0; n = prevNodes[n], i--) {
+			ids[i] = n;
 		}
 
-		return path;
+		return cachePath(key, ids);
 	}
 
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * Converts a path of node ids to map nodes and caches it
+	 * @param key The cache key of the path
+	 * @param ids Ids of the path's nodes or an empty array if there's no path
+	 * @return The path
 	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-
-			if (okMapNodes != null && !n.isType(okMapNodes)) {
-				continue; // skip nodes that are not OK
-			}
-
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
-				setDistance(n, nDist);
-			}
+	private List<MapNode> cachePath(Long key, int[] ids) {
+		if (ids.length == 0) {
+			return Collections.emptyList();
 		}
+		MapNode[] nodes = new MapNode[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			nodes[i] = graph.getNode(ids[i]);
+		}
+		List<MapNode> path = Collections.unmodifiableList(Arrays.asList(nodes));
+		pathCache.put(key, path);
+		return path;
 	}
 
 	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
+	 * Searches the shortest path from the source to the target
+	 * @param source Id of the path's source node
+	 * @param target Id of the path's destination node
+	 * @return True if a path was found
 	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
+	private boolean search(int source, int target) {
+		if (++stamp == 0) { // wrapped around, old stamps can't be trusted
+			Arrays.fill(stamps, 0);
+			Arrays.fill(visited, 0);
+			stamp = 1;
+		}
+		heap.clear();
 
-	/**
-	 * Returns the (euclidean) distance between the two map nodes
-	 * @param from The first node
-	 * @param to The second node
-	 * @return Euclidean distance between the two map nodes
-	 */
-	private double getDistance(MapNode from, MapNode to) {
-		return from.getLocation().distance(to.getLocation());
-	}
+		touch(source);
+		distances[source] = 0;
+		heap.update(source, graph.distance(source, target));
 
-	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements Comparator<MapNode> {
-
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
+		// always take the node with the smallest estimate
+		while (!heap.isEmpty()) {
+			int node = heap.pop();
+			if (node == target) {
+				return true; // we found the destination
 			}
+
+			visited[node] = stamp; // mark the node as visited
+			relax(node, target); // add/update neighbor nodes' distances
 		}
+
+		return false;
 	}
 
 	/**
-	 * Simple Map implementation for storing distances.
+	 * Relaxes the neighbors of a node (updates the shortest distances).
+	 * @param node The node whose neighbors are relaxed
+	 * @param target The destination of the search
 	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
-
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>();
-		}
-
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+	private void relax(int node, int target) {
+		double nodeDist = distances[node];
+		int end = graph.getEdgeStart(node + 1);
+		for (int e = graph.getEdgeStart(node); e < end; e++) {
+			int n = graph.getEdgeTarget(e);
+			if (visited[n] == stamp) {
+				continue; // skip visited nodes
 			}
-			else {
-				return INFINITY;
+
+			if (okTypeMask != 0 && !graph.isType(n, okTypeMask)) {
+				continue; // skip nodes that are not OK
 			}
-		}
 
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
+			// n node's distance from path's source node
+			double nDist = nodeDist + graph.getEdgeWeight(e);
+
+			touch(n);
+			if (distances[n] > nDist) { // stored distance > found dist?
+				prevNodes[n] = node;
+				distances[n] = nDist;
+				heap.update(n, nDist + graph.distance(n, target));
+			}
 		}
+	}
 
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
+	/**
+	 * Resets the state of a node if it was set in an earlier search
+	 * @param n Id of the node
+	 */
+	private void touch(int n) {
+		if (stamps[n] != stamp) {
+			stamps[n] = stamp;
+			distances[n] = INFINITY;
 		}
 	}
 }
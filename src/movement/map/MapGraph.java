@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+
+/**
+ * Map nodes and their connections compiled into a compressed sparse row
+ * (CSR) graph. Every node has an int id, the neighbors of node <CODE>i</CODE>
+ * are <CODE>targets[offsets[i]] ... targets[offsets[i+1]-1]</CODE> and the
+ * edge weights are the euclidean distances between the nodes. The graph is a
+ * snapshot: it must be compiled again if the nodes' locations or neighbors
+ * change.
+ */
+public class MapGraph {
+	/** The nodes by their ids */
+	private final MapNode[] nodes;
+	/** Ids of the nodes */
+	private final Map<MapNode, Integer> ids;
+	/** Node coordinates by id */
+	private final double[] xs;
+	private final double[] ys;
+	/** Node types (as returned by {@link MapNode#getTypeMask()}) by id */
+	private final int[] types;
+	/** Order of the nodes' locations ({@link Coord#compareTo(Coord)}) */
+	private final int[] ranks;
+	/** Start of each node's edges in targets and weights */
+	private final int[] offsets;
+	private final int[] targets;
+	private final double[] weights;
+
+	/**
+	 * Compiles the graph of the given nodes and all the nodes reachable
+	 * from them
+	 * @param seeds The nodes to compile
+	 */
+	public MapGraph(Collection<MapNode> seeds) {
+		Map<MapNode, Integer> ids = new IdentityHashMap<MapNode, Integer>();
+		List<MapNode> nodes = new ArrayList<MapNode>();
+		for (MapNode seed : seeds) {
+			addNode(seed, nodes, ids);
+		}
+		/* breadth-first search to include the reachable nodes */
+		int nrofEdges = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			for (MapNode n : nodes.get(i).getNeighbors()) {
+				addNode(n, nodes, ids);
+				nrofEdges++;
+			}
+		}
+
+		int n = nodes.size();
+		this.nodes = nodes.toArray(new MapNode[n]);
+		this.ids = ids;
+		this.xs = new double[n];
+		this.ys = new double[n];
+		this.types = new int[n];
+		this.offsets = new int[n + 1];
+		this.targets = new int[nrofEdges];
+		this.weights = new double[nrofEdges];
+
+		int edge = 0;
+		for (int i = 0; i < n; i++) {
+			MapNode node = this.nodes[i];
+			Coord c = node.getLocation();
+			this.xs[i] = c.getX();
+			this.ys[i] = c.getY();
+			this.types[i] = node.getTypeMask();
+			this.offsets[i] = edge;
+			for (MapNode neighbor : node.getNeighbors()) {
+				this.targets[edge] = ids.get(neighbor);
+				this.weights[edge] = c.distance(neighbor.getLocation());
+				edge++;
+			}
+		}
+		this.offsets[n] = edge;
+
+		MapNode[] sorted = this.nodes.clone();
+		Arrays.sort(sorted);
+		this.ranks = new int[n];
+		for (int i = 0; i < n; i++) {
+			this.ranks[ids.get(sorted[i])] = i;
+		}
+	}
+
+	private static void addNode(MapNode node, List<MapNode> nodes,
+			Map<MapNode, Integer> ids) {
+		if (!ids.containsKey(node)) {
+			ids.put(node, nodes.size());
+			nodes.add(node);
+		}
+	}
+
+	/**
+	 * Returns the number of nodes in the graph
+	 * @return the number of nodes in the graph
+	 */
+	public int getNrofNodes() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * Returns the id of a node
+	 * @param node The node
+	 * @return The id of the node or -1 if the node is not in the graph
+	 */
+	public int getId(MapNode node) {
+		Integer id = this.ids.get(node);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the node with the given id
+	 * @param id The id
+	 * @return The node
+	 */
+	public MapNode getNode(int id) {
+		return this.nodes[id];
+	}
+
+	/**
+	 * Returns the nodes of the graph in id order
+	 * @return the nodes of the graph
+	 */
+	public List<MapNode> getNodes() {
+		return Arrays.asList(this.nodes);
+	}
+
+	/**
+	 * Returns true if the node's types match any of the given types
+	 * @param id Id of the node
+	 * @param typeMask Bit mask of the types (see {@link MapNode#getTypeMask()})
+	 * @return True if at least one of the types matched
+	 */
+	public boolean isType(int id, int typeMask) {
+		return (this.types[id] & typeMask) != 0;
+	}
+
+	/**
+	 * Returns the position of the node's location in the order of all the
+	 * nodes' locations
+	 * @param id Id of the node
+	 * @return The rank of the node
+	 */
+	public int getRank(int id) {
+		return this.ranks[id];
+	}
+
+	/**
+	 * Returns the index of the first edge of a node. The edges of node
+	 * <CODE>id</CODE> are <CODE>getEdgeStart(id) ... getEdgeStart(id+1)-1</CODE>.
+	 * @param id Id of the node
+	 * @return The index of the first edge
+	 */
+	public int getEdgeStart(int id) {
+		return this.offsets[id];
+	}
+
+	/**
+	 * Returns the id of the node an edge leads to
+	 * @param edge Index of the edge
+	 * @return The id of the node
+	 */
+	public int getEdgeTarget(int edge) {
+		return this.targets[edge];
+	}
+
+	/**
+	 * Returns the length of an edge
+	 * @param edge Index of the edge
+	 * @return The euclidean length of the edge
+	 */
+	public double getEdgeWeight(int edge) {
+		return this.weights[edge];
+	}
+
+	/**
+	 * Returns the euclidean distance between two nodes
+	 * @param id1 Id of the first node
+	 * @param id2 Id of the second node
+	 * @return The distance
+	 */
+	public double distance(int id1, int id2) {
+		double dx = this.xs[id1] - this.xs[id2];
+		double dy = this.ys[id1] - this.ys[id2];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+}
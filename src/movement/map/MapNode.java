@@ -77,6 +77,31 @@ public class MapNode implements Comparable<MapNode> {
 		return false;
 	}
 
+	/**
+	 * Returns the bit mask of the node's types (bit <CODE>t</CODE> is set if
+	 * the node is of type <CODE>t</CODE>) or 0 if the node has no types
+	 * @return the bit mask of the node's types
+	 */
+	public int getTypeMask() {
+		return this.type;
+	}
+
+	/**
+	 * Returns a bit mask of the given types
+	 * @param types The types (array of values in range
+	 * [{@value MIN_TYPE}, {@value MAX_TYPE}])
+	 * @return A bit mask that matches the given types
+	 * @see #getTypeMask()
+	 */
+	public static int typesToBitMask(int[] types) {
+		int mask = 0;
+		for (int type : types) {
+			assert type >= MIN_TYPE && type <= MAX_TYPE : "Invalid node type "+type;
+			mask |= 1 << type;
+		}
+		return mask;
+	}
+
 	/**
 	 * Converts type integer to a bit mask for setting & checking type
 	 * @param type The type to convert
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of graph node ids. Every node can be in the heap
+ * once and its key can be decreased (or increased) in place. Nodes with
+ * equal keys are ordered by their ids or by their ranks in a
+ * {@link MapGraph}.
+ */
+class NodeHeap {
+	/** The graph whose ranks order the nodes with equal keys (or null) */
+	private final MapGraph graph;
+	private final double[] keys;
+	private final int[] heap;
+	/** Positions of the nodes in the heap (-1 if not in the heap) */
+	private final int[] positions;
+	private int size;
+
+	/**
+	 * Constructor.
+	 * @param nrofNodes Number of nodes (ids are 0...nrofNodes-1)
+	 */
+	NodeHeap(int nrofNodes) {
+		this(nrofNodes, null);
+	}
+
+	/**
+	 * Constructor for a heap where nodes with equal keys are ordered by
+	 * their locations ({@link MapGraph#getRank(int)}).
+	 * @param graph The graph of the nodes
+	 */
+	NodeHeap(MapGraph graph) {
+		this(graph.getNrofNodes(), graph);
+	}
+
+	private NodeHeap(int nrofNodes, MapGraph graph) {
+		this.graph = graph;
+		this.keys = new double[nrofNodes];
+		this.heap = new int[nrofNodes];
+		this.positions = new int[nrofNodes];
+		Arrays.fill(this.positions, -1);
+	}
+
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	boolean contains(int node) {
+		return this.positions[node] >= 0;
+	}
+
+	/**
+	 * Returns the smallest key in the heap
+	 * @return the smallest key
+	 */
+	double getMinKey() {
+		return this.keys[this.heap[0]];
+	}
+
+	/**
+	 * Inserts a node to the heap or updates the key of a node in the heap
+	 * @param node The node
+	 * @param key The node's new key
+	 */
+	void update(int node, double key) {
+		int pos = this.positions[node];
+		this.keys[node] = key;
+		if (pos < 0) {
+			pos = this.size++;
+			this.heap[pos] = node;
+			this.positions[node] = pos;
+		}
+		siftDown(siftUp(pos));
+	}
+
+	/**
+	 * Removes and returns the node with the smallest key
+	 * @return the node with the smallest key
+	 */
+	int pop() {
+		int top = this.heap[0];
+		this.positions[top] = -1;
+		if (--this.size > 0) {
+			this.heap[0] = this.heap[this.size];
+			this.positions[this.heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	/**
+	 * Removes all the nodes from the heap
+	 */
+	void clear() {
+		for (int i = 0; i < this.size; i++) {
+			this.positions[this.heap[i]] = -1;
+		}
+		this.size = 0;
+	}
+
+	private boolean isBefore(int n1, int n2) {
+		if (this.keys[n1] != this.keys[n2]) {
+			return this.keys[n1] < this.keys[n2];
+		}
+		if (this.graph != null) {
+			return this.graph.getRank(n1) < this.graph.getRank(n2);
+		}
+		return n1 < n2;
+	}
+
+	private int siftUp(int i) {
+		int n = this.heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!isBefore(n, this.heap[parent])) {
+				break;
+			}
+			this.heap[i] = this.heap[parent];
+			this.positions[this.heap[i]] = i;
+			i = parent;
+		}
+		this.heap[i] = n;
+		this.positions[n] = i;
+		return i;
+	}
+
+	private void siftDown(int i) {
+		int n = this.heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= this.size) {
+				break;
+			}
+			if (child + 1 < this.size &&
+					isBefore(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!isBefore(this.heap[child], n)) {
+				break;
+			}
+			this.heap[i] = this.heap[child];
+			this.positions[this.heap[i]] = i;
+			i = child;
+		}
+		this.heap[i] = n;
+		this.positions[n] = i;
+	}
+}
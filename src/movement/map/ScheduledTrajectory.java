@@ -0,0 +1,268 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+
+/**
+ * The geometry of a {@link MapScheduledRoute} compiled once and shared by
+ * all the hosts that drive the route. The trajectory has the map paths
+ * (legs) between the route's stops with their cumulative distances. Hosts
+ * only have their own stop times (that can differ because of delays) and
+ * can use them to find their location at any time in O(log n).
+ * <P>
+ * The hosts don't stop at stops whose time is not after the time of the
+ * previous stop they stopped at (see
+ * {@link movement.MapScheduledMovement#getPath()}), so the legs can also be
+ * between stops that are not consecutive.
+ * </P>
+ */
+public class ScheduledTrajectory {
+	/** The stops of the route */
+	private final MapNode[] stops;
+	/** The scheduled times of the stops */
+	private final double[] times;
+	/** The path finder for the legs */
+	private final DijkstraPathFinder pathFinder;
+	/** Legs between consecutive stops (index of the leg's first stop) */
+	private final Leg[] legs;
+	/** Legs between other stops by the packed stop indexes */
+	private Map<Long, Leg> otherLegs;
+
+	/**
+	 * Compiles the trajectory of a route
+	 * @param route The route
+	 * @param pathFinder The path finder for the paths between the stops
+	 */
+	public ScheduledTrajectory(MapScheduledRoute route,
+			DijkstraPathFinder pathFinder) {
+		List<MapScheduledNode> routeStops = route.getStops();
+		int n = routeStops.size();
+		this.stops = new MapNode[n];
+		this.times = new double[n];
+		for (int i = 0; i < n; i++) {
+			this.stops[i] = routeStops.get(i).getNode();
+			this.times[i] = routeStops.get(i).getTime();
+		}
+		this.pathFinder = pathFinder;
+		this.legs = new Leg[Math.max(n - 1, 0)];
+		for (int i = 0; i < n - 1; i++) {
+			if (this.stops[i] != this.stops[i + 1]) {
+				this.legs[i] = compileLeg(i, i + 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of stops
+	 * @return the number of stops
+	 */
+	public int getNrofStops() {
+		return this.stops.length;
+	}
+
+	/**
+	 * Returns the map node of a stop
+	 * @param index Index of the stop
+	 * @return The map node of the stop
+	 */
+	public MapNode getStop(int index) {
+		return this.stops[index];
+	}
+
+	/**
+	 * Returns the scheduled (not delayed) times of the stops. The array must
+	 * not be modified.
+	 * @return The scheduled times of the stops
+	 */
+	public double[] getTimes() {
+		return this.times;
+	}
+
+	/**
+	 * Returns the leg between two stops
+	 * @param from Index of the stop where the leg starts
+	 * @param to Index of the stop where the leg ends
+	 * @return The leg
+	 */
+	public Leg getLeg(int from, int to) {
+		if (to == from + 1 && this.legs[from] != null) {
+			return this.legs[from];
+		}
+		if (this.otherLegs == null) {
+			this.otherLegs = new HashMap<Long, Leg>();
+		}
+		Long key = ((long)from << 32) | to;
+		Leg leg = this.otherLegs.get(key);
+		if (leg == null) {
+			leg = compileLeg(from, to);
+			this.otherLegs.put(key, leg);
+		}
+		return leg;
+	}
+
+	private Leg compileLeg(int from, int to) {
+		List<MapNode> nodePath = this.pathFinder.getShortestPath(
+				this.stops[from], this.stops[to]);
+
+		// this assertion should never fire if the map is checked in read phase
+		assert nodePath.size() > 0 : "No path from " + this.stops[from] +
+			" to " + this.stops[to] + ". The simulation map isn't fully connected";
+
+		return new Leg(nodePath);
+	}
+
+	/**
+	 * Returns the location on the trajectory at the given time. The host
+	 * leaves a stop at the stop's time and arrives at the next stop it
+	 * stops at at that stop's time.
+	 * @param stopTimes The stop times of the host (e.g. delayed
+	 * {@link #getTimes()}). The times must not decrease.
+	 * @param time The time
+	 * @return The location at the time
+	 */
+	public Coord getLocation(double[] stopTimes, double time) {
+		int last = stopTimes.length - 1;
+		/* the last stop whose time has passed */
+		int passed = upperBound(stopTimes, time) - 1;
+		if (passed < 0) {
+			return this.stops[0].getLocation().clone();
+		}
+		if (passed == last) {
+			return this.stops[last].getLocation().clone();
+		}
+
+		/* the stops with the same time as the passed stop are skipped, so
+		 * the host left from the first of them (or its node) */
+		int from = firstStopAt(stopTimes, passed, stopTimes[passed]);
+		int to = passed + 1;
+		if (this.stops[from] == this.stops[to]) {
+			return this.stops[from].getLocation().clone();
+		}
+
+		double fraction = (time - stopTimes[from]) /
+				(stopTimes[to] - stopTimes[from]);
+		return getLeg(from, to).getLocation(fraction);
+	}
+
+	/**
+	 * Returns the index of the first stop (at most index) whose time
+	 * is not before the time
+	 */
+	private static int firstStopAt(double[] stopTimes, int index,
+			double time) {
+		int low = 0;
+		int high = index;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (stopTimes[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the first stop whose time is after the time
+	 */
+	private static int upperBound(double[] stopTimes, double time) {
+		int low = 0;
+		int high = stopTimes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (stopTimes[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * A path between two stops with the cumulative distances of its
+	 * waypoints
+	 */
+	public static class Leg {
+		private final Coord[] waypoints;
+		/** Distances of the waypoints from the first waypoint */
+		private final double[] distances;
+
+		private Leg(List<MapNode> nodePath) {
+			int n = nodePath.size();
+			this.waypoints = new Coord[n];
+			this.distances = new double[n];
+			double distance = 0;
+			for (int i = 0; i < n; i++) {
+				this.waypoints[i] = nodePath.get(i).getLocation();
+				if (i > 0) {
+					distance += this.waypoints[i - 1].distance(
+							this.waypoints[i]);
+				}
+				this.distances[i] = distance;
+			}
+		}
+
+		/**
+		 * Returns the number of waypoints on the leg
+		 * @return the number of waypoints
+		 */
+		public int getNrofWaypoints() {
+			return this.waypoints.length;
+		}
+
+		/**
+		 * Returns a waypoint of the leg. The coordinate must not be
+		 * modified.
+		 * @param index Index of the waypoint
+		 * @return The waypoint
+		 */
+		public Coord getWaypoint(int index) {
+			return this.waypoints[index];
+		}
+
+		/**
+		 * Returns the length of the leg
+		 * @return the length of the leg
+		 */
+		public double getLength() {
+			return this.distances[this.distances.length - 1];
+		}
+
+		/**
+		 * Returns the location after a fraction of the leg's length
+		 * @param fraction The fraction [0, 1]
+		 * @return The location
+		 */
+		public Coord getLocation(double fraction) {
+			if (fraction <= 0 || this.waypoints.length == 1) {
+				return this.waypoints[0].clone();
+			}
+			if (fraction >= 1) {
+				return this.waypoints[this.waypoints.length - 1].clone();
+			}
+
+			double distance = fraction * getLength();
+			int i = Arrays.binarySearch(this.distances, distance);
+			if (i >= 0) {
+				return this.waypoints[i].clone();
+			}
+			i = -i - 1; // the first waypoint after the distance
+			Coord c1 = this.waypoints[i - 1];
+			Coord c2 = this.waypoints[i];
+			double f = (distance - this.distances[i - 1]) /
+					(this.distances[i] - this.distances[i - 1]);
+			return new Coord(c1.getX() + f * (c2.getX() - c1.getX()),
+					c1.getY() + f * (c2.getY() - c1.getY()));
+		}
+	}
+}
@@ -4,8 +4,10 @@
  */
 package movement.map;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +30,14 @@ public class SimMap implements Serializable {
 
 	/** is re-hash needed before using hash mode (some coordinates changed) */
 	private boolean needsRehash = false;
+	/** compiled graph of the map nodes or null if not compiled yet */
+	private transient MapGraph graph;
+	/** are contraction hierarchies used for path finding */
+	private transient boolean useHierarchies = false;
+	/** directory where the hierarchies are saved (or null) */
+	private transient File hierarchyDir;
+	/** contraction hierarchies by the OK map node type masks */
+	private transient Map<Integer, ContractionHierarchy> hierarchies;
 
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
@@ -37,6 +47,24 @@ public class SimMap implements Serializable {
 		setBounds();
 	}
 
+	/**
+	 * Creates a map of nodes whose bounds are already known
+	 * @param nodes The nodes of the map (the list is used by the map)
+	 * @param minBound The upper left corner of the map
+	 * @param maxBound The lower right corner of the map
+	 */
+	SimMap(List<MapNode> nodes, Coord minBound, Coord maxBound) {
+		this.offset = new Coord(0,0);
+		this.nodes = new ArrayList<MapNode>(nodes);
+		this.nodesMap = new HashMap<Coord, MapNode>();
+		for (MapNode node : nodes) {
+			this.nodesMap.put(node.getLocation(), node);
+		}
+		this.isMirrored = false;
+		this.minBound = minBound;
+		this.maxBound = maxBound;
+	}
+
 	/**
 	 * Returns all the map nodes in a list
 	 * @return all the map nodes in a list
@@ -62,6 +90,54 @@ public class SimMap implements Serializable {
 		return nodesMap.get(c);
 	}
 
+	/**
+	 * Returns the map nodes compiled into a graph. The graph is compiled
+	 * when this method is called the first time after creating, translating
+	 * or mirroring the map.
+	 * @return the map nodes as a graph
+	 */
+	public MapGraph getGraph() {
+		if (graph == null) {
+			graph = new MapGraph(getNodes());
+		}
+		return graph;
+	}
+
+	/**
+	 * Enables contraction hierarchies for the shortest path searches on this
+	 * map (see {@link #getContractionHierarchy(int)})
+	 * @param dir The directory where the hierarchies are saved and looked up
+	 * or null if they should only be kept in memory
+	 */
+	public void enableContractionHierarchies(File dir) {
+		this.useHierarchies = true;
+		this.hierarchyDir = dir;
+	}
+
+	/**
+	 * Returns the contraction hierarchy of the map for the given OK map node
+	 * types. The hierarchy is built (or read from the hierarchy directory)
+	 * the first time it is requested.
+	 * @param okTypeMask Bit mask of the OK map node types or 0 if all nodes
+	 * are OK (see {@link MapNode#getTypeMask()})
+	 * @return The hierarchy or null if the hierarchies are not enabled
+	 */
+	public ContractionHierarchy getContractionHierarchy(int okTypeMask) {
+		if (!useHierarchies) {
+			return null;
+		}
+		if (hierarchies == null) {
+			hierarchies = new HashMap<Integer, ContractionHierarchy>();
+		}
+		ContractionHierarchy ch = hierarchies.get(okTypeMask);
+		if (ch == null) {
+			ch = ContractionHierarchy.getHierarchy(getGraph(), okTypeMask,
+					hierarchyDir);
+			hierarchies.put(okTypeMask, ch);
+		}
+		return ch;
+	}
+
 	/**
 	 * Returns the upper left corner coordinate of the map
 	 * @return the upper left corner coordinate of the map
@@ -111,6 +187,8 @@ public class SimMap implements Serializable {
 		offset.translate(dx, dy);
 
 		needsRehash = true;
+		graph = null;
+		hierarchies = null;
 	}
 
 	/**
@@ -127,6 +205,8 @@ public class SimMap implements Serializable {
 		setBounds();
 		this.isMirrored = true;
 		needsRehash = true;
+		graph = null;
+		hierarchies = null;
 	}
 
 	/**
@@ -6,7 +6,9 @@ package routing;
 
 import java.util.*;
 
+import routing.util.BufferEvictionPolicy;
 import routing.util.EnergyModel;
+import routing.util.EvictionIndex;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
 import util.Tuple;
@@ -44,6 +46,12 @@ public abstract class ActiveRouter extends MessageRouter {
 
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
+	/** order in which messages are dropped from a full buffer */
+	private BufferEvictionPolicy evictionPolicy;
+	/** eviction order of the buffered messages */
+	private EvictionIndex evictionIndex;
+	/** IDs of the messages pinned by each sending connection */
+	private HashMap<Connection, List<String>> pinnedMessages;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -56,6 +64,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		this.policy = new MessageTransferAcceptPolicy(s);
 
 		this.deleteDelivered = s.getBoolean(DELETE_DELIVERED_S, false);
+		this.evictionPolicy = createEvictionPolicy(s);
 
 		if (s.contains(EnergyModel.INIT_ENERGY_S)) {
 			this.energy = new EnergyModel(s);
@@ -72,6 +81,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
 		this.policy = r.policy;
+		this.evictionPolicy = r.evictionPolicy;
 		this.energy = (r.energy != null ? r.energy.replicate() : null);
 	}
 
@@ -79,9 +89,40 @@ public abstract class ActiveRouter extends MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		super.init(host, mListeners);
 		this.sendingConnections = new HashSet<Connection>();
+		this.pinnedMessages = new HashMap<Connection, List<String>>();
+		this.evictionIndex = new EvictionIndex(getEvictionPolicy(),
+				getMessageCollection());
 		this.lastTtlCheck = 0;
 	}
 
+	/**
+	 * Creates the buffer eviction policy of this router (prototype) from the
+	 * settings. Routers with their own drop order can override this.
+	 * @param s The settings object
+	 * @return The buffer eviction policy
+	 */
+	protected BufferEvictionPolicy createEvictionPolicy(Settings s) {
+		return BufferEvictionPolicy.createPolicy(s);
+	}
+
+	/**
+	 * Returns the buffer eviction policy for this router instance. By default
+	 * the policy of the prototype is shared, but routers whose policy has
+	 * per-host state must return a new instance here.
+	 * @return The policy used in the eviction index of this router
+	 */
+	protected BufferEvictionPolicy getEvictionPolicy() {
+		return this.evictionPolicy;
+	}
+
+	/**
+	 * Returns the eviction index of this router's message buffer
+	 * @return The eviction index
+	 */
+	protected EvictionIndex getEvictionIndex() {
+		return this.evictionIndex;
+	}
+
 	/**
 	 * Called when a connection's state changes. If energy modeling is enabled,
 	 * and a new connection is created to this node, reduces the energy for the
@@ -102,17 +143,19 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		DTNHost other = con.getOtherNode(getHost());
+		Collection<Message> forOther = getMessagesFor(other);
+		if (forOther.isEmpty()) {
+			return false;
+		}
+
 		/* do a copy to avoid concurrent modification exceptions
 		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp =
-			new ArrayList<Message>(this.getMessageCollection());
+		ArrayList<Message> temp = new ArrayList<Message>(forOther);
 
 		boolean returnV = false;
 		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					returnV = true;
-				}
+			if (startTransfer(m, con) == RCV_OK) {
+				returnV = true;
 			}
 		}
 		return returnV;
@@ -187,6 +230,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		retVal = con.startTransfer(getHost(), m);
 		if (retVal == RCV_OK) { // started transfer
 			addToSendingConnections(con);
+			pinMessage(m.getId(), con);
 		}
 		else if (deleteDelivered && retVal == DENIED_OLD &&
 				m.getTo() == con.getOtherNode(this.getHost())) {
@@ -285,6 +329,74 @@ public abstract class ActiveRouter extends MessageRouter {
 		return true;
 	}
 
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		Message old = getMessage(m.getId());
+		if (old != null) {
+			this.evictionIndex.remove(old);
+		}
+		super.addToMessages(m, newMessage);
+		this.evictionIndex.add(m);
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			this.evictionIndex.remove(m);
+		}
+		return m;
+	}
+
+	/**
+	 * Pins a message so that it's not dropped from the buffer while it's
+	 * being sent over a connection. The pin is released when the transfer
+	 * of the message is finalized or aborted.
+	 * @param id ID of the message
+	 * @param con The connection the message is sent over
+	 */
+	private void pinMessage(String id, Connection con) {
+		List<String> ids = this.pinnedMessages.get(con);
+		if (ids == null) {
+			ids = new ArrayList<String>();
+			this.pinnedMessages.put(con, ids);
+		}
+		ids.add(id);
+		this.evictionIndex.pin(id, getMessage(id));
+	}
+
+	/**
+	 * Releases one pin that a sending connection has on a message
+	 * @param id ID of the message
+	 * @param con The connection the message was sent over
+	 * @return true if the connection had a pin on the message
+	 */
+	private boolean unpinMessage(String id, Connection con) {
+		List<String> ids = this.pinnedMessages.get(con);
+		if (ids == null || !ids.remove(id)) {
+			return false;
+		}
+		if (ids.isEmpty()) {
+			this.pinnedMessages.remove(con);
+		}
+		this.evictionIndex.unpin(id);
+		return true;
+	}
+
+	/**
+	 * Releases all the message pins of a sending connection
+	 * @param con The connection
+	 */
+	private void unpinMessages(Connection con) {
+		List<String> ids = this.pinnedMessages.remove(con);
+		if (ids == null) {
+			return;
+		}
+		for (String id : ids) {
+			this.evictionIndex.unpin(id);
+		}
+	}
+
 	/**
 	 * Drops messages whose TTL is less than zero.
 	 */
@@ -311,33 +423,18 @@ public abstract class ActiveRouter extends MessageRouter {
 
 
 	/**
-	 * Returns the oldest (by receive time) message in the message buffer
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * Returns the next message to drop from the message buffer according to
+	 * the buffer eviction policy (by default the oldest message by receive
+	 * time). See {@link BufferEvictionPolicy#BUFFER_POLICY_S}.
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
-	 * being sent from the oldest message check (i.e. if oldest message is
-	 * being sent, the second oldest message is returned)
-	 * @return The oldest message or null if no message could be returned
-	 * (no messages in buffer or all messages in buffer are being sent and
-	 * exludeMsgBeingSent is true)
+	 * being sent from the check (i.e. if the next message is being sent,
+	 * the one after it is returned)
+	 * @return The next message to drop or null if no message could be
+	 * returned (no messages in buffer or all messages in buffer are being
+	 * sent and exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
-			}
-
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
-		}
-
-		return oldest;
+		return this.evictionIndex.next(!excludeMsgBeingSent);
 	}
 
 	/**
@@ -351,14 +448,43 @@ public abstract class ActiveRouter extends MessageRouter {
 			return new ArrayList<Tuple<Message, Connection>>(0);
 		}
 
+		/* find the messages through the recipient index but list them in the
+		 * buffer order (and the connections of a message in connection
+		 * order), which the queue mode sorting and shuffling starts from */
+		Map<Message, List<Connection>> connections = null;
+		int nrofTuples = 0;
+		for (Connection con : getConnections()) {
+			DTNHost to = con.getOtherNode(getHost());
+			for (Message m : getMessagesFor(to)) {
+				if (connections == null) {
+					connections = new IdentityHashMap<Message,
+						List<Connection>>();
+				}
+				List<Connection> cons = connections.get(m);
+				if (cons == null) {
+					cons = new ArrayList<Connection>(1);
+					connections.put(m, cons);
+				}
+				cons.add(con);
+				nrofTuples++;
+			}
+		}
+
 		List<Tuple<Message, Connection>> forTuples =
-			new ArrayList<Tuple<Message, Connection>>();
+			new ArrayList<Tuple<Message, Connection>>(nrofTuples);
+		if (connections == null) {
+			return forTuples;
+		}
 		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
-				}
+			List<Connection> cons = connections.get(m);
+			if (cons == null) {
+				continue;
+			}
+			for (Connection con : cons) {
+				forTuples.add(new Tuple<Message, Connection>(m,con));
+			}
+			if (forTuples.size() == nrofTuples) {
+				break;
 			}
 		}
 
@@ -402,7 +528,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	 /**
 	  * Goes trough the messages until the other node accepts one or more
 	  * for receiving (or doesn't accept any). If a transfer is started, the
-	  * connection is included in the list of sending connections.
+	  * connection is included in the list of sending connections. If the
+	  * other node keeps a summary vector, messages it already knows are
+	  * skipped without offering them.
 	  * @param con Connection trough which the messages are sent
 	  * @param messages A list of messages to try
 	  * @return The messages whose transfer was started or null if no
@@ -410,7 +538,13 @@ public abstract class ActiveRouter extends MessageRouter {
 	  */
 	protected List<Message> tryAllMessages(Connection con, List<Message> messages) {
 		List<Message> sentMessages = new ArrayList<>();
+		DTNHost other = con.getOtherNode(getHost());
+		MessageRouter otherRouter = other.getRouter();
+		boolean prune = otherRouter.hasSummaryVector();
 		for (Message m : messages) {
+			if (prune && m.getTo() != other && otherRouter.isKnownMessage(m)) {
+				continue; // the other node would reject the message as old
+			}
 			int retVal = startTransfer(m, con);
 			if (retVal == RCV_OK) {
 				sentMessages.add(m);
@@ -452,7 +586,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	/**
 	 * Tries to send all messages that this router is carrying to all
 	 * connections this node has. Messages are ordered using the
-	 * {@link MessageRouter#sortByQueueMode(List)}. See
+	 * {@link MessageRouter#getMessagesInQueueOrder()}. See
 	 * {@link #tryMessagesToConnections(List, List)} for sending details.
 	 * @return The connections that started a transfer or null if no connection
 	 * accepted a message.
@@ -463,9 +597,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return null;
 		}
 
-		List<Message> messages =
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
+		List<Message> messages = this.getMessagesInQueueOrder();
 
 		return tryMessagesToConnections(messages, connections);
 	}
@@ -604,9 +736,14 @@ public abstract class ActiveRouter extends MessageRouter {
 
 			/* finalize ready transfers */
 			if (con.isMessageTransferred()) {
-				if (con.getMessage() != null) {
+				List<Message> done = con.getMessage();
+				if (done != null) {
 					transferDone(con);
 					con.finalizeTransfer();
+					/* other messages may still be on the fly */
+					for (Message m : done) {
+						unpinMessage(m.getId(), con);
+					}
 				}
 				if (!con.isTransferring()) {/* else: some other entity aborted transfer */
 					removeCurrent = true;
@@ -622,6 +759,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 
 			if (removeCurrent) {
+				unpinMessages(con);
 				// if the message being sent was holding excess buffer, free it
 				if (this.getFreeBufferSize() < 0) {
 					this.makeRoomForMessage(0);
@@ -644,6 +782,20 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 
+	/**
+	 * Aborts the transfer of a message over a sending connection (see
+	 * {@link Connection#abortTransfer(String)}) and releases the message
+	 * for dropping.
+	 * @param id ID of the message
+	 * @param con The connection the message is being sent over
+	 */
+	protected void abortTransfer(String id, Connection con) {
+		con.abortTransfer(id);
+		while (unpinMessage(id, con)) {
+			/* all the copies of the message on the connection were aborted */
+		}
+	}
+
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()}
 	 * due connection going down. This happens on the sending host.
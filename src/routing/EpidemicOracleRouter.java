@@ -56,7 +56,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 			List<Message> newMessages = new ArrayList<Message>();
 
 			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
+				if (!this.isKnownMessage(m)) {
 					newMessages.add(m);
 				}
 			}
@@ -105,7 +105,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 				for (Message m :
 						messages) {
 					if (m.getId().equals(id)) {
-						c.abortTransfer(id);
+						abortTransfer(id, c);
 					}
 				}
 			}
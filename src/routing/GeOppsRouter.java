@@ -9,10 +9,9 @@ import movement.MapScheduledMovement;
 import movement.MovementModel;
 import movement.StationaryListMovement;
 import movement.StationaryMovement;
-import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
-import movement.map.MapScheduledNode;
 import movement.map.MapScheduledRoute;
+import routing.util.DeliveryEstimateTable;
 import util.Tuple;
 
 import java.util.*;
@@ -36,8 +35,8 @@ public class GeOppsRouter extends ActiveRouter {
 
 	/** buffer of simulation time when each message reaches the destination*/
 	protected Map<String, Double> estimatedDeliveryTimes;
-	protected DijkstraPathFinder pathFinder;
-	protected Map<String, Double> distanceCache;
+	/** delivery estimates of the schedules (shared by all replicates) */
+	protected DeliveryEstimateTable estimateTable;
 	/** buffer of simulation time when each message reaches the nearest point to the destination on the route */
 	protected Map<String, Double> messageDeadlines;
 	protected Set<String> keepMessage;
@@ -57,8 +56,7 @@ public class GeOppsRouter extends ActiveRouter {
 		stopsOnly = geoppsSettings.getBoolean(STOPS_ONLY);
         stopBuffer = geoppsSettings.getBoolean(STOP_BUFER);
 		estimatedDeliveryTimes = new HashMap<>();
-		pathFinder = new DijkstraPathFinder(null);
-		distanceCache = new HashMap<>();
+		estimateTable = new DeliveryEstimateTable(directDistance, stopsOnly);
         messageDeadlines = new HashMap<>();
         keepMessage = new HashSet<>();
 	}
@@ -74,8 +72,7 @@ public class GeOppsRouter extends ActiveRouter {
 		this.stopsOnly = r.stopsOnly;
         this.stopBuffer = r.stopBuffer;
 		this.estimatedDeliveryTimes = new HashMap<>();
-		this.pathFinder = r.pathFinder;
-		this.distanceCache = r.distanceCache;
+		this.estimateTable = r.estimateTable;
         this.messageDeadlines = new HashMap<>();
         this.keepMessage = new HashSet<>();
 	}
@@ -212,11 +209,7 @@ public class GeOppsRouter extends ActiveRouter {
 			}
 
 			MapScheduledRoute schedule = ((MapScheduledMovement)mmodel).getSchedule();
-			if (stopsOnly) {
-				estimatedTime = stationDeliveryEstimation(dstNode, schedule);
-			} else {
-				estimatedTime = routeDeliveryEstimation(dstNode, schedule);
-			}
+			estimatedTime = estimateTable.getEstimate(((MapScheduledMovement)mmodel).getMap(), schedule, dstNode, cTime);
 
 		} else {
 			/* TODO implement DeliveryEstimation for other MovementModels using the Path object of the host. */
@@ -227,100 +220,6 @@ public class GeOppsRouter extends ActiveRouter {
 		return estimatedTime;
 	}
 
-	private Tuple<Double, Double> routeDeliveryEstimation(MapNode dstNode, MapScheduledRoute schedule) {
-        Tuple<Double, Double> estimatedTime = new Tuple<>(Double.MAX_VALUE, Double.MAX_VALUE);
-		List<MapScheduledNode> stops = schedule.getStops();
-		double currentTime = SimClock.getTime();
-		for (int i = 0; i < stops.size() - 1; i++) {
-			if (stops.get(i).getTime() > currentTime) {
-				List<MapNode> path = pathFinder.getShortestPath(stops.get(i).getNode(), stops.get(i+1).getNode());
-				double distance = mapDistance(stops.get(i+1).getNode(), stops.get(i).getNode());
-				double duration = stops.get(i+1).getTime() - stops.get(i).getTime();
-				double speed = distance / duration;
-				double navigatedDistance = 0.0;
-				for (int j = 0; j < path.size(); j++) {
-					if (j>0) {
-						double x = path.get(j).getLocation().getX() - path.get(j-1).getLocation().getX();
-						double y = path.get(j).getLocation().getY() - path.get(j-1).getLocation().getY();
-						navigatedDistance += Math.sqrt(x*x + y*y);
-					}
-					double possibleTime;
-					if (directDistance) {
-						distance = directDistance(dstNode, path.get(j));
-					} else {
-						distance = mapDistance(dstNode, path.get(j));
-					}
-
-					possibleTime = stops.get(i).getTime() + navigatedDistance/speed + distance / speed;
-					if (possibleTime < estimatedTime.getValue()) {
-					    estimatedTime = new Tuple<>(stops.get(i).getTime(), possibleTime);
-					}
-				}
-			}
-		}
-		return estimatedTime;
-	}
-
-	private Tuple<Double, Double> stationDeliveryEstimation(MapNode dstNode, MapScheduledRoute schedule) {
-        Tuple<Double, Double> estimatedTime = new Tuple<>(Double.MAX_VALUE, Double.MAX_VALUE);
-		List<MapScheduledNode> stops = schedule.getStops();
-		MapScheduledNode first = schedule.getStop(0);
-		MapScheduledNode second = null;
-		for (int i = 1; i < stops.size(); i++) {
-			second = schedule.getStop(i);
-			if (second.getNode() != first.getNode()) {
-				break;
-			}
-			first = second;
-		}
-		double distance = mapDistance(second.getNode(), first.getNode());
-		double duration = second.getTime() - first.getTime();
-		double speed = distance / duration;
-		double currentTime = SimClock.getTime();
-		for (MapScheduledNode stop : stops) {
-			if (stop.getTime() > currentTime) {
-				double possibleTime;
-				if (directDistance) {
-					distance = directDistance(dstNode, stop.getNode());
-				} else {
-					distance = mapDistance(dstNode, stop.getNode());
-				}
-				possibleTime = stop.getTime() + distance / speed;
-				if (possibleTime < estimatedTime.getValue()) {
-				    estimatedTime = new Tuple<>(stop.getTime(), possibleTime);
-				}
-			}
-		}
-		return estimatedTime;
-	}
-
-	private double mapDistance(MapNode dst, MapNode from) {
-		String key = dst.getLocation().toString() + from.getLocation().toString();
-		double distance = distanceCache.getOrDefault(key, 0.0);
-
-		if (distance > 0) {
-			return distance;
-		}
-
-		List<MapNode> nodePath = pathFinder.getShortestPath(from, dst);
-		for (int i = 0; i < nodePath.size() - 1; i++) {
-			MapNode n1 = nodePath.get(i);
-			MapNode n2 = nodePath.get(i + 1);
-			distance += n1.getLocation().distance(n2.getLocation());
-		}
-		distanceCache.put(key,distance);
-		return distance;
-	}
-
-	private double directDistance(MapNode dst, MapNode from) {
-		double distance;
-		Coord dst_loc = dst.getLocation();
-		double x = dst_loc.getX() - from.getLocation().getX();
-		double y = dst_loc.getY() - from.getLocation().getY();
-		distance = Math.sqrt(x*x + y*y);
-		return distance;
-	}
-
 	@Override
 	protected void transferDone(Connection con) {
 		// TODO remove delivered messages
@@ -33,6 +33,13 @@ public class GraphRouter extends ActiveRouter {
 	protected ContactGraph graph;
 	private boolean isStationary;
 
+	/** buffered messages by the address of their current route hop */
+	private Map<Integer, Map<String, Message>> messagesByNextHop;
+	/** buffered messages by the time of their current route hop */
+	private TreeMap<Double, Map<String, Message>> messagesByHopTime;
+	/** buffered messages that don't have a route */
+	private Map<String, Message> messagesWithoutRoute;
+
 	/**
 	 * Constructor. Creates a new message router based on the settings in
 	 * the given Settings object.
@@ -49,6 +56,7 @@ public class GraphRouter extends ActiveRouter {
 		} else {
 			throw new SettingsError(graphType + " is not implemented.");
 		}
+		initNextHopIndex();
 	}
 
 	/**
@@ -58,6 +66,13 @@ public class GraphRouter extends ActiveRouter {
 	protected GraphRouter(GraphRouter r) {
 		super(r);
 		this.graph = r.graph;
+		initNextHopIndex();
+	}
+
+	private void initNextHopIndex() {
+		this.messagesByNextHop = new HashMap<>();
+		this.messagesByHopTime = new TreeMap<>();
+		this.messagesWithoutRoute = new LinkedHashMap<>();
 	}
 
 	@Override
@@ -78,10 +93,10 @@ public class GraphRouter extends ActiveRouter {
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message m = super.messageTransferred(id, from);
-		List<Tuple<Double,Integer>> route = (List<Tuple<Double,Integer>>) m.getProperty(MSG_ROUTE_PROPERTY);
-		Integer routeIndex = (Integer) m.getProperty(MSG_ROUTE_INDEX_PROPERTY);
+		List<Tuple<Double,Integer>> route = getRoute(m);
+		Integer routeIndex = getRouteIndex(m);
 		if (routeIndex != null && routeIndex < route.size() && route.get(routeIndex).getValue() == getHost().getAddress()) {
-			m.updateProperty(MSG_ROUTE_INDEX_PROPERTY, ++routeIndex);
+			setRoute(m, route, routeIndex + 1);
 		} else if (routeIndex == null) {
 			replaceAssociatedRoute(m, getHost().getAddress());
 		}
@@ -134,55 +149,163 @@ public class GraphRouter extends ActiveRouter {
 
 	private boolean replaceAssociatedRoute(Message m, Integer startHost) {
 		List<Tuple<Double,Integer>> newRoute = findRoute(m, startHost);
-		Integer newIndex = 0;
 		if (newRoute != null) {
-			m.updateProperty(MSG_ROUTE_PROPERTY, newRoute);
-			m.updateProperty(MSG_ROUTE_INDEX_PROPERTY, newIndex);
+			setRoute(m, newRoute, 0);
 			return true;
 		}
 		return false;
 	}
 
+	@SuppressWarnings("unchecked")
+	private static List<Tuple<Double, Integer>> getRoute(Message m) {
+		return (List<Tuple<Double,Integer>>) m.getProperty(MSG_ROUTE_PROPERTY);
+	}
+
+	private static Integer getRouteIndex(Message m) {
+		return (Integer) m.getProperty(MSG_ROUTE_INDEX_PROPERTY);
+	}
+
+	/**
+	 * Sets the route of a message and the index of its current hop and
+	 * updates the next hop index if the message is in the buffer
+	 */
+	private void setRoute(Message m, List<Tuple<Double, Integer>> route, int routeIndex) {
+		boolean buffered = getMessage(m.getId()) == m;
+		if (buffered) {
+			removeFromNextHopIndex(m);
+		}
+		m.updateProperty(MSG_ROUTE_PROPERTY, route);
+		m.updateProperty(MSG_ROUTE_INDEX_PROPERTY, routeIndex);
+		if (buffered) {
+			addToNextHopIndex(m);
+		}
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		Message old = getMessage(m.getId());
+		if (old != null) {
+			removeFromNextHopIndex(old);
+		}
+		super.addToMessages(m, newMessage);
+		addToNextHopIndex(m);
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			removeFromNextHopIndex(m);
+		}
+		return m;
+	}
+
+	private void addToNextHopIndex(Message m) {
+		List<Tuple<Double,Integer>> route = getRoute(m);
+		if (route == null) {
+			this.messagesWithoutRoute.put(m.getId(), m);
+			return;
+		}
+		int routeIndex = getRouteIndex(m);
+		if (routeIndex < route.size()) {
+			Tuple<Double, Integer> hop = route.get(routeIndex);
+			this.messagesByNextHop.computeIfAbsent(hop.getValue(), k -> new LinkedHashMap<>()).put(m.getId(), m);
+			this.messagesByHopTime.computeIfAbsent(hop.getKey(), k -> new LinkedHashMap<>()).put(m.getId(), m);
+		}
+	}
+
+	private void removeFromNextHopIndex(Message m) {
+		List<Tuple<Double,Integer>> route = getRoute(m);
+		if (route == null) {
+			this.messagesWithoutRoute.remove(m.getId());
+			return;
+		}
+		int routeIndex = getRouteIndex(m);
+		if (routeIndex < route.size()) {
+			Tuple<Double, Integer> hop = route.get(routeIndex);
+			removeFrom(this.messagesByNextHop, hop.getValue(), m);
+			removeFrom(this.messagesByHopTime, hop.getKey(), m);
+		}
+	}
+
+	private static <K> void removeFrom(Map<K, Map<String, Message>> index, K key, Message m) {
+		Map<String, Message> msgs = index.get(key);
+		if (msgs != null && msgs.remove(m.getId()) != null && msgs.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the buffered messages whose current route hop is the given host
+	 * @param address Address of the host
+	 * @return The messages mapped by their IDs (unmodifiable)
+	 */
+	protected Map<String, Message> getMessagesForNextHop(int address) {
+		Map<String, Message> msgs = this.messagesByNextHop.get(address);
+		return msgs == null ? Collections.<String, Message>emptyMap() : Collections.unmodifiableMap(msgs);
+	}
+
+	/**
+	 * Returns the buffered messages whose current route hop is before the
+	 * given time
+	 * @param time The time
+	 * @return The messages in the order of their hop times
+	 */
+	protected List<Message> getMessagesWithHopBefore(double time) {
+		List<Message> messages = new ArrayList<>();
+		for (Map<String, Message> msgs : this.messagesByHopTime.headMap(time, false).values()) {
+			messages.addAll(msgs.values());
+		}
+		return messages;
+	}
+
+	/**
+	 * Returns the buffered messages that don't have a route
+	 * @return The messages (unmodifiable)
+	 */
+	protected Collection<Message> getMessagesWithoutRoute() {
+		return Collections.unmodifiableCollection(this.messagesWithoutRoute.values());
+	}
+
+	/**
+	 * Returns the messages that can be sent over the current connections to
+	 * other graph routers: messages whose current route hop is the other
+	 * host, and messages that have no route or whose current hop has already
+	 * departed, which are rerouted from the other host.
+	 * @return The sendable messages and their connections
+	 */
 	private List<Tuple<Message, Connection>> getSendableMessages() {
 		double cTime = SimClock.getTime();
 		List<Tuple<Message, Connection>> sendableMessages = new ArrayList<>();
 		for (Connection c : getConnections()) {
-			MessageRouter otherRouter = c.getOtherNode(getHost()).getRouter();
-			if (otherRouter instanceof GraphRouter) {
-				for (Message m : getMessageCollection()) {
-					List<Tuple<Double,Integer>> route = (List<Tuple<Double,Integer>>) m.getProperty(MSG_ROUTE_PROPERTY);
-					Integer routeIndex = (Integer) m.getProperty(MSG_ROUTE_INDEX_PROPERTY);
-					if (route == null) {
-						if (replaceAssociatedRoute(m, c.getOtherNode(getHost()).getAddress())) {
-							route = (List<Tuple<Double,Integer>>) m.getProperty(MSG_ROUTE_PROPERTY);
-							routeIndex = (Integer) m.getProperty(MSG_ROUTE_INDEX_PROPERTY);
-
-							if (route.get(routeIndex).getValue() != getHost().getAddress()) {
-								sendableMessages.add(new Tuple<>(m, c));
-							} else {
-								m.updateProperty(MSG_ROUTE_INDEX_PROPERTY, ++routeIndex);
-							}
-						} else if (isStationary && !((GraphRouter) otherRouter).isStationary) {
-							sendableMessages.add(new Tuple<>(m, c));
-						}
-					} else if (routeIndex < route.size()) {
-						if (route.get(routeIndex).getValue() == c.getOtherNode(getHost()).getAddress()) {
-							sendableMessages.add(new Tuple<>(m, c));
-						} else if (route.get(routeIndex).getKey() < cTime) {
-							if (replaceAssociatedRoute(m, c.getOtherNode(getHost()).getAddress())) {
-								route = (List<Tuple<Double,Integer>>) m.getProperty(MSG_ROUTE_PROPERTY);
-								routeIndex = (Integer) m.getProperty(MSG_ROUTE_INDEX_PROPERTY);
-
-								if (route.get(routeIndex).getValue() != getHost().getAddress()) {
-									sendableMessages.add(new Tuple<>(m, c));
-								} else {
-									m.updateProperty(MSG_ROUTE_INDEX_PROPERTY, ++routeIndex);
-								}
-							} else if (isStationary && !((GraphRouter) otherRouter).isStationary) {
-								sendableMessages.add(new Tuple<>(m, c));
-							}
-						}
+			DTNHost other = c.getOtherNode(getHost());
+			MessageRouter otherRouter = other.getRouter();
+			if (!(otherRouter instanceof GraphRouter)) {
+				continue;
+			}
+
+			Map<String, Message> nextHopMessages = getMessagesForNextHop(other.getAddress());
+			for (Message m : nextHopMessages.values()) {
+				sendableMessages.add(new Tuple<>(m, c));
+			}
+
+			List<Message> reroutable = new ArrayList<>(getMessagesWithoutRoute());
+			for (Message m : getMessagesWithHopBefore(cTime)) {
+				if (!nextHopMessages.containsKey(m.getId())) {
+					reroutable.add(m);
+				}
+			}
+			for (Message m : reroutable) {
+				if (replaceAssociatedRoute(m, other.getAddress())) {
+					List<Tuple<Double,Integer>> route = getRoute(m);
+					int routeIndex = getRouteIndex(m);
+					if (route.get(routeIndex).getValue() != getHost().getAddress()) {
+						sendableMessages.add(new Tuple<>(m, c));
+					} else {
+						setRoute(m, route, routeIndex + 1);
 					}
+				} else if (isStationary && !((GraphRouter) otherRouter).isStationary) {
+					sendableMessages.add(new Tuple<>(m, c));
 				}
 			}
 		}
@@ -15,7 +15,9 @@ import java.util.Map;
 import java.util.Set;
 
 import routing.maxprop.MaxPropDijkstra;
+import routing.maxprop.MaxPropEvictionPolicy;
 import routing.maxprop.MeetingProbabilitySet;
+import routing.util.BufferEvictionPolicy;
 import routing.util.RoutingInfo;
 import util.Tuple;
 import core.Connection;
@@ -55,10 +57,13 @@ public class MaxPropRouter extends ActiveRouter {
 	private MaxPropDijkstra dijkstra;
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
+	/** version of the meeting probabilities; incremented every time
+	 * the probabilities (of this host or the other hosts) change */
+	private int probsVersion;
+	/** the current costs to all hosts (indexed by host address). This should
+	 * be set to null always when the costs should be updated (a host is met
+	 * or a new message is received) */
+	private double[] costsForMessages;
 	/** From host of the last cost calculation */
 	private DTNHost lastCostFrom;
 
@@ -125,7 +130,7 @@ public class MaxPropRouter extends ActiveRouter {
 		super.changedConnection(con);
 
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			invalidateCosts(); // invalidate old cost estimates
 
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -148,13 +153,15 @@ public class MaxPropRouter extends ActiveRouter {
 				probs.updateMeetingProbFor(otherHost.getAddress());
 				otherRouter.probs.updateMeetingProbFor(getHost().getAddress());
 
-				/* exchange the transitive probabilities */
+				/* exchange the transitive probabilities (as shared snapshots) */
 				this.updateTransitiveProbs(otherRouter.allProbs);
 				otherRouter.updateTransitiveProbs(this.allProbs);
 				this.allProbs.put(otherHost.getAddress(),
-						otherRouter.probs.replicate());
+						otherRouter.probs.snapshot());
 				otherRouter.allProbs.put(getHost().getAddress(),
-						this.probs.replicate());
+						this.probs.snapshot());
+				this.probsVersion++;
+				otherRouter.probsVersion++;
 			}
 		}
 		else {
@@ -166,7 +173,8 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Updates transitive probability values by replacing the current
 	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
+	 * if the given sets have more recent updates. The sets are immutable
+	 * snapshots so they are shared, not copied.
 	 * @param p Mapping of the values of the other host
 	 */
 	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
@@ -174,7 +182,7 @@ public class MaxPropRouter extends ActiveRouter {
 			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey());
 			if (myMps == null ||
 				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
+				this.allProbs.put(e.getKey(), e.getValue().snapshot());
 			}
 		}
 	}
@@ -192,7 +200,7 @@ public class MaxPropRouter extends ActiveRouter {
 
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
+		invalidateCosts(); // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
@@ -259,34 +267,49 @@ public class MaxPropRouter extends ActiveRouter {
 		else { // no samples or all samples are zero
 			this.avgTransferredBytes = 0;
 		}
+		getEvictionIndex().invalidate(); // the threshold may have changed
 	}
 
 	/**
-	 * Returns the next message that should be dropped, according to MaxProp's
-	 * message ordering scheme (see MaxPropTupleComparator).
-	 * @param excludeMsgBeingSent If true, excludes message(s) that are
-	 * being sent from the next-to-be-dropped check (i.e., if next message to
-	 * drop is being sent, the following message is returned)
-	 * @return The oldest message or null if no message could be returned
-	 * (no messages in buffer or all messages in buffer are being sent and
-	 * exludeMsgBeingSent is true)
+	 * Creates the buffer eviction policy. Unless some other policy is
+	 * explicitly defined, MaxProp's own message ordering scheme is used
+	 * (see {@link MaxPropEvictionPolicy}).
 	 */
-    @Override
-	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		List<Message> validMessages = new ArrayList<Message>();
-
-		for (Message m : messages) {
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
-			}
-			validMessages.add(m);
+	@Override
+	protected BufferEvictionPolicy createEvictionPolicy(Settings s) {
+		if (!s.contains(BufferEvictionPolicy.BUFFER_POLICY_S) ||
+				BufferEvictionPolicy.getPolicyName(s).equals(
+						BufferEvictionPolicy.STR_MAXPROP_COST)) {
+			return null; /* per-host policy, see getEvictionPolicy() */
 		}
+		return super.createEvictionPolicy(s);
+	}
 
-		Collections.sort(validMessages,
-				new MaxPropComparator(this.calcThreshold()));
+	@Override
+	protected BufferEvictionPolicy getEvictionPolicy() {
+		BufferEvictionPolicy policy = super.getEvictionPolicy();
+		return policy != null ? policy : new MaxPropEvictionPolicy(
+				() -> new MaxPropComparator(calcThreshold(), getCostSnapshot()));
+	}
+
+	/**
+	 * Returns the message delivery costs from this host as they are now
+	 * (the same costs {@link #getCost(DTNHost, DTNHost)} returns)
+	 * @return The costs indexed by host address. The array must not be
+	 * modified.
+	 */
+	private double[] getCostSnapshot() {
+		getCost(getHost(), getHost()); // makes sure the cached costs are ours
+		return this.costsForMessages;
+	}
 
-		return validMessages.get(validMessages.size()-1); // return last message
+	/**
+	 * Invalidates the cached message costs (and the drop order that
+	 * depends on them)
+	 */
+	private void invalidateCosts() {
+		this.costsForMessages = null;
+		getEvictionIndex().invalidate();
 	}
 
 	@Override
@@ -307,8 +330,8 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host,
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. The costs from each "from" host are
+	 * calculated at most once per version of the meeting probabilities.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or
@@ -317,28 +340,19 @@ public class MaxPropRouter extends ActiveRouter {
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
 		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
+			/* cached costs are invalid -> get the costs from the calculator
+			 * (that recalculates them only if the probabilities changed) */
 			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-
-			/* calculate paths only to nodes we have messages to
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
+			this.costsForMessages = dijkstra.getCosts(from.getAddress(),
+					this.probsVersion);
 			this.lastCostFrom = from; // store source host for caching checks
 		}
 
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		/* if there's no known path to the given host, the cost is
+		 * Double.MAX_VALUE */
+		int toIndex = to.getAddress();
+		return toIndex < costsForMessages.length ?
+				costsForMessages[toIndex] : Double.MAX_VALUE;
 	}
 
 	/**
@@ -460,6 +474,7 @@ public class MaxPropRouter extends ActiveRouter {
 		private int threshold;
 		private DTNHost from1;
 		private DTNHost from2;
+		private double[] costs;
 
 		/**
 		 * Constructor. Assumes that the host where all the costs are calculated
@@ -485,6 +500,20 @@ public class MaxPropRouter extends ActiveRouter {
 			this.from2 = from2;
 		}
 
+		/**
+		 * Constructor. The costs are calculated from this router's host and
+		 * read from the given snapshot, so the order doesn't change when the
+		 * router's costs change.
+		 * @param treshold Messages with the hop count smaller than this
+		 * value are transferred first (and ordered by the hop count)
+		 * @param costs Snapshot of the costs from this router's host
+		 * (see {@link #getCostSnapshot()})
+		 */
+		public MaxPropComparator(int treshold, double[] costs) {
+			this(treshold);
+			this.costs = costs;
+		}
+
 		/**
 		 * Compares two messages and returns -1 if the first given message
 		 * should be first in order, 1 if the second message should be first
@@ -521,8 +550,8 @@ public class MaxPropRouter extends ActiveRouter {
 
 			/* both messages have more than threshold hops -> cost of the
 			 * message path is used for ordering */
-			p1 = getCost(from1, msg1.getTo());
-			p2 = getCost(from2, msg2.getTo());
+			p1 = cost(from1, msg1.getTo());
+			p2 = cost(from2, msg2.getTo());
 
 			/* the one with lower cost should be sent first */
 			if (p1-p2 == 0) {
@@ -542,6 +571,19 @@ public class MaxPropRouter extends ActiveRouter {
 				return 1; // msg2 had the smaller cost
 			}
 		}
+
+		/**
+		 * Returns the cost of delivering a message from a host to another,
+		 * from the snapshot if this comparator has one
+		 */
+		private double cost(DTNHost from, DTNHost to) {
+			if (this.costs == null) {
+				return getCost(from, to);
+			}
+			int toIndex = to.getAddress();
+			return toIndex < this.costs.length ?
+					this.costs[toIndex] : Double.MAX_VALUE;
+		}
 	}
 
 	/**
@@ -578,13 +620,13 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo top = super.getRoutingInfo();
-		RoutingInfo ri = new RoutingInfo(probs.getAllProbs().size() +
+		RoutingInfo ri = new RoutingInfo(probs.size() +
 				" meeting probabilities");
 
 		/* show meeting probabilities for this host */
-		for (Map.Entry<Integer, Double> e : probs.getAllProbs().entrySet()) {
-			Integer host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0; i < probs.size(); i++) {
+			int host = probs.getIndex(i);
+			double value = probs.getProb(i);
 			ri.addMoreInfo(new RoutingInfo(String.format("host %d : %.6f",
 					host, value)));
 		}
@@ -4,12 +4,15 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import core.Application;
 import core.Connection;
@@ -21,6 +24,8 @@ import core.SettingsError;
 import core.SimClock;
 import core.SimError;
 import routing.util.RoutingInfo;
+import routing.util.SummaryVector;
+import util.HandleSet;
 import util.Tuple;
 
 /**
@@ -89,10 +94,15 @@ public abstract class MessageRouter {
 	private HashMap<String, Message> incomingMessages;
 	/** The messages this router is carrying */
 	private HashMap<String, Message> messages;
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	/** The messages this router is carrying mapped by their final recipient
+	 * (and message ID) */
+	private HashMap<DTNHost, Map<String, Message>> messagesByDestination;
+	/** Handles of the messages this router has received as the final
+	 * recipient */
+	private HandleSet deliveredMessages;
+	/** Handles of the messages that Applications on this router have
+	 * blacklisted */
+	private HandleSet blacklistedMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -105,6 +115,14 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** The buffered messages in the sending queue order or null if the order
+	 * must be recalculated */
+	private List<Message> queueOrder;
+	/** Integer simulation time when the queue order was calculated */
+	private int queueOrderTime;
+	/** Summary vector of the buffered and delivered messages or null if
+	 * summary vectors are not used */
+	private SummaryVector summaryVector;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>> applications = null;
@@ -155,6 +173,10 @@ public abstract class MessageRouter {
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
+
+		if (s.contains(SummaryVector.SV_CAPACITY_S)) {
+			this.summaryVector = new SummaryVector(s);
+		}
 	}
 
 	/**
@@ -167,8 +189,10 @@ public abstract class MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		this.incomingMessages = new HashMap<String, Message>();
 		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.queueOrder = null;
+		this.messagesByDestination = new HashMap<DTNHost, Map<String, Message>>();
+		this.deliveredMessages = new HandleSet();
+		this.blacklistedMessages = new HandleSet();
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -181,6 +205,8 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.summaryVector = (r.summaryVector != null ?
+				r.summaryVector.replicate() : null);
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -236,7 +262,41 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return this.deliveredMessages.contains(m.getHandle());
+	}
+
+	/**
+	 * Returns true if this router keeps a summary vector of the messages it
+	 * knows (see {@link #isKnownMessage(Message)})
+	 * @return true if the router has a summary vector
+	 */
+	public boolean hasSummaryVector() {
+		return this.summaryVector != null;
+	}
+
+	/**
+	 * Returns true if this router knows the message. Without a summary
+	 * vector, only the messages in the buffer are known. If the router keeps
+	 * a summary vector (see {@link SummaryVector#SV_CAPACITY_S}), also the
+	 * messages it has received as the final recipient are known, and unknown
+	 * messages are usually recognized from the summary vector alone. Other
+	 * answers are verified with an exact check, unless the summary vector is
+	 * configured to trust its (bounded) false positives.
+	 * @param m The message
+	 * @return true if the router knows (or, with an inexact summary vector,
+	 * probably knows) the message
+	 */
+	public boolean isKnownMessage(Message m) {
+		if (this.summaryVector == null) {
+			return hasMessage(m.getId());
+		}
+		if (!this.summaryVector.mightContain(m.getHandle())) {
+			return false;
+		}
+		if (!this.summaryVector.isExact()) {
+			return true;
+		}
+		return hasMessage(m.getId()) || isDeliveredMessage(m);
 	}
 
 	/**
@@ -249,7 +309,7 @@ public abstract class MessageRouter {
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
 	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+		return this.blacklistedMessages.contains(Message.getHandle(id));
 	}
 
 	/**
@@ -264,6 +324,22 @@ public abstract class MessageRouter {
 		return this.messages.values();
 	}
 
+	/**
+	 * Returns the messages this router is carrying for the given final
+	 * recipient. The same note about modifications applies as for
+	 * {@link #getMessageCollection()}.
+	 * @param to The final recipient of the messages
+	 * @return A reference to the messages to the host (an empty collection
+	 * if there are no such messages)
+	 */
+	public Collection<Message> getMessagesFor(DTNHost to) {
+		Map<String, Message> msgs = this.messagesByDestination.get(to);
+		if (msgs == null) {
+			return Collections.emptyList();
+		}
+		return msgs.values();
+	}
+
 	/**
 	 * Returns the number of messages this router has
 	 * @return How many messages this router has
@@ -402,11 +478,14 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			if (this.deliveredMessages.add(aMessage.getHandle()) &&
+					this.summaryVector != null) {
+				this.summaryVector.add(aMessage.getHandle());
+			}
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.add(Message.getHandle(id));
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -456,8 +535,30 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getId(), m);
+		if (old != null) {
+			removeFromDestinationIndex(old);
+		}
+		Map<String, Message> msgs = this.messagesByDestination.get(m.getTo());
+		if (msgs == null) {
+			msgs = new LinkedHashMap<String, Message>();
+			this.messagesByDestination.put(m.getTo(), msgs);
+		}
+		msgs.put(m.getId(), m);
 		this.bufferCacheValid = false;
+		if (this.summaryVector != null && old == null) {
+			this.summaryVector.add(m.getHandle());
+		}
+
+		/* messages are usually received in FIFO order -> just append */
+		if (old == null && this.queueOrder != null &&
+				this.sendQueueMode == Q_MODE_FIFO && (this.queueOrder.isEmpty()
+				|| this.queueOrder.get(this.queueOrder.size() - 1)
+					.getReceiveTime() < m.getReceiveTime())) {
+			this.queueOrder.add(m);
+		} else {
+			this.queueOrder = null;
+		}
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -473,10 +574,32 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			removeFromDestinationIndex(m);
+			if (this.summaryVector != null) {
+				this.summaryVector.remove(m.getHandle());
+			}
+			if (this.queueOrder != null && this.sendQueueMode == Q_MODE_FIFO) {
+				this.queueOrder.remove(m); // removal doesn't change the order
+			} else {
+				this.queueOrder = null;
+			}
+		}
 		this.bufferCacheValid = false;
 		return m;
 	}
 
+	/**
+	 * Removes a message from the final recipient index
+	 * @param m The message to remove
+	 */
+	private void removeFromDestinationIndex(Message m) {
+		Map<String, Message> msgs = this.messagesByDestination.get(m.getTo());
+		if (msgs != null && msgs.remove(m.getId()) != null && msgs.isEmpty()) {
+			this.messagesByDestination.remove(m.getTo());
+		}
+	}
+
 	/**
 	 * This method should be called (on the receiving host) when a message
 	 * transfer was aborted.
@@ -577,6 +700,28 @@ public abstract class MessageRouter {
 		return list;
 	}
 
+	/**
+	 * Returns the buffered messages in the sending queue order. The result
+	 * equals to sorting/shuffling a copy of the message collection with
+	 * {@link #sortByQueueMode(List)}, but the order is cached and only
+	 * recalculated when the buffer changes (or, in random mode, when the
+	 * integer simulation time used for seeding changes). In FIFO mode,
+	 * received messages are just appended to the cached order.
+	 * @return A new list of the messages in the sending queue order
+	 */
+	@SuppressWarnings(value = "unchecked")
+	protected List<Message> getMessagesInQueueOrder() {
+		int time = SimClock.getIntTime();
+		if (this.queueOrder == null || (this.sendQueueMode == Q_MODE_RANDOM
+				&& this.queueOrderTime != time)) {
+			this.queueOrder = sortByQueueMode(
+					new ArrayList<Message>(this.messages.values()));
+			this.queueOrderTime = time;
+		}
+
+		return new ArrayList<Message>(this.queueOrder);
+	}
+
 	/**
 	 * Gives the order of the two given messages as defined by the current
 	 * queue mode
@@ -628,8 +773,9 @@ public abstract class MessageRouter {
 			incoming.addMoreInfo(new RoutingInfo(m));
 		}
 
-		for (Message m : this.deliveredMessages.values()) {
-			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
+		for (int handle : this.deliveredMessages.toArray()) {
+			delivered.addMoreInfo(new RoutingInfo(
+					Message.getIdForHandle(handle)));
 		}
 
 		for (Connection c : host.getConnections()) {
@@ -8,10 +8,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import routing.util.PredictabilityTable;
 import routing.util.RoutingInfo;
 
 import util.Tuple;
@@ -63,9 +62,7 @@ public class ProphetRouter extends ActiveRouter {
 	private double gamma;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	private PredictabilityTable preds;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -106,10 +103,10 @@ public class ProphetRouter extends ActiveRouter {
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable(gamma, secondsInTimeUnit);
 	}
 
 	@Override
@@ -141,13 +138,7 @@ public class ProphetRouter extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host); // the table is aged before getting
 	}
 
 	/**
@@ -162,48 +153,27 @@ public class ProphetRouter extends ActiveRouter {
 			" with other routers of same type";
 
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds =
+		PredictabilityTable othersPreds =
 			((ProphetRouter)otherRouter).getDeliveryPreds();
 
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
+		for (int i = 0, n = othersPreds.size(); i < n; i++) {
+			DTNHost c = othersPreds.getHost(i);
+			if (c == getHost()) {
 				continue; // don't add yourself
 			}
 
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
+			double pOld = getPredFor(c); // P(a,c)_old
+			double pNew = pOld + ( 1 - pOld) * pForHost * othersPreds.getValue(i) * beta;
+			preds.put(c, pNew);
 		}
 	}
 
 	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) /
-			secondsInTimeUnit;
-
-		if (timeDiff == 0) {
-			return;
-		}
-
-		double mult = Math.pow(gamma, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
+	 * Returns a table of this router's delivery predictions
+	 * @return a table of this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
+	private PredictabilityTable getDeliveryPreds() {
+		preds.age(); // make sure the aging is done
 		return this.preds;
 	}
 
@@ -244,7 +214,7 @@ public class ProphetRouter extends ActiveRouter {
 			}
 
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (othRouter.isKnownMessage(m)) {
 					continue; // skip messages that the other one has
 				}
 				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
@@ -298,14 +268,14 @@ public class ProphetRouter extends ActiveRouter {
 
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
+		preds.age();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() +
 				" delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0, n = preds.size(); i < n; i++) {
+			DTNHost host = preds.getHost(i);
+			double value = preds.getValue(i);
 
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f",
 					host, value)));
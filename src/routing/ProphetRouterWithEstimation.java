@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import routing.util.PredictabilityTable;
 import routing.util.RoutingInfo;
 
 import util.Tuple;
@@ -72,15 +73,13 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	private double ptavg;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private PredictabilityTable preds;
 
 	/** last meeting time with a node */
 	private Map<DTNHost, Double> meetings;
 	private int nrofSamples;
 	private double meanIET;
 
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
 
 
 	/**
@@ -123,10 +122,10 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable(gamma, 1);
 	}
 
 	/**
@@ -316,6 +315,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 			}
 		}
 		gamma = Math.exp(-b);
+		preds.setGamma(gamma);
 		pinit = 1-zeta;
 	}
 
@@ -337,13 +337,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host); // the table is aged before getting
 	}
 
 	/**
@@ -358,46 +352,27 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		" with other routers of same type";
 
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds =
+		PredictabilityTable othersPreds =
 			((ProphetRouterWithEstimation)otherRouter).getDeliveryPreds();
 
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
+		for (int i = 0, n = othersPreds.size(); i < n; i++) {
+			DTNHost c = othersPreds.getHost(i);
+			if (c == getHost()) {
 				continue; // don't add yourself
 			}
 
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
-	}
-
-	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate);
-
-		if (timeDiff == 0) {
-			return;
-		}
-
-		double mult = Math.pow(gamma, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
+			double pOld = getPredFor(c); // P(a,c)_old
+			double pNew = pOld + ( 1 - pOld) * pForHost * othersPreds.getValue(i) * beta;
+			preds.put(c, pNew);
 		}
-
-		this.lastAgeUpdate = SimClock.getTime();
 	}
 
 	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
+	 * Returns a table of this router's delivery predictions
+	 * @return a table of this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
+	private PredictabilityTable getDeliveryPreds() {
+		preds.age(); // make sure the aging is done
 		return this.preds;
 	}
 
@@ -438,7 +413,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 			}
 
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (othRouter.isKnownMessage(m)) {
 					continue; // skip messages that the other one has
 				}
 				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
@@ -492,14 +467,14 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
+		preds.age();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() +
 		" delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0, n = preds.size(); i < n; i++) {
+			DTNHost host = preds.getHost(i);
+			double value = preds.getValue(i);
 
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f",
 					host, value)));
@@ -1,15 +1,45 @@
 package routing.contactgraph;
 
+import core.DTNSim;
 import core.Settings;
+import core.SimError;
 import movement.map.MapNode;
+import movement.map.SimMap;
 import util.Tuple;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public abstract class ContactGraph {
+    /** Route precomputation -setting id ({@value}). Boolean. If true, the routes to all destinations are calculated
+     * in parallel when the first route is requested. Default = false. */
+    public static final String PRECOMPUTE_ROUTES = "precomputeRoutes";
+    /** Route cache directory -setting id ({@value}). Directory where precalculated routes are stored and looked up.
+     * Precalculated routes are written to the cache and later runs with the same input read them from the
+     * (memory-mapped) cache file. If not defined, no cache is used. */
+    public static final String ROUTE_CACHE_DIR = "routeCacheDir";
+
     private static ScheduleGraph scheduleGraph;
     private static ContactPlanGraph contactPlanGraph;
 
+    static {
+        DTNSim.registerForReset(ContactGraph.class.getCanonicalName());
+        reset();
+    }
+
+    /**
+     * Forgets the graphs, so the next initialization creates new ones
+     */
+    public static void reset() {
+        scheduleGraph = null;
+        contactPlanGraph = null;
+    }
+
     public static ScheduleGraph getScheduleGraph() {
         if (ContactGraph.scheduleGraph == null) {
             throw new RuntimeException("ScheduleGraph has not yet been instantiated.");
@@ -18,10 +48,20 @@ public abstract class ContactGraph {
     }
 
     public static ContactGraph initializeScheduleGraph(Settings s) {
+        return initializeScheduleGraph(s, null);
+    }
+
+    /**
+     * Creates the schedule graph if it hasn't been created yet
+     * @param s The settings of the graph
+     * @param map The map the schedule is read against or null for the map of the scenario
+     * @return The schedule graph
+     */
+    public static ContactGraph initializeScheduleGraph(Settings s, SimMap map) {
         if (ContactGraph.scheduleGraph != null) {
             return ContactGraph.scheduleGraph;
         }
-        ContactGraph.scheduleGraph = new ScheduleGraph(s);
+        ContactGraph.scheduleGraph = new ScheduleGraph(s, map);
         return ContactGraph.scheduleGraph;
     }
 
@@ -41,16 +81,153 @@ public abstract class ContactGraph {
     }
 
     protected Set<Integer> availableRoutes;
+    private boolean precomputeRoutes;
+    private String routeCacheDir;
+    private boolean prepared;
+    private RouteCache routeCache;
 
-    protected ContactGraph() {
+    protected ContactGraph(Settings s) {
         this.availableRoutes = new HashSet<>();
+        this.precomputeRoutes = s.getBoolean(PRECOMPUTE_ROUTES, false);
+        this.routeCacheDir = s.contains(ROUTE_CACHE_DIR) ? s.getSetting(ROUTE_CACHE_DIR) : null;
+        this.prepared = false;
     }
 
     public abstract void addNode(Integer address);
     public abstract void addNode(Integer address, MapNode location);
-    public abstract void calculateRoutesTo(Integer address);
     protected abstract ContactGraphNode getNode(Integer address);
 
+    /**
+     * Called once before the first routes are calculated or read from the cache.
+     */
+    protected void initialize() {}
+
+    /**
+     * Returns the addresses of all the destinations routes can be calculated to
+     */
+    protected abstract Collection<Integer> getDestinations();
+
+    /**
+     * Returns the file the graph was read from (part of the route cache key)
+     */
+    protected abstract File getSourceFile();
+
+    /**
+     * Returns the settings and other input the routes depend on, besides the source file (part of the route cache
+     * key)
+     */
+    protected abstract String getCacheKey();
+
+    /**
+     * Calculates the routes of all nodes to a destination. Must be safe to call from several threads at once.
+     * @param address Address of the destination
+     * @return The routes of the nodes (mapped by node address)
+     */
+    protected abstract Map<Integer, RouteTable> computeRoutesTo(Integer address);
+
+    public void calculateRoutesTo(Integer address) {
+        if (availableRoutes.contains(address)) {
+            return;
+        }
+        if (!prepared) {
+            prepared = true;
+            prepareRoutes();
+            if (availableRoutes.contains(address)) {
+                return;
+            }
+        }
+
+        Map<Integer, RouteTable> routes = null;
+        if (routeCache != null) {
+            routes = routeCache.getRoutesTo(address);
+        }
+        if (routes == null) {
+            routes = computeRoutesTo(address);
+        }
+        installRoutes(address, routes);
+    }
+
+    /**
+     * Opens the route cache and, if precomputation is enabled and there's no cache yet, calculates the routes to all
+     * destinations in parallel and writes them to the cache.
+     */
+    private void prepareRoutes() {
+        initialize();
+
+        File cacheFile = null;
+        if (routeCacheDir != null) {
+            try {
+                String hash = RouteCache.hash(getSourceFile(), getClass().getName() + ":" + getCacheKey());
+                cacheFile = new File(routeCacheDir, "routes-" + hash + ".bin");
+                routeCache = RouteCache.open(cacheFile);
+            } catch (IOException e) {
+                System.err.println("Warning: route cache disabled (" + e.getMessage() + ")");
+            }
+        }
+        if (routeCache != null || !precomputeRoutes) {
+            return;
+        }
+
+        Map<Integer, Map<Integer, RouteTable>> allRoutes = computeAllRoutes();
+        if (cacheFile != null) {
+            try {
+                RouteCache.write(cacheFile, allRoutes);
+            } catch (IOException e) {
+                System.err.println("Warning: couldn't write route cache " + cacheFile + " (" + e.getMessage() + ")");
+            }
+        }
+        for (Map.Entry<Integer, Map<Integer, RouteTable>> entry : allRoutes.entrySet()) {
+            installRoutes(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Map<Integer, Map<Integer, RouteTable>> computeAllRoutes() {
+        List<Integer> destinations = new ArrayList<>(getDestinations());
+        Collections.sort(destinations);
+        List<Callable<Map<Integer, RouteTable>>> tasks = new ArrayList<>();
+        for (Integer destination : destinations) {
+            tasks.add(() -> computeRoutesTo(destination));
+        }
+
+        Map<Integer, Map<Integer, RouteTable>> allRoutes = new LinkedHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            List<Future<Map<Integer, RouteTable>>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < destinations.size(); i++) {
+                allRoutes.put(destinations.get(i), results.get(i).get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new SimError("Precalculating the routes failed", e);
+        } finally {
+            pool.shutdown();
+        }
+        return allRoutes;
+    }
+
+    /**
+     * Packs the routes of the nodes into route tables
+     * @param routes The routes of the nodes (mapped by node address)
+     * @return The route tables of the nodes
+     */
+    protected static Map<Integer, RouteTable> toRouteTables(
+            Map<Integer, LinkedList<LinkedList<Tuple<Double, Integer>>>> routes) {
+        Map<Integer, RouteTable> tables = new HashMap<>();
+        for (Map.Entry<Integer, LinkedList<LinkedList<Tuple<Double, Integer>>>> entry : routes.entrySet()) {
+            tables.put(entry.getKey(), RouteTable.fromRoutes(entry.getValue()));
+        }
+        return tables;
+    }
+
+    private void installRoutes(Integer destination, Map<Integer, RouteTable> routes) {
+        for (Map.Entry<Integer, RouteTable> entry : routes.entrySet()) {
+            ContactGraphNode node = getNode(entry.getKey());
+            if (node != null) {
+                node.setRoutes(destination, entry.getValue());
+            }
+        }
+        availableRoutes.add(destination);
+    }
+
     public LinkedList<Tuple<Double, Integer>> getNearestRoute(int from, int to, double startTime) {
         ContactGraphNode fromNode = getNode(from);
         if (fromNode == null) {
@@ -11,19 +11,40 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
+/**
+ * Contact graph of a static contact plan. The contacts are compiled into primitive arrays and the routes are
+ * calculated with an iterative contact graph routing (CGR) search: for every contact into the destination a
+ * backward, hop-limited search finds for each node the route with the latest first contact that still reaches the
+ * destination over that final contact. The searches for the different final contacts give each node alternative
+ * routes over time.
+ */
 public class ContactPlanGraph extends ContactGraph{
 
     public static final String CONTACT_PLAN = "contactPlan";
     public static final String HOP_LIMIT = "hopLimit";
 
-    private Set<ContactPlanEdge> visitedEdges;
+    /** Value for the label of a node that can't reach the destination */
+    private static final double UNREACHABLE = Double.NEGATIVE_INFINITY;
+
     private Integer hopLimit;
     protected Map<Integer, ContactPlanNode> nodesByAddress;
 
+    /* the contact plan as primitive arrays; nodes are referred with dense indexes */
+    private ContactPlanNode[] nodes;
+    private Map<Integer, Integer> indexesByAddress;
+    private int[] contactFrom;
+    private int[] contactTo;
+    private double[] contactStart;
+    private double[] contactEnd;
+    /* incoming contacts of each node (from incomingOffsets[n] to incomingOffsets[n+1]) sorted by end time */
+    private int[] incomingOffsets;
+    private int[] incomingContacts;
+    private double[] incomingEnds;
+
+    private File contactFile;
 
     protected ContactPlanGraph(Settings contactSettings) {
-        super();
-        this.visitedEdges = new HashSet<>();
+        super(contactSettings);
         nodesByAddress = new HashMap<>();
         this.hopLimit = contactSettings.getInt(HOP_LIMIT);
         initializeGraph(contactSettings.getSetting(CONTACT_PLAN));
@@ -32,11 +53,10 @@ public class ContactPlanGraph extends ContactGraph{
 
     private void initializeGraph(String fileName) {
         ContactPlanReader reader = new ContactPlanReader();
-        File contactFile = null;
         Map<Integer, List<Contact>> contactPlan;
 
         try {
-            contactFile = new File(fileName);
+            this.contactFile = new File(fileName);
             contactPlan = reader.readContacts(contactFile);
         }
         catch (IOException ioe){
@@ -44,16 +64,71 @@ public class ContactPlanGraph extends ContactGraph{
                     fileName + 	" (cause: " + ioe.getMessage() + ")");
         }
 
+        List<ContactPlanNode> nodeList = new ArrayList<>();
+        this.indexesByAddress = new HashMap<>();
+        int nrofContacts = 0;
+        for (Map.Entry<Integer, List<Contact>> entry: contactPlan.entrySet()) {
+            addNodeFor(entry.getKey(), nodeList);
+            for (Contact contact: entry.getValue()) {
+                addNodeFor(contact.getPartner(), nodeList);
+                nrofContacts++;
+            }
+        }
+        this.nodes = nodeList.toArray(new ContactPlanNode[0]);
+
+        this.contactFrom = new int[nrofContacts];
+        this.contactTo = new int[nrofContacts];
+        this.contactStart = new double[nrofContacts];
+        this.contactEnd = new double[nrofContacts];
+        int c = 0;
         for (Map.Entry<Integer, List<Contact>> entry: contactPlan.entrySet()) {
-            ContactPlanNode host = nodesByAddress.getOrDefault(entry.getKey(), new ContactPlanNode(entry.getKey()));
-            nodesByAddress.put(entry.getKey(), host);
+            int from = indexesByAddress.get(entry.getKey());
             for (Contact contact: entry.getValue()) {
-                ContactPlanNode contactNode = nodesByAddress.getOrDefault(contact.getPartner(), new ContactPlanNode(contact.getPartner()));
-                nodesByAddress.put(contact.getPartner(), contactNode);
-                ContactPlanEdge newEdge = new ContactPlanEdge(host, contactNode, contact.getStart(), contact.getEnd());
-                addEdge(newEdge);
+                contactFrom[c] = from;
+                contactTo[c] = indexesByAddress.get(contact.getPartner());
+                contactStart[c] = contact.getStart();
+                contactEnd[c] = contact.getEnd();
+                c++;
             }
         }
+
+        indexIncomingContacts();
+    }
+
+    private void addNodeFor(Integer address, List<ContactPlanNode> nodeList) {
+        if (!nodesByAddress.containsKey(address)) {
+            ContactPlanNode node = new ContactPlanNode(address);
+            nodesByAddress.put(address, node);
+            indexesByAddress.put(address, nodeList.size());
+            nodeList.add(node);
+        }
+    }
+
+    private void indexIncomingContacts() {
+        int nrofNodes = nodes.length;
+        int nrofContacts = contactFrom.length;
+        this.incomingOffsets = new int[nrofNodes + 1];
+        for (int c = 0; c < nrofContacts; c++) {
+            incomingOffsets[contactTo[c] + 1]++;
+        }
+        for (int n = 0; n < nrofNodes; n++) {
+            incomingOffsets[n + 1] += incomingOffsets[n];
+        }
+
+        Integer[] byEnd = new Integer[nrofContacts];
+        for (int c = 0; c < nrofContacts; c++) {
+            byEnd[c] = c;
+        }
+        Arrays.sort(byEnd, (c1, c2) -> Double.compare(contactEnd[c1], contactEnd[c2]));
+
+        this.incomingContacts = new int[nrofContacts];
+        this.incomingEnds = new double[nrofContacts];
+        int[] next = Arrays.copyOf(incomingOffsets, nrofNodes);
+        for (Integer c : byEnd) {
+            int i = next[contactTo[c]]++;
+            incomingContacts[i] = c;
+            incomingEnds[i] = contactEnd[c];
+        }
     }
 
     @Override
@@ -67,55 +142,261 @@ public class ContactPlanGraph extends ContactGraph{
         return nodesByAddress.getOrDefault(address, null);
     }
 
-    private void addEdge(ContactPlanEdge edge) {
-        ContactPlanNode from = edge.getFrom();
-        ContactPlanNode to = edge.getTo();
+    @Override
+    protected Collection<Integer> getDestinations() {
+        return nodesByAddress.keySet();
+    }
 
-        from.addOutgoingEdge(edge);
-        to.addIncomingEdge(edge);
+    @Override
+    protected File getSourceFile() {
+        return contactFile;
     }
 
-    public void calculateRoutesTo(Integer address) {
-        if (availableRoutes.contains(address)) {
-            return;
-        }
-        ContactPlanNode destination = this.nodesByAddress.getOrDefault(address, null);
+    @Override
+    protected String getCacheKey() {
+        return HOP_LIMIT + "=" + hopLimit;
+    }
+
+    @Override
+    protected Map<Integer, RouteTable> computeRoutesTo(Integer address) {
+        Map<Integer, LinkedList<LinkedList<Tuple<Double, Integer>>>> routes = new HashMap<>();
+        Integer destination = this.indexesByAddress.getOrDefault(address, null);
         if (destination == null) {
-            return;
+            return new HashMap<>();
         }
 
-        for (Iterator<ContactPlanEdge> it = destination.incomingEdges(false); it.hasNext(); ) {
-            ContactPlanEdge edge = it.next();
-            deepSearch(edge, new LinkedList<>(), new HashSet<>());
-            finalizeRoutes(address);
+        /* final contacts in descending order of start time (routes are added to the front of the route lists) */
+        int first = incomingOffsets[destination];
+        int last = incomingOffsets[destination + 1];
+        Integer[] finalContacts = new Integer[last - first];
+        for (int i = first; i < last; i++) {
+            finalContacts[i - first] = incomingContacts[i];
         }
+        Arrays.sort(finalContacts, (c1, c2) -> Double.compare(contactStart[c2], contactStart[c1]));
 
-        availableRoutes.add(address);
+        Search search = new Search();
+        for (Integer finalContact : finalContacts) {
+            search.search(finalContact, destination, routes);
+        }
+        return toRouteTables(routes);
     }
 
-    private void finalizeRoutes(Integer destination) {
-        for (Map.Entry<Integer, ContactPlanNode> entry :
-                nodesByAddress.entrySet()) {
-            entry.getValue().persistRouteCandidate(destination);
+    /**
+     * Returns the end of the range of the node's incoming contacts that end at or before the given time
+     */
+    private int lastIncomingBefore(int node, double time) {
+        int low = incomingOffsets[node];
+        int high = incomingOffsets[node + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (incomingEnds[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
-        this.visitedEdges = new HashSet<>();
+        return low;
     }
 
-    private void deepSearch(ContactPlanEdge edge, LinkedList<Tuple<Double, Integer>> routeState, Set<Integer> carriers) {
-        if (visitedEdges.contains(edge)) { return; }
-        visitedEdges.add(edge);
-        routeState.push(new Tuple<>(edge.getEnd(), edge.getTo().getAddress()));
-        carriers.add(edge.getTo().getAddress());
-        ContactPlanNode node = edge.getFrom();
-        LinkedList<Tuple<Double, Integer>> clone = ( LinkedList<Tuple<Double, Integer>>) routeState.clone();
-        node.setRouteCandidate(clone);
-        if (!carriers.contains(edge.getFrom().getAddress()) && routeState.size() < this.hopLimit) {
-            List<ContactPlanEdge> contacts = node.getPreviousContacts(edge, edge.getStart());
-            for (ContactPlanEdge contact : contacts) {
-                deepSearch(contact, routeState, carriers);
+    /**
+     * State of the searches to one destination. Every thread calculating routes uses its own search state.
+     */
+    private class Search {
+        /* per hop round and node: latest start of the first contact of a route to the destination,
+         * the first contact and the round where the label was set */
+        private double[][] latestStart;
+        private int[][] firstContact;
+        private int[][] labelRound;
+        /* per node: the latest ending first contact of the node's route */
+        private double[] routeEnd;
+        private int[] routeContact;
+        /* nodes that have a label or a route in the current search */
+        private int[] touched;
+        private int nrofTouched;
+        private boolean[] isTouched;
+        /* nodes whose label was improved in the previous/current round */
+        private int[] marked;
+        private int nrofMarked;
+        private int[] nextMarked;
+        private int nrofNextMarked;
+        private boolean[] isMarked;
+
+        private Search() {
+            int nrofNodes = nodes.length;
+            int rounds = Math.max(1, hopLimit - 1);
+            this.latestStart = new double[rounds][nrofNodes];
+            this.firstContact = new int[rounds][nrofNodes];
+            this.labelRound = new int[rounds][nrofNodes];
+            for (double[] round : latestStart) {
+                Arrays.fill(round, UNREACHABLE);
+            }
+            this.routeEnd = new double[nrofNodes];
+            Arrays.fill(routeEnd, UNREACHABLE);
+            this.routeContact = new int[nrofNodes];
+            this.touched = new int[nrofNodes];
+            this.isTouched = new boolean[nrofNodes];
+            this.marked = new int[nrofNodes];
+            this.nextMarked = new int[nrofNodes];
+            this.isMarked = new boolean[nrofNodes];
+        }
+
+        /**
+         * Finds for every node the route over the given final contact whose first contact ends as late as possible.
+         * Round r labels the nodes with the latest start time of the first contact of a route with at most r + 1 hops.
+         * A contact into a node can precede the node's route if the contact ends before the route's first contact
+         * starts. The routes are the latest ending contacts that can precede a route of at most hopLimit - 1 hops.
+         * The routes are added to the front of the nodes' route lists.
+         */
+        private void search(int finalContact, int destination,
+                Map<Integer, LinkedList<LinkedList<Tuple<Double, Integer>>>> routes) {
+            int from = contactFrom[finalContact];
+            if (from == destination) {
+                return;
+            }
+            setRoute(from, finalContact);
+            if (hopLimit > 1) {
+                searchLongerRoutes(finalContact, destination);
+            }
+
+            for (int i = 0; i < nrofTouched; i++) {
+                int x = touched[i];
+                if (routeEnd[x] == UNREACHABLE) {
+                    continue;
+                }
+                int c = routeContact[x];
+                LinkedList<Tuple<Double, Integer>> route = new LinkedList<>();
+                route.add(new Tuple<>(contactEnd[c], nodes[contactTo[c]].getAddress()));
+                if (c != finalContact) {
+                    appendRoute(route, contactTo[c], latestStart.length - 1);
+                }
+                routes.computeIfAbsent(nodes[x].getAddress(), k -> new LinkedList<>()).addFirst(route);
+            }
+            reset();
+        }
+
+        private void reset() {
+            for (int i = 0; i < nrofTouched; i++) {
+                int n = touched[i];
+                for (double[] round : latestStart) {
+                    round[n] = UNREACHABLE;
+                }
+                routeEnd[n] = UNREACHABLE;
+                isTouched[n] = false;
+            }
+            nrofTouched = 0;
+        }
+
+        private void searchLongerRoutes(int finalContact, int destination) {
+            /* round 0: the final contact */
+            nrofMarked = 0;
+            nrofNextMarked = 0;
+            setLabel(0, contactFrom[finalContact], finalContact);
+            nrofMarked = swapMarked();
+
+            int round = 0;
+            while (round + 1 < latestStart.length) {
+                round++;
+                for (int i = 0; i < nrofTouched; i++) { // carry the labels of the previous round
+                    int n = touched[i];
+                    latestStart[round][n] = latestStart[round - 1][n];
+                    firstContact[round][n] = firstContact[round - 1][n];
+                    labelRound[round][n] = labelRound[round - 1][n];
+                }
+
+                for (int i = 0; i < nrofMarked; i++) {
+                    int y = marked[i];
+                    int end = lastIncomingBefore(y, latestStart[round - 1][y]);
+                    for (int j = incomingOffsets[y]; j < end; j++) {
+                        int c = incomingContacts[j];
+                        int x = contactFrom[c];
+                        if (x != y && x != destination && contactStart[c] > latestStart[round][x]) {
+                            setLabel(round, x, c);
+                        }
+                    }
+                }
+                nrofMarked = swapMarked();
+            }
+
+            /* the routes: the latest ending contacts that can precede the routes of the labeled nodes */
+            for (int i = 0, n = nrofTouched; i < n; i++) {
+                int y = touched[i];
+                int end = lastIncomingBefore(y, latestStart[round][y]);
+                for (int j = incomingOffsets[y]; j < end; j++) {
+                    int c = incomingContacts[j];
+                    int x = contactFrom[c];
+                    if (x != y && x != destination && contactEnd[c] > routeEnd[x] && !routeContains(y, round, x)) {
+                        setRoute(x, c);
+                    }
+                }
+            }
+        }
+
+        private void touch(int node) {
+            if (!isTouched[node]) {
+                isTouched[node] = true;
+                touched[nrofTouched++] = node;
+            }
+        }
+
+        private void setLabel(int round, int node, int contact) {
+            touch(node);
+            latestStart[round][node] = contactStart[contact];
+            firstContact[round][node] = contact;
+            labelRound[round][node] = round;
+            if (!isMarked[node]) {
+                isMarked[node] = true;
+                nextMarked[nrofNextMarked++] = node;
+            }
+        }
+
+        private void setRoute(int node, int contact) {
+            touch(node);
+            routeEnd[node] = contactEnd[contact];
+            routeContact[node] = contact;
+        }
+
+        /**
+         * Makes the nodes marked in the current round the marked nodes of the previous round
+         * @return number of marked nodes
+         */
+        private int swapMarked() {
+            int[] tmp = marked;
+            marked = nextMarked;
+            nextMarked = tmp;
+            int nrof = nrofNextMarked;
+            nrofNextMarked = 0;
+            for (int i = 0; i < nrof; i++) {
+                isMarked[marked[i]] = false;
+            }
+            return nrof;
+        }
+
+        private boolean routeContains(int node, int round, int other) {
+            while (true) {
+                if (node == other) {
+                    return true;
+                }
+                int r = labelRound[round][node];
+                int c = firstContact[round][node];
+                if (r == 0) {
+                    return contactTo[c] == other;
+                }
+                node = contactTo[c];
+                round = r - 1;
+            }
+        }
+
+        private void appendRoute(LinkedList<Tuple<Double, Integer>> route, int node, int round) {
+            while (true) {
+                int r = labelRound[round][node];
+                int c = firstContact[round][node];
+                route.add(new Tuple<>(contactEnd[c], nodes[contactTo[c]].getAddress()));
+                if (r == 0) {
+                    return;
+                }
+                node = contactTo[c];
+                round = r - 1;
             }
         }
-        routeState.pop();
-        carriers.remove(edge.getTo().getAddress());
     }
 }
@@ -0,0 +1,191 @@
+package routing.contactgraph;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary file cache of precalculated contact graph routes. The file starts with an index of the destinations and
+ * the offsets of their sections; the file is memory-mapped and a destination's routes are decoded only when they are
+ * requested. Cache files are named after a hash of everything the routes depend on (e.g. the contact plan file and
+ * the hop limit), so a changed input never reads stale routes.
+ * <PRE>
+ * int magic, int version, int nrofDestinations,
+ * nrofDestinations * (int destination, int offset),
+ * per destination: int nrofNodes, per node: int address, int nrofRoutes, int nrofHops,
+ *   nrofRoutes * int routeLength, nrofHops * double time, nrofHops * int address
+ * </PRE>
+ */
+public class RouteCache {
+    private static final int MAGIC = 0x43475243;
+    private static final int VERSION = 2;
+
+    private final MappedByteBuffer buffer;
+    private final Map<Integer, Integer> offsets;
+
+    private RouteCache(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        this.offsets = new HashMap<>();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a route cache file of this version");
+        }
+        int nrofDestinations = buffer.getInt();
+        for (int i = 0; i < nrofDestinations; i++) {
+            offsets.put(buffer.getInt(), buffer.getInt());
+        }
+    }
+
+    /**
+     * Opens (memory-maps) a cache file
+     * @param file The cache file
+     * @return The cache or null if the file doesn't exist or isn't a valid cache file
+     */
+    public static RouteCache open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            return new RouteCache(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            System.err.println("Warning: ignoring route cache " + file + " (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached routes to a destination
+     * @param destination Address of the destination
+     * @return Routes of the nodes (mapped by node address) or null if the cache doesn't have the destination
+     */
+    public Map<Integer, RouteTable> getRoutesTo(int destination) {
+        Integer offset = offsets.get(destination);
+        if (offset == null) {
+            return null;
+        }
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset);
+        Map<Integer, RouteTable> routes = new HashMap<>();
+        for (int nrofNodes = in.getInt(); nrofNodes > 0; nrofNodes--) {
+            int node = in.getInt();
+            int[] hopOffsets = new int[in.getInt() + 1];
+            double[] hopTimes = new double[in.getInt()];
+            int[] hopAddresses = new int[hopTimes.length];
+            for (int i = 1; i < hopOffsets.length; i++) {
+                hopOffsets[i] = hopOffsets[i - 1] + in.getInt();
+            }
+            in.asDoubleBuffer().get(hopTimes);
+            in.position(in.position() + 8 * hopTimes.length);
+            in.asIntBuffer().get(hopAddresses);
+            in.position(in.position() + 4 * hopAddresses.length);
+            routes.put(node, new RouteTable(hopOffsets, hopTimes, hopAddresses));
+        }
+        return routes;
+    }
+
+    /**
+     * Writes routes to a cache file. The file is written under a temporary name and renamed when it's complete, so
+     * parallel runs never see partial files.
+     * @param file The cache file
+     * @param routes Routes of the nodes to each destination (mapped by destination address and node address)
+     * @throws IOException if the file can't be written
+     */
+    public static void write(File file,
+            Map<Integer, Map<Integer, RouteTable>> routes) throws IOException {
+        List<byte[]> sections = new ArrayList<>();
+        for (Map<Integer, RouteTable> destinationRoutes : routes.values()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(destinationRoutes.size());
+            for (Map.Entry<Integer, RouteTable> e : destinationRoutes.entrySet()) {
+                RouteTable table = e.getValue();
+                out.writeInt(e.getKey());
+                out.writeInt(table.size());
+                int nrofHops = 0;
+                for (int i = 0; i < table.size(); i++) {
+                    nrofHops += table.getNrofHops(i);
+                }
+                out.writeInt(nrofHops);
+                for (int i = 0; i < table.size(); i++) {
+                    out.writeInt(table.getNrofHops(i));
+                }
+                for (int i = 0; i < table.size(); i++) {
+                    for (int h = 0; h < table.getNrofHops(i); h++) {
+                        out.writeDouble(table.getHopTime(i, h));
+                    }
+                }
+                for (int i = 0; i < table.size(); i++) {
+                    for (int h = 0; h < table.getNrofHops(i); h++) {
+                        out.writeInt(table.getHopAddress(i, h));
+                    }
+                }
+            }
+            out.flush();
+            sections.add(bytes.toByteArray());
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(routes.size());
+            long offset = 12L + 8L * routes.size();
+            Iterator<byte[]> it = sections.iterator();
+            for (Integer destination : routes.keySet()) {
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IOException("Too many routes for a route cache file");
+                }
+                out.writeInt(destination);
+                out.writeInt((int) offset);
+                offset += it.next().length;
+            }
+            for (byte[] section : sections) {
+                out.write(section);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns a hash (hex string) of the contents of a file and a key string
+     * @param file The file
+     * @param key The key string (e.g. other settings the routes depend on)
+     * @return The hash
+     * @throws IOException if the file can't be read
+     */
+    public static String hash(File file, String key) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            byte[] buf = new byte[1 << 16];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                digest.update(buf, 0, n);
+            }
+        }
+        digest.update(key.getBytes("UTF-8"));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package routing.contactgraph;
+
+import util.Tuple;
+
+import java.util.*;
+
+/**
+ * The routes of a node to one destination. The routes are sorted by departure (the time of the first hop) and the
+ * hops of all routes are packed into primitive arrays: the hops of route i are at the indexes from
+ * {@code hopOffsets[i]} to {@code hopOffsets[i + 1]}. Routes that have departed are skipped by moving a start index.
+ */
+public class RouteTable {
+    private final int[] hopOffsets;
+    private final double[] hopTimes;
+    private final int[] hopAddresses;
+    /** index of the first route that hasn't departed yet */
+    private int start;
+
+    /**
+     * Creates a table of packed routes
+     * @param hopOffsets Index of the first hop of each route, followed by the total number of hops
+     * @param hopTimes Times of the hops
+     * @param hopAddresses Addresses of the hops
+     */
+    RouteTable(int[] hopOffsets, double[] hopTimes, int[] hopAddresses) {
+        this.hopOffsets = hopOffsets;
+        this.hopTimes = hopTimes;
+        this.hopAddresses = hopAddresses;
+        this.start = 0;
+    }
+
+    /**
+     * Creates a table of routes. Routes with the same departure keep their order.
+     * @param routes The routes (hops of time and address)
+     * @return The table
+     */
+    public static RouteTable fromRoutes(List<? extends List<Tuple<Double, Integer>>> routes) {
+        List<List<Tuple<Double, Integer>>> sorted = new ArrayList<>(routes);
+        sorted.sort(Comparator.comparingDouble(route -> route.get(0).getKey()));
+
+        int[] hopOffsets = new int[sorted.size() + 1];
+        for (int i = 0; i < sorted.size(); i++) {
+            hopOffsets[i + 1] = hopOffsets[i] + sorted.get(i).size();
+        }
+        double[] hopTimes = new double[hopOffsets[sorted.size()]];
+        int[] hopAddresses = new int[hopTimes.length];
+        int h = 0;
+        for (List<Tuple<Double, Integer>> route : sorted) {
+            for (Tuple<Double, Integer> hop : route) {
+                hopTimes[h] = hop.getKey();
+                hopAddresses[h] = hop.getValue();
+                h++;
+            }
+        }
+        return new RouteTable(hopOffsets, hopTimes, hopAddresses);
+    }
+
+    /**
+     * Returns the number of routes in the table (including the departed ones)
+     */
+    public int size() {
+        return hopOffsets.length - 1;
+    }
+
+    public int getNrofHops(int route) {
+        return hopOffsets[route + 1] - hopOffsets[route];
+    }
+
+    public double getHopTime(int route, int hop) {
+        return hopTimes[hopOffsets[route] + hop];
+    }
+
+    public int getHopAddress(int route, int hop) {
+        return hopAddresses[hopOffsets[route] + hop];
+    }
+
+    public double getDeparture(int route) {
+        return hopTimes[hopOffsets[route]];
+    }
+
+    /**
+     * Skips the routes that depart before the given time in all later lookups
+     * @param time Current time
+     */
+    public void removeObsoleteRoutes(double time) {
+        start = firstDepartingAt(start, time);
+    }
+
+    /**
+     * Returns the index of the earliest departing route that departs at or after the given time
+     * @param time The earliest departure
+     * @return Index of the route or -1 if there is no such route
+     */
+    public int indexOfNearest(double time) {
+        int route = firstDepartingAt(start, time);
+        return route < size() ? route : -1;
+    }
+
+    /**
+     * Returns a route as a list of hops (time and address)
+     * @param route Index of the route
+     * @return The route
+     */
+    public LinkedList<Tuple<Double, Integer>> getRoute(int route) {
+        LinkedList<Tuple<Double, Integer>> hops = new LinkedList<>();
+        for (int h = hopOffsets[route]; h < hopOffsets[route + 1]; h++) {
+            hops.add(new Tuple<>(hopTimes[h], hopAddresses[h]));
+        }
+        return hops;
+    }
+
+    private int firstDepartingAt(int from, double time) {
+        int low = from;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hopTimes[hopOffsets[mid]] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -1,5 +1,6 @@
 package routing.contactgraph;
 
+import core.Coord;
 import core.Settings;
 import core.SimScenario;
 import movement.map.MapNode;
@@ -8,33 +9,64 @@ import movement.map.MapScheduledRoute;
 import movement.map.SimMap;
 import util.Tuple;
 
+import java.io.File;
 import java.util.*;
 
+/**
+ * Contact graph of a schedule. The schedule's trip segments (edges) are compiled into primitive arrays and the routes
+ * to a destination are calculated with an iterative backward search over the edges: for every edge into the
+ * destination the search finds all the edges that can carry a message to it (by staying on the vehicle, by changing
+ * to a vehicle that is at the same stop at the same time, or by being stored at the stop) and gives every stop the
+ * route over the latest departing edge. The searches for the different final edges give each stop alternative routes
+ * over time.
+ */
 public class ScheduleGraph extends ContactGraph{
 
     public static final String CONTACT_GRAPH_SCHEDULE = "schedule";
     public static final String CONTACT_GRAPH_START = "scheduleStartId";
 
-    private Set<ScheduleGraphEdge> visitedEdges;
     private String schedulePath;
     private Integer scheduleStartId;
+    /** the map the schedule is read against (null until initialized if the scenario's map is used) */
+    private SimMap map;
     private boolean initialized;
     protected Map<MapNode, ScheduleGraphNode> nodesByLocation;
     protected Map<Integer, ScheduleGraphNode> nodesByAddress;
+    private List<ScheduleGraphEdge> edges;
 
-    protected ScheduleGraph(Settings contactSettings) {
-        super();
+    /* the schedule as primitive arrays; stops are referred with dense indexes */
+    private ScheduleGraphNode[] stations;
+    private Map<MapNode, Integer> indexesByLocation;
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private int[] edgeAddress;
+    private double[] edgeDeparture;
+    private double[] edgeArrival;
+    /** previous edge of the same vehicle or -1 */
+    private int[] edgePrevious;
+    /** departure of the next edge of the same vehicle or NaN if the vehicle doesn't continue */
+    private double[] edgeNextDeparture;
+    /* incoming edges of each stop (from incomingOffsets[n] to incomingOffsets[n+1]) sorted by arrival */
+    private int[] incomingOffsets;
+    private int[] incomingEdges;
+    private double[] incomingArrivals;
+
+    protected ScheduleGraph(Settings contactSettings, SimMap map) {
+        super(contactSettings);
+        this.map = map;
         this.nodesByLocation = new HashMap<>();
         this.nodesByAddress = new HashMap<>();
         this.schedulePath = contactSettings.getSetting(CONTACT_GRAPH_SCHEDULE);
         this.scheduleStartId = contactSettings.getInt(CONTACT_GRAPH_START);
         this.initialized = false;
-        this.visitedEdges = new HashSet<>();
+        this.edges = new ArrayList<>();
     }
 
     private void initializeGraph() {
-        SimMap map = SimScenario.getInstance().getMap();
-        List<MapScheduledRoute> schedule = MapScheduledRoute.readRoutes(this.schedulePath, map);
+        if (this.map == null) {
+            this.map = SimScenario.getInstance().getMap();
+        }
+        List<MapScheduledRoute> schedule = MapScheduledRoute.readRoutes(this.schedulePath, this.map);
 
         Integer currentAddress = this.scheduleStartId;
         for (MapScheduledRoute route : schedule) {
@@ -52,6 +84,8 @@ public class ScheduleGraph extends ContactGraph{
             }
             currentAddress++;
         }
+        compileGraph();
+        this.initialized = true;
     }
 
     public void addNode(Integer address) {
@@ -83,76 +117,259 @@ public class ScheduleGraph extends ContactGraph{
 
     private void addEdge(ScheduleGraphEdge edge) {
         MapNode from = edge.getFrom();
-        ScheduleGraphNode fromNode = this.nodesByLocation.getOrDefault(from, null);
-        if (fromNode == null) {
-            fromNode = new ScheduleGraphNode(from);
-            this.nodesByLocation.put(from, fromNode);
+        if (!this.nodesByLocation.containsKey(from)) {
+            this.nodesByLocation.put(from, new ScheduleGraphNode(from));
         }
-        fromNode.addOutgoingEdge(edge);
 
         MapNode to = edge.getTo();
-        ScheduleGraphNode toNode = this.nodesByLocation.getOrDefault(to, null);
-        if (toNode == null) {
-            toNode = new ScheduleGraphNode(to);
-            this.nodesByLocation.put(to, toNode);
+        if (!this.nodesByLocation.containsKey(to)) {
+            this.nodesByLocation.put(to, new ScheduleGraphNode(to));
         }
-        toNode.addIncomingEdge(edge);
+        this.edges.add(edge);
     }
 
-    public void calculateRoutesTo(Integer address) {
+    private void compileGraph() {
+        int nrofStops = nodesByLocation.size();
+        this.stations = new ScheduleGraphNode[nrofStops];
+        this.indexesByLocation = new HashMap<>();
+        for (Map.Entry<MapNode, ScheduleGraphNode> entry : nodesByLocation.entrySet()) {
+            stations[indexesByLocation.size()] = entry.getValue();
+            indexesByLocation.put(entry.getKey(), indexesByLocation.size());
+        }
 
-        if (availableRoutes.contains(address)) {
-            return;
+        int nrofEdges = edges.size();
+        Map<ScheduleGraphEdge, Integer> edgeIndexes = new IdentityHashMap<>();
+        for (int e = 0; e < nrofEdges; e++) {
+            edgeIndexes.put(edges.get(e), e);
+        }
+        this.edgeFrom = new int[nrofEdges];
+        this.edgeTo = new int[nrofEdges];
+        this.edgeAddress = new int[nrofEdges];
+        this.edgeDeparture = new double[nrofEdges];
+        this.edgeArrival = new double[nrofEdges];
+        this.edgePrevious = new int[nrofEdges];
+        this.edgeNextDeparture = new double[nrofEdges];
+        for (int e = 0; e < nrofEdges; e++) {
+            ScheduleGraphEdge edge = edges.get(e);
+            edgeFrom[e] = indexesByLocation.get(edge.getFrom());
+            edgeTo[e] = indexesByLocation.get(edge.getTo());
+            edgeAddress[e] = edge.getAddress();
+            edgeDeparture[e] = edge.getDeparture();
+            edgeArrival[e] = edge.getArrival();
+            edgePrevious[e] = edge.getPrevious() == null ? -1 : edgeIndexes.get(edge.getPrevious());
+            Double nextDeparture = edge.getDepartureToTo();
+            edgeNextDeparture[e] = nextDeparture == null ? Double.NaN : nextDeparture;
+        }
+        this.edges = null;
+
+        this.incomingOffsets = new int[nrofStops + 1];
+        for (int e = 0; e < nrofEdges; e++) {
+            incomingOffsets[edgeTo[e] + 1]++;
+        }
+        for (int n = 0; n < nrofStops; n++) {
+            incomingOffsets[n + 1] += incomingOffsets[n];
         }
+        Integer[] byArrival = new Integer[nrofEdges];
+        for (int e = 0; e < nrofEdges; e++) {
+            byArrival[e] = e;
+        }
+        Arrays.sort(byArrival, (e1, e2) -> Double.compare(edgeArrival[e1], edgeArrival[e2]));
+        this.incomingEdges = new int[nrofEdges];
+        this.incomingArrivals = new double[nrofEdges];
+        int[] next = Arrays.copyOf(incomingOffsets, nrofStops);
+        for (Integer e : byArrival) {
+            int i = next[edgeTo[e]]++;
+            incomingEdges[i] = e;
+            incomingArrivals[i] = edgeArrival[e];
+        }
+    }
+
+    @Override
+    protected void initialize() {
         if (!initialized) {
             initializeGraph();
         }
+    }
+
+    @Override
+    protected ContactGraphNode getNode(Integer address) {
+        return this.nodesByAddress.getOrDefault(address, null);
+    }
+
+    @Override
+    protected Collection<Integer> getDestinations() {
+        return nodesByAddress.keySet();
+    }
+
+    @Override
+    protected File getSourceFile() {
+        return new File(schedulePath);
+    }
+
+    @Override
+    protected String getCacheKey() {
+        /* the routes depend on the hosts that are placed at the stops */
+        List<String> placedHosts = new ArrayList<>();
+        for (ScheduleGraphNode station : stations) {
+            if (station.getAddress() != null) {
+                placedHosts.add(station.getAddress() + "@" + station.getLocation().getLocation());
+            }
+        }
+        Collections.sort(placedHosts);
+        /* and on the map nodes the schedule's stops were matched to */
+        List<Coord> stops = new ArrayList<>();
+        for (ScheduleGraphNode station : stations) {
+            stops.add(station.getLocation().getLocation());
+        }
+        Collections.sort(stops);
+        return CONTACT_GRAPH_START + "=" + scheduleStartId + ";map=" + map.getOffset() +
+                (map.isMirrored() ? ",mirrored" : "") + ";stops=" + stops + ";" + String.join(";", placedHosts);
+    }
+
+    @Override
+    protected Map<Integer, RouteTable> computeRoutesTo(Integer address) {
+        initialize();
         ScheduleGraphNode destination = this.nodesByAddress.getOrDefault(address, null);
         if (destination == null) {
             throw new RuntimeException("Requested destination for routes is not part of the contact graph.");
         }
 
-        for (Iterator<ScheduleGraphEdge> it = destination.incomingEdges(false); it.hasNext(); ) {
-            ScheduleGraphEdge edge = it.next();
-            deepSearch(edge, new LinkedList<>());
-            finalizeRoutes(address);
+        Map<Integer, LinkedList<LinkedList<Tuple<Double, Integer>>>> routes = new HashMap<>();
+        Integer destinationIndex = this.indexesByLocation.get(destination.getLocation());
+        if (destinationIndex != null) {
+            /* final edges in descending order of arrival (routes are added to the front of the route lists) */
+            Search search = new Search();
+            for (int i = incomingOffsets[destinationIndex + 1] - 1; i >= incomingOffsets[destinationIndex]; i--) {
+                search.search(incomingEdges[i], routes);
+            }
         }
-
-        availableRoutes.add(address);
+        return toRouteTables(routes);
     }
 
-    @Override
-    protected ContactGraphNode getNode(Integer address) {
-        return this.nodesByAddress.getOrDefault(address, null);
+    /**
+     * Returns the end of the range of the stop's incoming edges that arrive at or before the given time
+     */
+    private int lastIncomingBefore(int stop, double time) {
+        int low = incomingOffsets[stop];
+        int high = incomingOffsets[stop + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (incomingArrivals[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
     }
 
-    private void finalizeRoutes(Integer destination) {
-        for (Map.Entry<Integer, ScheduleGraphNode> entry :
-                nodesByAddress.entrySet()) {
-            entry.getValue().persistRouteCandidate(destination);
+    /**
+     * State of the searches to one destination. Every thread calculating routes uses its own search state.
+     */
+    private class Search {
+        private int[] visitStamps;
+        private int searchStamp;
+        private int[] parents;
+        private boolean[] viaStop;
+        private int[] queue;
+        private int[] routeEdge;
+        private int[] touched;
+        private int nrofTouched;
+
+        private Search() {
+            int nrofEdges = edgeFrom.length;
+            this.visitStamps = new int[nrofEdges];
+            this.searchStamp = 0;
+            this.parents = new int[nrofEdges];
+            this.viaStop = new boolean[nrofEdges];
+            this.queue = new int[nrofEdges];
+            this.routeEdge = new int[stations.length];
+            Arrays.fill(routeEdge, -1);
+            this.touched = new int[stations.length];
         }
-        this.visitedEdges = new HashSet<>();
-    }
 
-    private void deepSearch(ScheduleGraphEdge edge, LinkedList<Tuple<Double, Integer>> routeState) {
-        if (visitedEdges.contains(edge)) { return; }
-        routeState.push(new Tuple<>(edge.getDeparture(), edge.getAddress()));
-        ScheduleGraphNode node = nodesByLocation.get(edge.getFrom());
-        LinkedList<Tuple<Double, Integer>> clone = ( LinkedList<Tuple<Double, Integer>>) routeState.clone();
-        node.setRouteCandidate(clone);
-        visitedEdges.add(edge);
-        List<ScheduleGraphEdge> contacts = node.getContacts(edge);
-        for (ScheduleGraphEdge contact : contacts) {
-            deepSearch(contact, routeState);
+        /**
+         * Finds all the edges that can carry a message to the destination of the final edge (breadth first, every edge
+         * is visited once) and adds the route over its latest departing edge to the front of every stop's route list.
+         */
+        private void search(int finalEdge, Map<Integer, LinkedList<LinkedList<Tuple<Double, Integer>>>> routes) {
+            searchStamp++;
+            int head = 0;
+            int tail = 0;
+            visitStamps[finalEdge] = searchStamp;
+            parents[finalEdge] = -1;
+            queue[tail++] = finalEdge;
+
+            while (head < tail) {
+                int g = queue[head++];
+                int stop = edgeFrom[g];
+                if (routeEdge[stop] < 0) {
+                    touched[nrofTouched++] = stop;
+                    routeEdge[stop] = g;
+                } else if (edgeDeparture[g] > edgeDeparture[routeEdge[stop]]) {
+                    routeEdge[stop] = g;
+                }
+
+                /* staying on the same vehicle */
+                int previous = edgePrevious[g];
+                if (previous >= 0 && visitStamps[previous] != searchStamp) {
+                    visit(previous, g, false);
+                    queue[tail++] = previous;
+                }
+
+                /* vehicles that arrive at the stop before g departs: they can hand the message over directly if they
+                 * are still at the stop when g's vehicle arrives, otherwise the stop stores it */
+                double min = previous >= 0 ? edgeArrival[previous] : edgeDeparture[g];
+                boolean canStore = stations[stop].getAddress() != null;
+                int end = lastIncomingBefore(stop, edgeDeparture[g]);
+                for (int i = incomingOffsets[stop]; i < end; i++) {
+                    int e = incomingEdges[i];
+                    double leaveTime = edgeNextDeparture[e];
+                    if (visitStamps[e] == searchStamp || Double.isNaN(leaveTime)) {
+                        continue;
+                    }
+                    if (leaveTime >= min) {
+                        visit(e, g, false);
+                    } else if (canStore) {
+                        visit(e, g, true);
+                    } else {
+                        continue;
+                    }
+                    queue[tail++] = e;
+                }
+            }
+
+            for (int i = 0; i < nrofTouched; i++) {
+                int stop = touched[i];
+                Integer address = stations[stop].getAddress();
+                if (address != null) {
+                    routes.computeIfAbsent(address, k -> new LinkedList<>()).addFirst(getRoute(routeEdge[stop]));
+                }
+                routeEdge[stop] = -1;
+            }
+            nrofTouched = 0;
         }
 
-        routeState.push(new Tuple<>(edge.getDeparture(), node.getAddress()));
-        contacts = node.getPreviousContacts(edge);
-        for (ScheduleGraphEdge contact : contacts) {
-            deepSearch(contact, routeState);
+        private void visit(int edge, int parent, boolean stored) {
+            visitStamps[edge] = searchStamp;
+            parents[edge] = parent;
+            viaStop[edge] = stored;
         }
-        routeState.pop();
 
-        routeState.pop();
+        /**
+         * Returns the route of a message that leaves with the given edge: the vehicles (and the stops that store the
+         * message) with their departure times
+         */
+        private LinkedList<Tuple<Double, Integer>> getRoute(int edge) {
+            LinkedList<Tuple<Double, Integer>> route = new LinkedList<>();
+            for (int e = edge; e >= 0; e = parents[e]) {
+                route.add(new Tuple<>(edgeDeparture[e], edgeAddress[e]));
+                if (viaStop[e]) {
+                    int p = parents[e];
+                    route.add(new Tuple<>(edgeDeparture[p], stations[edgeFrom[p]].getAddress()));
+                }
+            }
+            return route;
+        }
     }
 }
@@ -4,36 +4,41 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * Distances, visited flags and the priority queue (an indexed binary heap
+ * with decrease-key) are primitive arrays indexed by the node index.
+ * Costs calculated with {@link #getCosts(int, int)} are cached per source
+ * node until the version of the probability sets changes.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
+	private static final double INFINITY = Double.MAX_VALUE;
 
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
 
+	/** Set of already visited nodes (where the shortest path is known) */
+	private boolean[] visited;
+	/** Priority queue of unvisited nodes discovered so far (binary heap) */
+	private int[] heap;
+	/** Positions of the nodes in the heap (-1 if not in the heap) */
+	private int[] heapPos;
+	/** Number of nodes in the heap */
+	private int heapSize;
+	/** Distances of the current search */
+	private double[] dist;
+
+	/** Cached costs from different source nodes */
+	private Map<Integer, double[]> costCache;
+	/** Probability set version of the cached costs */
+	private int cacheVersion;
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,22 +46,35 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.visited = new boolean[0];
+		this.heap = new int[0];
+		this.heapPos = new int[0];
+		this.costCache = new HashMap<Integer, double[]>();
+		this.cacheVersion = -1;
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
+	 * Returns the total costs from a node to all other nodes. The costs are
+	 * cached per source node as long as the same version is given; the
+	 * caller must give a new version whenever the probability sets change.
+	 * @param from The index (address) of the start node
+	 * @param version Version of the probability sets
+	 * @return Costs to other nodes indexed by the node index. Nodes without
+	 * a path, and nodes beyond the end of the array, have the cost
+	 * Double.MAX_VALUE. The array must not be modified.
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
+	public double[] getCosts(int from, int version) {
+		if (version != this.cacheVersion) {
+			this.costCache.clear();
+			this.cacheVersion = version;
+		}
 
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		double[] costs = this.costCache.get(from);
+		if (costs == null) {
+			costs = calculateCosts(from);
+			this.costCache.put(from, costs);
+		}
+		return costs;
 	}
 
 	/**
@@ -69,156 +87,182 @@ public class MaxPropDijkstra {
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
+		double[] costs = calculateCosts(from);
+
+		for (Integer node : to) {
+			if (node < costs.length && costs[node] != INFINITY) {
+				distMap.put(node, costs[node]);
+			}
+		}
 
-		initWith(from);
-		Integer node = null;
+		return distMap;
+	}
 
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
+	/**
+	 * Calculates the shortest distances from a node to all other nodes
+	 * @param from The index of the start node
+	 * @return The distances indexed by node index
+	 */
+	private double[] calculateCosts(int from) {
+		int nrofNodes = from + 1;
+		for (Map.Entry<Integer, MeetingProbabilitySet> e : probs.entrySet()) {
+			MeetingProbabilitySet mps = e.getValue();
+			nrofNodes = Math.max(nrofNodes, e.getKey() + 1);
+			if (mps.size() > 0) { // indexes are in ascending order
+				nrofNodes = Math.max(nrofNodes, mps.getIndex(mps.size()-1) + 1);
 			}
+		}
+		initWith(from, nrofNodes);
 
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+		// always take the node with shortest distance
+		while (this.heapSize > 0) {
+			int node = poll();
+			this.visited[node] = true; // mark the node as visited
+			relax(node);               // add/update neighbor nodes' distances
 		}
 
-		return distMap;
+		double[] result = this.dist;
+		this.dist = null;
+		return result;
+	}
+
+	/**
+	 * Initializes a new search with the first hop router node
+	 * @param firstHop The first hop router node
+	 * @param nrofNodes Number of node indexes the search can encounter
+	 */
+	private void initWith(int firstHop, int nrofNodes) {
+		if (this.visited.length < nrofNodes) {
+			this.visited = new boolean[nrofNodes];
+			this.heap = new int[nrofNodes];
+			this.heapPos = new int[nrofNodes];
+		}
+		Arrays.fill(this.visited, false);
+		Arrays.fill(this.heapPos, -1);
+		this.heapSize = 0;
+		this.dist = new double[nrofNodes];
+		Arrays.fill(this.dist, INFINITY);
+
+		// set distance to source 0 and initialize unvisited queue
+		setDistance(firstHop, 0);
 	}
 
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
+	private void relax(int node) {
+		double nodeDist = this.dist[node];
+		MeetingProbabilitySet neighbors = this.probs.get(node);
 
-		if (!this.probs.containsKey(node)) {
+		if (neighbors == null) {
 			return; // node's neighbors are not known
 		}
 
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+		for (int i = 0, size = neighbors.size(); i < size; i++) {
+			int n = neighbors.getIndex(i);
+			if (this.visited[n]) {
 				continue; // skip visited nodes
 			}
 
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
+			double nDist = nodeDist + (1 - neighbors.getProb(i));
 
-			if (distancesFromStart.get(n) > nDist) {
+			if (this.dist[n] > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
 				setDistance(n, nDist);
 			}
 		}
 	}
 
 	/**
-	 * Sets the distance from source node to a node
+	 * Sets the distance from source node to a node and updates the node's
+	 * place in the queue
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private void setDistance(int n, double distance) {
+		this.dist[n] = distance;
+		if (this.heapPos[n] < 0) {
+			this.heap[this.heapSize] = n;
+			this.heapPos[n] = this.heapSize;
+			this.heapSize++;
+		}
+		siftUp(this.heapPos[n]); // distance only decreases
 	}
 
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to".
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Removes and returns the node with the smallest distance from the queue
+	 * @return The node with the smallest distance
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private int poll() {
+		int first = this.heap[0];
+		this.heapPos[first] = -1;
+		this.heapSize--;
+		if (this.heapSize > 0) {
+			int last = this.heap[this.heapSize];
+			this.heap[0] = last;
+			this.heapPos[last] = 0;
+			siftDown(0);
+		}
+		return first;
 	}
 
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Moves the node at the given heap position up to its place
+	 * @param pos The position
 	 */
-	private class DistanceComparator implements
-		Comparator<Integer> {
-
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
+	private void siftUp(int pos) {
+		int node = this.heap[pos];
+		while (pos > 0) {
+			int parentPos = (pos - 1) >>> 1;
+			int parent = this.heap[parentPos];
+			if (!isCloser(node, parent)) {
+				break;
 			}
+			this.heap[pos] = parent;
+			this.heapPos[parent] = pos;
+			pos = parentPos;
 		}
+		this.heap[pos] = node;
+		this.heapPos[node] = pos;
 	}
 
 	/**
-	 * Simple Map implementation for storing distances.
+	 * Moves the node at the given heap position down to its place
+	 * @param pos The position
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>();
-		}
-
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+	private void siftDown(int pos) {
+		int node = this.heap[pos];
+		int half = this.heapSize >>> 1;
+		while (pos < half) {
+			int childPos = 2 * pos + 1;
+			int child = this.heap[childPos];
+			int rightPos = childPos + 1;
+			if (rightPos < this.heapSize &&
+					isCloser(this.heap[rightPos], child)) {
+				childPos = rightPos;
+				child = this.heap[childPos];
 			}
-			else {
-				return INFINITY;
+			if (!isCloser(child, node)) {
+				break;
 			}
+			this.heap[pos] = child;
+			this.heapPos[child] = pos;
+			pos = childPos;
 		}
+		this.heap[pos] = node;
+		this.heapPos[node] = pos;
+	}
 
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
-		}
-
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
+	/**
+	 * Compares two nodes by their distance from the source node (and by the
+	 * node index if the distances are equal)
+	 * @return true if node1 should be polled before node2
+	 */
+	private boolean isCloser(int node1, int node2) {
+		double dist1 = this.dist[node1];
+		double dist2 = this.dist[node2];
+		return dist1 < dist2 || (dist1 == dist2 && node1 < node2);
 	}
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.maxprop;
+
+import java.util.Comparator;
+import java.util.function.Supplier;
+
+import routing.util.BufferEvictionPolicy;
+import core.Message;
+
+/**
+ * Buffer eviction policy that drops messages according to MaxProp's
+ * message ordering scheme: the message that would be sent last is dropped
+ * first. The order depends on the router's current costs and threshold, so
+ * it's volatile and a new sending order, that compares a snapshot of the
+ * costs and the threshold, is taken from the router every time the index is
+ * re-sorted.
+ */
+public class MaxPropEvictionPolicy extends BufferEvictionPolicy {
+	private final Supplier<Comparator<Message>> sendOrder;
+	private Comparator<Message> comparator;
+
+	/**
+	 * Constructor.
+	 * @param sendOrder Supplier of the router's current sending order (the
+	 * message that should be sent first compares smallest). The order must
+	 * not change until a new order is taken.
+	 */
+	public MaxPropEvictionPolicy(Supplier<Comparator<Message>> sendOrder) {
+		this.sendOrder = sendOrder;
+	}
+
+	@Override
+	public boolean isVolatile() {
+		return true;
+	}
+
+	@Override
+	public void prepare() {
+		this.comparator = this.sendOrder.get();
+	}
+
+	public int compare(Message m1, Message m2) {
+		return this.comparator.compare(m2, m1);
+	}
+}
@@ -4,45 +4,64 @@
  */
 package routing.maxprop;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import core.SimClock;
+import core.SimError;
 
 import static core.Constants.DEBUG;
 
 /**
- * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * <P>Class for storing and manipulating the meeting probabilities for the
+ * MaxProp router module.</P>
+ * <P>The probabilities are stored as primitive arrays sorted by the node
+ * index. Sets that are exchanged between nodes are immutable snapshots
+ * (see {@link #snapshot()}) that are shared by reference by all the nodes
+ * that know them, so an encounter doesn't deep copy the sets. The last update
+ * time works as the version of a set: a new snapshot of the owner's set is
+ * created only after the owner has updated it, and nodes take another node's
+ * set only if it's newer than the one they already have.</P>
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** node indexes of the probabilities in ascending order */
+	private int[] indexes;
+	/** meeting probabilities (probability that the next node one meets is X),
+	 * in the same order as the indexes */
+	private double[] probs;
+	/** number of probabilities in the set */
+	private int size;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
-    private int maxSetSize;
+	private int maxSetSize;
+	/** is this set an immutable snapshot */
+	private boolean immutable;
+	/** the latest snapshot of this set or null if the set has been modified
+	 * after the snapshot was taken */
+	private MeetingProbabilitySet snapshot;
 
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping.
 	 * @param maxSetSize Maximum size of the probability set; when the set is
-	 *        full, smallest values are dropped when new are added
+	 *        full, smallest values are dropped when new are added (only in
+	 *        debug mode, see {@link #updateMeetingProbFor(Integer)})
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
-        if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-	this.probs = new HashMap<Integer, Double>();
-	this.maxSetSize = INFINITE_SET_SIZE;
-        } else {
-	this.probs = new HashMap<Integer, Double>(maxSetSize);
-            this.maxSetSize = maxSetSize;
-        }
+		if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
+			this.maxSetSize = INFINITE_SET_SIZE;
+		} else {
+			this.maxSetSize = maxSetSize;
+		}
+		this.indexes = new int[4];
+		this.probs = new double[4];
+		this.size = 0;
 		this.lastUpdateTime = 0;
+		this.immutable = false;
 	}
 
 	/**
@@ -62,7 +81,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
 
@@ -75,38 +94,41 @@ public class MeetingProbabilitySet {
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
+		int smallest = -1;
+		double smallestValue = Double.MAX_VALUE;
 
 		this.lastUpdateTime = SimClock.getTime();
 
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (this.size == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
 
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
 		 * normalize to one by dividing all the entries by 1+alpha */
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		for (int i = 0; i < this.size; i++) {
+			this.probs[i] = this.probs[i] / (1+alpha);
+			if (this.probs[i] < smallestValue) {
+				smallest = i;
+				smallestValue = this.probs[i];
+			}
 		}
 
-        if (probs.size() >= maxSetSize) {
-            if (DEBUG) core.Debug.p("Probsize: " + probs.size() + " dropping " +
-					probs.remove(smallestEntry.getKey()));
-        }
+		/* the smallest value is dropped only in debug mode (like in the
+		 * original implementation, where the removal was a part of the debug
+		 * print), so the size of the set is not limited in normal runs */
+		if (this.size >= maxSetSize && DEBUG) {
+			core.Debug.p("Probsize: " + this.size + " dropping " +
+					this.probs[smallest]);
+			removeAt(smallest);
+		}
 	}
 
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		put(index, iet);
 	}
 
 	/**
@@ -115,8 +137,9 @@ public class MeetingProbabilitySet {
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int i = Arrays.binarySearch(this.indexes, 0, this.size, index);
+		if (i >= 0) {
+			return this.probs[i];
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -125,11 +148,30 @@ public class MeetingProbabilitySet {
 	}
 
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the number of probabilities in this set
+	 * @return the number of probabilities in this set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the node index of the i:th probability (in ascending order of
+	 * the node indexes)
+	 * @param i Index of the probability in the set
+	 * @return The node index
+	 */
+	public int getIndex(int i) {
+		return this.indexes[i];
+	}
+
+	/**
+	 * Returns the i:th probability (in ascending order of the node indexes)
+	 * @param i Index of the probability in the set
+	 * @return The probability
 	 */
-	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+	public double getProb(int i) {
+		return this.probs[i];
 	}
 
 	/**
@@ -154,22 +196,109 @@ public class MeetingProbabilitySet {
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
+		replica.copyFrom(this);
+		return replica;
+	}
 
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
+	/**
+	 * Returns an immutable snapshot of the current state of this set.
+	 * The same snapshot is returned until this set is modified, and a snapshot
+	 * of a snapshot is the snapshot itself, so snapshots can be shared
+	 * between nodes by reference.
+	 * @return An immutable snapshot of this set
+	 */
+	public MeetingProbabilitySet snapshot() {
+		if (this.immutable) {
+			return this;
+		}
+		if (this.snapshot == null) {
+			this.snapshot = replicate();
+			this.snapshot.immutable = true;
 		}
+		return this.snapshot;
+	}
 
-		replica.lastUpdateTime = this.lastUpdateTime;
-		return replica;
+	/**
+	 * Returns true if this set is an immutable snapshot
+	 * @return true if this set is an immutable snapshot
+	 */
+	public boolean isSnapshot() {
+		return this.immutable;
+	}
+
+	/**
+	 * Copies the probabilities and the update time of another set
+	 * @param other The set to copy
+	 */
+	private void copyFrom(MeetingProbabilitySet other) {
+		this.indexes = Arrays.copyOf(other.indexes,
+				Math.max(4, other.size));
+		this.probs = Arrays.copyOf(other.probs, this.indexes.length);
+		this.size = other.size;
+		this.lastUpdateTime = other.lastUpdateTime;
+	}
+
+	/**
+	 * Sets the probability for a node index
+	 * @param index The node index
+	 * @param prob The probability
+	 */
+	private void put(int index, double prob) {
+		modified();
+		int i = Arrays.binarySearch(this.indexes, 0, this.size, index);
+		if (i >= 0) {
+			this.probs[i] = prob;
+			return;
+		}
+
+		i = -(i + 1);
+		if (this.size == this.indexes.length) {
+			this.indexes = Arrays.copyOf(this.indexes, this.size * 2);
+			this.probs = Arrays.copyOf(this.probs, this.size * 2);
+		}
+		System.arraycopy(this.indexes, i, this.indexes, i + 1, this.size - i);
+		System.arraycopy(this.probs, i, this.probs, i + 1, this.size - i);
+		this.indexes[i] = index;
+		this.probs[i] = prob;
+		this.size++;
+	}
+
+	/**
+	 * Removes the i:th probability from the set
+	 * @param i Index of the probability in the set
+	 */
+	private void removeAt(int i) {
+		modified();
+		System.arraycopy(this.indexes, i + 1, this.indexes, i,
+				this.size - i - 1);
+		System.arraycopy(this.probs, i + 1, this.probs, i, this.size - i - 1);
+		this.size--;
+	}
+
+	/**
+	 * Checks that this set can be modified and invalidates the latest
+	 * snapshot
+	 * @throws SimError if this set is an immutable snapshot
+	 */
+	private void modified() {
+		if (this.immutable) {
+			throw new SimError("Meeting probability set snapshots can't be " +
+					"modified");
+		}
+		this.snapshot = null;
 	}
 
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
-    @Override
+	@Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		StringBuilder sb = new StringBuilder("probs: {");
+		for (int i = 0; i < this.size; i++) {
+			sb.append(i > 0 ? ", " : "").append(this.indexes[i]).append('=').
+				append(this.probs[i]);
+		}
+		return sb.append('}').toString();
 	}
 }
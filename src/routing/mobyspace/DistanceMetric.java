@@ -0,0 +1,86 @@
+package routing.mobyspace;
+
+import core.SettingsError;
+
+/**
+ * Distance metric of the MobySpace. Points are dense vectors with one value per dimension.
+ */
+public interface DistanceMetric {
+
+    double distance(double[] point1, double[] point2);
+
+    /**
+     * Returns the metric for a metric name
+     * @param name Name of the metric ("euclideanDistance", "LNormDistance" or "productDistance")
+     * @param k Constant k of the Lk-norm and product metrics
+     * @return The metric
+     */
+    static DistanceMetric forName(String name, double k) {
+        switch (name) {
+            case "euclideanDistance":
+                return new Euclidean();
+            case "LNormDistance":
+                return k == 2.0 ? new Euclidean() : new LNorm(k);
+            case "productDistance":
+                return new Product(k);
+            default:
+                throw new SettingsError("Unknown MobySpace distance metric " + name);
+        }
+    }
+
+    static double pow(double x, double y) {
+        if (y == 1) {
+            return x;
+        }
+        return Math.pow(x, y);
+    }
+
+    class Euclidean implements DistanceMetric {
+        public double distance(double[] point1, double[] point2) {
+            double sum = 0;
+            for (int i = 0; i < point1.length; i++) {
+                double diff = point2[i] - point1[i];
+                sum += diff * diff;
+            }
+            return Math.sqrt(sum);
+        }
+    }
+
+    class LNorm implements DistanceMetric {
+        private final double k;
+
+        public LNorm(double k) {
+            this.k = k;
+        }
+
+        public double distance(double[] point1, double[] point2) {
+            double sum = 0;
+            for (int i = 0; i < point1.length; i++) {
+                sum += pow(point2[i] - point1[i], this.k);
+            }
+            // TODO replace this with an version without precision errors.
+            return pow(sum, 1 / this.k);
+        }
+    }
+
+    class Product implements DistanceMetric {
+        private final double k;
+
+        public Product(double k) {
+            this.k = k;
+        }
+
+        public double distance(double[] point1, double[] point2) {
+            double sum = 0;
+            for (int i = 0; i < point1.length; i++) {
+                sum += pow(point2[i] * point1[i], this.k);
+            }
+            // TODO replace this with an version without precision errors.
+            if (sum != 0) {
+                return 1 / sum;
+            } else {
+                return Double.MAX_VALUE;
+            }
+        }
+    }
+}
@@ -7,29 +7,49 @@ import movement.map.MapNode;
 import movement.map.MapScheduledNode;
 import movement.map.MapScheduledRoute;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 
+/**
+ * MobySpace of hosts on scheduled routes. Every dimension is a stationary host; the coordinate of a moving host is
+ * the inverse of the time until it visits the dimension's location the next time. Points are dense vectors over the
+ * dimensions and the distances between points are cached in a matrix. Cached distances are valid as long as neither
+ * of the points has changed: points of stationary hosts never change, points of moving hosts change when time
+ * advances.
+ */
 public class ScheduledMapMobySpace {
     private static ScheduledMapMobySpace instance;
     private Map<Integer, MobyPoint> points;
+    private List<MobyPoint> pointList;
     private List<Integer> dimensions;
     private List<MapNode> dimensionNodes;
     private Map<Integer, MapNode> dimensionsMapping;
+    /** dimension locations (distinct map nodes) and the location index of each dimension */
+    private Map<MapNode, Integer> locationIndexes;
+    private int[] dimensionLocations;
 
-    /** The method used to calculate distances within the space */
-    private Method distanceMetric;
-    /** For Lk-norm metrics */
-    private double k;
-    private double cacheTime;
-    private Map<String,Double> distanceCache;
+    /** The metric used to calculate distances within the space */
+    private DistanceMetric distanceMetric;
+    /** Cached distances and the versions of the points they were calculated with */
+    private double[][] distanceCache;
+    private long[][] distanceVersions;
+
+    static {
+        DTNSim.registerForReset(ScheduledMapMobySpace.class.getCanonicalName());
+        reset();
+    }
 
     private ScheduledMapMobySpace() {
         points = new HashMap<>();
-        distanceCache = new HashMap<>();
-        cacheTime = SimClock.getTime();
+        pointList = new ArrayList<>();
+    }
+
+    /**
+     * Forgets the space, so the next {@link #getInstance()} creates a new one
+     */
+    public static void reset() {
+        ScheduledMapMobySpace.instance = null;
     }
+
     public static ScheduledMapMobySpace getInstance() {
         if (ScheduledMapMobySpace.instance == null) {
             ScheduledMapMobySpace.instance = new ScheduledMapMobySpace();
@@ -45,119 +65,115 @@ public class ScheduledMapMobySpace {
     }
 
     public void setDistanceMetric(String methodName, Double k) {
-        try {
-            if (k == 2.0 && methodName.equals("LNormDistance")) {
-                this.distanceMetric = this.getClass().getMethod("euclideanDistance", MobyPoint.class, MobyPoint.class);
-            } else {
-                this.distanceMetric = this.getClass().getMethod(methodName, MobyPoint.class, MobyPoint.class);
-            }
-        } catch (NoSuchMethodException e) {throw new RuntimeException(e); }
+        this.distanceMetric = DistanceMetric.forName(methodName, k);
+        this.distanceCache = null;
+    }
 
-        this.k = k;
+    /**
+     * Sets the dimensions and their map locations directly, without looking up the hosts in the simulation world
+     * @param dimensions Addresses of the stationary hosts that are the dimensions
+     * @param locations Map locations of the hosts (in the same order)
+     */
+    public void setDimensions(List<Integer> dimensions, List<MapNode> locations) {
+        this.dimensions = dimensions;
+        initDimensions(locations);
     }
 
     private void convertDimensions() {
         if ( SimScenario.isInstantiated()) {
-            Map<Integer, MapNode> dimensionsMap = new HashMap<>();
-            dimensionNodes = new ArrayList<>();
+            List<MapNode> locations = new ArrayList<>();
             World world = SimScenario.getInstance().getWorld();
             for (Integer i: dimensions) {
                 DTNHost node = world.getNodeByAddress(i);
                 MovementModel mModel = node.getMovement();
                 if (mModel instanceof StationaryListMovement) {
-                    MapNode mapNode = ((StationaryListMovement) mModel).getMapLocation();
-                    dimensionNodes.add(mapNode);
-                    dimensionsMap.put(i, mapNode);
+                    locations.add(((StationaryListMovement) mModel).getMapLocation());
                 } else {
                     throw new RuntimeException("Dimension is not a stationary node");
                 }
             }
-            this.dimensionsMapping = dimensionsMap;
+            initDimensions(locations);
         }
     }
 
-    public double distance(Integer node1, Integer node2) {
-        double cTime = SimClock.getTime();
-        Double distance = null;
-        if (cTime == cacheTime) {
-            distance = distanceCache.getOrDefault(node1.toString() + node2.toString(), null);
-        } else {
-            cacheTime = cTime;
-            distanceCache = new HashMap<>();
+    private void initDimensions(List<MapNode> locations) {
+        Map<Integer, MapNode> dimensionsMap = new HashMap<>();
+        dimensionNodes = new ArrayList<>(locations);
+        for (int i = 0; i < dimensions.size(); i++) {
+            dimensionsMap.put(dimensions.get(i), dimensionNodes.get(i));
         }
+        this.dimensionsMapping = dimensionsMap;
 
-        if (distance != null) {
-            return distance;
-        }
-        MobyPoint point1 = points.get(node1);
-        MobyPoint point2 = points.get(node2);
-        point1.update();
-        point2.update();
-        if (dimensionNodes == null)  {
-            convertDimensions(); // Conversion from node address to MapNodes can only be made once the simulation started.
+        this.locationIndexes = new HashMap<>();
+        this.dimensionLocations = new int[dimensionNodes.size()];
+        for (int i = 0; i < dimensionNodes.size(); i++) {
+            Integer location = locationIndexes.get(dimensionNodes.get(i));
+            if (location == null) {
+                location = locationIndexes.size();
+                locationIndexes.put(dimensionNodes.get(i), location);
+            }
+            dimensionLocations[i] = location;
         }
-        try {
-            distance =  (double) this.distanceMetric.invoke(this, point1, point2);
-            distanceCache.put(node1.toString() + node2.toString(), distance);
-            return distance;
-        } catch (IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
-            throw new RuntimeException(e);
+        for (MobyPoint point : pointList) {
+            point.initVectors();
         }
+        this.distanceCache = null;
     }
 
-    public double euclideanDistance(MobyPoint point1, MobyPoint point2) {
-        double sum = 0;
-        double cTime = SimClock.getTime();
-        for (MapNode dimension: dimensionNodes) {
-            double value1 = point1.getValue(dimension, cTime);
-            double value2 = point2.getValue(dimension, cTime);
-            sum += (value2 - value1) * (value2 - value1);
+    public double distance(Integer node1, Integer node2) {
+        if (dimensionNodes == null)  {
+            convertDimensions(); // Conversion from node address to MapNodes can only be made once the simulation started.
         }
-        return Math.sqrt(sum);
-    }
-
-    public double LNormDistance(MobyPoint point1, MobyPoint point2) {
-        double sum = 0;
+        MobyPoint point1 = points.get(node1);
+        MobyPoint point2 = points.get(node2);
         double cTime = SimClock.getTime();
-        for (MapNode dimension: dimensionNodes) {
-            double value1 = point1.getValue(dimension, cTime);
-            double value2 = point2.getValue(dimension, cTime);
-            sum += pow(value2 - value1, this.k);
-        }
-        // TODO replace this with an version without precision errors.
-        return pow(sum, 1 / this.k);
-    }
+        point1.update(cTime);
+        point2.update(cTime);
 
-    public double productDistance(MobyPoint point1, MobyPoint point2) {
-        double sum = 0;
-        double cTime = SimClock.getTime();
-        for (MapNode dimension: dimensionNodes) {
-            double value1 = point1.getValue(dimension, cTime);
-            double value2 = point2.getValue(dimension, cTime);
-            sum += pow(value2 * value1, this.k);
+        int nrofPoints = pointList.size();
+        if (distanceCache == null || distanceCache.length != nrofPoints) {
+            distanceCache = new double[nrofPoints][nrofPoints];
+            distanceVersions = new long[nrofPoints][nrofPoints];
+            for (long[] versions : distanceVersions) {
+                Arrays.fill(versions, -1);
+            }
         }
-        // TODO replace this with an version without precision errors.
-        if (sum != 0) {
-            return 1 / sum;
-        } else {
-            return Double.MAX_VALUE;
+        long versions = ((long) point1.version << 32) | (point2.version & 0xFFFFFFFFL);
+        if (distanceVersions[point1.index][point2.index] == versions) {
+            return distanceCache[point1.index][point2.index];
         }
-    }
 
-    private double pow(double x, double y) {
-        if (y == 1) {
-            return x;
-        }
-        return Math.pow(x,y);
+        double distance = this.distanceMetric.distance(point1.values, point2.values);
+        distanceCache[point1.index][point2.index] = distance;
+        distanceVersions[point1.index][point2.index] = versions;
+        return distance;
     }
+
     public void addPoint(Integer address, MapScheduledRoute route) {
-        MobyPoint point = new MobyPoint(route);
-        points.put(address, point);
+        addPoint(address, new MobyPoint(route, pointList.size()));
     }
 
     public void addPoint(Integer address, MapNode node) {
-        MobyPoint point = new MobyPoint(node);
-        points.put(address, point);
+        addPoint(address, new MobyPoint(node, pointList.size()));
+    }
+
+    private void addPoint(Integer address, MobyPoint point) {
+        MobyPoint old = points.put(address, point);
+        if (old != null) {
+            pointList.set(old.index, point);
+            point.index = old.index;
+        } else {
+            pointList.add(point);
+        }
+        if (dimensionNodes != null) {
+            point.initVectors();
+        }
+        if (distanceVersions != null && point.index < distanceVersions.length) {
+            for (int i = 0; i < distanceVersions.length; i++) { // the replaced point's distances
+                distanceVersions[point.index][i] = -1;
+                distanceVersions[i][point.index] = -1;
+            }
+        }
     }
 
     public double getDeliveryTime(int node1, Integer destination) {
@@ -169,98 +185,122 @@ public class ScheduledMapMobySpace {
         if (dimension == null) {
             throw new RuntimeException(destination.toString() + " is not a dimension.");
         }
-        return point1.getTime(dimension);
+        return point1.getTime(locationIndexes.get(dimension));
     }
 
-    private static class MobyPoint {
-        private HashMap<MapNode, Double> visits;
+    private class MobyPoint {
+        private int index;
         private MapScheduledRoute route;
         private MapNode node;
         private int lastIndex;
         private boolean isStationary;
 
-        public MobyPoint(MapScheduledRoute route) {
-            lastIndex = 0;
+        /** next visit time of each dimension location (NaN: no visit) */
+        private double[] visits;
+        /** index of the next stop at the same location as each stop (-1 if none) */
+        private int[] nextSameStop;
+        /** the coordinates of the point */
+        private double[] values;
+        /** time the coordinates were calculated at */
+        private double valuesTime;
+        /** incremented whenever the coordinates change */
+        private int version;
+
+        public MobyPoint(MapScheduledRoute route, int index) {
+            this.index = index;
+            this.lastIndex = 0;
             this.route = route;
+            this.isStationary = false;
+
             List<MapScheduledNode> stops = route.getStops();
-            HashMap<MapNode, Double> visits = new HashMap<>();
+            this.nextSameStop = new int[stops.size()];
+            Map<MapNode, Integer> nextStops = new HashMap<>();
             for (int i = stops.size() - 1; i >= 0; i--) {
-                double time = stops.get(i).getTime();
-                MapNode key = stops.get(i).getNode();
-                visits.put(key, time);
+                Integer next = nextStops.put(stops.get(i).getNode(), i);
+                nextSameStop[i] = next == null ? -1 : next;
             }
-            this.visits = visits;
-            this.isStationary = false;
         }
 
-        public MobyPoint(MapNode node) {
+        public MobyPoint(MapNode node, int index) {
+            this.index = index;
             this.node = node;
             this.isStationary = true;
         }
 
-        public double getValue(MapNode node, double cTime) {
+        /**
+         * Creates the vectors once the dimensions are known
+         */
+        private void initVectors() {
+            this.values = new double[dimensionLocations.length];
+            this.version++;
             if (isStationary) {
-                return getStationaryValue(node);
-            } else {
-                return getRouteValue(node, cTime);
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = dimensionNodes.get(i) == this.node ? 1 : 0;
+                }
+                return;
             }
+
+            /* the first visit of each location; the stops that have passed are updated with the next update */
+            this.visits = new double[locationIndexes.size()];
+            Arrays.fill(visits, Double.NaN);
+            List<MapScheduledNode> stops = route.getStops();
+            for (int i = stops.size() - 1; i >= 0; i--) {
+                Integer location = locationIndexes.get(stops.get(i).getNode());
+                if (location != null) {
+                    visits[location] = stops.get(i).getTime();
+                }
+            }
+            this.lastIndex = 0;
+            this.valuesTime = Double.NaN;
         }
 
-        public double getTime(MapNode node) {
+        public double getTime(int location) {
             double result = Double.MAX_VALUE;
-            if (!isStationary) {
-                result = visits.getOrDefault(node, Double.MAX_VALUE);
+            if (!isStationary && !Double.isNaN(visits[location])) {
+                result = visits[location];
             }
             return result;
         }
 
-        private double getRouteValue(MapNode node, double cTime) {
-            Double time = visits.getOrDefault(node, 0.0);
-
-            double value = 1 / (time - cTime);
-
-            value = value < 0 ? 0 : value;
-
-            return value;
-        }
+        /**
+         * Updates the visits for the stops that have passed and the coordinates for the current time
+         */
+        public void update(double cTime) {
+            if (isStationary || cTime == valuesTime) {
+                return;
+            }
 
-        private double getStationaryValue(MapNode node) {
-            if (node == this.node) {
-                return 1;
-            } else {
-                return 0;
+            List<MapScheduledNode> stops = this.route.getStops();
+            while (lastIndex < stops.size() && stops.get(lastIndex).getTime() < cTime) {
+                updatePoint(lastIndex, cTime);
+                lastIndex++;
             }
-        }
 
-        public void update() {
-            if (!isStationary) {
-                List <MapScheduledNode> stops = this.route.getStops();
-                double cTime = SimClock.getTime();
-                if (lastIndex >= stops.size()) {
-                    return;
-                }
-                for (int i = this.lastIndex; i < stops.size(); i++) {
-                    MapScheduledNode nextNode = stops.get(i);
-                    if (nextNode.getTime() >= cTime) {
-                        return;
-                    }
-                    updatePoint(nextNode.getNode());
-                    lastIndex++;
-                }
+            for (int i = 0; i < values.length; i++) {
+                double time = visits[dimensionLocations[i]];
+                double value = 1 / ((Double.isNaN(time) ? 0.0 : time) - cTime);
+                values[i] = value < 0 ? 0 : value;
             }
+            valuesTime = cTime;
+            version++;
         }
 
-        private void updatePoint(MapNode outdatedStop) {
-            List <MapScheduledNode> stops = this.route.getStops();
-            double cTime = SimClock.getTime();
-            for (int i = this.lastIndex; i < stops.size(); i++) {
-                MapScheduledNode nextNode = stops.get(i);
-                if (nextNode.getNode() == outdatedStop && nextNode.getTime() > cTime) {
-                    visits.put(outdatedStop, nextNode.getTime());
+        /**
+         * Sets the next visit of the location of a passed stop
+         */
+        private void updatePoint(int passedStop, double cTime) {
+            List<MapScheduledNode> stops = this.route.getStops();
+            Integer location = locationIndexes.get(stops.get(passedStop).getNode());
+            if (location == null) {
+                return;
+            }
+            for (int i = nextSameStop[passedStop]; i >= 0; i = nextSameStop[i]) {
+                if (stops.get(i).getTime() > cTime) {
+                    visits[location] = stops.get(i).getTime();
                     return;
                 }
             }
-            visits.remove(outdatedStop);
+            visits[location] = Double.NaN;
         }
     }
 }
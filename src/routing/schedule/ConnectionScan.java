@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Connection Scan Algorithm (CSA) for earliest arrival paths over the whole
+ * timetable of a {@link ScheduleOracle}. An alternative to
+ * {@link ScheduleDijkstra} for large timetables: all the connections are
+ * compiled once into primitive arrays sorted by departure and a query is a
+ * single linear scan from the first connection departing after the start
+ * time, without a priority queue. The compiled timetable is rebuilt when the
+ * oracle's entries change.
+ * A chain of zero duration connections that all depart at the same time is
+ * found only if its connections happen to be scanned in the chain's order.
+ */
+public class ConnectionScan {
+	/** Value for infinite time */
+	private static final double INFINITY = Double.MAX_VALUE;
+
+	/** Oracle that know all schedules */
+	private ScheduleOracle oracle;
+	/** Version of the oracle's entries the connections were compiled from */
+	private int compiledVersion;
+
+	/** The connections sorted by departure */
+	private ScheduleEntry[] connections;
+	private double[] departures;
+	private double[] arrivals;
+	private int[] fromIndexes;
+	private int[] toIndexes;
+
+	/** Earliest arrival times and the connections they were reached with */
+	private double[] earliest;
+	private int[] inConnections;
+
+	/**
+	 * Constructor.
+	 * @param oracle The schedule oracle
+	 */
+	public ConnectionScan(ScheduleOracle oracle) {
+		this.oracle = oracle;
+		this.compiledVersion = -1;
+	}
+
+	/**
+	 * Compiles the oracle's entries into the connection arrays
+	 */
+	private void compile() {
+		List<ScheduleEntry> entries = this.oracle.getEntries();
+		this.connections = entries.toArray(new ScheduleEntry[0]);
+		Arrays.sort(this.connections, new Comparator<ScheduleEntry>() {
+			public int compare(ScheduleEntry e1, ScheduleEntry e2) {
+				return Double.compare(e1.getTime(), e2.getTime());
+			}
+		});
+
+		int n = this.connections.length;
+		this.departures = new double[n];
+		this.arrivals = new double[n];
+		this.fromIndexes = new int[n];
+		this.toIndexes = new int[n];
+		for (int c = 0; c < n; c++) {
+			ScheduleEntry se = this.connections[c];
+			this.departures[c] = se.getTime();
+			this.arrivals[c] = se.getDestinationTime();
+			this.fromIndexes[c] = se.fromIndex;
+			this.toIndexes[c] = se.toIndex;
+		}
+
+		this.earliest = new double[this.oracle.getNrofNodes()];
+		this.inConnections = new int[this.oracle.getNrofNodes()];
+		this.compiledVersion = this.oracle.getVersion();
+	}
+
+	/**
+	 * Finds and returns the earliest arriving path between two nodes
+	 * @param from The source of the path
+	 * @param to The destination of the path
+	 * @param time The time when the path starts
+	 * @return the path's schedule entries or an empty list if such path is
+	 * not available
+	 */
+	public List<ScheduleEntry> getShortestPath(Integer from, Integer to,
+			double time) {
+		List<ScheduleEntry> path = new ArrayList<ScheduleEntry>();
+		assert time >= 0.0 : "Can't use negative start time";
+
+		if (from.compareTo(to) == 0) {
+			return path;
+		}
+		if (this.compiledVersion != this.oracle.getVersion()) {
+			compile();
+		}
+
+		int source = this.oracle.getNodeIndex(from);
+		int target = this.oracle.getNodeIndex(to);
+		if (source < 0 || target < 0) {
+			return path;
+		}
+
+		Arrays.fill(this.earliest, INFINITY);
+		Arrays.fill(this.inConnections, -1);
+		this.earliest[source] = time;
+
+		for (int c = firstDepartingAt(time); c < this.departures.length; c++) {
+			if (this.departures[c] >= this.earliest[target]) {
+				break; // no later connection can improve the arrival
+			}
+			if (this.earliest[this.fromIndexes[c]] <= this.departures[c] &&
+					this.arrivals[c] < this.earliest[this.toIndexes[c]]) {
+				this.earliest[this.toIndexes[c]] = this.arrivals[c];
+				this.inConnections[this.toIndexes[c]] = c;
+			}
+		}
+
+		if (this.inConnections[target] >= 0) {
+			for (int node = target; node != source;
+					node = this.fromIndexes[this.inConnections[node]]) {
+				path.add(0, this.connections[this.inConnections[node]]);
+			}
+		}
+
+		return path;
+	}
+
+	/**
+	 * Returns the index of the first connection that departs at or after
+	 * the given time
+	 */
+	private int firstDepartingAt(double time) {
+		int low = 0;
+		int high = this.departures.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.departures[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
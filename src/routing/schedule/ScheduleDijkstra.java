@@ -6,33 +6,36 @@
 package routing.schedule;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
 
 /**
- * Dijkstra's shortest path implementation for schedule data
+ * Dijkstra's shortest path implementation for schedule data. The nodes are
+ * referred with the oracle's dense node indexes: arrival times and previous
+ * hops are kept in arrays (reset lazily with search stamps) and the
+ * priority queue is an indexed binary heap with a decrease-key operation.
  */
 /* TODO: combine this with movement.map.DijkstraPathFinder? */
 public class ScheduleDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of the times when one could be at certain node */
-	private TimeMap times;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous schedule on the shortest path(s) */
-	private Map<Integer, ScheduleEntry> prevHops;
+	private static final double INFINITY = Double.MAX_VALUE;
+
+	/** The times when one could be at certain node (by node index) */
+	private double[] times;
+	/** Previous schedule on the shortest path(s) (by node index) */
+	private ScheduleEntry[] prevHops;
+	/** Search stamps of the nodes; other values are valid only if the
+	 * stamp is the current search's */
+	private int[] stamps;
+	/** Stamp of the current search */
+	private int stamp;
+	/** Is the node visited (the shortest path is known) */
+	private boolean[] visited;
+	/** Priority queue of unvisited nodes discovered so far (binary heap) */
+	private int[] heap;
+	/** Positions of the nodes in the heap (-1 if not in the heap) */
+	private int[] heapPos;
+	/** Number of nodes in the heap */
+	private int heapSize;
 	/** Oracle that know all schedules */
 	private ScheduleOracle oracle;
 
@@ -43,22 +46,30 @@ public class ScheduleDijkstra {
 	 */
 	public ScheduleDijkstra(ScheduleOracle oracle) {
 		this.oracle = oracle;
+		this.stamps = new int[0];
 	}
 
 	/**
 	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * @param node The path's source node (index)
 	 * @param time The time when the path starts
 	 */
-	private void initWith(Integer node, double time) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE,
-				new DurationComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevHops = new HashMap<Integer, ScheduleEntry>();
-		this.times = new TimeMap();
-
-		this.times.put(node, time);
-		this.unvisited.add(node);
+	private void initWith(int node, double time) {
+		int nrofNodes = this.oracle.getNrofNodes();
+		if (this.stamps.length < nrofNodes) {
+			this.times = new double[nrofNodes];
+			this.prevHops = new ScheduleEntry[nrofNodes];
+			this.stamps = new int[nrofNodes];
+			this.visited = new boolean[nrofNodes];
+			this.heap = new int[nrofNodes];
+			this.heapPos = new int[nrofNodes];
+			this.stamp = 0;
+		}
+		this.stamp++;
+		this.heapSize = 0;
+
+		touch(node);
+		setTime(node, time);
 	}
 
 	/**
@@ -78,23 +89,30 @@ public class ScheduleDijkstra {
 			return path;
 		}
 
-		initWith(from, time);
-		Integer node = null;
+		int source = this.oracle.getNodeIndex(from);
+		int target = this.oracle.getNodeIndex(to);
+		if (source < 0 || target < 0) {
+			return path;
+		}
+
+		initWith(source, time);
+		int node = -1;
 
-		while ((node = unvisited.poll()) != null) {
-			if (node.equals(to)) {
+		while (this.heapSize > 0) {
+			node = poll();
+			if (node == target) {
 				break;
 			}
 
-			visited.add(node);
+			this.visited[node] = true;
 			relax(node);
 		}
 
-		if (node != null) { // found a path
-			ScheduleEntry prev = prevHops.get(to);
+		if (node == target) { // found a path
+			ScheduleEntry prev = this.prevHops[target];
 			while (prev.getFrom() != from) {
 				path.add(0, prev);
-				prev = prevHops.get(prev.getFrom());
+				prev = this.prevHops[prev.fromIndex];
 			}
 
 			path.add(0, prev);
@@ -107,105 +125,130 @@ public class ScheduleDijkstra {
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double timeNow = times.get(node);
+	private void relax(int node) {
+		double timeNow = this.times[node];
 		int to;
 		double timeTo;
 
-		for (ScheduleEntry se : oracle.getConnected(node, timeNow)) {
-			to = se.getTo();
-			if (visited.contains(to)) {
+		for (ScheduleEntry se : this.oracle.getConnectedByIndex(node, timeNow)) {
+			to = se.toIndex;
+			touch(to);
+			if (this.visited[to]) {
 				continue; // skip visited nodes
 			}
 
 			timeTo = se.getTime() +  se.getDuration();
 
-			if (timeTo < times.get(to)) {
-				prevHops.put(to, se);
+			if (timeTo < this.times[to]) {
+				this.prevHops[to] = se;
 				setTime(to, timeTo);
 			}
 		}
 	}
 
 	/**
-	 * Sets the time when at a node
+	 * Resets the search state of a node if it hasn't been seen in the
+	 * current search
+	 * @param n The node
+	 */
+	private void touch(int n) {
+		if (this.stamps[n] != this.stamp) {
+			this.stamps[n] = this.stamp;
+			this.times[n] = INFINITY;
+			this.prevHops[n] = null;
+			this.visited[n] = false;
+			this.heapPos[n] = -1;
+		}
+	}
+
+	/**
+	 * Sets the time when at a node and moves the node to its place in the
+	 * queue
 	 * @param n The node whose time is set
 	 * @param time The time when at given node
 	 */
-	private void setTime(Integer n, double time) {
-		unvisited.remove(n);
-		times.put(n, time);
-		unvisited.add(n);
+	private void setTime(int n, double time) {
+		this.times[n] = time;
+		if (this.heapPos[n] < 0) {
+			this.heap[this.heapSize] = n;
+			this.heapPos[n] = this.heapSize;
+			this.heapSize++;
+		}
+		siftUp(this.heapPos[n]); // time only decreases
 	}
 
 	/**
-	 * Comparator that compares two nodes by their journey duration
+	 * Removes and returns the node with the smallest time from the queue
+	 * @return The node with the smallest time
 	 */
-	private class DurationComparator implements Comparator<Integer> {
-
-		/**
-		 * Compares two nodes by their time to get there
-		 * @return -1, 0 or 1 if node1's time is smaller, equal to, or
-		 * bigger than node2's
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double time1 = times.get(node1);
-			double time2 = times.get(node2);
-
-			if (time1 > time2) {
-				return 1;
-			}
-			else if (time1 < time2) {
-				return -1;
-			}
-			else {
-				return 0;
-			}
+	private int poll() {
+		int first = this.heap[0];
+		this.heapPos[first] = -1;
+		this.heapSize--;
+		if (this.heapSize > 0) {
+			int last = this.heap[this.heapSize];
+			this.heap[0] = last;
+			this.heapPos[last] = 0;
+			siftDown(0);
 		}
+		return first;
 	}
 
-	private class TimeMap {
-		private HashMap<Integer, Double> map;
-
-		/**
-		 * Constructor. Creates an empty map
-		 */
-		public TimeMap() {
-			this.map = new HashMap<Integer, Double>();
+	/**
+	 * Moves the node at the given heap position up to its place
+	 * @param pos The position
+	 */
+	private void siftUp(int pos) {
+		int node = this.heap[pos];
+		while (pos > 0) {
+			int parentPos = (pos - 1) >>> 1;
+			int parent = this.heap[parentPos];
+			if (!isEarlier(node, parent)) {
+				break;
+			}
+			this.heap[pos] = parent;
+			this.heapPos[parent] = pos;
+			pos = parentPos;
 		}
+		this.heap[pos] = node;
+		this.heapPos[node] = pos;
+	}
 
-		/**
-		 * Returns the currently known smallest time one has a path for to the
-		 * given node. If no time value is found, returns
-		 * {@link ScheduleDijkstra#INFINITY} as the value.
-		 * @param node The node whose time is requested
-		 * @return The time when one could be at that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+	/**
+	 * Moves the node at the given heap position down to its place
+	 * @param pos The position
+	 */
+	private void siftDown(int pos) {
+		int node = this.heap[pos];
+		int half = this.heapSize >>> 1;
+		while (pos < half) {
+			int childPos = 2 * pos + 1;
+			int child = this.heap[childPos];
+			int rightPos = childPos + 1;
+			if (rightPos < this.heapSize &&
+					isEarlier(this.heap[rightPos], child)) {
+				childPos = rightPos;
+				child = this.heap[childPos];
 			}
-			else {
-				return INFINITY;
+			if (!isEarlier(child, node)) {
+				break;
 			}
+			this.heap[pos] = child;
+			this.heapPos[child] = pos;
+			pos = childPos;
 		}
+		this.heap[pos] = node;
+		this.heapPos[node] = pos;
+	}
 
-		/**
-		 * Puts a new time value for a node
-		 * @param node The node
-		 * @param time Time at that node
-		 */
-		public void put(Integer node, double time) {
-			map.put(node, time);
-		}
-
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
+	/**
+	 * Compares two nodes by their time to get there (and by the node index
+	 * if the times are equal)
+	 * @return true if node1 should be polled before node2
+	 */
+	private boolean isEarlier(int node1, int node2) {
+		double time1 = this.times[node1];
+		double time2 = this.times[node2];
+		return time1 < time2 || (time1 == time2 && node1 < node2);
 	}
 }
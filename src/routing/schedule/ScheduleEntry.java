@@ -16,6 +16,9 @@ public class ScheduleEntry implements Serializable {
 	private double delta;
 	private double duration;
 	private int usageCount;
+	/** Oracle's indexes of the source and destination nodes */
+	int fromIndex;
+	int toIndex;
 
 	/**
 	 * Constructor of new schedule entry
@@ -34,6 +37,8 @@ public class ScheduleEntry implements Serializable {
 		this.duration = duration;
 		this.delta = 0;
 		this.usageCount = 0;
+		this.fromIndex = -1;
+		this.toIndex = -1;
 	}
 
 	/**
@@ -85,6 +90,9 @@ public class ScheduleEntry implements Serializable {
 	}
 
 	/**
+	 * Sets the delay of the entry. If the entry is already in a
+	 * {@link ScheduleOracle}, call {@link ScheduleOracle#entriesChanged()}
+	 * after changing deltas.
 	 * @param delta the delta to set
 	 */
 	public void setDelta(double delta) {
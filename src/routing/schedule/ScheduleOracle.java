@@ -6,17 +6,40 @@ package routing.schedule;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Oracle that knows all schedules. The entries of each node are kept sorted
+ * by departure time, so the connections from a node after a given time are
+ * found with a binary search. Nodes also get dense indexes (in the order
+ * they are first seen) for array based searches.
+ */
 public class ScheduleOracle implements Serializable{
-	private static final long serialVersionUID = 42L;
+	private static final long serialVersionUID = 43L;
+
+	/** Compares entries by their departure time */
+	private static final Comparator<ScheduleEntry> DEPARTURE_ORDER =
+		new DepartureComparator();
 
-	Map<Integer, List<ScheduleEntry>> schedules;
+	/** Dense indexes of the nodes */
+	private Map<Integer, Integer> nodeIndexes;
+	/** Entries of the nodes by node index */
+	private List<List<ScheduleEntry>> entriesByIndex;
+	/** Indexes of the nodes whose entries are not in departure order */
+	private BitSet unsorted;
+	/** Incremented whenever the entries change */
+	private int version;
 
 	public ScheduleOracle() {
-		this.schedules = new HashMap<Integer, List<ScheduleEntry>>();
+		this.nodeIndexes = new HashMap<Integer, Integer>();
+		this.entriesByIndex = new ArrayList<List<ScheduleEntry>>();
+		this.unsorted = new BitSet();
+		this.version = 0;
 	}
 
 	/**
@@ -29,14 +52,17 @@ public class ScheduleOracle implements Serializable{
 	 */
 	public void addEntry(double start, int from, int via, int to,
 			double duration) {
-		List<ScheduleEntry> list = schedules.get(from);
+		ScheduleEntry entry = new ScheduleEntry(start, from, via, to, duration);
+		entry.fromIndex = indexOf(from);
+		entry.toIndex = indexOf(to);
 
-		if (list == null) { /* first entry for the from */
-			list = new ArrayList<ScheduleEntry>();
-			schedules.put(from, list);
+		List<ScheduleEntry> list = this.entriesByIndex.get(entry.fromIndex);
+		if (!list.isEmpty() &&
+				list.get(list.size() - 1).getTime() > entry.getTime()) {
+			this.unsorted.set(entry.fromIndex); // sorted on the next query
 		}
-
-		list.add(new ScheduleEntry(start, from, via, to, duration));
+		list.add(entry);
+		this.version++;
 	}
 
 	/**
@@ -50,28 +76,105 @@ public class ScheduleOracle implements Serializable{
 		addEntry(start, from, -1, to, duration);
 	}
 
+	/**
+	 * Returns the index of a node, creating a new index (and an entry list)
+	 * for new nodes
+	 */
+	private int indexOf(int node) {
+		Integer index = this.nodeIndexes.get(node);
+		if (index == null) {
+			index = this.entriesByIndex.size();
+			this.nodeIndexes.put(node, index);
+			this.entriesByIndex.add(new ArrayList<ScheduleEntry>());
+		}
+		return index;
+	}
+
+	/**
+	 * Tells the oracle that the times (deltas) of its entries have changed
+	 */
+	public void entriesChanged() {
+		this.unsorted.set(0, this.entriesByIndex.size());
+		this.version++;
+	}
+
 	/**
 	 * Returns a list of schedule entries for nodes reachable after given time
-	 * from the given node
+	 * from the given node. The list is an unmodifiable view of the node's
+	 * entries in departure order; it's valid until new entries are added.
 	 * @param from The source node
 	 * @param time Time to start
 	 * @return List of reachable nodes
 	 */
 	public List<ScheduleEntry> getConnected(int from, double time) {
-		List<ScheduleEntry> connected = new ArrayList<ScheduleEntry>();
-		List<ScheduleEntry> all = schedules.get(from);
-
-		if (all == null) {
-			return connected;
+		int index = getNodeIndex(from);
+		if (index < 0) {
+			return Collections.emptyList();
 		}
+		return getConnectedByIndex(index, time);
+	}
 
-		for (ScheduleEntry s : all) {
-			if (s.getTime() >= time) {
-				connected.add(s);
+	/**
+	 * Returns the entries of a node (by node index) that depart at or after
+	 * the given time
+	 * @param index The index of the source node
+	 * @param time Time to start
+	 * @return The entries in departure order
+	 */
+	List<ScheduleEntry> getConnectedByIndex(int index, double time) {
+		List<ScheduleEntry> all = getEntriesByIndex(index);
+		int low = 0;
+		int high = all.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (all.get(mid).getTime() < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
 			}
 		}
+		return Collections.unmodifiableList(all.subList(low, all.size()));
+	}
 
-		return connected;
+	/**
+	 * Returns all the entries of a node (by node index) in departure order
+	 * @param index The index of the node
+	 * @return The entries
+	 */
+	List<ScheduleEntry> getEntriesByIndex(int index) {
+		List<ScheduleEntry> all = this.entriesByIndex.get(index);
+		if (this.unsorted.get(index)) {
+			Collections.sort(all, DEPARTURE_ORDER); // stable
+			this.unsorted.clear(index);
+		}
+		return all;
+	}
+
+	/**
+	 * Returns the index of a node
+	 * @param node The node
+	 * @return The index or -1 if the oracle doesn't know the node
+	 */
+	int getNodeIndex(int node) {
+		Integer index = this.nodeIndexes.get(node);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the number of nodes (sources and destinations) known
+	 * @return the number of nodes
+	 */
+	int getNrofNodes() {
+		return this.entriesByIndex.size();
+	}
+
+	/**
+	 * Returns the version of the entries; the version changes whenever
+	 * entries are added or changed
+	 * @return the version
+	 */
+	int getVersion() {
+		return this.version;
 	}
 
 	/**
@@ -80,7 +183,7 @@ public class ScheduleOracle implements Serializable{
 	 */
 	public List<ScheduleEntry> getEntries() {
 		List<ScheduleEntry> entries = new ArrayList<ScheduleEntry>();
-		for (List<ScheduleEntry> list : schedules.values()) {
+		for (List<ScheduleEntry> list : this.entriesByIndex) {
 			for (ScheduleEntry se : list) {
 				entries.add(se);
 			}
@@ -88,4 +191,16 @@ public class ScheduleOracle implements Serializable{
 
 		return entries;
 	}
+
+	/**
+	 * Compares schedule entries by their departure time
+	 */
+	private static class DepartureComparator
+			implements Comparator<ScheduleEntry>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public int compare(ScheduleEntry e1, ScheduleEntry e2) {
+			return Double.compare(e1.getTime(), e2.getTime());
+		}
+	}
 }
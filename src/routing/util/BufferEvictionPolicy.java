@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Comparator;
+
+import core.Message;
+import core.Settings;
+import core.SettingsError;
+
+/**
+ * <P>Buffer eviction policy for active routers. Defines the order in which
+ * messages are dropped from a full message buffer: the message that compares
+ * smallest is dropped first. The policy is selected per group with the
+ * {@link #BUFFER_POLICY_S} setting and the actual ordering is kept by an
+ * {@link EvictionIndex}.</P>
+ * <P>All policies are indexed incrementally. Routers that define their own,
+ * volatile, ordering (e.g. MaxProp's delivery cost) should return true from
+ * {@link #isVolatile()}, snapshot the ordering keys in {@link #prepare()} and
+ * invalidate the index whenever the keys change.</P>
+ */
+public abstract class BufferEvictionPolicy implements Comparator<Message> {
+	/** Buffer eviction policy -setting id ({@value}). Valid values are
+	 * <UL>
+	 * <LI/> {@value #STR_OLDEST} : oldest received message is dropped first
+	 * (default)
+	 * <LI/> {@value #STR_LARGEST} : largest message is dropped first
+	 * <LI/> {@value #STR_SHORTEST_TTL} : message with the shortest remaining
+	 * TTL is dropped first
+	 * <LI/> {@value #STR_MAXPROP_COST} : router specific cost order; only
+	 * supported by the MaxProp routers (and their default)
+	 * </UL>
+	 */
+	public static final String BUFFER_POLICY_S = "bufferPolicy";
+
+	/** Setting string for the oldest-received-first policy */
+	public static final String STR_OLDEST = "OLDEST";
+	/** Setting string for the largest-first policy */
+	public static final String STR_LARGEST = "LARGEST";
+	/** Setting string for the shortest-remaining-TTL-first policy */
+	public static final String STR_SHORTEST_TTL = "SHORTEST_TTL";
+	/** Setting string for the MaxProp cost policy */
+	public static final String STR_MAXPROP_COST = "MAXPROP_COST";
+
+	/**
+	 * Creates the buffer eviction policy defined in the given settings.
+	 * If {@link #BUFFER_POLICY_S} is not defined, the oldest received
+	 * message is dropped first.
+	 * @param s The settings object (router's/group's namespace)
+	 * @return The policy
+	 * @throws SettingsError if the policy is unknown or not supported by
+	 * generic routers
+	 */
+	public static BufferEvictionPolicy createPolicy(Settings s) {
+		String name = getPolicyName(s);
+
+		if (name.equals(STR_OLDEST)) {
+			return new OldestFirst();
+		} else if (name.equals(STR_LARGEST)) {
+			return new LargestFirst();
+		} else if (name.equals(STR_SHORTEST_TTL)) {
+			return new ShortestTtlFirst();
+		} else if (name.equals(STR_MAXPROP_COST)) {
+			throw new SettingsError("Buffer policy " + STR_MAXPROP_COST +
+					" of " + s.getFullPropertyName(BUFFER_POLICY_S) +
+					" is only supported by MaxProp routers");
+		}
+
+		throw new SettingsError("Invalid value for " +
+				s.getFullPropertyName(BUFFER_POLICY_S) + ": " + name);
+	}
+
+	/**
+	 * Returns the (upper case) name of the policy defined in the settings or
+	 * {@value #STR_OLDEST} if no policy is defined.
+	 * @param s The settings object
+	 * @return The name of the policy
+	 */
+	public static String getPolicyName(Settings s) {
+		if (!s.contains(BUFFER_POLICY_S)) {
+			return STR_OLDEST;
+		}
+		return s.getSetting(BUFFER_POLICY_S).trim().toUpperCase();
+	}
+
+	/**
+	 * Returns true if the ordering keys of this policy may change while
+	 * messages are buffered. Volatile orderings are sorted lazily on the
+	 * first query and re-sorted after {@link EvictionIndex#invalidate()}.
+	 * @return true for volatile orderings (false by default)
+	 */
+	public boolean isVolatile() {
+		return false;
+	}
+
+	/**
+	 * Called just before the index is re-sorted. Volatile policies must
+	 * snapshot their ordering keys (e.g. costs and thresholds) here so that
+	 * the order of the messages doesn't change until the next re-sort.
+	 */
+	public void prepare() { }
+
+	/**
+	 * Drops the oldest (by receive time) message first.
+	 */
+	public static class OldestFirst extends BufferEvictionPolicy {
+		public int compare(Message m1, Message m2) {
+			return Double.compare(m1.getReceiveTime(), m2.getReceiveTime());
+		}
+	}
+
+	/**
+	 * Drops the largest message first.
+	 */
+	public static class LargestFirst extends BufferEvictionPolicy {
+		public int compare(Message m1, Message m2) {
+			return m2.getSize() - m1.getSize();
+		}
+	}
+
+	/**
+	 * Drops the message whose TTL expires first.
+	 */
+	public static class ShortestTtlFirst extends BufferEvictionPolicy {
+		public int compare(Message m1, Message m2) {
+			return Double.compare(m1.getExpiryTime(), m2.getExpiryTime());
+		}
+	}
+}
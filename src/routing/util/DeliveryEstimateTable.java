@@ -0,0 +1,399 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import movement.map.DijkstraPathFinder;
+import movement.map.MapNode;
+import movement.map.MapScheduledNode;
+import movement.map.MapScheduledRoute;
+import movement.map.SimMap;
+import util.Tuple;
+
+/**
+ * <P>Precomputed delivery estimates of the GeOpps router. For a schedule and
+ * a destination map node, the estimated delivery time only depends on which
+ * stops of the schedule are still ahead: every stop (or trip segment starting
+ * at a stop) has a fixed best delivery time, so the estimate at any time is
+ * the minimum over a suffix of the stops. The table stores these suffix
+ * minima per schedule and destination and answers queries with a stop cursor
+ * that moves forward with the simulation time.</P>
+ * <P>Map distances to a destination are calculated with one shortest path
+ * search from the destination over the whole map (map roads are
+ * bidirectional), instead of one search per map node. Stops of a schedule
+ * are expected to be listed in time order.</P>
+ */
+public class DeliveryEstimateTable {
+	/** Use direct (Euclidean) distances instead of map distances */
+	private final boolean directDistance;
+	/** Consider only the stops, not the map nodes between the stops */
+	private final boolean stopsOnly;
+	/** Path finder for the paths between consecutive stops */
+	private final DijkstraPathFinder pathFinder;
+
+	/** The map nodes and their indexes */
+	private MapNode[] nodes;
+	private Map<MapNode, Integer> nodeIndexes;
+	/** Neighbors of node n (from adjOffsets[n] to adjOffsets[n+1]) */
+	private int[] adjOffsets;
+	private int[] adjNodes;
+	private double[] adjDistances;
+
+	/** Map distances from every map node to a destination */
+	private Map<MapNode, double[]> distancesTo;
+	/** Precomputed data of the schedules (by their stop lists) */
+	private Map<List<MapScheduledNode>, ScheduleTable> schedules;
+
+	/**
+	 * Creates a new empty table
+	 * @param directDistance If true, direct distances are used instead of
+	 * map distances
+	 * @param stopsOnly If true, only the stops of a schedule are considered
+	 */
+	public DeliveryEstimateTable(boolean directDistance, boolean stopsOnly) {
+		this.directDistance = directDistance;
+		this.stopsOnly = stopsOnly;
+		this.pathFinder = new DijkstraPathFinder(null);
+		this.distancesTo = new HashMap<MapNode, double[]>();
+		this.schedules =
+			new IdentityHashMap<List<MapScheduledNode>, ScheduleTable>();
+	}
+
+	/**
+	 * Returns the delivery estimate of a message carried on a schedule
+	 * @param map The simulation map
+	 * @param schedule The schedule of the carrier
+	 * @param dst The map node of the destination
+	 * @param time Current simulation time
+	 * @return Tuple of the departure time of the stop the estimate is based
+	 * on and the estimated delivery time, or (Double.MAX_VALUE,
+	 * Double.MAX_VALUE) if no stop is ahead
+	 */
+	public Tuple<Double, Double> getEstimate(SimMap map,
+			MapScheduledRoute schedule, MapNode dst, double time) {
+		if (this.nodes == null) {
+			indexMap(map);
+		}
+
+		List<MapScheduledNode> stops = schedule.getStops();
+		ScheduleTable table = this.schedules.get(stops);
+		if (table == null) {
+			table = new ScheduleTable(stops);
+			this.schedules.put(stops, table);
+		}
+
+		Estimates estimates = table.estimates.get(dst);
+		if (estimates == null) {
+			estimates = table.calculateEstimates(dst);
+			table.estimates.put(dst, estimates);
+		}
+		return estimates.get(time);
+	}
+
+	/**
+	 * Builds the adjacency arrays of the map
+	 */
+	private void indexMap(SimMap map) {
+		List<MapNode> mapNodes = map.getNodes();
+		this.nodes = mapNodes.toArray(new MapNode[0]);
+		this.nodeIndexes = new HashMap<MapNode, Integer>();
+		for (int i = 0; i < this.nodes.length; i++) {
+			this.nodeIndexes.put(this.nodes[i], i);
+		}
+
+		this.adjOffsets = new int[this.nodes.length + 1];
+		for (int i = 0; i < this.nodes.length; i++) {
+			this.adjOffsets[i + 1] = this.adjOffsets[i] +
+				this.nodes[i].getNeighbors().size();
+		}
+		this.adjNodes = new int[this.adjOffsets[this.nodes.length]];
+		this.adjDistances = new double[this.adjNodes.length];
+		for (int i = 0; i < this.nodes.length; i++) {
+			int a = this.adjOffsets[i];
+			for (MapNode n : this.nodes[i].getNeighbors()) {
+				this.adjNodes[a] = this.nodeIndexes.get(n);
+				this.adjDistances[a] =
+					this.nodes[i].getLocation().distance(n.getLocation());
+				a++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the distance from a map node to the destination
+	 */
+	private double distance(MapNode dst, MapNode from) {
+		if (this.directDistance) {
+			return dst.getLocation().distance(from.getLocation());
+		}
+
+		double[] distances = this.distancesTo.get(dst);
+		if (distances == null) {
+			distances = calculateDistancesTo(dst);
+			this.distancesTo.put(dst, distances);
+		}
+		return distances[this.nodeIndexes.get(from)];
+	}
+
+	/**
+	 * Calculates the map distances from all map nodes to the destination
+	 * (Dijkstra's algorithm from the destination). Unreachable nodes get
+	 * infinite distances.
+	 */
+	private double[] calculateDistancesTo(MapNode dst) {
+		double[] dist = new double[this.nodes.length];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		boolean[] visited = new boolean[this.nodes.length];
+
+		/* binary heap of (distance, node) entries; outdated entries are
+		 * skipped when they are polled */
+		double[] heapKeys = new double[16];
+		int[] heapNodes = new int[16];
+		int heapSize = 0;
+
+		int source = this.nodeIndexes.get(dst);
+		dist[source] = 0;
+		heapKeys[0] = 0;
+		heapNodes[0] = source;
+		heapSize = 1;
+
+		while (heapSize > 0) {
+			int node = heapNodes[0];
+			double key = heapKeys[0];
+			heapSize--;
+			siftDown(heapKeys, heapNodes, heapSize,
+					heapKeys[heapSize], heapNodes[heapSize]);
+			if (visited[node] || key > dist[node]) {
+				continue;
+			}
+			visited[node] = true;
+
+			for (int a = this.adjOffsets[node]; a < this.adjOffsets[node+1];
+					a++) {
+				int n = this.adjNodes[a];
+				double d = key + this.adjDistances[a];
+				if (!visited[n] && d < dist[n]) {
+					dist[n] = d;
+					if (heapSize == heapKeys.length) {
+						heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+						heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+					}
+					int i = heapSize++;
+					while (i > 0 && heapKeys[(i - 1) / 2] > d) {
+						heapKeys[i] = heapKeys[(i - 1) / 2];
+						heapNodes[i] = heapNodes[(i - 1) / 2];
+						i = (i - 1) / 2;
+					}
+					heapKeys[i] = d;
+					heapNodes[i] = n;
+				}
+			}
+		}
+		return dist;
+	}
+
+	/**
+	 * Places an entry to the root of a binary heap and sifts it down
+	 */
+	private static void siftDown(double[] keys, int[] values, int size,
+			double key, int value) {
+		int i = 0;
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (keys[child] >= key) {
+				break;
+			}
+			keys[i] = keys[child];
+			values[i] = values[child];
+			i = child;
+		}
+		if (size > 0) {
+			keys[i] = key;
+			values[i] = value;
+		}
+	}
+
+	/**
+	 * Returns the length of the path a carrier takes between two map nodes
+	 */
+	private double pathLength(List<MapNode> path) {
+		double length = 0;
+		for (int i = 0; i < path.size() - 1; i++) {
+			length += path.get(i).getLocation().distance(
+					path.get(i + 1).getLocation());
+		}
+		return length;
+	}
+
+	/**
+	 * The destination independent data of a schedule: the departure times of
+	 * the stops and the paths (and speeds) between consecutive stops.
+	 */
+	private class ScheduleTable {
+		private List<MapScheduledNode> stops;
+		/** Departure times of the entries (stops or trip segments) */
+		private double[] times;
+		/** Speeds of the entries (stops only: one speed for all) */
+		private double[] speeds;
+		/** Paths of the trip segments and the distances travelled on them */
+		private MapNode[][] paths;
+		private double[][] travelled;
+		/** Estimates by destination */
+		private Map<MapNode, Estimates> estimates;
+
+		private ScheduleTable(List<MapScheduledNode> stops) {
+			this.stops = stops;
+			this.estimates = new HashMap<MapNode, Estimates>();
+			if (stopsOnly) {
+				initStops();
+			} else {
+				initSegments();
+			}
+		}
+
+		private void initStops() {
+			int n = stops.size() < 2 ? 0 : stops.size();
+			this.times = new double[n];
+			this.speeds = new double[n];
+			if (n == 0) {
+				return;
+			}
+
+			/* the speed of the first trip segment that moves */
+			MapScheduledNode first = stops.get(0);
+			MapScheduledNode second = null;
+			for (int i = 1; i < n; i++) {
+				second = stops.get(i);
+				if (second.getNode() != first.getNode()) {
+					break;
+				}
+				first = second;
+			}
+			double distance = pathLength(pathFinder.getShortestPath(
+					first.getNode(), second.getNode()));
+			double speed = distance / (second.getTime() - first.getTime());
+
+			for (int i = 0; i < n; i++) {
+				this.times[i] = stops.get(i).getTime();
+				this.speeds[i] = speed;
+			}
+		}
+
+		private void initSegments() {
+			int n = Math.max(0, stops.size() - 1);
+			this.times = new double[n];
+			this.speeds = new double[n];
+			this.paths = new MapNode[n][];
+			this.travelled = new double[n][];
+			for (int i = 0; i < n; i++) {
+				MapScheduledNode from = stops.get(i);
+				MapScheduledNode to = stops.get(i + 1);
+				List<MapNode> path = pathFinder.getShortestPath(
+						from.getNode(), to.getNode());
+				this.times[i] = from.getTime();
+				this.speeds[i] = pathLength(path) /
+					(to.getTime() - from.getTime());
+				this.paths[i] = path.toArray(new MapNode[0]);
+				this.travelled[i] = new double[path.size()];
+				for (int j = 1; j < path.size(); j++) {
+					double x = path.get(j).getLocation().getX() -
+						path.get(j-1).getLocation().getX();
+					double y = path.get(j).getLocation().getY() -
+						path.get(j-1).getLocation().getY();
+					this.travelled[i][j] = this.travelled[i][j-1] +
+						Math.sqrt(x*x + y*y);
+				}
+			}
+		}
+
+		/**
+		 * Calculates the best delivery time of every entry and the minima
+		 * over the suffixes of the entries. Ties go to the earliest entry.
+		 */
+		private Estimates calculateEstimates(MapNode dst) {
+			int n = this.times.length;
+			double[] best = new double[n + 1];
+			double[] bestTimes = new double[n + 1];
+			best[n] = Double.MAX_VALUE;
+			bestTimes[n] = Double.MAX_VALUE;
+			for (int i = n - 1; i >= 0; i--) {
+				double value = entryEstimate(i, dst);
+				if (value < best[i + 1] ||
+						(value == best[i + 1] && value < Double.MAX_VALUE)) {
+					best[i] = value;
+					bestTimes[i] = this.times[i];
+				} else {
+					best[i] = best[i + 1];
+					bestTimes[i] = bestTimes[i + 1];
+				}
+			}
+			return new Estimates(this.times, best, bestTimes);
+		}
+
+		/**
+		 * Returns the best delivery time of an entry (Double.MAX_VALUE if the
+		 * entry can't improve any estimate)
+		 */
+		private double entryEstimate(int i, MapNode dst) {
+			double estimate = Double.MAX_VALUE;
+			if (stopsOnly) {
+				double possibleTime = this.times[i] +
+					distance(dst, stops.get(i).getNode()) / this.speeds[i];
+				if (possibleTime < estimate) {
+					estimate = possibleTime;
+				}
+				return estimate;
+			}
+
+			for (int j = 0; j < this.paths[i].length; j++) {
+				double possibleTime = this.times[i] + this.travelled[i][j] /
+					this.speeds[i] + distance(dst, this.paths[i][j]) /
+					this.speeds[i];
+				if (possibleTime < estimate) {
+					estimate = possibleTime;
+				}
+			}
+			return estimate;
+		}
+	}
+
+	/**
+	 * Suffix minima of the delivery estimates of a schedule to one
+	 * destination and the cursor of the first entry that is still ahead.
+	 */
+	private static class Estimates {
+		private final double[] times;
+		private final double[] best;
+		private final double[] bestTimes;
+		private int cursor;
+
+		private Estimates(double[] times, double[] best, double[] bestTimes) {
+			this.times = times;
+			this.best = best;
+			this.bestTimes = bestTimes;
+			this.cursor = 0;
+		}
+
+		private Tuple<Double, Double> get(double time) {
+			if (this.cursor > 0 && this.times[this.cursor - 1] > time) {
+				this.cursor = 0; // time went backwards (new simulation run)
+			}
+			while (this.cursor < this.times.length &&
+					this.times[this.cursor] <= time) {
+				this.cursor++;
+			}
+			return new Tuple<Double, Double>(this.bestTimes[this.cursor],
+					this.best[this.cursor]);
+		}
+	}
+}
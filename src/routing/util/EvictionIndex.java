@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import core.Message;
+
+/**
+ * Incrementally maintained eviction order of a router's message buffer.
+ * Messages are kept sorted by a {@link BufferEvictionPolicy} so that the
+ * next message to drop is found in O(log n). Messages that are being sent
+ * can be pinned; pinned messages are kept out of the order until they are
+ * released, so they are never returned when in-flight messages are excluded.
+ * Volatile orderings compare the keys their policy snapshots when the index
+ * is re-sorted, so they too are updated in O(log n) until the index is
+ * invalidated.
+ */
+public class EvictionIndex {
+	/** The policy defining the eviction order */
+	private final BufferEvictionPolicy policy;
+	/** Total ordering: policy order with unique id as the tie breaker */
+	private final Comparator<Message> comparator;
+	/** Live view to the buffer of the router (used for re-sorting) */
+	private final Collection<Message> buffer;
+	/** Buffered messages that are not pinned, in eviction order */
+	private TreeSet<Message> order;
+	/** Buffered messages that are pinned, mapped using message IDs */
+	private Map<String, Message> pinned;
+	/** How many times each message ID is pinned */
+	private Map<String, Integer> pinCounts;
+	/** Is {@link #order} up to date */
+	private boolean valid;
+
+	/**
+	 * Constructor.
+	 * @param policy The policy defining the eviction order
+	 * @param buffer Live view to the router's message buffer
+	 */
+	public EvictionIndex(BufferEvictionPolicy policy,
+			Collection<Message> buffer) {
+		this.policy = policy;
+		this.buffer = buffer;
+		this.comparator = new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				int c = EvictionIndex.this.policy.compare(m1, m2);
+				if (c != 0) {
+					return c;
+				}
+				return Integer.compare(m1.getUniqueId(), m2.getUniqueId());
+			}
+		};
+		this.order = new TreeSet<Message>(this.comparator);
+		this.pinned = new HashMap<String, Message>();
+		this.pinCounts = new HashMap<String, Integer>();
+		this.valid = !policy.isVolatile(); // volatile keys aren't snapshot yet
+	}
+
+	/**
+	 * Adds a message that was put to the buffer.
+	 * @param m The message
+	 */
+	public void add(Message m) {
+		if (this.pinCounts.containsKey(m.getId())) {
+			this.pinned.put(m.getId(), m);
+		} else if (this.valid) {
+			this.order.add(m);
+		}
+	}
+
+	/**
+	 * Removes a message that was removed from the buffer.
+	 * @param m The message
+	 */
+	public void remove(Message m) {
+		if (this.pinned.remove(m.getId()) != null || !this.valid) {
+			return;
+		}
+		this.order.remove(m);
+	}
+
+	/**
+	 * Pins a message so that it's excluded from the eviction order (e.g.
+	 * because it's being sent). Pins are counted, so a message that is
+	 * pinned several times must be released as many times.
+	 * @param id ID of the message
+	 * @param m The buffered message with the ID or null if the message is not
+	 * in the buffer (only the pin is recorded then)
+	 */
+	public void pin(String id, Message m) {
+		Integer count = this.pinCounts.get(id);
+		this.pinCounts.put(id, count == null ? 1 : count + 1);
+
+		if (count == null && m != null) {
+			this.pinned.put(id, m);
+			if (this.valid) {
+				this.order.remove(m);
+			}
+		}
+	}
+
+	/**
+	 * Releases one pin of a message. When the last pin is released, the
+	 * message returns to the eviction order.
+	 * @param id ID of the message
+	 */
+	public void unpin(String id) {
+		Integer count = this.pinCounts.get(id);
+		if (count == null) {
+			return;
+		}
+		if (count > 1) {
+			this.pinCounts.put(id, count - 1);
+			return;
+		}
+
+		this.pinCounts.remove(id);
+		Message m = this.pinned.remove(id);
+		if (m != null && this.valid) {
+			this.order.add(m);
+		}
+	}
+
+	/**
+	 * Returns true if the message with the given ID is pinned
+	 * @param id ID of the message
+	 * @return true if the message is pinned
+	 */
+	public boolean isPinned(String id) {
+		return this.pinCounts.containsKey(id);
+	}
+
+	/**
+	 * Marks the order outdated. Must be called by users of volatile policies
+	 * when the ordering keys change; the order is re-sorted with new
+	 * snapshots of the keys on the next query.
+	 */
+	public void invalidate() {
+		this.valid = false;
+	}
+
+	/**
+	 * Returns the next message to drop.
+	 * @param includePinned If true, also pinned messages are considered
+	 * @return The next message to drop or null if there are no (unpinned)
+	 * messages in the buffer
+	 */
+	public Message next(boolean includePinned) {
+		if (!this.valid) {
+			rebuild();
+		}
+
+		Message first = this.order.isEmpty() ? null : this.order.first();
+		if (!includePinned) {
+			return first;
+		}
+
+		/* there are only few pinned messages; check them one by one */
+		for (Message m : this.pinned.values()) {
+			if (first == null || this.comparator.compare(m, first) < 0) {
+				first = m;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Re-sorts all the unpinned messages of the buffer
+	 */
+	private void rebuild() {
+		this.policy.prepare();
+		this.order = new TreeSet<Message>(this.comparator);
+		for (Message m : this.buffer) {
+			if (!this.pinned.containsKey(m.getId())) {
+				this.order.add(m);
+			}
+		}
+		this.valid = true;
+	}
+}
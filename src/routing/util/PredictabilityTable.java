@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * <P>Delivery predictability table of the PRoPHET routers. Predictabilities
+ * are stored in a primitive array indexed by host address, so looking up a
+ * value doesn't box doubles or hash hosts.</P>
+ * <P>Aging is lazy: the table remembers when it was last aged and all the
+ * entries are multiplied by <CODE>gamma ^ k</CODE> (k = time units elapsed)
+ * only on the first access after the simulation time has advanced. Values are
+ * aged at the same moments and with the same arithmetic as with eager aging,
+ * so the results are identical.</P>
+ */
+public class PredictabilityTable {
+	/** Predictabilities indexed by host address */
+	private double[] values;
+	/** Hosts of the entries indexed by host address (null = no entry) */
+	private DTNHost[] hosts;
+	/** Addresses of the entries in insertion order */
+	private int[] addresses;
+	/** Number of entries */
+	private int size;
+
+	/** Aging constant */
+	private double gamma;
+	/** How many seconds one time unit is when aging */
+	private double secondsInTimeUnit;
+	/** Last time the entries were aged (sim)time */
+	private double lastAgeUpdate;
+
+	/**
+	 * Creates a new empty table
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit How many seconds one time unit is when
+	 * calculating the aging
+	 */
+	public PredictabilityTable(double gamma, double secondsInTimeUnit) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.values = new double[0];
+		this.hosts = new DTNHost[0];
+		this.addresses = new int[4];
+		this.size = 0;
+		this.lastAgeUpdate = 0;
+	}
+
+	/**
+	 * Sets the aging constant. The new value is used for all aging done
+	 * after this call (also for the time elapsed before the call).
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Returns the (aged) predictability for a host or 0 if the table has no
+	 * entry for the host.
+	 * @param host The host to look the predictability for
+	 * @return The current predictability
+	 */
+	public double get(DTNHost host) {
+		age();
+		int addr = host.getAddress();
+		if (addr < this.hosts.length && this.hosts[addr] != null) {
+			return this.values[addr];
+		}
+		return 0;
+	}
+
+	/**
+	 * Sets the predictability for a host. The value is assumed to be
+	 * up-to-date at the current time, i.e., the table is not aged.
+	 * @param host The host
+	 * @param value The new predictability
+	 */
+	public void put(DTNHost host, double value) {
+		int addr = host.getAddress();
+		if (addr >= this.hosts.length) {
+			int len = Math.max(addr + 1, this.hosts.length * 2);
+			this.hosts = Arrays.copyOf(this.hosts, len);
+			this.values = Arrays.copyOf(this.values, len);
+		}
+		if (this.hosts[addr] == null) {
+			if (this.size == this.addresses.length) {
+				this.addresses = Arrays.copyOf(this.addresses, this.size * 2);
+			}
+			this.addresses[this.size++] = addr;
+			this.hosts[addr] = host;
+		}
+		this.values[addr] = value;
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 * @return the number of entries
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the host of the i:th entry (in insertion order)
+	 * @param i Index of the entry
+	 * @return The host
+	 */
+	public DTNHost getHost(int i) {
+		return this.hosts[this.addresses[i]];
+	}
+
+	/**
+	 * Returns the predictability of the i:th entry (in insertion order).
+	 * Doesn't age the table; call {@link #age()} before iterating.
+	 * @param i Index of the entry
+	 * @return The predictability
+	 */
+	public double getValue(int i) {
+		return this.values[this.addresses[i]];
+	}
+
+	/**
+	 * Ages all entries if the simulation time has advanced since the last
+	 * aging. <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number
+	 * of time units that have elapsed since the last time the table was aged.
+	 */
+	public void age() {
+		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) /
+			this.secondsInTimeUnit;
+
+		if (timeDiff == 0) {
+			return;
+		}
+
+		double mult = Math.pow(this.gamma, timeDiff);
+		for (int i = 0; i < this.size; i++) {
+			int addr = this.addresses[i];
+			this.values[addr] = this.values[addr] * mult;
+		}
+
+		this.lastAgeUpdate = SimClock.getTime();
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import core.Settings;
+import core.SettingsError;
+
+/**
+ * <P>Summary vector of the messages a router knows (i.e., has buffered or
+ * has received as the final recipient). Implemented as a counting Bloom
+ * filter over message handles (see {@link core.Message#getHandle()}), so
+ * handles can also be removed when messages are dropped from the buffer.
+ * A peer's summary vector answers "definitely doesn't know the message" with
+ * a few array probes instead of a String keyed hash lookup.</P>
+ * <P>The filter is sized from the expected number of messages
+ * ({@link #SV_CAPACITY_S}) and the target false positive rate
+ * ({@link #SV_FP_RATE_S}). Positive answers are verified with an exact check
+ * by default; if {@link #SV_EXACT_S} is false, positives are trusted and the
+ * false positive rate is bounded by the target rate as long as the router
+ * knows at most the expected number of messages.</P>
+ */
+public class SummaryVector {
+	/** Summary vector capacity -setting id ({@value}). Integer. Expected
+	 * maximum number of messages a router knows. If defined, the router keeps
+	 * a summary vector of its messages. */
+	public static final String SV_CAPACITY_S = "summaryVectorCapacity";
+	/** Summary vector false positive rate -setting id ({@value}). Double.
+	 * Target false positive rate. Default = {@link #DEFAULT_FP_RATE}. */
+	public static final String SV_FP_RATE_S = "summaryVectorFpRate";
+	/** Summary vector exactness -setting id ({@value}). Boolean. If true
+	 * (default), positive answers of the filter are verified with an exact
+	 * check. */
+	public static final String SV_EXACT_S = "summaryVectorExact";
+
+	/** Default value for the false positive rate ({@value}) */
+	public static final double DEFAULT_FP_RATE = 0.01;
+
+	/** Maximum value of a counter; saturated counters are never decremented */
+	private static final int MAX_COUNT = 0xFF;
+
+	/** The counters */
+	private final byte[] counters;
+	/** Number of hash functions */
+	private final int nrofHashes;
+	/** Should positive answers be verified with an exact check */
+	private final boolean exact;
+
+	/**
+	 * Creates a new summary vector prototype based on the settings.
+	 * @param s The settings object (router's namespace)
+	 */
+	public SummaryVector(Settings s) {
+		int capacity = s.getInt(SV_CAPACITY_S);
+		double fpRate = s.getDouble(SV_FP_RATE_S, DEFAULT_FP_RATE);
+		if (capacity <= 0 || fpRate <= 0 || fpRate >= 1) {
+			throw new SettingsError("Invalid summary vector settings " +
+					s.getFullPropertyName(SV_CAPACITY_S) + " = " + capacity +
+					", " + s.getFullPropertyName(SV_FP_RATE_S) + " = " +
+					fpRate);
+		}
+
+		/* optimal number of counters and hash functions */
+		double ln2 = Math.log(2);
+		int size = (int)Math.ceil(-capacity * Math.log(fpRate) / (ln2*ln2));
+		this.counters = new byte[Math.max(size, 8)];
+		this.nrofHashes = Math.max(1,
+				(int)Math.round((double)this.counters.length / capacity * ln2));
+		this.exact = s.getBoolean(SV_EXACT_S, true);
+	}
+
+	/**
+	 * Copy constructor. Creates an empty summary vector with the same
+	 * parameters as the prototype.
+	 * @param proto The prototype
+	 */
+	private SummaryVector(SummaryVector proto) {
+		this.counters = new byte[proto.counters.length];
+		this.nrofHashes = proto.nrofHashes;
+		this.exact = proto.exact;
+	}
+
+	/**
+	 * Returns a new empty summary vector with the same parameters
+	 * @return the replicate
+	 */
+	public SummaryVector replicate() {
+		return new SummaryVector(this);
+	}
+
+	/**
+	 * Adds a message handle to the summary vector
+	 * @param handle The handle
+	 */
+	public void add(int handle) {
+		int h1 = hash1(handle);
+		int h2 = hash2(handle);
+		for (int i = 0; i < this.nrofHashes; i++) {
+			int idx = index(h1, h2, i);
+			int c = this.counters[idx] & MAX_COUNT;
+			if (c < MAX_COUNT) {
+				this.counters[idx] = (byte)(c + 1);
+			}
+		}
+	}
+
+	/**
+	 * Removes a message handle from the summary vector. The handle must
+	 * have been added before.
+	 * @param handle The handle
+	 */
+	public void remove(int handle) {
+		int h1 = hash1(handle);
+		int h2 = hash2(handle);
+		for (int i = 0; i < this.nrofHashes; i++) {
+			int idx = index(h1, h2, i);
+			int c = this.counters[idx] & MAX_COUNT;
+			if (c > 0 && c < MAX_COUNT) {
+				this.counters[idx] = (byte)(c - 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns false if the handle is definitely not in the summary vector
+	 * and true if it might be (a false positive is possible).
+	 * @param handle The handle
+	 * @return false if the handle is definitely not in the vector
+	 */
+	public boolean mightContain(int handle) {
+		int h1 = hash1(handle);
+		int h2 = hash2(handle);
+		for (int i = 0; i < this.nrofHashes; i++) {
+			if (this.counters[index(h1, h2, i)] == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if positive answers should be verified with an exact check
+	 * @return true if positive answers should be verified
+	 */
+	public boolean isExact() {
+		return this.exact;
+	}
+
+	/**
+	 * Returns the number of counters in the vector
+	 * @return the number of counters
+	 */
+	public int getSize() {
+		return this.counters.length;
+	}
+
+	/**
+	 * Returns the number of hash functions used
+	 * @return the number of hash functions
+	 */
+	public int getNrofHashes() {
+		return this.nrofHashes;
+	}
+
+	/**
+	 * Returns the counter index for the i:th hash function (double hashing)
+	 */
+	private int index(int h1, int h2, int i) {
+		return ((h1 + i * h2) & Integer.MAX_VALUE) % this.counters.length;
+	}
+
+	/** First hash function (murmur3 finalizer) */
+	private static int hash1(int x) {
+		x ^= x >>> 16;
+		x *= 0x85ebca6b;
+		x ^= x >>> 13;
+		x *= 0xc2b2ae35;
+		x ^= x >>> 16;
+		return x;
+	}
+
+	/** Second hash function; always odd */
+	private static int hash2(int x) {
+		x *= 0x9e3779b9;
+		x ^= x >>> 15;
+		x *= 0x2c1b3c6d;
+		x ^= x >>> 12;
+		return x | 1;
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import routing.ActiveRouter;
+import routing.MessageRouter;
+import routing.util.SummaryVector;
+import util.Tuple;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+
+/**
+ * Tests for ActiveRouter: the message buffer handling when several
+ * messages are on the fly over the same connection, the messages to the
+ * connected hosts and the messages other routers know.
+ */
+public class ActiveRouterTest extends AbstractRouterTest {
+	/** update interval that lets connections queue many messages */
+	private static final double UPDATE_INTERVAL = 10;
+	private double oldUpdateInterval;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		/* keeps TestUtils from overriding the transmit speed */
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		setRouterProto(new QueueingRouter(ts));
+		oldUpdateInterval = SimClock.getUpdateInterval();
+		SimClock.setUpdateInterval(UPDATE_INTERVAL);
+		super.setUp();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SimClock.setUpdateInterval(oldUpdateInterval);
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that a message whose transfer is finalized can be dropped
+	 * while another message is still on the fly over the same connection
+	 */
+	public void testDropTransferredWhileSending() {
+		QueueingRouter r1 = (QueueingRouter)h1.getRouter();
+		Message m1 = new Message(h1, h3, msgId1, 10);
+		Message m2 = new Message(h1, h3, msgId2, 40);
+		h1.createNewMessage(m1);
+		h1.createNewMessage(m2);
+		h1.connect(h2);
+		Connection con = h1.getConnections().get(0);
+
+		assertEquals(MessageRouter.RCV_OK, r1.start(m1, con));
+		assertEquals(MessageRouter.RCV_OK, r1.start(m2, con));
+
+		clock.advance(2); // m1 is transferred, m2 is still on the fly
+		updateAllNodes();
+		assertTrue(con.isTransferring());
+
+		/* the transferred copy of m1 must be dropped to make room */
+		h1.createNewMessage(new Message(h1, h3, msgId3, 60));
+		assertFalse(r1.hasMessage(msgId1));
+		assertTrue(r1.hasMessage(msgId2));
+		assertTrue(r1.hasMessage(msgId3));
+	}
+
+	/**
+	 * Tests that a message whose transfer is aborted can be dropped
+	 * while another message is still on the fly over the same connection
+	 */
+	public void testDropAbortedWhileSending() {
+		QueueingRouter r1 = (QueueingRouter)h1.getRouter();
+		Message m1 = new Message(h1, h3, msgId1, 10);
+		Message m2 = new Message(h1, h3, msgId2, 40);
+		h1.createNewMessage(m1);
+		h1.createNewMessage(m2);
+		h1.connect(h2);
+		Connection con = h1.getConnections().get(0);
+
+		assertEquals(MessageRouter.RCV_OK, r1.start(m1, con));
+		assertEquals(MessageRouter.RCV_OK, r1.start(m2, con));
+
+		r1.abort(msgId1, con);
+		assertTrue(con.isTransferring());
+
+		h1.createNewMessage(new Message(h1, h3, msgId3, 60));
+		assertFalse(r1.hasMessage(msgId1));
+		assertTrue(r1.hasMessage(msgId2));
+		assertTrue(r1.hasMessage(msgId3));
+	}
+
+	/**
+	 * Tests that the messages for the connected hosts are listed in the
+	 * buffer order, with the connections of each message in connection order
+	 */
+	public void testMessagesForConnectedOrder() {
+		QueueingRouter r1 = (QueueingRouter)h1.getRouter();
+		DTNHost[] recipients = {h2, h3, h4, h5};
+		for (int i = 0; i < 20; i++) {
+			h1.createNewMessage(new Message(h1, recipients[i % 4],
+					"M" + i, 1));
+		}
+		h1.connect(h3);
+		h1.connect(h2);
+		h1.connect(h4);
+
+		List<Tuple<Message, Connection>> expected =
+			new ArrayList<Tuple<Message, Connection>>();
+		for (Message m : r1.getMessageCollection()) {
+			for (Connection con : h1.getConnections()) {
+				if (m.getTo() == con.getOtherNode(h1)) {
+					expected.add(new Tuple<Message, Connection>(m, con));
+				}
+			}
+		}
+		assertEquals(15, expected.size());
+		assertEquals(expected.toString(), r1.forConnected().toString());
+	}
+
+	/**
+	 * Delivers a message from one host to another
+	 */
+	private void deliver(DTNHost from, DTNHost to, String id) {
+		from.sendMessage(id, to);
+		to.messageTransferred(id, from);
+	}
+
+	/**
+	 * Tests that without a summary vector only the buffered messages are
+	 * known, as the routers that check the known messages did before
+	 * summary vectors
+	 */
+	public void testKnownMessagesWithoutSummaryVector() {
+		Message m1 = new Message(h1, h2, msgId1, 1);
+		Message m2 = new Message(h1, h3, msgId2, 1);
+		h1.createNewMessage(m1);
+		h1.createNewMessage(m2);
+		deliver(h1, h2, msgId1);
+		deliver(h1, h2, msgId2);
+
+		MessageRouter r2 = h2.getRouter();
+		assertFalse(r2.hasSummaryVector());
+		assertFalse(r2.hasMessage(msgId1)); // delivered
+		assertFalse(r2.isKnownMessage(m1));
+		assertTrue(r2.isKnownMessage(m2));
+		assertFalse(r2.isKnownMessage(new Message(h1, h2, msgId3, 1)));
+	}
+
+	/**
+	 * Tests that with a summary vector also the delivered messages are known
+	 */
+	public void testKnownMessagesWithSummaryVector() {
+		TestSettings svSettings = new TestSettings("SvRouter");
+		svSettings.putSetting(SummaryVector.SV_CAPACITY_S, "100");
+		utils.setMessageRouterProto(new QueueingRouter(svSettings));
+		DTNHost from = utils.createHost(c0, "svFrom");
+		DTNHost to = utils.createHost(c0, "svTo");
+
+		Message m1 = new Message(from, to, msgId1, 1);
+		Message m2 = new Message(from, h3, msgId2, 1);
+		from.createNewMessage(m1);
+		from.createNewMessage(m2);
+		deliver(from, to, msgId1);
+		deliver(from, to, msgId2);
+
+		MessageRouter r = to.getRouter();
+		assertTrue(r.hasSummaryVector());
+		assertTrue(r.isKnownMessage(m1));
+		assertTrue(r.isKnownMessage(m2));
+		assertFalse(r.isKnownMessage(new Message(from, to, msgId3, 1)));
+		to.deleteMessage(msgId2, true);
+		assertFalse(r.isKnownMessage(m2));
+	}
+
+	/**
+	 * Asserts that the cached send queue order of a router equals to
+	 * sorting/shuffling the buffer every time, as the routers did before
+	 * the order was cached
+	 */
+	private void assertQueueOrder(QueueingRouter r) {
+		assertEquals("at " + clock.getTime(), r.eagerQueueOrder().toString(),
+				r.queueOrder().toString());
+	}
+
+	/**
+	 * Checks the send queue order of a mode while messages are created,
+	 * received and removed, with several changes within the same second
+	 * @param mode Name of the send queue mode
+	 */
+	private void checkQueueOrder(String mode) {
+		TestSettings queueSettings = new TestSettings(mode + "Router");
+		queueSettings.putSetting(MessageRouter.SEND_QUEUE_MODE_S, mode);
+		utils.setMessageRouterProto(new QueueingRouter(queueSettings));
+		DTNHost from = utils.createHost(c0, mode + "From");
+		DTNHost to = utils.createHost(c0, mode + "To");
+		DTNHost dst = utils.createHost(c0, mode + "Dst");
+		QueueingRouter r = (QueueingRouter)to.getRouter();
+
+		for (int i = 0; i < 40; i++) {
+			/* several messages at the same time and within the same second */
+			clock.advance(i % 3 == 0 ? 0.5 : 0);
+			String id = mode + i;
+			if (i % 4 == 0) {
+				to.createNewMessage(new Message(to, dst, id, 1));
+			} else {
+				from.createNewMessage(new Message(from, dst, id, 1));
+				deliver(from, to, id);
+				from.deleteMessage(id, false);
+			}
+			assertQueueOrder(r);
+			if (i % 5 == 2) {
+				to.deleteMessage(mode + (i - 2), true);
+				assertQueueOrder(r);
+			}
+			assertQueueOrder(r); // again from the cache
+		}
+
+		for (int i = 0; i < 10; i++) {
+			clock.advance(0.3);
+			assertQueueOrder(r);
+		}
+	}
+
+	public void testFifoQueueOrder() {
+		checkQueueOrder(MessageRouter.STR_Q_MODE_FIFO);
+	}
+
+	public void testRandomQueueOrder() {
+		checkQueueOrder(MessageRouter.STR_Q_MODE_RANDOM);
+	}
+
+	/**
+	 * Router that starts and aborts transfers only when told to
+	 */
+	private static class QueueingRouter extends ActiveRouter {
+		public QueueingRouter(Settings s) {
+			super(s);
+		}
+
+		protected QueueingRouter(QueueingRouter r) {
+			super(r);
+		}
+
+		public int start(Message m, Connection con) {
+			return startTransfer(m, con);
+		}
+
+		public void abort(String id, Connection con) {
+			abortTransfer(id, con);
+		}
+
+		public List<Tuple<Message, Connection>> forConnected() {
+			return getMessagesForConnected();
+		}
+
+		public List<Message> queueOrder() {
+			return getMessagesInQueueOrder();
+		}
+
+		@SuppressWarnings(value = "unchecked")
+		public List<Message> eagerQueueOrder() {
+			return sortByQueueMode(
+					new ArrayList<Message>(getMessageCollection()));
+		}
+
+		@Override
+		public QueueingRouter replicate() {
+			return new QueueingRouter(this);
+		}
+	}
+}
@@ -31,6 +31,7 @@ public class AllTests {
 		suite.addTestSuite(WKTPointReaderTest.class);
 		suite.addTestSuite(MapNodeTest.class);
 		suite.addTestSuite(MapBasedMovementTest.class);
+		suite.addTestSuite(CompiledMapTest.class);
 		suite.addTestSuite(CoordTest.class);
 		suite.addTestSuite(DistanceDelayReportTest.class);
 		suite.addTestSuite(AdjacencyGraphvizReportTest.class);
@@ -42,6 +43,13 @@ public class AllTests {
 		suite.addTestSuite(ProphetRouterTest.class);
 		suite.addTestSuite(SettingsTest.class);
 		suite.addTestSuite(DijkstraPathFinderTest.class);
+		suite.addTestSuite(ScheduleDijkstraTest.class);
+		suite.addTestSuite(ConnectionScanTest.class);
+		suite.addTestSuite(ScheduledTrajectoryTest.class);
+		suite.addTestSuite(PathTest.class);
+		suite.addTestSuite(TrajectoryFileTest.class);
+		suite.addTestSuite(TrajectoryRecorderTest.class);
+		suite.addTestSuite(ExternalPathMovementReaderTest.class);
 		suite.addTestSuite(PointsOfInterestTest.class);
 		suite.addTestSuite(ActivenessHandlerTest.class);
 		suite.addTestSuite(MaxPropDijkstraTest.class);
@@ -50,6 +58,17 @@ public class AllTests {
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(PositionStoreTest.class);
+		suite.addTestSuite(EvictionIndexTest.class);
+		suite.addTestSuite(ActiveRouterTest.class);
+		suite.addTestSuite(HandleSetTest.class);
+		suite.addTestSuite(SummaryVectorTest.class);
+		suite.addTestSuite(ContactGraphTest.class);
+		suite.addTestSuite(RouteTableTest.class);
+		suite.addTestSuite(GraphRouterTest.class);
+		suite.addTestSuite(DeliveryEstimateTableTest.class);
+		suite.addTestSuite(MobySpaceTest.class);
+		suite.addTestSuite(PredictabilityTableTest.class);
 		//$JUnit-END$
 		return suite;
 	}
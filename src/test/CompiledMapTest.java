@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.CompiledMap;
+import movement.map.MapNode;
+import movement.map.SimMap;
+
+public class CompiledMapTest extends TestCase {
+	private static final String ROADS =
+		"LINESTRING (1.0 1.0, 2.0 1.0, 3.0 1.0, 4.0 1.0)\n" +
+		"LINESTRING (2.0 1.0, 2.0 0.0, 3.0 0.0, 3.0 1.0)\n";
+	private static final String PATHS =
+		"LINESTRING (1.0 1.0, 1.0 2.0)\n";
+
+	private List<File> mapFiles;
+	private File compiledFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		mapFiles = new ArrayList<File>();
+		mapFiles.add(writeToNewFile(ROADS));
+		mapFiles.add(writeToNewFile(PATHS));
+		compiledFile = CompiledMap.getFile(mapFiles);
+		compiledFile.deleteOnExit();
+	}
+
+	private File writeToNewFile(String wkt) throws Exception {
+		File f = File.createTempFile("compiledMapTest", ".wkt");
+		f.deleteOnExit();
+		PrintWriter pw = new PrintWriter(f);
+		pw.print(wkt);
+		pw.close();
+		return f;
+	}
+
+	private SimMap readMapFiles() throws Exception {
+		WKTMapReader r = new WKTMapReader(true);
+		for (int i = 1; i <= mapFiles.size(); i++) {
+			r.addPaths(mapFiles.get(i-1), i);
+		}
+		return r.getMap();
+	}
+
+	public void testRoundTrip() throws Exception {
+		SimMap map = readMapFiles();
+		CompiledMap.write(map, mapFiles, compiledFile);
+		SimMap compiled = CompiledMap.read(compiledFile, mapFiles);
+
+		assertNotNull(compiled);
+		assertEquals(map.getMinBound(), compiled.getMinBound());
+		assertEquals(map.getMaxBound(), compiled.getMaxBound());
+		List<MapNode> nodes = map.getNodes();
+		List<MapNode> compiledNodes = compiled.getNodes();
+		assertEquals(nodes.size(), compiledNodes.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			MapNode n = nodes.get(i);
+			MapNode c = compiledNodes.get(i);
+			assertEquals(n.getLocation(), c.getLocation());
+			assertEquals(n.getTypeMask(), c.getTypeMask());
+			assertEquals(n.getNeighbors().size(), c.getNeighbors().size());
+			for (int j = 0; j < n.getNeighbors().size(); j++) {
+				assertEquals(n.getNeighbors().get(j).getLocation(),
+						c.getNeighbors().get(j).getLocation());
+			}
+			assertTrue(c == compiled.getNodeByCoord(c.getLocation()));
+		}
+	}
+
+	public void testChangedMapFile() throws Exception {
+		CompiledMap.write(readMapFiles(), mapFiles, compiledFile);
+
+		PrintWriter pw = new PrintWriter(mapFiles.get(1));
+		pw.print("LINESTRING (1.0 1.0, 1.0 3.0)\n");
+		pw.close();
+		assertNull(CompiledMap.read(compiledFile, mapFiles));
+	}
+
+	public void testInvalidCounts() throws Exception {
+		SimMap map = readMapFiles();
+		int n = map.getNodes().size();
+		/* magic, version, nrofFiles and the files' lengths and checksums */
+		long countsPos = 12 + 16 * mapFiles.size();
+		long offsetsPos = countsPos + 8 + 32 + 20L * n;
+
+		CompiledMap.write(map, mapFiles, compiledFile);
+		assertInvalid(countsPos, -1); // negative number of nodes
+		CompiledMap.write(map, mapFiles, compiledFile);
+		assertInvalid(countsPos, Integer.MAX_VALUE); // more than the file has
+		CompiledMap.write(map, mapFiles, compiledFile);
+		assertInvalid(countsPos + 4, -1); // negative number of edges
+		CompiledMap.write(map, mapFiles, compiledFile);
+		assertInvalid(offsetsPos + 4, 1000); // decreasing offsets
+		CompiledMap.write(map, mapFiles, compiledFile);
+		assertInvalid(offsetsPos + 4 * n, 0); // doesn't end at nrofEdges
+	}
+
+	private void assertInvalid(long pos, int value) throws Exception {
+		try (RandomAccessFile raf = new RandomAccessFile(compiledFile, "rw")) {
+			raf.seek(pos);
+			raf.writeInt(value);
+		}
+		try {
+			CompiledMap.read(compiledFile, mapFiles);
+			fail("Invalid value " + value + " at " + pos + " was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testFileNames() {
+		List<File> reversed = new ArrayList<File>();
+		reversed.add(mapFiles.get(1));
+		reversed.add(mapFiles.get(0));
+
+		assertEquals(CompiledMap.getFile(mapFiles), compiledFile);
+		assertFalse(CompiledMap.getFile(reversed).equals(compiledFile));
+		assertEquals(mapFiles.get(0).getAbsoluteFile().getParentFile(),
+				compiledFile.getParentFile());
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.List;
+import java.util.Random;
+
+import routing.schedule.ConnectionScan;
+import routing.schedule.ScheduleDijkstra;
+import routing.schedule.ScheduleEntry;
+import routing.schedule.ScheduleOracle;
+
+public class ConnectionScanTest extends AbstractSchedulePathTest {
+
+	ConnectionScan cs;
+
+	protected void createFinder(ScheduleOracle oracle) {
+		cs = new ConnectionScan(oracle);
+	}
+
+	protected List<ScheduleEntry> getShortestPath(int from, int to,
+			double time) {
+		return cs.getShortestPath(from, to, time);
+	}
+
+	public void testSameArrivalsAsDijkstra() {
+		Random rng = new Random(1);
+		ScheduleOracle o = new ScheduleOracle();
+		for (int i = 0; i < 500; i++) {
+			o.addEntry(rng.nextInt(1000), rng.nextInt(30), rng.nextInt(30),
+					1 + rng.nextInt(50));
+		}
+		ScheduleDijkstra d = new ScheduleDijkstra(o);
+		ConnectionScan c = new ConnectionScan(o);
+
+		for (int i = 0; i < 200; i++) {
+			int from = rng.nextInt(30);
+			int to = rng.nextInt(30);
+			double time = rng.nextInt(1000);
+			List<ScheduleEntry> p1 = d.getShortestPath(from, to, time);
+			List<ScheduleEntry> p2 = c.getShortestPath(from, to, time);
+			assertEquals(p1.size() == 0, p2.size() == 0);
+			if (p1.size() > 0) {
+				assertEquals(p1.get(p1.size() - 1).getDestinationTime(),
+						p2.get(p2.size() - 1).getDestinationTime());
+				assertEquals(from, p2.get(0).getFrom());
+				assertEquals(to, p2.get(p2.size() - 1).getTo());
+			}
+		}
+	}
+
+}
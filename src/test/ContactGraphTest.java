@@ -0,0 +1,377 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import movement.map.SimMap;
+import routing.GraphRouter;
+import routing.contactgraph.ContactGraph;
+import routing.contactgraph.ContactPlanGraph;
+import routing.contactgraph.RouteCache;
+import routing.contactgraph.RouteTable;
+import routing.contactgraph.ScheduleGraph;
+import util.Tuple;
+import core.Coord;
+import core.SimClock;
+
+/**
+ * Tests for the routes of contact plan and schedule graphs
+ */
+public class ContactGraphTest extends TestCase {
+	/** contact plan: 0 reaches 3 either directly (late) or through 1
+	 * (earlier but with two hops). 2 meets 0 only after all the contacts
+	 * to 3. */
+	private static final String CONTACT_PLAN =
+		"0 (3 100 110, 1 0 10)\n" +
+		"1 (3 20 30)\n" +
+		"2 (0 200 210)\n";
+
+	/** map with the stops A, B, C and D */
+	private static final String MAP =
+		"LINESTRING (0 0, 100 0, 200 0, 300 0)\n";
+	private static final Coord A = new Coord(0, 0);
+	private static final Coord B = new Coord(100, 0);
+	private static final Coord C = new Coord(200, 0);
+	private static final Coord D = new Coord(300, 0);
+	/** vehicle 10 goes from A to C directly (arrives at 100); vehicle 11
+	 * goes from A to D through B where it meets vehicle 12 that goes to C
+	 * (arrives at 20); vehicle 13 leaves A after 11 but it also leaves B
+	 * before 12 departs */
+	private static final String SCHEDULE =
+		"ROUTE (0 0 0, 100 200 0)\n" +
+		"ROUTE (5 0 0, 10 100 0, 13 100 0, 30 300 0)\n" +
+		"ROUTE (8 100 0, 12 100 0, 20 200 0)\n" +
+		"ROUTE (7 0 0, 9 100 0, 11 100 0, 40 300 0)\n";
+	private static final int FIRST_VEHICLE = 10;
+
+	private TestSettings ts;
+	private SimMap map;
+	/** directory of the route cache files or null if not used */
+	private File cacheDir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		ContactGraph.reset();
+		ts = new TestSettings();
+		ts.setNameSpace(GraphRouter.CONTACT_GRAPH_NS);
+	}
+
+	protected void tearDown() throws Exception {
+		ContactGraph.reset();
+		if (cacheDir != null) {
+			for (File f : cacheDir.listFiles()) {
+				f.delete();
+			}
+			cacheDir.delete();
+		}
+		super.tearDown();
+	}
+
+	private String writeToNewFile(String contents) throws IOException {
+		File f = File.createTempFile("contactGraphTest", ".txt");
+		f.deleteOnExit();
+		PrintWriter out = new PrintWriter(f);
+		out.print(contents);
+		out.close();
+		return f.getAbsolutePath();
+	}
+
+	private ContactGraph createContactPlanGraph(int hopLimit)
+			throws IOException {
+		ts.putSetting(ContactPlanGraph.CONTACT_PLAN,
+				writeToNewFile(CONTACT_PLAN));
+		ts.putSetting(ContactPlanGraph.HOP_LIMIT, "" + hopLimit);
+		return ContactGraph.initializeContactPlanGraph(ts);
+	}
+
+	private ContactGraph createScheduleGraph() throws IOException {
+		WKTMapReader reader = new WKTMapReader(true);
+		reader.addPaths(new StringReader(MAP), 0);
+		map = reader.getMap();
+
+		ts.putSetting(ScheduleGraph.CONTACT_GRAPH_SCHEDULE,
+				writeToNewFile(SCHEDULE));
+		ts.putSetting(ScheduleGraph.CONTACT_GRAPH_START, "" + FIRST_VEHICLE);
+		return ContactGraph.initializeScheduleGraph(ts, map);
+	}
+
+	/**
+	 * Places hosts at all the stops of the schedule graph (also when the
+	 * map has been translated)
+	 */
+	private void placeHosts(ContactGraph graph) {
+		Coord[] stops = {A, C, B, D};
+		for (int i = 0; i < stops.length; i++) {
+			Coord c = stops[i].clone();
+			c.translate(map.getOffset().getX(), map.getOffset().getY());
+			graph.addNode(i, map.getNodeByCoord(c));
+		}
+	}
+
+	/**
+	 * Enables the route cache (and route precalculation)
+	 * @param precompute Should the routes be precalculated
+	 */
+	private void useRouteCache(boolean precompute) throws IOException {
+		if (cacheDir == null) {
+			cacheDir = Files.createTempDirectory("routeCache").toFile();
+		}
+		ts.putSetting(ContactGraph.ROUTE_CACHE_DIR, cacheDir.getAbsolutePath());
+		ts.putSetting(ContactGraph.PRECOMPUTE_ROUTES, "" + precompute);
+	}
+
+	/**
+	 * Asserts that two graphs give the same routes between all the hosts
+	 * at different start times
+	 */
+	private void assertSameRoutes(ContactGraph expected, ContactGraph actual,
+			int nrofHosts, double... startTimes) {
+		for (int to = 0; to < nrofHosts; to++) {
+			expected.calculateRoutesTo(to);
+			actual.calculateRoutesTo(to);
+			for (int from = 0; from < nrofHosts; from++) {
+				for (double time : startTimes) {
+					assertEquals(from + "->" + to + " at " + time,
+							String.valueOf(expected.getNearestRoute(from, to, time)),
+							String.valueOf(actual.getNearestRoute(from, to, time)));
+				}
+			}
+		}
+	}
+
+	private void assertSameTables(RouteTable expected, RouteTable actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.getRoute(i).toString(),
+					actual.getRoute(i).toString());
+		}
+	}
+
+	/**
+	 * Asserts that a route has the given hops
+	 * @param route The route
+	 * @param hops Times and addresses of the hops after each other
+	 */
+	private void assertRoute(LinkedList<Tuple<Double, Integer>> route,
+			double... hops) {
+		assertNotNull(route);
+		assertEquals(route.toString(), hops.length / 2, route.size());
+		for (int i = 0; i < route.size(); i++) {
+			assertEquals(hops[2 * i], route.get(i).getKey());
+			assertEquals((int)hops[2 * i + 1], (int)route.get(i).getValue());
+		}
+	}
+
+	public void testContactPlanRoutes() throws IOException {
+		ContactGraph graph = createContactPlanGraph(3);
+		graph.calculateRoutesTo(3);
+
+		/* the earliest route arrives first but has more hops */
+		assertRoute(graph.getNearestRoute(0, 3, 0), 10, 1, 30, 3);
+		assertRoute(graph.getNearestRoute(0, 3, 11), 110, 3);
+		assertNull(graph.getNearestRoute(0, 3, 111));
+		assertRoute(graph.getNearestRoute(1, 3, 0), 30, 3);
+
+		/* 2 meets 0 too late */
+		assertNull(graph.getNearestRoute(2, 3, 0));
+	}
+
+	public void testContactPlanHopLimit() throws IOException {
+		ContactGraph graph = createContactPlanGraph(1);
+		graph.calculateRoutesTo(3);
+
+		assertRoute(graph.getNearestRoute(0, 3, 0), 110, 3);
+		assertRoute(graph.getNearestRoute(1, 3, 0), 30, 3);
+	}
+
+	public void testContactPlanNoRoutes() throws IOException {
+		ContactGraph graph = createContactPlanGraph(3);
+		graph.calculateRoutesTo(2);
+
+		/* nobody has contacts to 2 */
+		assertNull(graph.getNearestRoute(0, 2, 0));
+		assertNull(graph.getNearestRoute(1, 2, 0));
+		/* unknown hosts */
+		graph.calculateRoutesTo(5);
+		assertNull(graph.getNearestRoute(0, 5, 0));
+		assertNull(graph.getNearestRoute(5, 3, 0));
+	}
+
+	public void testScheduleRoutes() throws IOException {
+		ContactGraph graph = createScheduleGraph();
+		graph.addNode(0, map.getNodeByCoord(A));
+		graph.addNode(1, map.getNodeByCoord(C));
+		graph.calculateRoutesTo(1);
+
+		/* the direct vehicle departs first but arrives last */
+		assertRoute(graph.getNearestRoute(0, 1, 0), 0, 10);
+		/* change from vehicle 11 to 12 at B (vehicle 13 can't hand the
+		 * message over to 12 and there's nobody at B to store it) */
+		assertRoute(graph.getNearestRoute(0, 1, 0.5), 5, 11, 12, 12);
+		assertNull(graph.getNearestRoute(0, 1, 6));
+	}
+
+	public void testScheduleStoreAtStop() throws IOException {
+		ContactGraph graph = createScheduleGraph();
+		graph.addNode(0, map.getNodeByCoord(A));
+		graph.addNode(1, map.getNodeByCoord(C));
+		graph.addNode(2, map.getNodeByCoord(B));
+		graph.calculateRoutesTo(1);
+
+		/* the host at B can store the message until vehicle 12 departs,
+		 * so the message can leave A later with vehicle 13 */
+		assertRoute(graph.getNearestRoute(0, 1, 0.5), 7, 13, 12, 2, 12, 12);
+		assertNull(graph.getNearestRoute(0, 1, 8));
+		assertRoute(graph.getNearestRoute(2, 1, 0), 12, 12);
+	}
+
+	public void testScheduleNoRoutes() throws IOException {
+		ContactGraph graph = createScheduleGraph();
+		graph.addNode(0, map.getNodeByCoord(A));
+		graph.addNode(1, map.getNodeByCoord(C));
+		graph.addNode(3, map.getNodeByCoord(D));
+		graph.calculateRoutesTo(0);
+		graph.calculateRoutesTo(1);
+
+		/* no vehicle goes to A or leaves from D */
+		assertNull(graph.getNearestRoute(1, 0, 0));
+		assertNull(graph.getNearestRoute(3, 1, 0));
+	}
+
+	public void testRouteCacheRoundTrip() throws IOException {
+		useRouteCache(false);
+		List<LinkedList<Tuple<Double, Integer>>> routes = new ArrayList<>();
+		routes.add(new LinkedList<Tuple<Double, Integer>>());
+		routes.get(0).add(new Tuple<Double, Integer>(1.5, 4));
+		routes.get(0).add(new Tuple<Double, Integer>(2.5, 7));
+		routes.add(new LinkedList<Tuple<Double, Integer>>());
+		routes.get(1).add(new Tuple<Double, Integer>(10.0, 7));
+
+		Map<Integer, RouteTable> toSeven = new HashMap<>();
+		toSeven.put(1, RouteTable.fromRoutes(routes));
+		toSeven.put(4, RouteTable.fromRoutes(routes.subList(1, 2)));
+		Map<Integer, Map<Integer, RouteTable>> all = new LinkedHashMap<>();
+		all.put(7, toSeven);
+		all.put(3, new HashMap<Integer, RouteTable>());
+
+		File file = new File(cacheDir, "routes.bin");
+		RouteCache.write(file, all);
+		RouteCache cache = RouteCache.open(file);
+		assertNotNull(cache);
+
+		Map<Integer, RouteTable> read = cache.getRoutesTo(7);
+		assertEquals(toSeven.keySet(), read.keySet());
+		for (Integer node : toSeven.keySet()) {
+			assertSameTables(toSeven.get(node), read.get(node));
+		}
+		assertTrue(cache.getRoutesTo(3).isEmpty());
+		assertNull(cache.getRoutesTo(1));
+
+		/* missing and foreign files aren't used */
+		assertNull(RouteCache.open(new File(cacheDir, "missing.bin")));
+		File foreign = new File(cacheDir, "foreign.bin");
+		PrintWriter out = new PrintWriter(foreign);
+		out.print("not a route cache");
+		out.close();
+		assertNull(RouteCache.open(foreign));
+	}
+
+	public void testCachedRoutes() throws IOException {
+		useRouteCache(true);
+		ContactGraph computed = createContactPlanGraph(3);
+		computed.calculateRoutesTo(3);
+		assertEquals(1, cacheDir.listFiles().length);
+
+		/* the second graph reads all its routes from the cache */
+		ContactGraph.reset();
+		useRouteCache(false);
+		ContactGraph cached = ContactGraph.initializeContactPlanGraph(ts);
+		assertNotSame(computed, cached);
+		assertSameRoutes(computed, cached, 4, 0, 5, 11, 50, 111);
+		assertEquals(1, cacheDir.listFiles().length);
+
+		ContactGraph.reset();
+		useRouteCache(true);
+		computed = createScheduleGraph();
+		placeHosts(computed);
+		computed.calculateRoutesTo(1);
+		ContactGraph.reset();
+		useRouteCache(false);
+		cached = ContactGraph.initializeScheduleGraph(ts, map);
+		placeHosts(cached);
+		assertSameRoutes(computed, cached, 4, 0, 0.5, 6, 8, 12);
+		assertEquals(2, cacheDir.listFiles().length);
+	}
+
+	public void testStaleRouteCache() throws IOException {
+		useRouteCache(true);
+		ContactGraph graph = createContactPlanGraph(3);
+		graph.calculateRoutesTo(3);
+		assertRoute(graph.getNearestRoute(0, 3, 0), 10, 1, 30, 3);
+
+		/* a changed contact plan must not use the old routes */
+		String planFile = ts.getSetting(ContactPlanGraph.CONTACT_PLAN);
+		PrintWriter out = new PrintWriter(planFile);
+		out.print("0 (3 100 110)\n1 (3 20 30)\n");
+		out.close();
+		ContactGraph.reset();
+		graph = ContactGraph.initializeContactPlanGraph(ts);
+		graph.calculateRoutesTo(3);
+		assertRoute(graph.getNearestRoute(0, 3, 0), 110, 3);
+		assertEquals(2, cacheDir.listFiles().length);
+
+		/* neither must a changed hop limit */
+		ContactGraph.reset();
+		ts.putSetting(ContactPlanGraph.HOP_LIMIT, "1");
+		ContactGraph.initializeContactPlanGraph(ts).calculateRoutesTo(3);
+		assertEquals(3, cacheDir.listFiles().length);
+
+		/* the same schedule against a translated map is another input */
+		ContactGraph.reset();
+		graph = createScheduleGraph();
+		placeHosts(graph);
+		graph.calculateRoutesTo(1);
+		ContactGraph.reset();
+		map.translate(10, 0);
+		graph = ContactGraph.initializeScheduleGraph(ts, map);
+		placeHosts(graph);
+		graph.calculateRoutesTo(1);
+		assertRoute(graph.getNearestRoute(0, 1, 0.5), 7, 13, 12, 2, 12, 12);
+		assertEquals(5, cacheDir.listFiles().length);
+	}
+
+	public void testParallelRoutes() throws IOException {
+		ContactGraph sequential = createContactPlanGraph(3);
+		ContactGraph.reset();
+		ts.putSetting(ContactGraph.PRECOMPUTE_ROUTES, "true");
+		ContactGraph parallel = ContactGraph.initializeContactPlanGraph(ts);
+		assertSameRoutes(sequential, parallel, 4, 0, 5, 11, 50, 111);
+
+		ContactGraph.reset();
+		ts.putSetting(ContactGraph.PRECOMPUTE_ROUTES, "false");
+		sequential = createScheduleGraph();
+		placeHosts(sequential);
+		ContactGraph.reset();
+		ts.putSetting(ContactGraph.PRECOMPUTE_ROUTES, "true");
+		parallel = ContactGraph.initializeScheduleGraph(ts, map);
+		placeHosts(parallel);
+		assertSameRoutes(sequential, parallel, 4, 0, 0.5, 6, 8, 12);
+	}
+}
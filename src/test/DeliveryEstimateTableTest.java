@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTMapReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.DijkstraPathFinder;
+import movement.map.MapNode;
+import movement.map.MapScheduledNode;
+import movement.map.MapScheduledRoute;
+import movement.map.SimMap;
+import routing.util.DeliveryEstimateTable;
+import util.Tuple;
+import core.Coord;
+
+/**
+ * Tests for the GeOpps delivery estimates of DeliveryEstimateTable against
+ * the estimates calculated the way GeOppsRouter did per call before the
+ * table.
+ */
+public class DeliveryEstimateTableTest extends TestCase {
+	/** a road network and a separate road (from 500,500 to 600,500) that
+	 * can't be reached over the map */
+	private static final String MAP =
+		"LINESTRING (0 0, 100 0, 200 0, 200 100, 300 100)\n" +
+		"LINESTRING (100 0, 100 100, 200 100)\n" +
+		"LINESTRING (0 0, 0 200, 300 200, 300 100)\n" +
+		"LINESTRING (500 500, 600 500)\n";
+	private static final double[] TIMES =
+		{0, 5, 10, 12, 15, 30, 44, 45, 70, 100, 20, 0};
+	private static final double DELTA = 1e-9;
+
+	private SimMap map;
+	private DijkstraPathFinder pathFinder;
+	private List<MapNode> reachable;
+	private MapNode unreachable;
+	private List<MapScheduledRoute> schedules;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		WKTMapReader reader = new WKTMapReader(true);
+		reader.addPaths(new StringReader(MAP), 0);
+		map = reader.getMap();
+		pathFinder = new DijkstraPathFinder(null);
+
+		reachable = new ArrayList<MapNode>();
+		for (MapNode n : map.getNodes()) {
+			if (n.getLocation().getX() < 500) {
+				reachable.add(n);
+			}
+		}
+		unreachable = node(600, 500);
+
+		schedules = new ArrayList<MapScheduledRoute>();
+		/* waits at the first stop and at 100,0 */
+		schedules.add(schedule(0, 0, 0, 5, 0, 0, 10, 100, 0, 15, 100, 0,
+				45, 300, 100, 70, 0, 0));
+		schedules.add(schedule(12, 300, 200, 30, 0, 200, 44, 200, 100));
+	}
+
+	private MapNode node(double x, double y) {
+		MapNode n = map.getNodeByCoord(new Coord(x, y));
+		assertNotNull(n);
+		return n;
+	}
+
+	/**
+	 * Creates a schedule
+	 * @param stops Times and coordinates of the stops after each other
+	 */
+	private MapScheduledRoute schedule(double... stops) {
+		List<MapScheduledNode> nodes = new ArrayList<MapScheduledNode>();
+		for (int i = 0; i < stops.length; i += 3) {
+			nodes.add(new MapScheduledNode(stops[i],
+					node(stops[i + 1], stops[i + 2])));
+		}
+		return new MapScheduledRoute(nodes);
+	}
+
+	/* the old per-call calculation of GeOppsRouter */
+
+	private double mapDistance(MapNode dst, MapNode from) {
+		double distance = 0;
+		List<MapNode> nodePath = pathFinder.getShortestPath(from, dst);
+		for (int i = 0; i < nodePath.size() - 1; i++) {
+			distance += nodePath.get(i).getLocation().distance(
+					nodePath.get(i + 1).getLocation());
+		}
+		return distance;
+	}
+
+	private double distance(MapNode dst, MapNode from, boolean direct) {
+		return direct ? dst.getLocation().distance(from.getLocation()) :
+			mapDistance(dst, from);
+	}
+
+	private Tuple<Double, Double> routeEstimate(MapNode dst,
+			MapScheduledRoute schedule, double time, boolean direct) {
+		Tuple<Double, Double> estimate =
+			new Tuple<Double, Double>(Double.MAX_VALUE, Double.MAX_VALUE);
+		List<MapScheduledNode> stops = schedule.getStops();
+		for (int i = 0; i < stops.size() - 1; i++) {
+			if (stops.get(i).getTime() <= time) {
+				continue;
+			}
+			List<MapNode> path = pathFinder.getShortestPath(
+					stops.get(i).getNode(), stops.get(i + 1).getNode());
+			double speed = mapDistance(stops.get(i + 1).getNode(),
+					stops.get(i).getNode()) /
+					(stops.get(i + 1).getTime() - stops.get(i).getTime());
+			double navigated = 0;
+			for (int j = 0; j < path.size(); j++) {
+				if (j > 0) {
+					navigated += path.get(j).getLocation().distance(
+							path.get(j - 1).getLocation());
+				}
+				double possibleTime = stops.get(i).getTime() +
+					navigated / speed +
+					distance(dst, path.get(j), direct) / speed;
+				if (possibleTime < estimate.getValue()) {
+					estimate = new Tuple<Double, Double>(
+							stops.get(i).getTime(), possibleTime);
+				}
+			}
+		}
+		return estimate;
+	}
+
+	private Tuple<Double, Double> stationEstimate(MapNode dst,
+			MapScheduledRoute schedule, double time, boolean direct) {
+		Tuple<Double, Double> estimate =
+			new Tuple<Double, Double>(Double.MAX_VALUE, Double.MAX_VALUE);
+		List<MapScheduledNode> stops = schedule.getStops();
+		MapScheduledNode first = stops.get(0);
+		MapScheduledNode second = null;
+		for (int i = 1; i < stops.size(); i++) {
+			second = stops.get(i);
+			if (second.getNode() != first.getNode()) {
+				break;
+			}
+			first = second;
+		}
+		double speed = mapDistance(second.getNode(), first.getNode()) /
+			(second.getTime() - first.getTime());
+		for (MapScheduledNode stop : stops) {
+			if (stop.getTime() > time) {
+				double possibleTime = stop.getTime() +
+					distance(dst, stop.getNode(), direct) / speed;
+				if (possibleTime < estimate.getValue()) {
+					estimate = new Tuple<Double, Double>(stop.getTime(),
+							possibleTime);
+				}
+			}
+		}
+		return estimate;
+	}
+
+	private void assertEstimates(boolean direct, boolean stopsOnly,
+			List<MapNode> destinations) {
+		DeliveryEstimateTable table =
+			new DeliveryEstimateTable(direct, stopsOnly);
+		for (MapScheduledRoute schedule : schedules) {
+			for (MapNode dst : destinations) {
+				for (double time : TIMES) {
+					Tuple<Double, Double> expected = stopsOnly ?
+						stationEstimate(dst, schedule, time, direct) :
+						routeEstimate(dst, schedule, time, direct);
+					Tuple<Double, Double> actual =
+						table.getEstimate(map, schedule, dst, time);
+					String msg = schedule + " to " + dst + " at " + time;
+					assertEquals(msg, expected.getKey(), actual.getKey());
+					assertEquals(msg, expected.getValue(), actual.getValue(),
+							DELTA);
+				}
+			}
+		}
+	}
+
+	public void testRouteEstimates() {
+		assertEstimates(false, false, reachable);
+	}
+
+	public void testStopEstimates() {
+		assertEstimates(false, true, reachable);
+	}
+
+	public void testDirectDistanceEstimates() {
+		List<MapNode> all = new ArrayList<MapNode>(reachable);
+		all.add(unreachable);
+		assertEstimates(true, false, all);
+		assertEstimates(true, true, all);
+	}
+
+	public void testReplicatedSchedule() {
+		DeliveryEstimateTable table = new DeliveryEstimateTable(false, false);
+		MapScheduledRoute schedule = schedules.get(0);
+		MapScheduledRoute replicate = schedule.replicate();
+		MapNode dst = node(300, 200);
+		assertSame(schedule.getStops(), replicate.getStops());
+
+		Tuple<Double, Double> estimate = table.getEstimate(map, schedule, dst, 0);
+		assertEquals(estimate.toString(),
+				table.getEstimate(map, replicate, dst, 0).toString());
+		assertEquals(routeEstimate(dst, schedule, 20, false).toString(),
+				table.getEstimate(map, replicate, dst, 20).toString());
+	}
+
+	/**
+	 * Destinations that can't be reached over the map get no estimate. The
+	 * old calculation counted them as zero distance away from every node.
+	 */
+	public void testUnreachableDestination() {
+		for (boolean stopsOnly : new boolean[] {false, true}) {
+			DeliveryEstimateTable table =
+				new DeliveryEstimateTable(false, stopsOnly);
+			for (MapScheduledRoute schedule : schedules) {
+				for (double time : TIMES) {
+					Tuple<Double, Double> estimate =
+						table.getEstimate(map, schedule, unreachable, time);
+					assertEquals(Double.MAX_VALUE, estimate.getKey());
+					assertEquals(Double.MAX_VALUE, estimate.getValue());
+				}
+			}
+			assertTrue(routeEstimate(unreachable, schedules.get(0), 0,
+					false).getValue() < Double.MAX_VALUE);
+		}
+	}
+}
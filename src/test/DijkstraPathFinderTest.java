@@ -4,11 +4,14 @@
  */
 package test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.SimMap;
 import core.Coord;
 
 public class DijkstraPathFinderTest extends TestCase {
@@ -73,6 +76,72 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 
+	public void testNoPath() {
+		MapNode lonely = newNode(50, 50);
+		assertEquals(0, getPath(n1, lonely).size());
+		assertEquals(0, getPath(lonely, n1).size());
+		checkPath(getPath(lonely, lonely), lonely);
+	}
+
+	public void testOkMapNodes() {
+		n1.addType(1);
+		n2.addType(1);
+		n3.addType(1);
+		n4.addType(1);
+		n5.addType(2);
+		n6.addType(1);
+		r = new DijkstraPathFinder(new int[] {1});
+
+		/* n5 is not OK, the path goes around it */
+		checkPath(getPath(n4,n6), n4, n1, n2, n3, n6);
+		/* n7 and n8 have no types */
+		assertEquals(0, getPath(n1,n8).size());
+	}
+
+	public void testCachedPathsDontChange() {
+		List<MapNode> path = getPath(n1,n6);
+		for (int i = 0; i < 10; i++) {
+			getPath(n8, n4);
+			getPath(n3, n5);
+		}
+		assertSame(path, getPath(n1,n6));
+		checkPath(path, n1, n2, n5, n6);
+	}
+
+	public void testContractionHierarchy() {
+		MapNode[] nodes = {n1, n2, n3, n4, n5, n6, n7, n8};
+		Map<Coord, MapNode> nodeMap = new HashMap<Coord, MapNode>();
+		for (MapNode n : nodes) {
+			nodeMap.put(n.getLocation(), n);
+		}
+		SimMap map = new SimMap(nodeMap);
+		map.enableContractionHierarchies(null);
+		/* without a map the finder searches the paths with A* */
+		DijkstraPathFinder aStar = new DijkstraPathFinder(null);
+		r = new DijkstraPathFinder(map, null);
+
+		checkPath(getPath(n4,n8), n4, n5, n6, n7, n8);
+		checkPath(getPath(n3,n5), n3, n6, n5);
+		for (MapNode from : nodes) {
+			for (MapNode to : nodes) {
+				List<MapNode> path = getPath(from, to);
+				assertEquals(from, path.get(0));
+				assertEquals(to, path.get(path.size() - 1));
+				assertEquals(getLength(aStar.getShortestPath(from, to)),
+						getLength(path), 0.0001);
+			}
+		}
+	}
+
+	private double getLength(List<MapNode> path) {
+		double length = 0;
+		for (int i = 0; i < path.size() - 1; i++) {
+			length += path.get(i).getLocation().distance(
+					path.get(i + 1).getLocation());
+		}
+		return length;
+	}
+
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 
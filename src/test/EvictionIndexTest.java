@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import routing.util.BufferEvictionPolicy;
+import routing.util.EvictionIndex;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the buffer eviction policies and the eviction index
+ */
+public class EvictionIndexTest extends TestCase {
+
+	private Map<String, Message> buffer;
+	private EvictionIndex index;
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		clock = SimClock.getInstance();
+		clock.setTime(0);
+		buffer = new HashMap<String, Message>();
+	}
+
+	private Message add(String id, int size, double rcvTime, int ttl) {
+		Message m = new Message(null, null, id, size);
+		m.setReceiveTime(rcvTime);
+		m.setTtl(ttl);
+		buffer.put(id, m);
+		index.add(m);
+		return m;
+	}
+
+	private void remove(Message m) {
+		buffer.remove(m.getId());
+		index.remove(m);
+	}
+
+	public void testOldestFirst() {
+		index = new EvictionIndex(new BufferEvictionPolicy.OldestFirst(),
+				buffer.values());
+		Message m1 = add("M1", 10, 30, 100);
+		Message m2 = add("M2", 10, 10, 100);
+		Message m3 = add("M3", 10, 20, 100);
+
+		assertEquals(m2, index.next(false));
+		remove(m2);
+		assertEquals(m3, index.next(false));
+		remove(m3);
+		assertEquals(m1, index.next(false));
+		remove(m1);
+		assertNull(index.next(false));
+	}
+
+	public void testLargestFirst() {
+		index = new EvictionIndex(new BufferEvictionPolicy.LargestFirst(),
+				buffer.values());
+		add("M1", 10, 0, 100);
+		Message m2 = add("M2", 30, 0, 100);
+		add("M3", 20, 0, 100);
+
+		assertEquals(m2, index.next(false));
+	}
+
+	public void testShortestTtlFirst() {
+		index = new EvictionIndex(new BufferEvictionPolicy.ShortestTtlFirst(),
+				buffer.values());
+		add("M1", 10, 0, Message.INFINITE_TTL);
+		add("M2", 10, 0, 30);
+		Message m3 = add("M3", 10, 0, 20);
+
+		assertEquals(m3, index.next(false));
+	}
+
+	public void testPinnedMessages() {
+		index = new EvictionIndex(new BufferEvictionPolicy.OldestFirst(),
+				buffer.values());
+		Message m1 = add("M1", 10, 10, 100);
+		Message m2 = add("M2", 10, 20, 100);
+
+		index.pin(m1.getId(), m1);
+		index.pin(m1.getId(), m1);
+		assertTrue(index.isPinned(m1.getId()));
+		assertEquals(m2, index.next(false));
+		assertEquals(m1, index.next(true));
+
+		index.unpin(m1.getId());
+		assertEquals(m2, index.next(false)); // still pinned once
+		index.unpin(m1.getId());
+		assertFalse(index.isPinned(m1.getId()));
+		assertEquals(m1, index.next(false));
+
+		/* removing a pinned message must not leave it in the order */
+		index.pin(m2.getId(), m2);
+		remove(m2);
+		index.unpin(m2.getId());
+		remove(m1);
+		assertNull(index.next(true));
+	}
+
+	public void testVolatilePolicy() {
+		final Map<String, Integer> costs = new HashMap<String, Integer>();
+		final Map<String, Integer> snapshot = new HashMap<String, Integer>();
+		final int[] nrofSorts = new int[1];
+		index = new EvictionIndex(new BufferEvictionPolicy() {
+			@Override
+			public boolean isVolatile() {
+				return true;
+			}
+			@Override
+			public void prepare() {
+				snapshot.clear();
+				snapshot.putAll(costs);
+				nrofSorts[0]++;
+			}
+			public int compare(Message m1, Message m2) {
+				return snapshot.get(m1.getId()) - snapshot.get(m2.getId());
+			}
+		}, buffer.values());
+		costs.put("M1", 1);
+		costs.put("M2", 2);
+		costs.put("M3", 3);
+		costs.put("M4", 4);
+		Message m1 = add("M1", 10, 0, 100);
+		Message m2 = add("M2", 10, 0, 100);
+		Message m3 = add("M3", 10, 0, 100);
+		assertEquals(m1, index.next(false));
+		assertEquals(1, nrofSorts[0]);
+
+		/* removals and additions keep the snapshot order */
+		costs.put("M2", 10);
+		remove(m1);
+		assertEquals(m2, index.next(false));
+		snapshot.put("M4", 0); // key of a new message from the old snapshot
+		Message m4 = add("M4", 10, 0, 100);
+		assertEquals(m4, index.next(false));
+		remove(m4);
+		index.pin(m2.getId(), m2);
+		assertEquals(m3, index.next(false));
+		index.unpin(m2.getId());
+		assertEquals(m2, index.next(false));
+		assertEquals(1, nrofSorts[0]);
+
+		/* the order is re-sorted with new keys only when invalidated */
+		index.invalidate();
+		assertEquals(m3, index.next(false));
+		assertEquals(2, nrofSorts[0]);
+	}
+}
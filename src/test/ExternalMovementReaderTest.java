@@ -14,9 +14,11 @@ import util.Tuple;
 
 import junit.framework.TestCase;
 import core.Coord;
+import core.SettingsError;
 
 public class ExternalMovementReaderTest extends TestCase {
 	private ExternalMovementReader r;
+	private File tmpFile;
 	private static final String INPUT =
 		"0 0 0 0 0 0\n"+
 		"10 1 10 10\n"+
@@ -40,7 +42,7 @@ public class ExternalMovementReaderTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 
-		File tmpFile = File.createTempFile("EMRTest","tmp");
+		tmpFile = File.createTempFile("EMRTest","tmp");
 		tmpFile.deleteOnExit();
 
 		PrintWriter pw = new PrintWriter(tmpFile);
@@ -63,6 +65,79 @@ public class ExternalMovementReaderTest extends TestCase {
 		assertEquals(0, list.size());
 	}
 
+	public void testPrefetching() {
+		r.startPrefetching(1);
+		testReader();
+		assertEquals(0, r.readNextSlice().size());
+		r.close();
+	}
+
+	public void testSlices() {
+		for (int i=0; i<times.length; i++) {
+			ExternalMovementReader.TimeSlice slice = r.readNextSlice();
+			assertEquals(times[i], slice.getTime());
+			assertEquals(ids.length, slice.size());
+			for (int j=0; j<ids.length; j++) {
+				assertEquals(ids[j], slice.getId(j));
+				assertEquals(coords[i][j].getX(), slice.getX(j));
+				assertEquals(coords[i][j].getY(), slice.getY(j));
+			}
+		}
+		assertEquals(0, r.readNextSlice().size());
+	}
+
+	public void testBinary() throws Exception {
+		File binFile = new File(tmpFile.getAbsolutePath() +
+				ExternalMovementReader.BINARY_SUFFIX);
+		binFile.deleteOnExit();
+		ExternalMovementReader.main(new String[] {tmpFile.getAbsolutePath()});
+
+		// the binary sibling is used instead of the text file
+		r = new ExternalMovementReader(tmpFile.getAbsolutePath());
+		testReader();
+		r.close();
+
+		// the binary file can be also given directly
+		r = new ExternalMovementReader(binFile.getAbsolutePath());
+		r.startPrefetching(2);
+		testReader();
+		r.close();
+	}
+
+	public void testChangedTextFile() throws Exception {
+		File binFile = new File(tmpFile.getAbsolutePath() +
+				ExternalMovementReader.BINARY_SUFFIX);
+		binFile.deleteOnExit();
+		ExternalMovementReader.main(new String[] {tmpFile.getAbsolutePath()});
+
+		/* same length and older than the binary sibling, but changed */
+		PrintWriter pw = new PrintWriter(tmpFile);
+		pw.println(INPUT.replace("10 1 10 10", "10 1 10 11"));
+		pw.close();
+		tmpFile.setLastModified(binFile.lastModified() - 10000);
+
+		r = new ExternalMovementReader(tmpFile.getAbsolutePath());
+		ExternalMovementReader.TimeSlice slice = r.readNextSlice();
+		assertEquals("1", slice.getId(0));
+		assertEquals(11.0, slice.getY(0));
+		r.close();
+		binFile.delete();
+	}
+
+	public void testInvalidLine() throws Exception {
+		PrintWriter pw = new PrintWriter(tmpFile);
+		pw.println("0 0 0 0 0 0\n10 1 10 10\n10 2 10 x\n20 1 10 10");
+		pw.close();
+
+		r = new ExternalMovementReader(tmpFile.getAbsolutePath());
+		try {
+			r.readNextSlice();
+			fail("Invalid coordinate should be a settings error");
+		} catch (SettingsError e) {
+			// expected
+		}
+	}
+
 	private void checkTuples(List<Tuple<String, Coord>> list, String[] ids,
 			Coord[] coords) {
 
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ExternalPathMovementReader;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ExternalPathMovementReaderTest extends TestCase {
+	private static final String TRACE =
+		"2 10 100 5 50 0 40\n" +
+		"0 10,5,0 20,15,0 30,15,10\n" +
+		"0 50,15,10\n" +
+		"2 15,50,40 25,40,40\n";
+	private static final String ACTIVITY =
+		"0 10 60\n" +
+		"2 20 30\n" +
+		"2 10 15\n";
+
+	private ExternalPathMovementReader text;
+	private ExternalPathMovementReader binary;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		File trace = writeTemp(TRACE);
+		File activity = writeTemp(ACTIVITY);
+		text = ExternalPathMovementReader.getInstance(trace.getPath(),
+				activity.getPath());
+
+		File bin = File.createTempFile("trace", ".bin");
+		bin.deleteOnExit();
+		text.writeBinary(bin);
+		binary = ExternalPathMovementReader.getInstance(bin.getPath(), null);
+	}
+
+	private File writeTemp(String contents) throws IOException {
+		File f = File.createTempFile("trace", ".txt");
+		f.deleteOnExit();
+		FileWriter fw = new FileWriter(f);
+		fw.write(contents);
+		fw.close();
+		return f;
+	}
+
+	public void testHeader() {
+		assertEquals(100.0, binary.getMaxTime());
+		assertEquals(10.0, binary.getMinTime());
+		assertEquals(5.0, binary.getMinX());
+		assertEquals(40.0, binary.getMaxY());
+	}
+
+	public void testPaths() {
+		for (int id = 0; id <= 2; id++) {
+			List<List<ExternalPathMovementReader.Entry>> p1 = text.getPaths(id);
+			List<List<ExternalPathMovementReader.Entry>> p2 =
+				binary.getPaths(id);
+			assertEquals(p1.size(), p2.size());
+			for (int i = 0; i < p1.size(); i++) {
+				assertEquals(p1.get(i).size(), p2.get(i).size());
+				for (int j = 0; j < p1.get(i).size(); j++) {
+					ExternalPathMovementReader.Entry e1 = p1.get(i).get(j);
+					ExternalPathMovementReader.Entry e2 = p2.get(i).get(j);
+					assertEquals(e1.time, e2.time);
+					assertEquals(e1.x, e2.x);
+					assertEquals(e1.y, e2.y);
+				}
+			}
+		}
+		assertEquals(0, binary.getPaths(1).size());
+		/* normalized values */
+		assertEquals(40.0, binary.getPaths(0).get(1).get(0).time);
+		assertEquals(35.0, binary.getPaths(2).get(0).get(1).x);
+	}
+
+	public void testActiveTimes() {
+		List<ExternalPathMovementReader.ActiveTime> a = binary.getActive(2);
+		assertEquals(2, a.size());
+		assertEquals(10.0, a.get(0).start);
+		assertEquals(20.0, a.get(0).end);
+		assertEquals(0.0, a.get(1).start);
+		assertEquals(0, binary.getActive(1).size());
+	}
+}
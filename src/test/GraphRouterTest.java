@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import movement.MapBasedMovement;
+import movement.StationaryListMovement;
+import routing.GraphRouter;
+import routing.MessageRouter;
+import routing.contactgraph.ContactGraph;
+import routing.contactgraph.ContactPlanGraph;
+import util.Tuple;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+
+/**
+ * Tests for the next hop index of GraphRouter
+ */
+public class GraphRouterTest extends TestCase {
+	/** 0 meets 1 and then 2, which both meet 3 after that; 4 meets nobody */
+	private static final String CONTACT_PLAN =
+		"0 (1 10 20, 2 30 40)\n" +
+		"1 (3 50 60)\n" +
+		"2 (3 70 80)\n";
+	private static final String MAP =
+		"LINESTRING (0 0, 100 0, 200 0, 300 0, 400 0)\n";
+	private static final String LOCATIONS =
+		"POINT (0 0)\nPOINT (100 0)\nPOINT (200 0)\nPOINT (300 0)\n" +
+		"POINT (400 0)\n";
+	private static final int NROF_HOSTS = 5;
+	/** times the index is checked at */
+	private static final double[] TIMES = {0, 10, 10.5, 30, 50, 100};
+
+	private TestSettings ts;
+	private List<DTNHost> hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		SimClock.reset();
+		ContactGraph.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+
+		ts.setNameSpace(GraphRouter.CONTACT_GRAPH_NS);
+		ts.putSetting(GraphRouter.CONTACT_GRAPH_TYPE, "ContactPlanGraph");
+		ts.putSetting(ContactPlanGraph.CONTACT_PLAN,
+				writeToNewFile(CONTACT_PLAN));
+		ts.putSetting(ContactPlanGraph.HOP_LIMIT, "3");
+
+		ts.setNameSpace(MapBasedMovement.MAP_BASE_MOVEMENT_NS);
+		ts.putSetting(MapBasedMovement.NROF_FILES_S, "1");
+		ts.putSetting(MapBasedMovement.FILE_S + "1", writeToNewFile(MAP));
+
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(MessageRouter.B_SIZE_S, "100");
+		ts.putSetting(StationaryListMovement.LOCATION_FILE_S,
+				writeToNewFile(LOCATIONS));
+
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), ts);
+		utils.setMessageRouterProto(new IndexedGraphRouter(ts));
+		StationaryListMovement mmProto = new StationaryListMovement(ts);
+		hosts = new ArrayList<DTNHost>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			hosts.add(utils.createHost(mmProto, "h" + i));
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		ContactGraph.reset();
+		super.tearDown();
+	}
+
+	private String writeToNewFile(String contents) throws IOException {
+		File f = File.createTempFile("graphRouterTest", ".txt");
+		f.deleteOnExit();
+		PrintWriter out = new PrintWriter(f);
+		out.print(contents);
+		out.close();
+		return f.getAbsolutePath();
+	}
+
+	private static TreeSet<String> ids(Collection<Message> messages) {
+		TreeSet<String> ids = new TreeSet<String>();
+		for (Message m : messages) {
+			assertTrue("duplicate " + m, ids.add(m.getId()));
+		}
+		return ids;
+	}
+
+	/**
+	 * Asserts that the next hop index of a host matches a scan over the
+	 * host's buffer
+	 */
+	@SuppressWarnings("unchecked")
+	private void assertIndexMatchesBuffer(DTNHost host) {
+		IndexedGraphRouter router = (IndexedGraphRouter)host.getRouter();
+		List<Message> withoutRoute = new ArrayList<Message>();
+		List<List<Message>> byNextHop = new ArrayList<List<Message>>();
+		List<List<Message>> beforeTime = new ArrayList<List<Message>>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			byNextHop.add(new ArrayList<Message>());
+		}
+		for (int t = 0; t < TIMES.length; t++) {
+			beforeTime.add(new ArrayList<Message>());
+		}
+
+		for (Message m : host.getMessageCollection()) {
+			List<Tuple<Double, Integer>> route = (List<Tuple<Double, Integer>>)
+				m.getProperty(GraphRouter.MSG_ROUTE_PROPERTY);
+			if (route == null) {
+				withoutRoute.add(m);
+				continue;
+			}
+			int index = (Integer)m.getProperty(
+					GraphRouter.MSG_ROUTE_INDEX_PROPERTY);
+			if (index >= route.size()) {
+				continue;
+			}
+			byNextHop.get(route.get(index).getValue()).add(m);
+			for (int t = 0; t < TIMES.length; t++) {
+				if (route.get(index).getKey() < TIMES[t]) {
+					beforeTime.get(t).add(m);
+				}
+			}
+		}
+
+		assertEquals(ids(withoutRoute), ids(router.getMessagesWithoutRoute()));
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			Map<String, Message> indexed = router.getMessagesForNextHop(i);
+			assertEquals("next hop " + i, ids(byNextHop.get(i)),
+					ids(indexed.values()));
+		}
+		for (int t = 0; t < TIMES.length; t++) {
+			assertEquals("before " + TIMES[t], ids(beforeTime.get(t)),
+					ids(router.getMessagesWithHopBefore(TIMES[t])));
+		}
+	}
+
+	private void assertIndexesMatchBuffers() {
+		for (DTNHost host : hosts) {
+			assertIndexMatchesBuffer(host);
+		}
+	}
+
+	public void testIndexAfterAddDeliverAndDrop() {
+		DTNHost h0 = hosts.get(0);
+		DTNHost h1 = hosts.get(1);
+		DTNHost h3 = hosts.get(3);
+		DTNHost h4 = hosts.get(4);
+		IndexedGraphRouter r0 = (IndexedGraphRouter)h0.getRouter();
+
+		h0.createNewMessage(new Message(h0, h3, "M1", 10));
+		h0.createNewMessage(new Message(h0, hosts.get(2), "M2", 10));
+		h0.createNewMessage(new Message(h0, h1, "M3", 10));
+		h0.createNewMessage(new Message(h0, h4, "M4", 10));
+		h1.createNewMessage(new Message(h1, h3, "M5", 10));
+		assertIndexesMatchBuffers();
+		assertEquals(2, r0.getMessagesForNextHop(1).size());
+		assertEquals(1, r0.getMessagesWithoutRoute().size());
+
+		/* M1 moves to its next hop, where the route continues to 3 */
+		h0.sendMessage("M1", h1);
+		h1.messageTransferred("M1", h0);
+		h0.deleteMessage("M1", false);
+		assertIndexesMatchBuffers();
+		assertEquals(2, ((IndexedGraphRouter)h1.getRouter())
+				.getMessagesForNextHop(3).size());
+
+		/* M3 is delivered to its destination */
+		h0.sendMessage("M3", h1);
+		h1.messageTransferred("M3", h0);
+		h0.deleteMessage("M3", false);
+		assertFalse(h1.getRouter().hasMessage("M3"));
+		assertIndexesMatchBuffers();
+		assertTrue(r0.getMessagesForNextHop(1).isEmpty());
+
+		/* M2 and M4 are dropped (M2 to make room for M6) */
+		h0.createNewMessage(new Message(h0, h4, "M6", 85));
+		assertFalse(h0.getRouter().hasMessage("M2"));
+		assertIndexesMatchBuffers();
+		h0.deleteMessage("M4", true);
+		assertIndexesMatchBuffers();
+		assertTrue(r0.getMessagesWithHopBefore(100).isEmpty());
+		assertEquals(1, r0.getMessagesWithoutRoute().size());
+	}
+
+	/**
+	 * GraphRouter that gives the tests access to its next hop index
+	 */
+	private static class IndexedGraphRouter extends GraphRouter {
+		public IndexedGraphRouter(Settings s) {
+			super(s);
+		}
+
+		protected IndexedGraphRouter(IndexedGraphRouter r) {
+			super(r);
+		}
+
+		@Override
+		public Map<String, Message> getMessagesForNextHop(int address) {
+			return super.getMessagesForNextHop(address);
+		}
+
+		@Override
+		public List<Message> getMessagesWithHopBefore(double time) {
+			return super.getMessagesWithHopBefore(time);
+		}
+
+		@Override
+		public Collection<Message> getMessagesWithoutRoute() {
+			return super.getMessagesWithoutRoute();
+		}
+
+		@Override
+		public IndexedGraphRouter replicate() {
+			return new IndexedGraphRouter(this);
+		}
+	}
+}
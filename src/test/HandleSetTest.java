@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import util.ExpiringHandleSet;
+import util.HandleSet;
+
+/**
+ * Tests for the compact handle sets
+ */
+public class HandleSetTest extends TestCase {
+
+	public void testAddContainsRemove() {
+		HandleSet set = new HandleSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(5));
+		assertTrue(set.add(70000));
+		assertFalse(set.add(5));
+		assertEquals(2, set.size());
+
+		assertTrue(set.contains(5));
+		assertTrue(set.contains(70000));
+		assertFalse(set.contains(6));
+		assertFalse(set.contains(-1));
+		assertFalse(set.contains(1 << 30));
+
+		assertTrue(set.remove(5));
+		assertFalse(set.remove(5));
+		assertFalse(set.contains(5));
+		assertEquals(1, set.size());
+	}
+
+	public void testDenseChunk() {
+		HandleSet set = new HandleSet();
+		/* enough handles to turn the first chunk into a bitmap */
+		for (int i = 0; i < 10000; i += 2) {
+			set.add(i);
+		}
+		assertEquals(5000, set.size());
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i % 2 == 0, set.contains(i));
+		}
+
+		/* and back to an array */
+		for (int i = 0; i < 8000; i += 2) {
+			assertTrue(set.remove(i));
+		}
+		assertEquals(1000, set.size());
+		assertFalse(set.contains(7998));
+		assertTrue(set.contains(8000));
+
+		int[] handles = set.toArray();
+		assertEquals(1000, handles.length);
+		assertEquals(8000, handles[0]);
+		assertEquals(9998, handles[999]);
+	}
+
+	public void testExpiringSet() {
+		ExpiringHandleSet set = new ExpiringHandleSet(10);
+		for (int i = 0; i < 10; i++) {
+			set.add(i, i);
+		}
+		assertTrue(set.contains(0, 9));
+		assertFalse(set.contains(0, 10));
+		assertTrue(set.contains(9, 10));
+		assertFalse(set.contains(9, 19));
+		assertEquals(0, set.size());
+
+		ExpiringHandleSet forever = new ExpiringHandleSet(0);
+		forever.add(1, 0);
+		assertTrue(forever.contains(1, 1e9));
+	}
+}
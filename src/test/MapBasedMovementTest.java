@@ -192,6 +192,25 @@ public class MapBasedMovementTest extends TestCase {
 		assertTrue(thirdMap == fourthMap);
 	}
 
+	/**
+	 * Tests that the cache keeps the maps of different map files
+	 */
+	public void testMultiMapCache() throws IOException {
+		String mmbClass = "movement.MapBasedMovement";
+		String firstFile = writeToNewFile();
+		mbm = (MapBasedMovement)s.createIntializedObject(mmbClass);
+		SimMap firstMap = mbm.getMap();
+
+		writeToNewFile(); // another map file
+		mbm = (MapBasedMovement)s.createIntializedObject(mmbClass);
+		SimMap secondMap = mbm.getMap();
+		assertTrue(firstMap != secondMap);
+
+		writeToFile(firstFile); // back to the first file
+		mbm = (MapBasedMovement)s.createIntializedObject(mmbClass);
+		assertTrue(firstMap == mbm.getMap());
+	}
+
 	public void testHostMoving() {
 		final int NROF = 15;
 
@@ -256,6 +275,8 @@ public class MapBasedMovementTest extends TestCase {
 		File settingsFile = File.createTempFile("settingsFile", ".tmp");
 		settingsFile.deleteOnExit();
 		PrintWriter pw = new PrintWriter(settingsFile);
+		pw.println(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE + " = 100,100");
 		pw.println(ns + MapBasedMovement.NROF_FILES_S + " = 1");
 		// need to change path separators for settings file
 		pw.println(ns + MapBasedMovement.FILE_S + "1 = " +
@@ -154,4 +154,60 @@ public class MaxPropDijkstraTest extends TestCase {
 
 	}
 
+
+	public void testSnapshots() {
+		MeetingProbabilitySet mps = mapping.get(0);
+		mps.updateMeetingProbFor(1);
+		MeetingProbabilitySet snap = mps.snapshot();
+
+		assertTrue(snap.isSnapshot());
+		assertSame(snap, mps.snapshot()); // not modified -> same snapshot
+		assertSame(snap, snap.snapshot());
+		assertEquals(1.0, snap.getProbFor(1));
+
+		mps.updateMeetingProbFor(2);
+		assertEquals(1.0, snap.getProbFor(1)); // snapshot is not changed
+		assertEquals(0.0, snap.getProbFor(2));
+		assertNotSame(snap, mps.snapshot());
+		assertEquals(0.5, mps.snapshot().getProbFor(2));
+
+		try {
+			snap.updateMeetingProbFor(3);
+			fail("Snapshot was modified");
+		} catch (core.SimError e) {
+			// expected
+		}
+	}
+
+	public void testCachedCosts() {
+		mapping.get(0).updateMeetingProbFor(1);
+		mapping.get(1).updateMeetingProbFor(2);
+
+		double[] costs = mpd.getCosts(0, 1);
+		assertEquals(0.0, costs[0]);
+		assertEquals(0.0, costs[1]);
+		assertEquals(0.0, costs[2]);
+		assertEquals(Double.MAX_VALUE, costs[3]);
+
+		mapping.get(1).updateMeetingProbFor(3);
+		assertSame(costs, mpd.getCosts(0, 1)); // same version -> cached
+
+		costs = mpd.getCosts(0, 2);
+		assertEquals(0.5, costs[2], DELTA);
+		assertEquals(0.5, costs[3], DELTA);
+	}
+
+	public void testSetSizeNotLimited() {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(2, 1.0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		mps.updateMeetingProbFor(3);
+
+		/* like in the original implementation, values are dropped from
+		 * full sets only in debug mode */
+		assertEquals(3, mps.size());
+		assertEquals(0.25, mps.getProbFor(1), DELTA);
+		assertEquals(0.25, mps.getProbFor(2), DELTA);
+		assertEquals(0.5, mps.getProbFor(3), DELTA);
+	}
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.map.MapNode;
+import movement.map.MapScheduledNode;
+import movement.map.MapScheduledRoute;
+import routing.mobyspace.DistanceMetric;
+import routing.mobyspace.ScheduledMapMobySpace;
+import core.Coord;
+import core.SettingsError;
+import core.SimClock;
+
+/**
+ * Tests for the distances and delivery times of ScheduledMapMobySpace
+ * against the calculation the space used before the dense point vectors
+ * (per-host visit maps and a metric invoked per distance).
+ */
+public class MobySpaceTest extends TestCase {
+	private static final int NROF_LOCATIONS = 6;
+	private static final int NROF_MOVING = 8;
+	private static final int NROF_STOPS = 12;
+
+	private Random rng;
+	private SimClock clock;
+	private List<MapNode> locations;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ScheduledMapMobySpace.reset();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		rng = new Random(39);
+		locations = new ArrayList<MapNode>();
+		for (int i = 0; i < NROF_LOCATIONS; i++) {
+			locations.add(new MapNode(new Coord(i * 100, 0)));
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		ScheduledMapMobySpace.reset();
+		SimClock.reset();
+		super.tearDown();
+	}
+
+	/**
+	 * Creates a random schedule with whole second stop times (so that the
+	 * clock hits stop times exactly) and revisits of the same locations
+	 */
+	private MapScheduledRoute randomSchedule() {
+		List<MapScheduledNode> stops = new ArrayList<MapScheduledNode>();
+		int time = rng.nextInt(20);
+		for (int i = 0; i < NROF_STOPS; i++) {
+			stops.add(new MapScheduledNode(time,
+					locations.get(rng.nextInt(NROF_LOCATIONS))));
+			time += rng.nextInt(15);
+		}
+		return new MapScheduledRoute(stops);
+	}
+
+	/**
+	 * Compares a space to the old calculation while the clock advances
+	 * @param metric Name of the distance metric
+	 * @param k Constant k of the metric
+	 */
+	private void assertSameAsOld(String metric, double k) {
+		ScheduledMapMobySpace.reset();
+		clock.setTime(0);
+		ScheduledMapMobySpace space = ScheduledMapMobySpace.getInstance();
+		List<OldPoint> oldPoints = new ArrayList<OldPoint>();
+
+		/* dimensions 0-4 at locations 0-3 (two at the same location),
+		 * stationary hosts 0-5 and moving hosts after those */
+		List<Integer> dimensions = new ArrayList<Integer>();
+		List<MapNode> dimensionNodes = new ArrayList<MapNode>();
+		for (int i = 0; i < 5; i++) {
+			dimensions.add(i);
+			dimensionNodes.add(locations.get(Math.min(i, 3)));
+		}
+		for (int i = 0; i < 6; i++) {
+			MapNode location = i < 5 ? dimensionNodes.get(i) :
+				locations.get(NROF_LOCATIONS - 1);
+			space.addPoint(i, location);
+			oldPoints.add(new OldPoint(location));
+		}
+		for (int i = 0; i < NROF_MOVING; i++) {
+			MapScheduledRoute schedule = randomSchedule();
+			space.addPoint(oldPoints.size(), schedule);
+			oldPoints.add(new OldPoint(schedule));
+		}
+		space.setDimensions(dimensions, dimensionNodes);
+		space.setDistanceMetric(metric, k);
+
+		for (int step = 0; step < 60; step++) {
+			/* some steps stay at the same time */
+			clock.advance(rng.nextInt(3) == 0 ? 0 : 0.5 * rng.nextInt(8));
+			double time = clock.getTime();
+			for (int i = 0; i < oldPoints.size(); i++) {
+				for (int j = 0; j < oldPoints.size(); j++) {
+					OldPoint p1 = oldPoints.get(i);
+					OldPoint p2 = oldPoints.get(j);
+					p1.update(time);
+					p2.update(time);
+					double expected = oldDistance(metric, k, p1, p2,
+							dimensionNodes, time);
+					double actual = space.distance(i, j);
+					assertEquals(metric + " " + k + " " + i + "-" + j +
+							" at " + time,
+							Double.doubleToLongBits(expected),
+							Double.doubleToLongBits(actual));
+				}
+			}
+			for (int i = 0; i < oldPoints.size(); i++) {
+				for (int d = 0; d < dimensions.size(); d++) {
+					assertEquals(oldPoints.get(i).getTime(
+							dimensionNodes.get(d)),
+							space.getDeliveryTime(i, d));
+				}
+			}
+		}
+	}
+
+	public void testEuclideanDistance() {
+		assertSameAsOld("euclideanDistance", 2);
+	}
+
+	public void testLNormDistance() {
+		assertSameAsOld("LNormDistance", 1);
+		assertSameAsOld("LNormDistance", 2);
+		assertSameAsOld("LNormDistance", 3);
+	}
+
+	public void testProductDistance() {
+		assertSameAsOld("productDistance", 1);
+		assertSameAsOld("productDistance", 2);
+	}
+
+	public void testUnknownMetric() {
+		try {
+			DistanceMetric.forName("manhattanDistance", 1);
+			fail("Unknown metric should be a settings error");
+		} catch (SettingsError e) {
+			// expected
+		}
+	}
+
+	/* the old calculation */
+
+	private static double pow(double x, double y) {
+		if (y == 1) {
+			return x;
+		}
+		return Math.pow(x, y);
+	}
+
+	private static double oldDistance(String metric, double k, OldPoint p1,
+			OldPoint p2, List<MapNode> dimensions, double time) {
+		double sum = 0;
+		/* the old space used the euclidean distance also for L2-norm */
+		if (metric.equals("euclideanDistance") ||
+				(metric.equals("LNormDistance") && k == 2.0)) {
+			for (MapNode d : dimensions) {
+				double value1 = p1.getValue(d, time);
+				double value2 = p2.getValue(d, time);
+				sum += (value2 - value1) * (value2 - value1);
+			}
+			return Math.sqrt(sum);
+		} else if (metric.equals("LNormDistance")) {
+			for (MapNode d : dimensions) {
+				sum += pow(p2.getValue(d, time) - p1.getValue(d, time), k);
+			}
+			return pow(sum, 1 / k);
+		}
+
+		for (MapNode d : dimensions) {
+			sum += pow(p2.getValue(d, time) * p1.getValue(d, time), k);
+		}
+		return sum != 0 ? 1 / sum : Double.MAX_VALUE;
+	}
+
+	/**
+	 * A point of the old MobySpace
+	 */
+	private static class OldPoint {
+		private HashMap<MapNode, Double> visits;
+		private MapScheduledRoute route;
+		private MapNode node;
+		private int lastIndex;
+
+		public OldPoint(MapScheduledRoute route) {
+			this.route = route;
+			this.visits = new HashMap<MapNode, Double>();
+			List<MapScheduledNode> stops = route.getStops();
+			for (int i = stops.size() - 1; i >= 0; i--) {
+				visits.put(stops.get(i).getNode(), stops.get(i).getTime());
+			}
+		}
+
+		public OldPoint(MapNode node) {
+			this.node = node;
+		}
+
+		public double getValue(MapNode dimension, double time) {
+			if (route == null) {
+				return dimension == this.node ? 1 : 0;
+			}
+			double value = 1 / (visits.getOrDefault(dimension, 0.0) - time);
+			return value < 0 ? 0 : value;
+		}
+
+		public double getTime(MapNode dimension) {
+			return route == null ? Double.MAX_VALUE :
+				visits.getOrDefault(dimension, Double.MAX_VALUE);
+		}
+
+		public void update(double time) {
+			if (route == null) {
+				return;
+			}
+			List<MapScheduledNode> stops = route.getStops();
+			for (int i = lastIndex; i < stops.size(); i++) {
+				if (stops.get(i).getTime() >= time) {
+					return;
+				}
+				updatePoint(stops.get(i).getNode(), time);
+				lastIndex++;
+			}
+		}
+
+		private void updatePoint(MapNode passed, double time) {
+			List<MapScheduledNode> stops = route.getStops();
+			for (int i = lastIndex; i < stops.size(); i++) {
+				if (stops.get(i).getNode() == passed &&
+						stops.get(i).getTime() > time) {
+					visits.put(passed, stops.get(i).getTime());
+					return;
+				}
+			}
+			visits.remove(passed);
+		}
+	}
+}
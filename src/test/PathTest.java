@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import core.Coord;
+
+public class PathTest extends TestCase {
+
+	public void testWaypoints() {
+		Path p = new Path(2.0);
+		for (int i = 0; i < 20; i++) {
+			p.addWaypoint(i, -i);
+		}
+		p.addWaypoint(new Coord(100, 200));
+
+		List<Coord> coords = p.getCoords();
+		assertEquals(21, coords.size());
+		assertEquals(new Coord(5, -5), coords.get(5));
+		assertEquals(new Coord(100, 200), coords.get(20));
+
+		Coord c = new Coord(0, 0);
+		for (int i = 0; i < 20; i++) {
+			assertTrue(p.hasNext());
+			p.getNextWaypoint(c);
+			assertEquals(new Coord(i, -i), c);
+			assertEquals(2.0, p.getSpeed());
+		}
+		assertEquals(new Coord(100, 200), p.getNextWaypoint());
+		assertFalse(p.hasNext());
+	}
+
+	public void testSpeeds() {
+		Path p = new Path();
+		for (int i = 0; i < 10; i++) {
+			p.addWaypoint(new Coord(i, i), i + 1);
+		}
+		assertEquals(10, p.getSpeeds().size());
+		for (int i = 0; i < 10; i++) {
+			p.getNextWaypoint();
+			assertEquals((double)i + 1, p.getSpeed());
+		}
+
+		p.setSpeed(5);
+		assertEquals(1, p.getSpeeds().size());
+		assertEquals(5.0, p.getSpeed());
+	}
+
+	public void testCopy() {
+		Path p = new Path(1);
+		p.addWaypoint(1, 1);
+		p.addWaypoint(2, 2);
+		p.getNextWaypoint();
+
+		Path copy = new Path(p);
+		p.addWaypoint(3, 3);
+		assertEquals(2, copy.getCoords().size());
+		assertEquals(new Coord(2, 2), copy.getNextWaypoint());
+		assertFalse(copy.hasNext());
+	}
+
+	public void testRecycledPath() {
+		TestModel model = new TestModel();
+		Path p = model.newPath(1);
+		p.addWaypoint(1, 1);
+		p.getNextWaypoint();
+		model.recyclePath(p);
+
+		Path p2 = model.newPath(3);
+		assertSame(p, p2);
+		assertEquals(0, p2.getCoords().size());
+		assertFalse(p2.hasNext());
+		p2.addWaypoint(4, 4);
+		assertEquals(new Coord(4, 4), p2.getNextWaypoint());
+		assertEquals(3.0, p2.getSpeed());
+
+		assertNotSame(p2, model.newPath(1)); // recycled path is used once
+	}
+
+	private static class TestModel extends MovementModel {
+		@Override
+		public Path newPath(double speed) {
+			return super.newPath(speed);
+		}
+
+		@Override
+		public Path getPath() {
+			return null;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return null;
+		}
+
+		@Override
+		public MovementModel replicate() {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import core.Coord;
+import core.DTNHost;
+import core.PositionStore;
+import core.SimClock;
+
+public class PositionStoreTest extends TestCase {
+	private static final int NROF_HOSTS = 5;
+	private static final double TIME_STEP = 0.3;
+
+	private SimClock clock;
+	private TestUtils utils;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		this.clock = SimClock.getInstance();
+		this.utils = new TestUtils(null, null, new TestSettings());
+	}
+
+	/**
+	 * Tests that hosts move the same way with and without the store
+	 */
+	public void testSameLocations() {
+		List<DTNHost> plain = new ArrayList<DTNHost>();
+		List<DTNHost> stored = new ArrayList<DTNHost>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			plain.add(utils.createHost(new ZigZagMovement(i + 1), null));
+		}
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			stored.add(utils.createHost(new ZigZagMovement(i + 1), null));
+		}
+		PositionStore store = new PositionStore(stored);
+
+		for (int step = 0; step < 200; step++) {
+			for (DTNHost h : plain) {
+				h.move(TIME_STEP);
+			}
+			store.move(TIME_STEP);
+			clock.advance(TIME_STEP);
+
+			for (int i = 0; i < NROF_HOSTS; i++) {
+				Coord c = plain.get(i).getLocation();
+				assertEquals(c, stored.get(i).getLocation());
+				assertEquals(c.getX(), store.getX(i));
+				assertEquals(c.getY(), store.getY(i));
+			}
+		}
+		assertFalse(new Coord(0, 0).equals(stored.get(0).getLocation()));
+	}
+
+	public void testSetLocation() {
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		hosts.add(utils.createHost(new ZigZagMovement(1), null));
+		PositionStore store = new PositionStore(hosts);
+
+		hosts.get(0).setLocation(new Coord(3, 4));
+		assertEquals(3.0, store.getX(0));
+		assertEquals(4.0, store.getY(0));
+		assertEquals(new Coord(3, 4), hosts.get(0).getLocation());
+	}
+
+	/**
+	 * Movement model that moves along a zig-zag line with a constant speed
+	 * and waits one second after every path.
+	 */
+	private static class ZigZagMovement extends MovementModel {
+		private double speed;
+		private Coord last = new Coord(0, 0);
+
+		public ZigZagMovement(double speed) {
+			this.speed = speed;
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = new Path(speed);
+			p.addWaypoint(last);
+			for (int i = 0; i < 3; i++) {
+				last = new Coord(last.getX() + 2.5, i % 2 == 0 ? 1.5 : 0);
+				p.addWaypoint(last);
+			}
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return SimClock.getTime() + 1;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return last.clone();
+		}
+
+		@Override
+		public MovementModel replicate() {
+			return new ZigZagMovement(speed);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.PredictabilityTable;
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Tests for the lazy aging of PredictabilityTable against the eager aging
+ * the PRoPHET routers did before the table (a map of predictabilities that
+ * was aged on every access).
+ */
+public class PredictabilityTableTest extends TestCase {
+	private static final int NROF_HOSTS = 8;
+	private static final double GAMMA = 0.98;
+	private static final double SECONDS_IN_TIME_UNIT = 30;
+	private static final double P_INIT = 0.75;
+
+	private SimClock clock;
+	private List<DTNHost> hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		TestUtils tu = new TestUtils(null, null, new TestSettings());
+		hosts = new ArrayList<DTNHost>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			hosts.add(tu.createHost());
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		SimClock.reset();
+		super.tearDown();
+	}
+
+	private void assertSameValue(String msg, double expected, double actual) {
+		assertEquals(msg, Double.doubleToLongBits(expected),
+				Double.doubleToLongBits(actual));
+	}
+
+	/**
+	 * Asserts that all the entries of the table equal to the old map
+	 */
+	private void assertSameEntries(OldPreds old, PredictabilityTable table) {
+		Map<DTNHost, Double> oldValues = old.getAll();
+		table.age();
+		assertEquals(oldValues.size(), table.size());
+		for (int i = 0; i < table.size(); i++) {
+			DTNHost host = table.getHost(i);
+			assertTrue(oldValues.containsKey(host));
+			assertSameValue(host + " at " + clock.getTime(),
+					oldValues.get(host), table.getValue(i));
+		}
+	}
+
+	public void testEmptyTable() {
+		PredictabilityTable table = new PredictabilityTable(GAMMA,
+				SECONDS_IN_TIME_UNIT);
+		clock.advance(100);
+		assertEquals(0.0, table.get(hosts.get(0)));
+		assertEquals(0, table.size());
+	}
+
+	public void testAgingOverSeveralUnits() {
+		PredictabilityTable table = new PredictabilityTable(GAMMA,
+				SECONDS_IN_TIME_UNIT);
+		DTNHost host = hosts.get(3);
+		table.put(host, P_INIT);
+
+		clock.advance(SECONDS_IN_TIME_UNIT * 3);
+		double expected = P_INIT * Math.pow(GAMMA, 3);
+		assertSameValue("3 units", expected, table.get(host));
+		/* reading again at the same time doesn't age again */
+		assertSameValue("3 units", expected, table.get(host));
+
+		clock.advance(SECONDS_IN_TIME_UNIT / 4);
+		expected = expected * Math.pow(GAMMA, 1.0 / 4);
+		assertSameValue("3.25 units", expected, table.get(host));
+
+		/* advances between the reads are aged at once */
+		clock.advance(SECONDS_IN_TIME_UNIT);
+		clock.advance(SECONDS_IN_TIME_UNIT * 2.5);
+		expected = expected * Math.pow(GAMMA, 3.5);
+		assertSameValue("6.75 units", expected, table.get(host));
+		assertEquals(0.0, table.get(hosts.get(4)));
+	}
+
+	/**
+	 * Runs random encounters, reads and clock advances (also fractional time
+	 * units and no advance at all) and compares every value to the old eager
+	 * aging
+	 */
+	public void testAgainstEagerAging() {
+		Random rng = new Random(31);
+		PredictabilityTable table = new PredictabilityTable(GAMMA,
+				SECONDS_IN_TIME_UNIT);
+		OldPreds old = new OldPreds(GAMMA, SECONDS_IN_TIME_UNIT);
+
+		for (int step = 0; step < 500; step++) {
+			switch (rng.nextInt(4)) {
+			case 0:
+				break; // reads at the same time
+			case 1:
+				clock.advance(rng.nextInt(4) * SECONDS_IN_TIME_UNIT);
+				break;
+			default:
+				clock.advance(rng.nextDouble() * SECONDS_IN_TIME_UNIT * 2);
+			}
+
+			DTNHost host = hosts.get(rng.nextInt(NROF_HOSTS));
+			if (rng.nextBoolean()) {
+				/* an encounter, as in ProphetRouter */
+				double oldValue = old.get(host);
+				double value = table.get(host);
+				assertSameValue(host + " at " + clock.getTime(),
+						oldValue, value);
+				old.put(host, oldValue + (1 - oldValue) * P_INIT);
+				table.put(host, value + (1 - value) * P_INIT);
+			} else {
+				assertSameValue(host + " at " + clock.getTime(),
+						old.get(host), table.get(host));
+			}
+
+			if (step % 10 == 0) {
+				assertSameEntries(old, table);
+			}
+		}
+		assertSameEntries(old, table);
+	}
+
+	/**
+	 * The predictabilities of the old PRoPHET routers
+	 */
+	private static class OldPreds {
+		private Map<DTNHost, Double> preds;
+		private double gamma;
+		private double secondsInTimeUnit;
+		private double lastAgeUpdate;
+
+		public OldPreds(double gamma, double secondsInTimeUnit) {
+			this.preds = new HashMap<DTNHost, Double>();
+			this.gamma = gamma;
+			this.secondsInTimeUnit = secondsInTimeUnit;
+		}
+
+		public double get(DTNHost host) {
+			age();
+			if (preds.containsKey(host)) {
+				return preds.get(host);
+			}
+			return 0;
+		}
+
+		public void put(DTNHost host, double value) {
+			preds.put(host, value);
+		}
+
+		public Map<DTNHost, Double> getAll() {
+			age();
+			return preds;
+		}
+
+		private void age() {
+			double timeDiff = (SimClock.getTime() - lastAgeUpdate) /
+				secondsInTimeUnit;
+			if (timeDiff == 0) {
+				return;
+			}
+
+			double mult = Math.pow(gamma, timeDiff);
+			for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
+				e.setValue(e.getValue() * mult);
+			}
+			lastAgeUpdate = SimClock.getTime();
+		}
+	}
+}
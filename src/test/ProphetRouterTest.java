@@ -151,4 +151,40 @@ public class ProphetRouterTest extends AbstractRouterTest {
 		assertEquals(newPred, r5.getPredFor(h4));
 	}
 
+	/**
+	 * Tests direct and transitive predictabilities aged over several
+	 * (also fractional) time units between the encounters
+	 */
+	public void testAgingOverSeveralIntervals() {
+		ProphetRouter r1 = (ProphetRouter)h1.getRouter();
+		ProphetRouter r2 = (ProphetRouter)h2.getRouter();
+		ProphetRouter r3 = (ProphetRouter)h3.getRouter();
+		double gamma = ProphetRouter.DEFAULT_GAMMA;
+
+		h1.connect(h2);
+		disconnect(h2);
+
+		clock.advance(SECONDS_IN_TIME_UNIT * 2.5);
+		h2.connect(h3);
+		disconnect(h3);
+		double p21 = ProphetRouter.P_INIT * Math.pow(gamma, 2.5);
+		double p31 = 0 + (1 - 0) * ProphetRouter.P_INIT * p21 *
+			ProphetRouter.DEFAULT_BETA;
+		assertEquals(p21, r1.getPredFor(h2));
+		assertEquals(p21, r2.getPredFor(h1));
+		assertEquals(p31, r3.getPredFor(h1));
+		assertEquals(0.0, r1.getPredFor(h3));
+
+		clock.advance(SECONDS_IN_TIME_UNIT);
+		clock.advance(SECONDS_IN_TIME_UNIT / 2);
+		assertEquals(p21 * Math.pow(gamma, 1.5), r1.getPredFor(h2));
+		assertEquals(p21 * Math.pow(gamma, 1.5), r2.getPredFor(h1));
+		assertEquals(p31 * Math.pow(gamma, 1.5), r3.getPredFor(h1));
+		assertEquals(p31 * Math.pow(gamma, 1.5), r3.getPredFor(h1));
+
+		clock.advance(SECONDS_IN_TIME_UNIT * 3);
+		assertEquals(p31 * Math.pow(gamma, 1.5) * Math.pow(gamma, 3),
+				r3.getPredFor(h1));
+	}
+
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.contactgraph.RouteTable;
+import util.Tuple;
+
+/**
+ * Tests for the route lookups of RouteTable
+ */
+public class RouteTableTest extends TestCase {
+	private List<LinkedList<Tuple<Double, Integer>>> routes;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		routes = new ArrayList<LinkedList<Tuple<Double, Integer>>>();
+	}
+
+	/**
+	 * Adds a route to the routes the table is created from
+	 * @param hops Times and addresses of the hops after each other
+	 */
+	private void addRoute(double... hops) {
+		LinkedList<Tuple<Double, Integer>> route =
+			new LinkedList<Tuple<Double, Integer>>();
+		for (int i = 0; i < hops.length; i += 2) {
+			route.add(new Tuple<Double, Integer>(hops[i], (int)hops[i + 1]));
+		}
+		routes.add(route);
+	}
+
+	/**
+	 * Returns the nearest route the way it was searched before route tables:
+	 * the first route in departure order that departs at or after the time
+	 */
+	private LinkedList<Tuple<Double, Integer>> findLinear(
+			List<LinkedList<Tuple<Double, Integer>>> sorted, double time) {
+		for (LinkedList<Tuple<Double, Integer>> route : sorted) {
+			if (route.get(0).getKey() >= time) {
+				return route;
+			}
+		}
+		return null;
+	}
+
+	public void testNoRoutes() {
+		RouteTable table = RouteTable.fromRoutes(routes);
+		assertEquals(0, table.size());
+		assertEquals(-1, table.indexOfNearest(0));
+		table.removeObsoleteRoutes(10);
+		assertEquals(-1, table.indexOfNearest(0));
+	}
+
+	public void testAllRoutesDeparted() {
+		addRoute(5, 1, 8, 2);
+		addRoute(1, 3);
+		RouteTable table = RouteTable.fromRoutes(routes);
+
+		assertEquals(-1, table.indexOfNearest(5.5));
+		assertEquals(-1, table.indexOfNearest(100));
+		/* a route that departs at the time is not departed */
+		assertEquals(1, table.indexOfNearest(5));
+
+		table.removeObsoleteRoutes(6);
+		assertEquals(-1, table.indexOfNearest(0));
+		assertEquals(2, table.size());
+	}
+
+	public void testOrderAndBoundaries() {
+		addRoute(30, 3);
+		addRoute(10, 1, 20, 2);
+		addRoute(20, 2);
+		RouteTable table = RouteTable.fromRoutes(routes);
+
+		assertEquals(0, table.indexOfNearest(Double.NEGATIVE_INFINITY));
+		assertEquals(0, table.indexOfNearest(10));
+		assertEquals(2, table.getNrofHops(0));
+		assertEquals(20.0, table.getHopTime(0, 1));
+		assertEquals(2, table.getHopAddress(0, 1));
+		assertEquals(1, table.indexOfNearest(10.5));
+		assertEquals(2, table.indexOfNearest(30));
+		assertEquals(30.0, table.getDeparture(2));
+		assertEquals(-1, table.indexOfNearest(30.5));
+
+		/* departed routes stay skipped also for earlier times */
+		table.removeObsoleteRoutes(15);
+		assertEquals(1, table.indexOfNearest(0));
+		table.removeObsoleteRoutes(0);
+		assertEquals(1, table.indexOfNearest(0));
+	}
+
+	public void testTiesOnDeparture() {
+		addRoute(10, 4);
+		addRoute(5, 1);
+		addRoute(10, 1, 12, 4);
+		addRoute(10, 2, 15, 4);
+		RouteTable table = RouteTable.fromRoutes(routes);
+
+		/* routes with the same departure keep their order */
+		assertEquals("[10.0:4]", table.getRoute(1).toString());
+		assertEquals("[10.0:1, 12.0:4]", table.getRoute(2).toString());
+		assertEquals("[10.0:2, 15.0:4]", table.getRoute(3).toString());
+		assertEquals(1, table.indexOfNearest(6));
+		assertEquals(1, table.indexOfNearest(10));
+
+		table.removeObsoleteRoutes(10);
+		assertEquals(1, table.indexOfNearest(0));
+		table.removeObsoleteRoutes(10.5);
+		assertEquals(-1, table.indexOfNearest(0));
+	}
+
+	/**
+	 * Compares the lookups to a linear search over routes with many equal
+	 * departures
+	 */
+	public void testAgainstLinearSearch() {
+		Random rng = new Random(36);
+		for (int i = 0; i < 200; i++) {
+			addRoute(rng.nextInt(50), i, 60, 0);
+		}
+		RouteTable table = RouteTable.fromRoutes(routes);
+		List<LinkedList<Tuple<Double, Integer>>> sorted =
+			new ArrayList<LinkedList<Tuple<Double, Integer>>>();
+		for (double time = 0; time < 50; time++) {
+			for (LinkedList<Tuple<Double, Integer>> route : routes) {
+				if (route.get(0).getKey() == time) {
+					sorted.add(route);
+				}
+			}
+		}
+
+		for (double time = -1; time <= 51; time += 0.5) {
+			int index = table.indexOfNearest(time);
+			LinkedList<Tuple<Double, Integer>> expected =
+				findLinear(sorted, time);
+			assertEquals("at " + time, String.valueOf(expected),
+					index < 0 ? "null" : table.getRoute(index).toString());
+		}
+	}
+}
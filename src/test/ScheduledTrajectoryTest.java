@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.DijkstraPathFinder;
+import movement.map.MapNode;
+import movement.map.MapScheduledNode;
+import movement.map.MapScheduledRoute;
+import movement.map.ScheduledTrajectory;
+import core.Coord;
+
+public class ScheduledTrajectoryTest extends TestCase {
+	private final MapNode n1 = newNode(0,0);
+	private final MapNode n2 = newNode(10,0);
+	private final MapNode n3 = newNode(10,10);
+	private final MapNode n4 = newNode(20,10);
+
+	private ScheduledTrajectory trajectory;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		/* n1 -10- n2 -10- n3 -10- n4 */
+		link(n1, n2);
+		link(n2, n3);
+		link(n3, n4);
+
+		List<MapScheduledNode> stops = new ArrayList<MapScheduledNode>();
+		stops.add(new MapScheduledNode(0, n1));
+		stops.add(new MapScheduledNode(30, n3));
+		stops.add(new MapScheduledNode(40, n3)); // wait at n3
+		stops.add(new MapScheduledNode(50, n4));
+		trajectory = new ScheduledTrajectory(new MapScheduledRoute(stops),
+				new DijkstraPathFinder(null));
+	}
+
+	private void link(MapNode a, MapNode b) {
+		a.addNeighbor(b);
+		b.addNeighbor(a);
+	}
+
+	private MapNode newNode(double x, double y) {
+		return new MapNode(new Coord(x,y));
+	}
+
+	public void testLegs() {
+		ScheduledTrajectory.Leg leg = trajectory.getLeg(0, 1);
+		assertEquals(3, leg.getNrofWaypoints());
+		assertEquals(20.0, leg.getLength());
+		assertSame(n2.getLocation(), leg.getWaypoint(1));
+
+		leg = trajectory.getLeg(0, 3);
+		assertEquals(4, leg.getNrofWaypoints());
+		assertEquals(30.0, leg.getLength());
+		assertSame(leg, trajectory.getLeg(0, 3));
+	}
+
+	public void testLocations() {
+		double[] times = trajectory.getTimes();
+		assertEquals(new Coord(0,0), trajectory.getLocation(times, -5));
+		assertEquals(new Coord(0,0), trajectory.getLocation(times, 0));
+		assertEquals(new Coord(7.5,0), trajectory.getLocation(times, 11.25));
+		assertEquals(new Coord(10,5), trajectory.getLocation(times, 22.5));
+		assertEquals(new Coord(10,10), trajectory.getLocation(times, 35));
+		assertEquals(new Coord(15,10), trajectory.getLocation(times, 45));
+		assertEquals(new Coord(20,10), trajectory.getLocation(times, 60));
+	}
+
+	public void testDelayedLocations() {
+		/* the second stop has the same time as the first one so it is
+		 * skipped and the host goes directly to the third stop */
+		double[] times = {10, 10, 40, 50};
+		assertEquals(new Coord(10,0), trajectory.getLocation(times, 25));
+		assertEquals(new Coord(10,10), trajectory.getLocation(times, 40));
+	}
+}
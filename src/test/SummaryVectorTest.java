@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.util.SummaryVector;
+
+/**
+ * Tests for the counting Bloom filter summary vector
+ */
+public class SummaryVectorTest extends TestCase {
+	private static final int CAPACITY = 1000;
+	private SummaryVector sv;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings("SvTest");
+		ts.putSetting(SummaryVector.SV_CAPACITY_S, "" + CAPACITY);
+		ts.putSetting(SummaryVector.SV_FP_RATE_S, "0.01");
+		sv = new SummaryVector(ts).replicate();
+	}
+
+	public void testNoFalseNegatives() {
+		for (int i = 0; i < CAPACITY; i++) {
+			sv.add(i * 7);
+		}
+		for (int i = 0; i < CAPACITY; i++) {
+			assertTrue(sv.mightContain(i * 7));
+		}
+		assertTrue(sv.isExact());
+	}
+
+	public void testFalsePositiveRate() {
+		for (int i = 0; i < CAPACITY; i++) {
+			sv.add(i);
+		}
+		int fps = 0;
+		for (int i = CAPACITY; i < CAPACITY * 11; i++) {
+			if (sv.mightContain(i)) {
+				fps++;
+			}
+		}
+		/* target is 1%; allow some slack */
+		assertTrue("False positives: " + fps, fps < CAPACITY * 10 * 0.03);
+	}
+
+	public void testRemove() {
+		sv.add(1);
+		sv.add(2);
+		sv.remove(1);
+		assertTrue(sv.mightContain(2));
+		sv.remove(2);
+		assertFalse(sv.mightContain(1));
+		assertFalse(sv.mightContain(2));
+	}
+}
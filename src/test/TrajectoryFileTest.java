@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.TrajectoryFile;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+public class TrajectoryFileTest extends TestCase {
+	private File file;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("trajectories", ".bin");
+		file.deleteOnExit();
+
+		TrajectoryFile.Writer w = new TrajectoryFile.Writer(file);
+		w.initialLocation(0, 1, 2);
+		w.initialLocation(1, 3, 4);
+		w.activeness(1, -10, true);
+		w.activeness(1, 5, false);
+		w.nextTime(0, -10, 0);
+		w.path(0, 0, new double[] {1, 5, 5}, new double[] {2, 2, 8}, 3,
+				new double[] {1.5}, 1);
+		w.nextTime(0, 10, 12);
+		w.noPath(0, 12);
+		w.nextTime(1, -10, -10);
+		w.path(1, -10, new double[] {3, 4}, new double[] {4, 4}, 2,
+				new double[] {1, 2}, 2);
+		w.close();
+	}
+
+	public void testHosts() {
+		TrajectoryFile tf = new TrajectoryFile(file);
+		assertEquals(2, tf.getNrofHosts());
+
+		TrajectoryFile.HostTrajectory h0 = tf.getHost(0);
+		assertEquals(1.0, h0.getInitialX());
+		assertEquals(2.0, h0.getInitialY());
+		assertEquals(4, h0.getNrofEvents());
+		assertTrue(h0.isActive(0, true));
+
+		TrajectoryFile.HostTrajectory h1 = tf.getHost(1);
+		assertEquals(3.0, h1.getInitialX());
+		assertEquals(2, h1.getNrofEvents());
+		assertTrue(h1.isActive(0, false));
+		assertFalse(h1.isActive(5, true));
+		assertFalse(h1.isActive(-11, false));
+	}
+
+	public void testEvents() {
+		TrajectoryFile.Cursor c = new TrajectoryFile(file).getHost(0).cursor();
+		assertEquals(TrajectoryFile.NEXT_TIME, c.next());
+		assertEquals(0.0, c.getTime());
+		assertEquals(TrajectoryFile.PATH, c.next());
+		assertEquals(3, c.getNrofWaypoints());
+		assertEquals(5.0, c.getX(2));
+		assertEquals(8.0, c.getY(2));
+		assertEquals(1, c.getNrofSpeeds());
+		assertEquals(1.5, c.getSpeeds()[0]);
+		assertEquals(TrajectoryFile.NEXT_TIME, c.next());
+		assertEquals(12.0, c.getTime());
+		assertEquals(TrajectoryFile.NO_PATH, c.next());
+		assertFalse(c.hasNext());
+	}
+
+	public void testSeek() {
+		TrajectoryFile.HostTrajectory h = new TrajectoryFile(file).getHost(0);
+		assertEquals(0, h.getEventIndex(-11));
+		assertEquals(2, h.getEventIndex(5));
+		assertEquals(4, h.getEventIndex(12));
+
+		TrajectoryFile.Cursor c = h.cursor();
+		c.seek(h.getEventIndex(5));
+		assertEquals(TrajectoryFile.NEXT_TIME, c.next());
+		assertEquals(12.0, c.getTime());
+	}
+
+	public void testTruncated() throws Exception {
+		/* a run that was aborted in the middle of the last path */
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 8);
+		}
+		TrajectoryFile tf = new TrajectoryFile(file);
+		assertEquals(4, tf.getHost(0).getNrofEvents());
+		assertEquals(1, tf.getHost(1).getNrofEvents());
+
+		TrajectoryFile.Cursor c = tf.getHost(1).cursor();
+		assertEquals(TrajectoryFile.NEXT_TIME, c.next());
+		assertEquals(-10.0, c.getTime());
+		assertFalse(c.hasNext());
+	}
+}
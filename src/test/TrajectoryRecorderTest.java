@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.TrajectoryFile;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import movement.MapBasedMovement;
+import movement.MovementModel;
+import movement.StationaryListMovement;
+import movement.TrajectoryRecorder;
+import routing.GraphRouter;
+import routing.contactgraph.ScheduleGraph;
+import core.DTNHost;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.MovementListener;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+
+/**
+ * Tests recording the movement of hosts whose routers depend on the type
+ * of the hosts' movement models.
+ */
+public class TrajectoryRecorderTest extends TestCase {
+	private static final String MAP =
+		"LINESTRING (100 600, 100 700, 200 700, 200 600, 100 600)\n";
+	private static final String STATIONS = "POINT (100 600)\nPOINT (200 700)\n";
+	private static final String GROUP_NS = "Group";
+
+	private File trajectoryFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		trajectoryFile = File.createTempFile("trajectories", ".bin");
+		trajectoryFile.deleteOnExit();
+
+		String mapNs = MapBasedMovement.MAP_BASE_MOVEMENT_NS + ".";
+		String graphNs = GraphRouter.CONTACT_GRAPH_NS + ".";
+		File settingsFile = File.createTempFile("settingsFile", ".tmp");
+		settingsFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(settingsFile);
+		pw.println(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE + " = 1000,1000");
+		pw.println(mapNs + MapBasedMovement.NROF_FILES_S + " = 1");
+		pw.println(mapNs + MapBasedMovement.FILE_S + "1 = " +
+				writeToNewFile(MAP));
+		pw.println(GROUP_NS + "." + StationaryListMovement.LOCATION_FILE_S +
+				" = " + writeToNewFile(STATIONS));
+		pw.println(graphNs + GraphRouter.CONTACT_GRAPH_TYPE +
+				" = ScheduleGraph");
+		pw.println(graphNs + ScheduleGraph.CONTACT_GRAPH_SCHEDULE +
+				" = schedule.txt");
+		pw.println(graphNs + ScheduleGraph.CONTACT_GRAPH_START + " = 0");
+		pw.close();
+		Settings.init(settingsFile.getAbsolutePath());
+	}
+
+	private String writeToNewFile(String contents) throws Exception {
+		File f = File.createTempFile("trajectoryRecorderTest", ".wkt");
+		f.deleteOnExit();
+		PrintWriter out = new PrintWriter(f);
+		out.print(contents);
+		out.close();
+		// need to change path separators for settings file
+		return f.getAbsolutePath().replace('\\', '/');
+	}
+
+	public void testRecordingWithGraphRouter() throws Exception {
+		Settings s = new Settings(GROUP_NS);
+		MovementModel mmProto = new StationaryListMovement(s);
+		GraphRouter routerProto = new GraphRouter(s);
+		TrajectoryFile.Writer writer =
+			new TrajectoryFile.Writer(trajectoryFile);
+		TrajectoryRecorder recorderProto = new TrajectoryRecorder(writer);
+
+		/* GraphRouter requires a stationary or scheduled movement model */
+		DTNHost[] hosts = new DTNHost[2];
+		for (int i = 0; i < hosts.length; i++) {
+			hosts[i] = new DTNHost(new ArrayList<MessageListener>(),
+					new ArrayList<MovementListener>(), "s",
+					new ArrayList<NetworkInterface>(),
+					new ModuleCommunicationBus(), mmProto, routerProto,
+					recorderProto, s);
+			assertTrue(hosts[i].getMovement() instanceof
+					StationaryListMovement);
+		}
+		for (int i = 0; i < 10; i++) {
+			SimClock.getInstance().advance(1);
+			for (DTNHost h : hosts) {
+				h.move(1);
+			}
+		}
+		writer.close();
+
+		TrajectoryFile tf = new TrajectoryFile(trajectoryFile);
+		assertEquals(hosts.length, tf.getNrofHosts());
+		for (DTNHost h : hosts) {
+			TrajectoryFile.HostTrajectory t = tf.getHost(h.getAddress());
+			assertEquals(h.getLocation().getX(), t.getInitialX());
+			assertEquals(h.getLocation().getY(), t.getInitialY());
+			assertTrue(t.getNrofEvents() > 0);
+			assertTrue(t.isActive(10, false));
+		}
+	}
+}
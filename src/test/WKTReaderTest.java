@@ -5,6 +5,7 @@
 package test;
 
 import input.WKTMapReader;
+import input.WKTReader;
 
 import java.io.File;
 import java.io.FileReader;
@@ -13,7 +14,9 @@ import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import junit.framework.TestCase;
 import movement.map.MapNode;
@@ -123,6 +126,107 @@ public class WKTReaderTest extends TestCase {
 		topologyTest(reader.getNodesHash());
 	}
 
+	public void testFromMappedFile() throws IOException {
+		File wktFile = File.createTempFile("WKTReaderTest","tmp");
+		wktFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(wktFile);
+		pw.println(TST_TOPOLOGY);
+		pw.println("MULTILINESTRING ((3.0 3.0, 5.0 3.0),\n(3.0 3.0, 3.0 5.0))");
+		pw.close();
+
+		reader = new WKTMapReader(true);
+		reader.addPaths(wktFile, 1);
+		WKTMapReader fromReader = setUpWith(new FileReader(wktFile));
+
+		assertEquals(NROF_TST_NODES + 2, reader.getMap().getNodes().size());
+		assertSameNodes(fromReader.getMap(), reader.getMap());
+	}
+
+	/**
+	 * Asserts that maps have the same nodes, in the same order, with the
+	 * same neighbors in the same order
+	 */
+	private void assertSameNodes(SimMap expectedMap, SimMap map) {
+		List<MapNode> expected = expectedMap.getNodes();
+		List<MapNode> nodes = map.getNodes();
+		assertEquals(expected.size(), nodes.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			assertEquals(expected.get(i).getLocation(),
+					nodes.get(i).getLocation());
+			List<MapNode> expectedNeighbors = expected.get(i).getNeighbors();
+			List<MapNode> neighbors = nodes.get(i).getNeighbors();
+			assertEquals(expectedNeighbors.size(), neighbors.size());
+			for (int j = 0; j < neighbors.size(); j++) {
+				assertEquals(expectedNeighbors.get(j).getLocation(),
+						neighbors.get(j).getLocation());
+			}
+		}
+	}
+
+	public void testFromBigMappedFile() throws IOException {
+		/* random line strings on a grid, so the lines share nodes */
+		Random rng = new Random(1);
+		File wktFile = File.createTempFile("WKTReaderTest","tmp");
+		wktFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(wktFile);
+		for (int i = 0; i < 2000; i++) {
+			pw.print(i % 100 == 0 ? "MULTILINESTRING ((" : "LINESTRING (");
+			for (int j = 0, n = 2 + rng.nextInt(100); j < n; j++) {
+				pw.print((j > 0 ? ", " : "") + rng.nextInt(300) / 2.0 + " " +
+						rng.nextInt(300) / 4.0);
+			}
+			pw.println(i % 100 == 0 ? "), (1.0 1.0, 2.0 2.0))" : ")");
+		}
+		pw.close();
+		// big enough to be parsed in parallel
+		assertTrue(wktFile.length() > 1 << 20);
+
+		reader = new WKTMapReader(true);
+		reader.addPaths(wktFile, 1);
+		WKTMapReader fromReader = setUpWith(new FileReader(wktFile));
+
+		assertSameNodes(fromReader.getMap(), reader.getMap());
+	}
+
+	public void testNumberFormats() throws IOException {
+		String[] values = {"1", "-2.5", "+3.25", "1e3", "2.5E-3", "-0.0",
+				"0.1", "6673384.4020657055", "12345678901234567890.5",
+				"1.7976931348623157E308", "4.9e-324", ".5", "5."};
+		File wktFile = File.createTempFile("WKTReaderTest","tmp");
+		wktFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(wktFile);
+		pw.print("LINESTRING (");
+		for (int i = 0; i < values.length; i++) {
+			pw.print((i > 0 ? ", " : "") + values[i] + " " + values[i]);
+		}
+		pw.println(")");
+		pw.close();
+
+		List<List<Coord>> lines = new WKTReader().readLines(wktFile);
+		assertEquals(1, lines.size());
+		assertEquals(values.length, lines.get(0).size());
+		for (int i = 0; i < values.length; i++) {
+			double expected = Double.parseDouble(values[i]);
+			assertEquals(Double.doubleToLongBits(expected),
+					Double.doubleToLongBits(lines.get(0).get(i).getX()));
+		}
+	}
+
+	public void testBadCoordinates() throws IOException {
+		File wktFile = File.createTempFile("WKTReaderTest","tmp");
+		wktFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(wktFile);
+		pw.println("LINESTRING (1.0 1.0, 2.0 x)");
+		pw.close();
+
+		try {
+			new WKTMapReader(true).addPaths(wktFile, 1);
+			fail("Bad coordinate value was accepted");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
 	public void testMultiLineString() {
 		String multiline = "MULTILINESTRING ((1.0 1.0, 2.0 1.0, 3.0 1.0),"+
 			"(1.0 1.0, 1.0 2.0))";
@@ -132,6 +132,7 @@ public abstract class DTNSimUI {
 		for (Report r : this.reports) {
 			r.done();
 		}
+		this.scen.done();
 	}
 
 	/**
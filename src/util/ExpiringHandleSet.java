@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+/**
+ * A {@link HandleSet} whose handles are forgotten after a given time.
+ * Handles are expired in the order they were added, so expiring takes
+ * constant time per forgotten handle.
+ */
+public class ExpiringHandleSet {
+	/** The handles that are still remembered */
+	private HandleSet set;
+	/** How long (seconds) handles are remembered; zero or less: forever */
+	private double lifetime;
+	/** Ring buffer of the added handles (in insertion order) */
+	private int[] queueHandles;
+	/** Ring buffer of the insertion times */
+	private double[] queueTimes;
+	/** Index of the oldest entry in the ring buffer */
+	private int head;
+	/** Number of entries in the ring buffer */
+	private int count;
+
+	/**
+	 * Creates a new set.
+	 * @param lifetime How long (seconds) handles are remembered. If the value
+	 * is zero or less, handles are never forgotten.
+	 */
+	public ExpiringHandleSet(double lifetime) {
+		this.set = new HandleSet();
+		this.lifetime = lifetime;
+		if (lifetime > 0) {
+			this.queueHandles = new int[4];
+			this.queueTimes = new double[4];
+		}
+	}
+
+	/**
+	 * Adds a handle to the set
+	 * @param handle The handle
+	 * @param time Current (simulation) time
+	 */
+	public void add(int handle, double time) {
+		expire(time);
+		if (!this.set.add(handle) || this.lifetime <= 0) {
+			return;
+		}
+
+		if (this.count == this.queueHandles.length) {
+			int[] handles = new int[this.count * 2];
+			double[] times = new double[this.count * 2];
+			for (int i = 0; i < this.count; i++) {
+				int j = (this.head + i) % this.count;
+				handles[i] = this.queueHandles[j];
+				times[i] = this.queueTimes[j];
+			}
+			this.queueHandles = handles;
+			this.queueTimes = times;
+			this.head = 0;
+		}
+
+		int tail = (this.head + this.count) % this.queueHandles.length;
+		this.queueHandles[tail] = handle;
+		this.queueTimes[tail] = time;
+		this.count++;
+	}
+
+	/**
+	 * Returns true if the handle is (still) in the set
+	 * @param handle The handle
+	 * @param time Current (simulation) time
+	 * @return true if the handle was added less than lifetime seconds ago
+	 */
+	public boolean contains(int handle, double time) {
+		expire(time);
+		return this.set.contains(handle);
+	}
+
+	/**
+	 * Returns the number of handles in the set
+	 * @return the number of handles in the set
+	 */
+	public int size() {
+		return this.set.size();
+	}
+
+	/**
+	 * Forgets the handles that are too old
+	 * @param time Current (simulation) time
+	 */
+	private void expire(double time) {
+		if (this.lifetime <= 0) {
+			return;
+		}
+		while (this.count > 0 &&
+				this.queueTimes[this.head] + this.lifetime <= time) {
+			this.set.remove(this.queueHandles[this.head]);
+			this.head = (this.head + 1) % this.queueHandles.length;
+			this.count--;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.util.Arrays;
+
+/**
+ * <P>Compact set of non-negative integer handles (e.g. message handles, see
+ * {@link core.Message#getHandle()}). The handle space is split into chunks of
+ * 2<SUP>16</SUP> values; sparse chunks are stored as sorted arrays of the low
+ * 16 bits and dense chunks as bitmaps (similar to "roaring" bitmaps). A chunk
+ * never takes more than 8 kB and a set of a few handles only some bytes, so
+ * sets that are kept per host (or per link) stay small even when there are
+ * hundreds of thousands of messages.</P>
+ * <P>Because the handles are dense and global, sets of different hosts can
+ * be combined with {@link #addAll(HandleSet)}.</P>
+ */
+public class HandleSet {
+	/** Number of bits in the low part of the handle */
+	private static final int CHUNK_BITS = 16;
+	/** Mask for the low part of the handle */
+	private static final int LOW_MASK = (1 << CHUNK_BITS) - 1;
+	/** Maximum cardinality of an array chunk; bigger chunks are bitmaps */
+	private static final int ARRAY_MAX = 4096;
+	/** Number of longs in a bitmap chunk */
+	private static final int BITMAP_LONGS = (1 << CHUNK_BITS) / 64;
+
+	/** Sorted low parts of sparse chunks (null for bitmap or empty chunks) */
+	private char[][] arrays;
+	/** Bitmaps of dense chunks (null for array or empty chunks) */
+	private long[][] bitmaps;
+	/** Cardinalities of the chunks */
+	private int[] cards;
+	/** Total number of handles in the set */
+	private int size;
+
+	/**
+	 * Creates a new empty set
+	 */
+	public HandleSet() {
+		this.arrays = new char[0][];
+		this.bitmaps = new long[0][];
+		this.cards = new int[0];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a handle to the set
+	 * @param handle The handle to add (must be non-negative)
+	 * @return true if the set didn't contain the handle before
+	 */
+	public boolean add(int handle) {
+		assert handle >= 0 : "Invalid handle " + handle;
+		int c = handle >>> CHUNK_BITS;
+		char low = (char)(handle & LOW_MASK);
+		ensureChunks(c + 1);
+
+		if (this.bitmaps[c] != null) {
+			long[] bm = this.bitmaps[c];
+			long bit = 1L << low;
+			if ((bm[low >>> 6] & bit) != 0) {
+				return false;
+			}
+			bm[low >>> 6] |= bit;
+		} else {
+			char[] arr = this.arrays[c];
+			int card = this.cards[c];
+			if (arr == null) {
+				arr = new char[4];
+				this.arrays[c] = arr;
+			}
+			int i = Arrays.binarySearch(arr, 0, card, low);
+			if (i >= 0) {
+				return false;
+			}
+			if (card == ARRAY_MAX) {
+				toBitmap(c);
+				return add(handle);
+			}
+			i = -(i + 1);
+			if (card == arr.length) {
+				arr = Arrays.copyOf(arr, Math.min(ARRAY_MAX, card * 2));
+				this.arrays[c] = arr;
+			}
+			System.arraycopy(arr, i, arr, i + 1, card - i);
+			arr[i] = low;
+		}
+
+		this.cards[c]++;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Removes a handle from the set
+	 * @param handle The handle to remove
+	 * @return true if the set contained the handle
+	 */
+	public boolean remove(int handle) {
+		int c = handle >>> CHUNK_BITS;
+		if (handle < 0 || c >= this.cards.length || this.cards[c] == 0) {
+			return false;
+		}
+		char low = (char)(handle & LOW_MASK);
+
+		if (this.bitmaps[c] != null) {
+			long[] bm = this.bitmaps[c];
+			long bit = 1L << low;
+			if ((bm[low >>> 6] & bit) == 0) {
+				return false;
+			}
+			bm[low >>> 6] &= ~bit;
+			this.cards[c]--;
+			if (this.cards[c] <= ARRAY_MAX / 2) {
+				toArray(c);
+			}
+		} else {
+			char[] arr = this.arrays[c];
+			int card = this.cards[c];
+			int i = Arrays.binarySearch(arr, 0, card, low);
+			if (i < 0) {
+				return false;
+			}
+			System.arraycopy(arr, i + 1, arr, i, card - i - 1);
+			this.cards[c]--;
+			if (this.cards[c] == 0) {
+				this.arrays[c] = null;
+			}
+		}
+
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * Returns true if the set contains the given handle
+	 * @param handle The handle to check
+	 * @return true if the set contains the handle (always false for
+	 * negative handles)
+	 */
+	public boolean contains(int handle) {
+		int c = handle >>> CHUNK_BITS;
+		if (handle < 0 || c >= this.cards.length || this.cards[c] == 0) {
+			return false;
+		}
+		char low = (char)(handle & LOW_MASK);
+
+		if (this.bitmaps[c] != null) {
+			return (this.bitmaps[c][low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch(this.arrays[c], 0, this.cards[c], low) >= 0;
+	}
+
+	/**
+	 * Adds all handles of another set to this set
+	 * @param other The other set
+	 */
+	public void addAll(HandleSet other) {
+		for (int h : other.toArray()) {
+			add(h);
+		}
+	}
+
+	/**
+	 * Returns the number of handles in the set
+	 * @return the number of handles in the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the set is empty
+	 * @return true if the set is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Returns the handles of this set in ascending order
+	 * @return the handles in a new array
+	 */
+	public int[] toArray() {
+		int[] handles = new int[this.size];
+		int n = 0;
+		for (int c = 0; c < this.cards.length; c++) {
+			int high = c << CHUNK_BITS;
+			if (this.bitmaps[c] != null) {
+				long[] bm = this.bitmaps[c];
+				for (int w = 0; w < BITMAP_LONGS; w++) {
+					long word = bm[w];
+					while (word != 0) {
+						int bit = Long.numberOfTrailingZeros(word);
+						handles[n++] = high | (w << 6) | bit;
+						word &= word - 1;
+					}
+				}
+			} else {
+				for (int i = 0; i < this.cards[c]; i++) {
+					handles[n++] = high | this.arrays[c][i];
+				}
+			}
+		}
+		return handles;
+	}
+
+	/**
+	 * Makes sure there's room for the given number of chunks
+	 * @param nrof The number of chunks needed
+	 */
+	private void ensureChunks(int nrof) {
+		if (nrof <= this.cards.length) {
+			return;
+		}
+		this.arrays = Arrays.copyOf(this.arrays, nrof);
+		this.bitmaps = Arrays.copyOf(this.bitmaps, nrof);
+		this.cards = Arrays.copyOf(this.cards, nrof);
+	}
+
+	/**
+	 * Converts an array chunk to a bitmap chunk
+	 * @param c Index of the chunk
+	 */
+	private void toBitmap(int c) {
+		long[] bm = new long[BITMAP_LONGS];
+		char[] arr = this.arrays[c];
+		for (int i = 0; i < this.cards[c]; i++) {
+			bm[arr[i] >>> 6] |= 1L << arr[i];
+		}
+		this.bitmaps[c] = bm;
+		this.arrays[c] = null;
+	}
+
+	/**
+	 * Converts a bitmap chunk to an array chunk
+	 * @param c Index of the chunk
+	 */
+	private void toArray(int c) {
+		char[] arr = new char[Math.max(4, this.cards[c])];
+		long[] bm = this.bitmaps[c];
+		int n = 0;
+		for (int w = 0; w < BITMAP_LONGS; w++) {
+			long word = bm[w];
+			while (word != 0) {
+				arr[n++] = (char)((w << 6) | Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		this.arrays[c] = arr;
+		this.bitmaps[c] = null;
+	}
+
+	/**
+	 * Returns a string presentation of the set
+	 */
+	public String toString() {
+		return "HandleSet with " + this.size + " handle(s)";
+	}
+}